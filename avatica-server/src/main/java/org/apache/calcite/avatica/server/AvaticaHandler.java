@@ -17,38 +17,200 @@
 package org.apache.calcite.avatica.server;
 
 import org.apache.calcite.avatica.remote.JsonHandler;
+import org.apache.calcite.avatica.remote.Serialization;
 import org.apache.calcite.avatica.remote.Service;
+import org.apache.calcite.avatica.remote.StreamHandler;
 
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.handler.AbstractHandler;
 
 import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 /**
- * Jetty handler that executes Avatica JSON request-responses.
+ * Jetty handler that executes Avatica request-responses.
+ *
+ * <p>A request is read from the body of the HTTP request, and the response
+ * written to the body of the HTTP response, in the {@link Serialization}
+ * given by the {@code Content-Type} header. For compatibility with older
+ * clients, a JSON request may instead be in the "request" header.
+ *
+ * <p>If the handler has a worker pool, requests are executed asynchronously
+ * on the pool's threads, so that Jetty's threads are free to accept and read
+ * other requests while long-running queries execute. The pool has a bounded
+ * queue; if the queue is full, the handler responds with status 503
+ * (Service Unavailable).
  */
 class AvaticaHandler extends AbstractHandler {
+  /** Default number of worker threads. */
+  public static final int DEFAULT_WORKER_COUNT =
+      Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+  /** Default number of requests that may wait for a worker thread. */
+  public static final int DEFAULT_QUEUE_SIZE = 1000;
+
   final JsonHandler jsonHandler;
+  final StreamHandler streamHandler;
+  private final int workerCount;
+  private final int queueSize;
+  private ThreadPoolExecutor executor;
 
+  private final AtomicLong requestCount = new AtomicLong();
+  private final AtomicLong rejectedCount = new AtomicLong();
+  private final AtomicLong requestNanos = new AtomicLong();
+
+  /** Creates a handler that executes requests on Jetty's threads. */
   public AvaticaHandler(Service service) {
+    this(service, 0, 0);
+  }
+
+  /** Creates a handler.
+   *
+   * @param service     Service that executes requests
+   * @param workerCount Number of worker threads; if 0, requests are executed
+   *                    on Jetty's threads
+   * @param queueSize   Maximum number of requests waiting for a worker
+   */
+  public AvaticaHandler(Service service, int workerCount, int queueSize) {
     this.jsonHandler = new JsonHandler(service);
+    this.streamHandler = new StreamHandler(service);
+    this.workerCount = workerCount;
+    this.queueSize = queueSize;
+  }
+
+  @Override protected void doStart() throws Exception {
+    if (workerCount > 0) {
+      final AtomicInteger threadCount = new AtomicInteger();
+      executor = new ThreadPoolExecutor(workerCount, workerCount,
+          60, TimeUnit.SECONDS,
+          new ArrayBlockingQueue<Runnable>(Math.max(queueSize, 1)),
+          new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              final Thread thread = new Thread(r,
+                  "avatica-worker-" + threadCount.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+      executor.allowCoreThreadTimeOut(true);
+    }
+    super.doStart();
+  }
+
+  @Override protected void doStop() throws Exception {
+    super.doStop();
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
   }
 
   public void handle(String target, Request baseRequest,
       HttpServletRequest request, HttpServletResponse response)
       throws IOException, ServletException {
-    response.setContentType("text/html;charset=utf-8");
-    response.setStatus(HttpServletResponse.SC_OK);
-    if (request.getMethod().equals("POST")) {
+    if (!request.getMethod().equals("POST")) {
+      response.setContentType("text/html;charset=utf-8");
+      response.setStatus(HttpServletResponse.SC_OK);
+      return;
+    }
+    baseRequest.setHandled(true);
+    requestCount.incrementAndGet();
+    final ThreadPoolExecutor executor = this.executor;
+    if (executor == null) {
+      process(request, response);
+      return;
+    }
+    final AsyncContext asyncContext = request.startAsync();
+    asyncContext.setTimeout(0);
+    try {
+      executor.execute(
+          new Runnable() {
+            public void run() {
+              final HttpServletResponse response =
+                  (HttpServletResponse) asyncContext.getResponse();
+              try {
+                process((HttpServletRequest) asyncContext.getRequest(),
+                    response);
+              } catch (Throwable e) {
+                if (!response.isCommitted()) {
+                  try {
+                    response.sendError(
+                        HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+                        String.valueOf(e.getMessage()));
+                  } catch (IOException e2) {
+                    // ignore; the client will see a truncated response
+                  }
+                }
+              } finally {
+                asyncContext.complete();
+              }
+            }
+          });
+    } catch (RejectedExecutionException e) {
+      rejectedCount.incrementAndGet();
+      response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+          "Server is busy");
+      asyncContext.complete();
+    }
+  }
+
+  /** Reads a request, executes it, and writes the response. */
+  private void process(HttpServletRequest request,
+      HttpServletResponse response) throws IOException {
+    final long start = System.nanoTime();
+    try {
       final String jsonRequest = request.getHeader("request");
-      final String jsonResponse = jsonHandler.apply(jsonRequest);
-      baseRequest.setHandled(true);
-      response.getWriter().println(jsonResponse);
+      if (jsonRequest != null) {
+        response.setContentType("text/html;charset=utf-8");
+        response.setStatus(HttpServletResponse.SC_OK);
+        final String jsonResponse = jsonHandler.apply(jsonRequest);
+        response.getWriter().println(jsonResponse);
+        return;
+      }
+      final Serialization serialization =
+          Serialization.ofContentType(request.getContentType());
+      response.setContentType(serialization.contentType);
+      response.setStatus(HttpServletResponse.SC_OK);
+      streamHandler.apply(serialization, request.getInputStream(),
+          response.getOutputStream());
+    } finally {
+      requestNanos.addAndGet(System.nanoTime() - start);
     }
   }
+
+  /** Returns the number of requests received. */
+  public long getRequestCount() {
+    return requestCount.get();
+  }
+
+  /** Returns the number of requests rejected because the worker pool's
+   * queue was full. */
+  public long getRejectedCount() {
+    return rejectedCount.get();
+  }
+
+  /** Returns the total time, in nanoseconds, spent executing requests. */
+  public long getRequestNanos() {
+    return requestNanos.get();
+  }
+
+  /** Returns the number of requests that are executing or waiting for a
+   * worker thread. */
+  public int getPendingCount() {
+    final ThreadPoolExecutor executor = this.executor;
+    return executor == null ? 0
+        : executor.getActiveCount() + executor.getQueue().size();
+  }
 }
 
 // End AvaticaHandler.java
@@ -43,7 +43,9 @@ public static HttpServer start(String[] args)
     Meta.Factory factory = (Meta.Factory) factoryClass.newInstance();
     Meta meta = factory.create(Arrays.asList(args).subList(1, args.length));
     Service service = new LocalService(meta);
-    HttpServer server = new HttpServer(8765, new AvaticaHandler(service));
+    HttpServer server = new HttpServer(8765,
+        new AvaticaHandler(service, AvaticaHandler.DEFAULT_WORKER_COUNT,
+            AvaticaHandler.DEFAULT_QUEUE_SIZE));
     server.start();
     return server;
   }
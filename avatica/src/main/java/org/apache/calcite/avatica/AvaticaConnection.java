@@ -41,6 +41,7 @@
 import java.util.Properties;
 import java.util.TimeZone;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implementation of JDBC connection
@@ -49,7 +50,10 @@
  * <p>Abstract to allow newer versions of JDBC to add methods.
  */
 public abstract class AvaticaConnection implements Connection {
-  protected int statementCount;
+  /** Number of statements created; the next statement's id. Incremented
+   * atomically, because a server may create statements on several threads
+   * at once. */
+  protected final AtomicInteger statementCount = new AtomicInteger();
   private boolean autoCommit;
   private boolean closed;
   private boolean readOnly;
@@ -69,7 +73,8 @@ public abstract class AvaticaConnection implements Connection {
   public final Helper helper = Helper.INSTANCE;
   public final Map<InternalProperty, Object> properties =
       new HashMap<InternalProperty, Object>();
-  public final Map<Integer, AvaticaStatement> statementMap = Maps.newHashMap();
+  public final Map<Integer, AvaticaStatement> statementMap =
+      Maps.newConcurrentMap();
 
   private static int nextId;
 
@@ -153,6 +153,7 @@ protected void close_() {
         openResultSet = null;
         c.close();
       }
+      connection.meta.closeStatement(handle);
       // If onStatementClose throws, this method will throw an exception (later
       // converted to SQLException), but this statement still gets closed.
       connection.driver.handler.onStatementClose(this);
@@ -211,9 +212,13 @@ void setQueryTimeoutMillis(int millis) {
     this.queryTimeoutMillis = millis;
   }
 
-  public synchronized void cancel() throws SQLException {
-    if (openResultSet != null) {
-      openResultSet.cancel();
+  public void cancel() throws SQLException {
+    // Not synchronized: a remote statement holds its monitor while it waits
+    // for the server to execute, and that is when we need to cancel.
+    try {
+      connection.meta.cancelStatement(handle);
+    } catch (RuntimeException e) {
+      throw connection.helper.createException("While cancelling statement", e);
     }
   }
 
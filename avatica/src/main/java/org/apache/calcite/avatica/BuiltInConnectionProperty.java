@@ -16,6 +16,8 @@
  */
 package org.apache.calcite.avatica;
 
+import org.apache.calcite.avatica.remote.Serialization;
+
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
@@ -37,7 +39,30 @@ public enum BuiltInConnectionProperty implements ConnectionProperty {
   TIMEZONE("timezone", Type.STRING, null, false),
 
   /** Remote URL. */
-  URL("url", Type.STRING, null, false);
+  URL("url", Type.STRING, null, false),
+
+  /** Format of requests and responses sent to a remote server; see
+   * {@link Serialization}. */
+  SERIALIZATION("serialization", Type.ENUM, Serialization.JSON, false),
+
+  /** Maximum number of concurrent requests to a remote server. Shared by all
+   * connections to the same URL that have the same value of this
+   * property. */
+  MAX_CONNECTIONS("maxConnections", Type.NUMBER, 5, false),
+
+  /** Timeout, in milliseconds, to connect to a remote server; 0 means no
+   * timeout. Does not include the time spent waiting for a free connection;
+   * see {@link #POOL_TIMEOUT}. */
+  CONNECT_TIMEOUT("connectTimeout", Type.NUMBER, 0, false),
+
+  /** Timeout, in milliseconds, to wait for a free connection if
+   * {@link #MAX_CONNECTIONS} requests to a remote server are already in
+   * flight; 0 means no timeout. */
+  POOL_TIMEOUT("poolTimeout", Type.NUMBER, 0, false),
+
+  /** Timeout, in milliseconds, to read a response from a remote server;
+   * 0 means no timeout. */
+  READ_TIMEOUT("readTimeout", Type.NUMBER, 0, false);
 
   private final String camelName;
   private final Type type;
@@ -16,6 +16,7 @@
  */
 package org.apache.calcite.avatica;
 
+import org.apache.calcite.avatica.remote.Serialization;
 import org.apache.calcite.avatica.remote.Service;
 
 /**
@@ -26,6 +27,11 @@ public interface ConnectionConfig {
   String timeZone();
   Service.Factory factory();
   String url();
+  Serialization serialization();
+  int maxConnections();
+  int connectTimeout();
+  int poolTimeout();
+  int readTimeout();
 }
 
 // End ConnectionConfig.java
@@ -16,6 +16,7 @@
  */
 package org.apache.calcite.avatica;
 
+import org.apache.calcite.avatica.remote.Serialization;
 import org.apache.calcite.avatica.remote.Service;
 
 import java.lang.reflect.Field;
@@ -48,6 +49,29 @@ public String url() {
     return BuiltInConnectionProperty.URL.wrap(properties).getString();
   }
 
+  public Serialization serialization() {
+    return BuiltInConnectionProperty.SERIALIZATION.wrap(properties)
+        .getEnum(Serialization.class);
+  }
+
+  public int maxConnections() {
+    return BuiltInConnectionProperty.MAX_CONNECTIONS.wrap(properties)
+        .getInt();
+  }
+
+  public int connectTimeout() {
+    return BuiltInConnectionProperty.CONNECT_TIMEOUT.wrap(properties)
+        .getInt();
+  }
+
+  public int poolTimeout() {
+    return BuiltInConnectionProperty.POOL_TIMEOUT.wrap(properties).getInt();
+  }
+
+  public int readTimeout() {
+    return BuiltInConnectionProperty.READ_TIMEOUT.wrap(properties).getInt();
+  }
+
   /** Converts a {@link Properties} object containing (name, value)
    * pairs into a map whose keys are
    * {@link org.apache.calcite.avatica.InternalProperty} objects.
@@ -121,6 +145,34 @@ public boolean getBoolean(boolean defaultValue) {
       return get_(BOOLEAN_CONVERTER, Boolean.toString(defaultValue));
     }
 
+    /** Returns the integer value of this property. Throws if not set and no
+     * default. */
+    public int getInt() {
+      return getInt((Number) property.defaultValue());
+    }
+
+    /** Returns the integer value of this property. Throws if not set and no
+     * default. */
+    public int getInt(Number defaultValue) {
+      assert property.type() == ConnectionProperty.Type.NUMBER;
+      return get_(NUMBER_CONVERTER,
+          defaultValue == null ? null : defaultValue.toString()).intValue();
+    }
+
+    /** Returns the long value of this property. Throws if not set and no
+     * default. */
+    public long getLong() {
+      return getLong((Number) property.defaultValue());
+    }
+
+    /** Returns the long value of this property. Throws if not set and no
+     * default. */
+    public long getLong(Number defaultValue) {
+      assert property.type() == ConnectionProperty.Type.NUMBER;
+      return get_(NUMBER_CONVERTER,
+          defaultValue == null ? null : defaultValue.toString()).longValue();
+    }
+
     /** Returns the enum value of this property. Throws if not set and no
      * default. */
     public <E extends Enum<E>> E getEnum(Class<E> enumClass) {
@@ -178,6 +230,23 @@ public Boolean apply(ConnectionProperty connectionProperty, String s) {
         }
       };
 
+  public static final Converter<Number> NUMBER_CONVERTER =
+      new Converter<Number>() {
+        public Number apply(ConnectionProperty connectionProperty, String s) {
+          if (s == null) {
+            throw new RuntimeException("Required property '"
+                + connectionProperty.camelName() + "' not specified");
+          }
+          try {
+            return Long.valueOf(s.trim());
+          } catch (NumberFormatException e) {
+            throw new RuntimeException("Property '"
+                + connectionProperty.camelName() + "' requires a number, but"
+                + " was '" + s + "'");
+          }
+        }
+      };
+
   public static final Converter<String> IDENTITY_CONVERTER =
       new Converter<String>() {
         public String apply(ConnectionProperty connectionProperty, String s) {
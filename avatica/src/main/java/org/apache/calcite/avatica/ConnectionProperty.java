@@ -49,6 +49,7 @@ public interface ConnectionProperty {
   enum Type {
     BOOLEAN,
     STRING,
+    NUMBER,
     ENUM,
     PLUGIN;
 
@@ -59,6 +60,8 @@ public boolean valid(Object defaultValue) {
       case STRING:
       case PLUGIN:
         return defaultValue instanceof String;
+      case NUMBER:
+        return defaultValue instanceof Number;
       default:
         return defaultValue instanceof Enum;
       }
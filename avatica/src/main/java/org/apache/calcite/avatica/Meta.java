@@ -176,6 +176,22 @@ MetaResultSet prepareAndExecute(StatementHandle h, String sql,
    */
   StatementHandle createStatement(ConnectionHandle ch);
 
+  /** Called when a statement is closed, to release the resources that it
+   * holds.
+   *
+   * @param h Statement handle
+   */
+  void closeStatement(StatementHandle h);
+
+  /** Cancels the request that a statement is executing, and discards its
+   * open result set. May be called from a thread other than the one that is
+   * executing the statement.
+   *
+   * @param h Statement handle
+   * @return Whether there was a request or result set to cancel
+   */
+  boolean cancelStatement(StatementHandle h);
+
   /** Factory to create instances of {@link Meta}. */
   interface Factory {
     Meta create(List<String> args);
@@ -213,6 +229,42 @@ public MetaResultSet(int statementId, boolean ownStatement,
     }
   }
 
+  /** A collection of rows returned in response to a request, and an
+   * indication whether more rows are available.
+   *
+   * <p>A result set may be sent to a remote client in several frames; the
+   * first accompanies the response that executes the statement, and the
+   * client requests subsequent frames as it needs them. */
+  class Frame {
+    public static final Frame EMPTY =
+        new Frame(0, true, Collections.emptyList());
+
+    /** Zero-based offset of first row. */
+    public final int offset;
+    /** Whether this is definitely the last frame of rows.
+     * If true, there are no more rows.
+     * If false, there may or may not be more rows. */
+    public final boolean done;
+    /** The rows. */
+    public final List<Object> rows;
+
+    public Frame(int offset, boolean done, List<Object> rows) {
+      this.offset = offset;
+      this.done = done;
+      this.rows = rows;
+    }
+
+    @JsonCreator
+    public static Frame create(@JsonProperty("offset") int offset,
+        @JsonProperty("done") boolean done,
+        @JsonProperty("rows") List<Object> rows) {
+      if (offset == 0 && done && rows.isEmpty()) {
+        return EMPTY;
+      }
+      return new Frame(offset, done, rows);
+    }
+  }
+
   /** Information necessary to convert an {@link Iterable} into a
    * {@link org.apache.calcite.avatica.util.Cursor}. */
   final class CursorFactory {
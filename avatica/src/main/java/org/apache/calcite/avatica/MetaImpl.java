@@ -161,7 +161,25 @@ public static List<List<Object>> collect(CursorFactory cursorFactory,
   }
 
   public StatementHandle createStatement(ConnectionHandle ch) {
-    return new StatementHandle(connection.statementCount++);
+    return new StatementHandle(connection.statementCount.getAndIncrement());
+  }
+
+  public void closeStatement(StatementHandle h) {
+    // nothing to release
+  }
+
+  public boolean cancelStatement(StatementHandle h) {
+    final AvaticaStatement statement = connection.statementMap.get(h.id);
+    if (statement == null) {
+      return false;
+    }
+    synchronized (statement) {
+      if (statement.openResultSet == null) {
+        return false;
+      }
+      statement.openResultSet.cancel();
+      return true;
+    }
   }
 
   /** Creates an empty result set. Useful for JDBC metadata methods that are
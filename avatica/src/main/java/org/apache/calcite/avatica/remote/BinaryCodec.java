@@ -0,0 +1,364 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.avatica.remote;
+
+import org.apache.calcite.avatica.Meta;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes and decodes responses in the {@link Serialization#BINARY} format.
+ *
+ * <p>A response starts with a tag byte. A {@link Service.ResultSetResponse}
+ * or {@link Service.FetchResponse} is followed by its fields, the
+ * signature (if any) as length-prefixed JSON, and then the frame of rows.
+ * Any other response is followed by its JSON text.
+ *
+ * <p>If every row of a frame is a list, as it is for rows of a
+ * {@link Meta.CursorFactory#LIST} cursor, the frame is encoded column by
+ * column. Each column has a type, deduced from the classes of its values (and
+ * therefore consistent with the column's
+ * {@link org.apache.calcite.avatica.ColumnMetaData.Rep}), a bitmap of null
+ * values if there are any, and then the non-null values:
+ * integers as zig-zag variable-length integers, floating-point values as raw
+ * IEEE 754 bits, booleans as bytes, strings as length-prefixed UTF-8. Values
+ * of other types are length-prefixed JSON, and decode as they would from
+ * {@link Serialization#JSON}.
+ */
+final class BinaryCodec {
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private static final byte RESPONSE_JSON = 0;
+  private static final byte RESPONSE_RESULT_SET = 1;
+  private static final byte RESPONSE_FETCH = 2;
+
+  private static final byte FRAME_NULL = 0;
+  private static final byte FRAME_COLUMNS = 1;
+  private static final byte FRAME_JSON = 2;
+
+  private BinaryCodec() {}
+
+  /** Type of a column in a columnar frame. */
+  private enum ColumnType {
+    NULL(null),
+    BOOLEAN(Boolean.class),
+    BYTE(Byte.class),
+    SHORT(Short.class),
+    INTEGER(Integer.class),
+    LONG(Long.class),
+    FLOAT(Float.class),
+    DOUBLE(Double.class),
+    STRING(String.class),
+    OBJECT(null);
+
+    final Class clazz;
+
+    ColumnType(Class clazz) {
+      this.clazz = clazz;
+    }
+
+    static ColumnType of(Object o) {
+      for (ColumnType type : values()) {
+        if (type.clazz == o.getClass()) {
+          return type;
+        }
+      }
+      return OBJECT;
+    }
+  }
+
+  static void writeResponse(Service.Response response, OutputStream out)
+      throws IOException {
+    final DataOutputStream dos =
+        new DataOutputStream(new BufferedOutputStream(out));
+    if (response instanceof Service.ResultSetResponse) {
+      final Service.ResultSetResponse resultSet =
+          (Service.ResultSetResponse) response;
+      dos.writeByte(RESPONSE_RESULT_SET);
+      writeVarLong(dos, resultSet.statementId);
+      dos.writeBoolean(resultSet.ownStatement);
+      writeJson(dos, resultSet.signature);
+      writeFrame(dos, resultSet.firstFrame);
+    } else if (response instanceof Service.FetchResponse) {
+      dos.writeByte(RESPONSE_FETCH);
+      writeFrame(dos, ((Service.FetchResponse) response).frame);
+    } else {
+      dos.writeByte(RESPONSE_JSON);
+      writeJson(dos, response);
+    }
+    dos.flush();
+  }
+
+  static Service.Response readResponse(InputStream in,
+      Class<? extends Service.Response> responseClass) throws IOException {
+    final DataInputStream dis =
+        new DataInputStream(new BufferedInputStream(in));
+    final byte tag = dis.readByte();
+    switch (tag) {
+    case RESPONSE_RESULT_SET:
+      final int statementId = (int) readVarLong(dis);
+      final boolean ownStatement = dis.readBoolean();
+      final Meta.Signature signature = readJson(dis, Meta.Signature.class);
+      final Meta.Frame frame = readFrame(dis);
+      return new Service.ResultSetResponse(statementId, ownStatement,
+          signature, frame);
+    case RESPONSE_FETCH:
+      return new Service.FetchResponse(readFrame(dis));
+    case RESPONSE_JSON:
+      return readJson(dis, responseClass);
+    default:
+      throw new IOException("unknown response tag " + tag);
+    }
+  }
+
+  private static void writeFrame(DataOutputStream dos, Meta.Frame frame)
+      throws IOException {
+    if (frame == null) {
+      dos.writeByte(FRAME_NULL);
+      return;
+    }
+    final boolean columnar = allLists(frame.rows);
+    dos.writeByte(columnar ? FRAME_COLUMNS : FRAME_JSON);
+    writeVarLong(dos, frame.offset);
+    dos.writeBoolean(frame.done);
+    if (!columnar) {
+      writeJson(dos, frame.rows);
+      return;
+    }
+    final int rowCount = frame.rows.size();
+    final int columnCount =
+        rowCount == 0 ? 0 : ((List) frame.rows.get(0)).size();
+    writeVarLong(dos, rowCount);
+    writeVarLong(dos, columnCount);
+    for (int c = 0; c < columnCount; c++) {
+      writeColumn(dos, frame.rows, c);
+    }
+  }
+
+  private static Meta.Frame readFrame(DataInputStream dis)
+      throws IOException {
+    final byte tag = dis.readByte();
+    if (tag == FRAME_NULL) {
+      return null;
+    }
+    final int offset = (int) readVarLong(dis);
+    final boolean done = dis.readBoolean();
+    switch (tag) {
+    case FRAME_JSON:
+      //noinspection unchecked
+      final List<Object> rows = readJson(dis, List.class);
+      return new Meta.Frame(offset, done, rows);
+    case FRAME_COLUMNS:
+      final int rowCount = (int) readVarLong(dis);
+      final int columnCount = (int) readVarLong(dis);
+      final Object[][] values = new Object[rowCount][columnCount];
+      for (int c = 0; c < columnCount; c++) {
+        readColumn(dis, values, c);
+      }
+      final List<Object> rows2 = new ArrayList<Object>(rowCount);
+      for (Object[] row : values) {
+        rows2.add(Arrays.asList(row));
+      }
+      return new Meta.Frame(offset, done, rows2);
+    default:
+      throw new IOException("unknown frame tag " + tag);
+    }
+  }
+
+  private static boolean allLists(List<Object> rows) {
+    Integer size = null;
+    for (Object row : rows) {
+      if (!(row instanceof List)) {
+        return false;
+      }
+      if (size == null) {
+        size = ((List) row).size();
+      } else if (size != ((List) row).size()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static void writeColumn(DataOutputStream dos, List<Object> rows,
+      int c) throws IOException {
+    ColumnType type = ColumnType.NULL;
+    boolean hasNulls = false;
+    for (Object row : rows) {
+      final Object o = ((List) row).get(c);
+      if (o == null) {
+        hasNulls = true;
+      } else if (type == ColumnType.NULL) {
+        type = ColumnType.of(o);
+      } else if (type != ColumnType.OBJECT && type.clazz != o.getClass()) {
+        type = ColumnType.OBJECT;
+      }
+    }
+    dos.writeByte(type.ordinal());
+    if (type == ColumnType.NULL) {
+      return;
+    }
+    dos.writeBoolean(hasNulls);
+    if (hasNulls) {
+      final byte[] nulls = new byte[(rows.size() + 7) / 8];
+      for (int r = 0; r < rows.size(); r++) {
+        if (((List) rows.get(r)).get(c) == null) {
+          nulls[r / 8] |= 1 << (r % 8);
+        }
+      }
+      dos.write(nulls);
+    }
+    for (Object row : rows) {
+      final Object o = ((List) row).get(c);
+      if (o != null) {
+        writeValue(dos, type, o);
+      }
+    }
+  }
+
+  private static void readColumn(DataInputStream dis, Object[][] values,
+      int c) throws IOException {
+    final ColumnType type = ColumnType.values()[dis.readByte()];
+    if (type == ColumnType.NULL) {
+      return;
+    }
+    final boolean hasNulls = dis.readBoolean();
+    byte[] nulls = null;
+    if (hasNulls) {
+      nulls = new byte[(values.length + 7) / 8];
+      dis.readFully(nulls);
+    }
+    for (int r = 0; r < values.length; r++) {
+      if (nulls == null || (nulls[r / 8] & (1 << (r % 8))) == 0) {
+        values[r][c] = readValue(dis, type);
+      }
+    }
+  }
+
+  private static void writeValue(DataOutputStream dos, ColumnType type,
+      Object o) throws IOException {
+    switch (type) {
+    case BOOLEAN:
+      dos.writeBoolean((Boolean) o);
+      return;
+    case BYTE:
+    case SHORT:
+    case INTEGER:
+    case LONG:
+      writeVarLong(dos, ((Number) o).longValue());
+      return;
+    case FLOAT:
+      dos.writeFloat((Float) o);
+      return;
+    case DOUBLE:
+      dos.writeDouble((Double) o);
+      return;
+    case STRING:
+      writeBytes(dos, ((String) o).getBytes(UTF8));
+      return;
+    default:
+      writeJson(dos, o);
+    }
+  }
+
+  private static Object readValue(DataInputStream dis, ColumnType type)
+      throws IOException {
+    switch (type) {
+    case BOOLEAN:
+      return dis.readBoolean();
+    case BYTE:
+      return (byte) readVarLong(dis);
+    case SHORT:
+      return (short) readVarLong(dis);
+    case INTEGER:
+      return (int) readVarLong(dis);
+    case LONG:
+      return readVarLong(dis);
+    case FLOAT:
+      return dis.readFloat();
+    case DOUBLE:
+      return dis.readDouble();
+    case STRING:
+      return new String(readBytes(dis), UTF8);
+    default:
+      return readJson(dis, Object.class);
+    }
+  }
+
+  private static void writeJson(DataOutputStream dos, Object o)
+      throws IOException {
+    writeBytes(dos, JsonService.MAPPER.writeValueAsBytes(o));
+  }
+
+  private static <T> T readJson(DataInputStream dis, Class<T> clazz)
+      throws IOException {
+    return JsonService.MAPPER.readValue(readBytes(dis), clazz);
+  }
+
+  private static void writeBytes(DataOutputStream dos, byte[] bytes)
+      throws IOException {
+    writeVarLong(dos, bytes.length);
+    dos.write(bytes);
+  }
+
+  private static byte[] readBytes(DataInputStream dis) throws IOException {
+    final byte[] bytes = new byte[(int) readVarLong(dis)];
+    dis.readFully(bytes);
+    return bytes;
+  }
+
+  /** Writes a signed value as a variable-length integer. Uses zig-zag
+   * encoding, so that values of small magnitude, positive or negative,
+   * occupy few bytes. */
+  static void writeVarLong(DataOutputStream dos, long v) throws IOException {
+    long u = (v << 1) ^ (v >> 63);
+    while ((u & ~0x7FL) != 0) {
+      dos.writeByte((int) ((u & 0x7F) | 0x80));
+      u >>>= 7;
+    }
+    dos.writeByte((int) u);
+  }
+
+  /** Reads a value written by {@link #writeVarLong}. */
+  static long readVarLong(DataInputStream dis) throws IOException {
+    long u = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      final int b = dis.read();
+      if (b < 0) {
+        throw new EOFException();
+      }
+      u |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return (u >>> 1) ^ -(u & 1);
+      }
+    }
+    throw new IOException("malformed variable-length integer");
+  }
+}
+
+// End BinaryCodec.java
@@ -79,7 +79,10 @@ protected DriverVersion createDriverVersion() {
       } catch (MalformedURLException e) {
         throw new RuntimeException(e);
       }
-      service = new RemoteService(url);
+      service = new RemoteService(
+          HttpClientPool.instance(url, config.maxConnections()),
+          config.serialization(), config.poolTimeout(),
+          config.connectTimeout(), config.readTimeout());
     } else {
       service = new MockJsonService(Collections.<String, String>emptyMap());
     }
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.avatica.remote;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool of HTTP connections to an Avatica server.
+ *
+ * <p>There is one pool per server URL and pool size, shared by all remote
+ * connections to that URL that ask for a pool of that size. The pool
+ * limits the number of requests in flight at a time; a request that arrives
+ * when the pool is saturated waits for another to finish, for up to
+ * {@link org.apache.calcite.avatica.BuiltInConnectionProperty#POOL_TIMEOUT}
+ * milliseconds.
+ *
+ * <p>Sockets are re-used between requests by the JDK's HTTP keep-alive
+ * cache. A socket is returned to that cache only if the response has been
+ * read to the end and closed, which {@link #release} ensures. The JDK keeps
+ * at most {@code http.maxConnections} (default 5) idle sockets per server;
+ * set that system property at least as high as
+ * {@link org.apache.calcite.avatica.BuiltInConnectionProperty#MAX_CONNECTIONS}
+ * if you raise the latter.
+ */
+public class HttpClientPool {
+  private static final ConcurrentMap<String, HttpClientPool> POOLS =
+      new ConcurrentHashMap<String, HttpClientPool>();
+
+  private final URL url;
+  private final int maxConnections;
+  private final Semaphore permits;
+
+  private final AtomicInteger inFlightCount = new AtomicInteger();
+  private final AtomicLong requestCount = new AtomicLong();
+  private final AtomicLong saturatedCount = new AtomicLong();
+  private final AtomicLong waitNanos = new AtomicLong();
+  private final AtomicLong failureCount = new AtomicLong();
+
+  /** Creates a HttpClientPool. */
+  public HttpClientPool(URL url, int maxConnections) {
+    if (maxConnections <= 0) {
+      throw new IllegalArgumentException("maxConnections must be positive");
+    }
+    this.url = url;
+    this.maxConnections = maxConnections;
+    this.permits = new Semaphore(maxConnections, true);
+  }
+
+  /** Returns the pool for a given URL and size, creating it if necessary.
+   *
+   * <p>Connections that specify different values of {@code maxConnections}
+   * get different pools, even if they connect to the same server. */
+  public static HttpClientPool instance(URL url, int maxConnections) {
+    final String key = url.toExternalForm() + "#" + maxConnections;
+    HttpClientPool pool = POOLS.get(key);
+    if (pool == null) {
+      final HttpClientPool pool2 = new HttpClientPool(url, maxConnections);
+      pool = POOLS.putIfAbsent(key, pool2);
+      if (pool == null) {
+        pool = pool2;
+      }
+    }
+    return pool;
+  }
+
+  /** Opens a connection to the server, waiting if the pool is saturated.
+   * The caller must call {@link #release} when it has finished with the
+   * connection.
+   *
+   * @param poolTimeout    Timeout in milliseconds to wait for a connection if
+   *                       the pool is saturated; 0 means wait forever
+   * @param connectTimeout Timeout in milliseconds to connect; 0 means wait
+   *                       forever
+   * @param readTimeout    Timeout in milliseconds to read the response;
+   *                       0 means wait forever
+   */
+  public HttpURLConnection acquire(int poolTimeout, int connectTimeout,
+      int readTimeout) throws IOException {
+    requestCount.incrementAndGet();
+    if (!permits.tryAcquire()) {
+      saturatedCount.incrementAndGet();
+      final long start = System.nanoTime();
+      try {
+        if (poolTimeout > 0) {
+          if (!permits.tryAcquire(poolTimeout, TimeUnit.MILLISECONDS)) {
+            failureCount.incrementAndGet();
+            throw new IOException("timed out after " + poolTimeout
+                + " ms waiting for a connection to " + url);
+          }
+        } else {
+          permits.acquire();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        failureCount.incrementAndGet();
+        throw new IOException("interrupted waiting for a connection to "
+            + url);
+      } finally {
+        waitNanos.addAndGet(System.nanoTime() - start);
+      }
+    }
+    inFlightCount.incrementAndGet();
+    try {
+      final HttpURLConnection connection =
+          (HttpURLConnection) url.openConnection();
+      connection.setConnectTimeout(connectTimeout);
+      connection.setReadTimeout(readTimeout);
+      connection.setRequestProperty("Connection", "keep-alive");
+      return connection;
+    } catch (IOException e) {
+      inFlightCount.decrementAndGet();
+      permits.release();
+      failureCount.incrementAndGet();
+      throw e;
+    }
+  }
+
+  /** Returns a connection to the pool.
+   *
+   * <p>If the request succeeded, reads what remains of the response, so
+   * that the JDK can re-use the underlying socket for the next request.
+   *
+   * @param connection Connection returned by {@link #acquire}
+   * @param failed     Whether the request failed
+   */
+  public void release(HttpURLConnection connection, boolean failed) {
+    try {
+      if (failed) {
+        // The socket may be in an unknown state; do not re-use it.
+        failureCount.incrementAndGet();
+        connection.disconnect();
+      } else {
+        drain(connection.getInputStream());
+      }
+    } catch (IOException e) {
+      // Stream was already closed (which also returns the socket to the
+      // keep-alive cache) or is broken (in which case the JDK discards the
+      // socket). Either way, there is nothing more to do.
+    } finally {
+      inFlightCount.decrementAndGet();
+      permits.release();
+    }
+  }
+
+  private static void drain(InputStream inputStream) throws IOException {
+    if (inputStream == null) {
+      return;
+    }
+    try {
+      final byte[] bytes = new byte[4096];
+      while (inputStream.read(bytes) >= 0) {
+        // discard
+      }
+    } finally {
+      inputStream.close();
+    }
+  }
+
+  /** Returns the URL of the server. */
+  public URL getUrl() {
+    return url;
+  }
+
+  /** Returns the maximum number of requests in flight at a time. */
+  public int getMaxConnections() {
+    return maxConnections;
+  }
+
+  /** Returns the number of requests in flight. */
+  public int getInFlightCount() {
+    return inFlightCount.get();
+  }
+
+  /** Returns the number of requests made through this pool. */
+  public long getRequestCount() {
+    return requestCount.get();
+  }
+
+  /** Returns the number of requests that found the pool saturated and had
+   * to wait for a connection. */
+  public long getSaturatedCount() {
+    return saturatedCount.get();
+  }
+
+  /** Returns the total time, in nanoseconds, that requests have spent
+   * waiting for a connection. */
+  public long getWaitNanos() {
+    return waitNanos.get();
+  }
+
+  /** Returns the number of requests that failed or timed out. */
+  public long getFailureCount() {
+    return failureCount.get();
+  }
+}
+
+// End HttpClientPool.java
@@ -94,6 +94,30 @@ public CreateStatementResponse apply(CreateStatementRequest request) {
       throw handle(e);
     }
   }
+
+  public FetchResponse apply(FetchRequest request) {
+    try {
+      return decode(apply(encode(request)), FetchResponse.class);
+    } catch (IOException e) {
+      throw handle(e);
+    }
+  }
+
+  public CancelResponse apply(CancelRequest request) {
+    try {
+      return decode(apply(encode(request)), CancelResponse.class);
+    } catch (IOException e) {
+      throw handle(e);
+    }
+  }
+
+  public CloseStatementResponse apply(CloseStatementRequest request) {
+    try {
+      return decode(apply(encode(request)), CloseStatementResponse.class);
+    } catch (IOException e) {
+      throw handle(e);
+    }
+  }
 }
 
 // End JsonService.java
@@ -20,35 +20,140 @@
 import org.apache.calcite.avatica.MetaImpl;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implementation of {@link Service} that talks to a local {@link Meta}.
+ *
+ * <p>Result sets are returned in frames of at most
+ * {@link #frameRowCount} rows. If a result set has more rows than fit into
+ * its first frame, the service holds the remaining rows in a cursor, keyed
+ * by statement, until the client fetches them.
+ *
+ * <p>The service keeps a registry of the statements it has seen. The
+ * registry records how long each statement has spent executing and
+ * fetching, allows a statement to be cancelled from another thread, and
+ * discards the cursors of statements that have been idle for longer than
+ * {@link #idleTimeoutMillis}. The service is thread-safe, so a server may
+ * call it from several threads at once.
+ *
+ * <p>Note that {@link #apply(PrepareAndExecuteRequest)} prepares while
+ * holding the monitor of {@code LocalService.class}, which is shared by all
+ * instances; so requests that prepare statements are serialized, and
+ * running requests on several threads does not increase how fast statements
+ * can be prepared. Fetching, and executing other requests, is concurrent.
  */
 public class LocalService implements Service {
+  /** Default maximum number of rows in a frame. */
+  public static final int DEFAULT_FRAME_ROW_COUNT = 100;
+
+  /** Default time after which an idle statement's cursor is discarded. */
+  public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 10 * 60 * 1000L;
+
   final Meta meta;
+  private final int frameRowCount;
+  private final long idleTimeoutMillis;
+
+  /** Statements, by statement id. */
+  private final ConcurrentMap<Integer, ServerStatement> statements =
+      new ConcurrentHashMap<Integer, ServerStatement>();
+
+  /** When {@link #expireIdle} last ran. */
+  private final AtomicLong lastExpiry =
+      new AtomicLong(System.currentTimeMillis());
 
   public LocalService(Meta meta) {
+    this(meta, DEFAULT_FRAME_ROW_COUNT);
+  }
+
+  public LocalService(Meta meta, int frameRowCount) {
+    this(meta, frameRowCount, DEFAULT_IDLE_TIMEOUT_MILLIS);
+  }
+
+  /** Creates a LocalService.
+   *
+   * @param meta              Meta to which requests are delegated
+   * @param frameRowCount     Maximum number of rows in a frame
+   * @param idleTimeoutMillis Time after which the cursor of a statement
+   *                          that has not been used is discarded; 0 means
+   *                          never
+   */
+  public LocalService(Meta meta, int frameRowCount, long idleTimeoutMillis) {
+    assert frameRowCount > 0;
+    assert idleTimeoutMillis >= 0;
     this.meta = meta;
+    this.frameRowCount = frameRowCount;
+    this.idleTimeoutMillis = idleTimeoutMillis;
+  }
+
+  /** Returns the registered statement with a given id, or null. */
+  public ServerStatement getStatement(int statementId) {
+    return statements.get(statementId);
   }
 
-  private static <E> List<E> list(Iterable<E> iterable) {
-    if (iterable instanceof List) {
-      return (List<E>) iterable;
+  /** Returns the number of registered statements. */
+  public int getStatementCount() {
+    return statements.size();
+  }
+
+  private ServerStatement statement(int statementId) {
+    ServerStatement statement = statements.get(statementId);
+    if (statement == null) {
+      final ServerStatement statement2 = new ServerStatement(statementId);
+      statement = statements.putIfAbsent(statementId, statement2);
+      if (statement == null) {
+        statement = statement2;
+      }
+    }
+    return statement;
+  }
+
+  /** Removes statements that have not been used for more than
+   * {@code idleMillis} milliseconds and are not executing, and discards
+   * their cursors. Returns the number of statements removed. */
+  public int expireIdle(long idleMillis) {
+    final long now = System.currentTimeMillis();
+    lastExpiry.set(now);
+    int count = 0;
+    for (ServerStatement statement : statements.values()) {
+      if (statement.thread == null
+          && now - statement.lastUsedMillis > idleMillis
+          && statements.remove(statement.id, statement)) {
+        statement.setCursor(null);
+        ++count;
+      }
     }
-    final List<E> rowList = new ArrayList<E>();
-    for (E row : iterable) {
-      rowList.add(row);
+    return count;
+  }
+
+  /** Expires idle statements, if it is time to do so. Called at the start of
+   * each request, so that a server does not need a separate thread. */
+  private void maybeExpire() {
+    if (idleTimeoutMillis > 0) {
+      final long last = lastExpiry.get();
+      final long now = System.currentTimeMillis();
+      if (now - last > idleTimeoutMillis / 2
+          && lastExpiry.compareAndSet(last, now)) {
+        expireIdle(idleTimeoutMillis);
+      }
     }
-    return rowList;
   }
 
-  /** Converts a result set (not serializable) into a serializable response. */
+  /** Converts a result set (not serializable) into a serializable response.
+   *
+   * <p>Reads only as many rows as fit into the first frame. If there are
+   * more, registers a cursor from which they can be fetched. */
   public ResultSetResponse toResponse(Meta.MetaResultSet resultSet) {
     Meta.CursorFactory cursorFactory = resultSet.signature.cursorFactory;
-    final List<Object> list;
+    final Iterable<Object> iterable;
+    final Meta.CursorFactory rowCursorFactory;
     if (resultSet.iterable != null) {
-      list = list(resultSet.iterable);
+      iterable = resultSet.iterable;
+      rowCursorFactory = null;
       switch (cursorFactory.style) {
       case ARRAY:
         cursorFactory = Meta.CursorFactory.LIST;
@@ -59,71 +164,379 @@ public ResultSetResponse toResponse(Meta.MetaResultSet resultSet) {
         cursorFactory = Meta.CursorFactory.map(cursorFactory.fieldNames);
       }
     } else {
-      //noinspection unchecked
-      list = (List<Object>) (List) list2(resultSet);
+      iterable = meta.createIterable(
+          new Meta.StatementHandle(resultSet.statementId),
+          resultSet.signature, resultSet.iterable);
+      rowCursorFactory = resultSet.signature.cursorFactory;
       cursorFactory = Meta.CursorFactory.LIST;
     }
     Meta.Signature signature = resultSet.signature;
     if (cursorFactory != resultSet.signature.cursorFactory) {
       signature = signature.setCursorFactory(cursorFactory);
     }
+    final ServerStatement statement = statement(resultSet.statementId);
+    final ServerCursor cursor =
+        new ServerCursor(statement, iterable.iterator(), rowCursorFactory);
+    final Meta.Frame frame;
+    try {
+      frame = cursor.next(frameRowCount);
+    } catch (RuntimeException e) {
+      cursor.close();
+      throw e;
+    }
+    statement.setCursor(frame.done ? null : cursor);
+    if (frame.done) {
+      cursor.close();
+    }
     return new ResultSetResponse(resultSet.statementId, resultSet.ownStatement,
-        signature, list);
-  }
-
-  private List<List<Object>> list2(Meta.MetaResultSet resultSet) {
-    List<List<Object>> list = new ArrayList<List<Object>>();
-    return MetaImpl.collect(resultSet.signature.cursorFactory,
-        meta.createIterable(new Meta.StatementHandle(resultSet.statementId),
-            resultSet.signature,
-            resultSet.iterable),
-        list);
+        signature, frame);
   }
 
   public ResultSetResponse apply(CatalogsRequest request) {
+    maybeExpire();
     final Meta.MetaResultSet resultSet = meta.getCatalogs();
     return toResponse(resultSet);
   }
 
   public ResultSetResponse apply(SchemasRequest request) {
+    maybeExpire();
     final Meta.MetaResultSet resultSet =
         meta.getSchemas(request.catalog, Meta.Pat.of(request.schemaPattern));
     return toResponse(resultSet);
   }
 
   public PrepareResponse apply(PrepareRequest request) {
-    final Meta.StatementHandle h =
-        new Meta.StatementHandle(request.statementId);
-    final Meta.Signature signature =
-        meta.prepare(h, request.sql, request.maxRowCount);
-    return new PrepareResponse(signature);
+    maybeExpire();
+    final ServerStatement statement = statement(request.statementId);
+    final long start = statement.begin();
+    try {
+      final Meta.StatementHandle h =
+          new Meta.StatementHandle(request.statementId);
+      final Meta.Signature signature =
+          meta.prepare(h, request.sql, request.maxRowCount);
+      return new PrepareResponse(signature);
+    } finally {
+      statement.end(start, statement.prepareNanos);
+    }
   }
 
   public ResultSetResponse apply(PrepareAndExecuteRequest request) {
-    final Meta.StatementHandle h =
-        new Meta.StatementHandle(request.statementId);
-    final Meta.MetaResultSet resultSet =
-        meta.prepareAndExecute(h, request.sql, request.maxRowCount,
-            new Meta.PrepareCallback() {
-              public Object getMonitor() {
-                return LocalService.class;
-              }
+    maybeExpire();
+    final ServerStatement statement = statement(request.statementId);
+    final long start = statement.begin();
+    try {
+      statement.setCursor(null);
+      final Meta.StatementHandle h =
+          new Meta.StatementHandle(request.statementId);
+      final Meta.MetaResultSet resultSet =
+          meta.prepareAndExecute(h, request.sql, request.maxRowCount,
+              new Meta.PrepareCallback() {
+                public Object getMonitor() {
+                  return LocalService.class;
+                }
 
-              public void clear() {}
+                public void clear() {}
 
-              public void assign(Meta.Signature signature,
-                  Iterable<Object> iterable) {}
+                public void assign(Meta.Signature signature,
+                    Iterable<Object> iterable) {}
 
-              public void execute() {}
-            });
-    return toResponse(resultSet);
+                public void execute() {}
+              });
+      return toResponse(resultSet);
+    } finally {
+      statement.end(start, statement.executeNanos);
+    }
   }
 
   public CreateStatementResponse apply(CreateStatementRequest request) {
+    maybeExpire();
     final Meta.StatementHandle h =
         meta.createStatement(new Meta.ConnectionHandle(request.connectionId));
+    statement(h.id);
     return new CreateStatementResponse(h.id);
   }
+
+  public FetchResponse apply(FetchRequest request) {
+    maybeExpire();
+    final ServerStatement statement = statements.get(request.statementId);
+    final ServerCursor cursor = statement == null ? null : statement.cursor;
+    if (cursor == null) {
+      throw new RuntimeException("No open result set in statement "
+          + request.statementId);
+    }
+    if (cursor.offset != request.offset) {
+      throw new RuntimeException("Cannot fetch from offset " + request.offset
+          + " of statement " + request.statementId + "; next row is "
+          + cursor.offset);
+    }
+    final long start = statement.begin();
+    try {
+      final Meta.Frame frame = cursor.next(
+          request.fetchMaxRowCount < 0 ? Integer.MAX_VALUE
+              : request.fetchMaxRowCount > 0 ? request.fetchMaxRowCount
+              : frameRowCount);
+      if (frame.done) {
+        statement.closeCursor(cursor);
+      }
+      return new FetchResponse(frame);
+    } catch (RuntimeException e) {
+      statement.closeCursor(cursor);
+      throw e;
+    } finally {
+      statement.end(start, statement.fetchNanos);
+    }
+  }
+
+  public CancelResponse apply(CancelRequest request) {
+    final ServerStatement statement = statements.get(request.statementId);
+    return new CancelResponse(statement != null && statement.cancel());
+  }
+
+  public CloseStatementResponse apply(CloseStatementRequest request) {
+    final ServerStatement statement =
+        statements.remove(request.statementId);
+    if (statement != null) {
+      statement.cancel();
+    }
+    meta.closeStatement(new Meta.StatementHandle(request.statementId));
+    return new CloseStatementResponse();
+  }
+
+  /** State and statistics of a statement, as seen by the server. */
+  public static class ServerStatement {
+    public final int id;
+    /** Open result set, or null. */
+    private volatile ServerCursor cursor;
+    /** Thread that is executing a request for this statement, or null.
+     * Written only while holding this statement's monitor, so that
+     * {@link #cancel} never interrupts a thread that has moved on to another
+     * request. */
+    private volatile Thread thread;
+    /** Whether the request that is executing has been cancelled. */
+    private volatile boolean cancelled;
+    private volatile long lastUsedMillis = System.currentTimeMillis();
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong prepareNanos = new AtomicLong();
+    private final AtomicLong executeNanos = new AtomicLong();
+    private final AtomicLong fetchNanos = new AtomicLong();
+    private final AtomicLong rowCount = new AtomicLong();
+
+    ServerStatement(int id) {
+      this.id = id;
+    }
+
+    /** Called at the start of a request; returns the start time. */
+    private long begin() {
+      synchronized (this) {
+        cancelled = false;
+        thread = Thread.currentThread();
+      }
+      requestCount.incrementAndGet();
+      return System.nanoTime();
+    }
+
+    /** Called at the end of a request. */
+    private void end(long start, AtomicLong nanos) {
+      nanos.addAndGet(System.nanoTime() - start);
+      lastUsedMillis = System.currentTimeMillis();
+      synchronized (this) {
+        thread = null;
+        if (cancelled) {
+          // Clear the interrupt that cancel may have sent, so that it does
+          // not affect the next request that this thread executes. Once
+          // "thread" is null, cancel cannot send another.
+          cancelled = false;
+          Thread.interrupted();
+        }
+      }
+    }
+
+    /** Replaces the open result set, closing the previous one. */
+    private void setCursor(ServerCursor cursor) {
+      final ServerCursor previous;
+      final boolean discard;
+      synchronized (this) {
+        previous = this.cursor;
+        // If the current request has been cancelled, do not keep its result
+        // set.
+        discard = cancelled && cursor != null;
+        this.cursor = discard ? null : cursor;
+      }
+      if (previous != null && previous != cursor) {
+        previous.close();
+      }
+      if (discard) {
+        cursor.close();
+      }
+    }
+
+    /** Closes a result set, and if it is the open result set, forgets it. */
+    private void closeCursor(ServerCursor cursor) {
+      synchronized (this) {
+        if (this.cursor == cursor) {
+          this.cursor = null;
+        }
+      }
+      cursor.close();
+    }
+
+    /** Cancels the request that is executing, and discards the open result
+     * set. Returns whether there was anything to cancel. */
+    private boolean cancel() {
+      final ServerCursor cursor;
+      final boolean active;
+      synchronized (this) {
+        cursor = this.cursor;
+        this.cursor = null;
+        active = thread != null || cursor != null;
+        if (thread != null) {
+          cancelled = true;
+          thread.interrupt();
+        }
+      }
+      if (cursor != null) {
+        cursor.close();
+      }
+      return active;
+    }
+
+    /** Returns whether a request for this statement is executing. */
+    public boolean isActive() {
+      return thread != null;
+    }
+
+    /** Returns whether this statement has an open result set. */
+    public boolean hasCursor() {
+      return cursor != null;
+    }
+
+    /** Returns the number of requests for this statement. */
+    public long getRequestCount() {
+      return requestCount.get();
+    }
+
+    /** Returns the time, in nanoseconds, spent preparing. */
+    public long getPrepareNanos() {
+      return prepareNanos.get();
+    }
+
+    /** Returns the time, in nanoseconds, spent executing, including
+     * reading the first frame of rows. */
+    public long getExecuteNanos() {
+      return executeNanos.get();
+    }
+
+    /** Returns the time, in nanoseconds, spent fetching later frames. */
+    public long getFetchNanos() {
+      return fetchNanos.get();
+    }
+
+    /** Returns the number of rows sent to the client. */
+    public long getRowCount() {
+      return rowCount.get();
+    }
+
+    /** Returns when this statement was last used, in milliseconds since the
+     * epoch. */
+    public long getLastUsedMillis() {
+      return lastUsedMillis;
+    }
+  }
+
+  /** Rows of a result set that have not yet been sent to the client.
+   *
+   * <p>The iterator may hold resources, such as a JDBC result set, so the
+   * cursor must be closed when it is discarded. */
+  private static class ServerCursor {
+    private final ServerStatement statement;
+    private final Iterator<Object> iterator;
+    /** If not null, rows need to be converted to lists using this cursor
+     * factory before they are sent. */
+    private final Meta.CursorFactory cursorFactory;
+    int offset;
+    /** Whether a thread is in {@link #next}. Guarded by this. */
+    private boolean reading;
+    /** Whether {@link #close} has been called. Guarded by this. */
+    private boolean closed;
+
+    ServerCursor(ServerStatement statement, Iterator<Object> iterator,
+        Meta.CursorFactory cursorFactory) {
+      this.statement = statement;
+      this.iterator = iterator;
+      this.cursorFactory = cursorFactory;
+    }
+
+    /** Reads up to {@code maxRowCount} rows and returns them as a frame. */
+    Meta.Frame next(int maxRowCount) {
+      synchronized (this) {
+        if (closed || reading) {
+          throw new RuntimeException("No open result set in statement "
+              + statement.id);
+        }
+        reading = true;
+      }
+      try {
+        final List<Object> rows = new ArrayList<Object>();
+        while (rows.size() < maxRowCount && iterator.hasNext()) {
+          if (statement.cancelled) {
+            throw new RuntimeException("Statement " + statement.id
+                + " was cancelled");
+          }
+          rows.add(iterator.next());
+        }
+        final List<Object> rows2;
+        if (cursorFactory != null) {
+          //noinspection unchecked
+          rows2 = (List<Object>) (List) MetaImpl.collect(cursorFactory, rows,
+              new ArrayList<List<Object>>());
+        } else {
+          rows2 = rows;
+        }
+        final Meta.Frame frame =
+            new Meta.Frame(offset, !iterator.hasNext(), rows2);
+        offset += rows.size();
+        statement.rowCount.addAndGet(rows.size());
+        return frame;
+      } finally {
+        final boolean close;
+        synchronized (this) {
+          reading = false;
+          close = closed;
+        }
+        if (close) {
+          closeIterator();
+        }
+      }
+    }
+
+    /** Closes this cursor. If another thread is reading rows, the
+     * iterator is closed when that thread has finished, so that this method
+     * does not block. */
+    void close() {
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        if (reading) {
+          return;
+        }
+      }
+      closeIterator();
+    }
+
+    private void closeIterator() {
+      if (iterator instanceof AutoCloseable) {
+        try {
+          ((AutoCloseable) iterator).close();
+        } catch (Exception e) {
+          throw new RuntimeException("Error while closing result set of "
+              + "statement " + statement.id, e);
+        }
+      }
+    }
+  }
 }
 
 // End LocalService.java
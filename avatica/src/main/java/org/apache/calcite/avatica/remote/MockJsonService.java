@@ -47,7 +47,8 @@ public Service create(AvaticaConnection connection) {
       final Map<String, String> map1 = new HashMap<String, String>();
       map1.put(
           "{\"request\":\"getSchemas\",\"catalog\":null,\"schemaPattern\":{\"s\":null}}",
-          "{\"response\":\"resultSet\", rows: []}");
+          "{\"response\":\"resultSet\", firstFrame: {offset: 0, done: true,"
+              + " rows: []}}");
       return new MockJsonService(map1);
     }
   }
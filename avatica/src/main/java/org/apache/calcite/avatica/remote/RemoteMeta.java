@@ -21,6 +21,8 @@
 import org.apache.calcite.avatica.MetaImpl;
 
 import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * Implementation of {@link Meta} for the remote driver.
@@ -36,7 +38,21 @@ public RemoteMeta(AvaticaConnection connection, Service service) {
   private MetaResultSet toResultSet(Service.ResultSetResponse response) {
     final Signature signature0 = response.signature;
     return new MetaResultSet(response.statementId, response.ownStatement,
-        signature0, response.rows);
+        signature0, iterable(response));
+  }
+
+  /** Returns an iterable over the rows of a result set. The iterable
+   * starts with the rows of the first frame, and fetches subsequent frames
+   * from the server only when the client has consumed the previous ones. */
+  private Iterable<Object> iterable(final Service.ResultSetResponse response) {
+    if (response.firstFrame.done) {
+      return response.firstFrame.rows;
+    }
+    return new Iterable<Object>() {
+      public Iterator<Object> iterator() {
+        return new FetchIterator(response.statementId, response.firstFrame);
+      }
+    };
   }
 
   @Override public StatementHandle createStatement(ConnectionHandle ch) {
@@ -45,6 +61,16 @@ private MetaResultSet toResultSet(Service.ResultSetResponse response) {
     return new StatementHandle(response.id);
   }
 
+  @Override public void closeStatement(StatementHandle h) {
+    service.apply(new Service.CloseStatementRequest(h.id));
+  }
+
+  @Override public boolean cancelStatement(StatementHandle h) {
+    final Service.CancelResponse response =
+        service.apply(new Service.CancelRequest(h.id));
+    return response.cancelled;
+  }
+
   @Override public MetaResultSet getCatalogs() {
     final Service.ResultSetResponse response =
         service.apply(new Service.CatalogsRequest());
@@ -67,19 +93,62 @@ private MetaResultSet toResultSet(Service.ResultSetResponse response) {
   @Override public MetaResultSet prepareAndExecute(StatementHandle h,
       String sql, int maxRowCount, PrepareCallback callback) {
     final Service.ResultSetResponse response;
+    final MetaResultSet resultSet;
     try {
       synchronized (callback.getMonitor()) {
         callback.clear();
         response = service.apply(
             new Service.PrepareAndExecuteRequest(h.id, sql, maxRowCount));
-        callback.assign(response.signature, response.rows);
+        resultSet = toResultSet(response);
+        callback.assign(resultSet.signature, resultSet.iterable);
       }
       callback.execute();
-      return toResultSet(response);
+      return resultSet;
     } catch (SQLException e) {
       throw new RuntimeException(e);
     }
   }
+
+  /** Iterator that returns the rows of a frame, then fetches the next frame
+   * from the server, until the server reports that there are no more
+   * rows. */
+  private class FetchIterator implements Iterator<Object> {
+    private final int statementId;
+    private Frame frame;
+    private Iterator<Object> rows;
+
+    FetchIterator(int statementId, Frame firstFrame) {
+      this.statementId = statementId;
+      this.frame = firstFrame;
+      this.rows = firstFrame.rows.iterator();
+    }
+
+    public boolean hasNext() {
+      while (!rows.hasNext()) {
+        if (frame.done) {
+          return false;
+        }
+        final Service.FetchResponse response =
+            service.apply(
+                new Service.FetchRequest(statementId,
+                    frame.offset + frame.rows.size(), 0));
+        frame = response.frame;
+        rows = frame.rows.iterator();
+      }
+      return true;
+    }
+
+    public Object next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return rows.next();
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
 }
 
 // End RemoteMeta.java
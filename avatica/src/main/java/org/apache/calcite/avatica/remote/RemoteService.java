@@ -16,49 +16,127 @@
  */
 package org.apache.calcite.avatica.remote;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 
 /**
  * Implementation of {@link org.apache.calcite.avatica.remote.Service}
- * that translates requests into JSON and sends them to a remote server,
- * usually an HTTP server.
+ * that sends requests to a remote server, usually an HTTP server.
+ *
+ * <p>Each request is written to the body of an HTTP POST, and the response
+ * is decoded directly from the body of the HTTP response, in the
+ * {@link Serialization format} given by the {@code serialization} connection
+ * property. Connections are obtained from a {@link HttpClientPool}, so that
+ * sockets are kept alive and re-used between requests.
  */
-public class RemoteService extends JsonService {
-  private final URL url;
+public class RemoteService implements Service {
+  private final HttpClientPool pool;
+  private final Serialization serialization;
+  private final int poolTimeout;
+  private final int connectTimeout;
+  private final int readTimeout;
 
   public RemoteService(URL url) {
-    this.url = url;
+    this(url, Serialization.JSON);
+  }
+
+  public RemoteService(URL url, Serialization serialization) {
+    this(new HttpClientPool(url, Integer.MAX_VALUE), serialization, 0, 0,
+        0);
+  }
+
+  /** Creates a RemoteService.
+   *
+   * @param pool           Pool of connections to the server
+   * @param serialization  Format of requests and responses
+   * @param poolTimeout    Timeout in milliseconds to wait for a free
+   *                       connection from the pool, 0 for none
+   * @param connectTimeout Timeout in milliseconds to connect, 0 for none
+   * @param readTimeout    Timeout in milliseconds to read a response,
+   *                       0 for none
+   */
+  public RemoteService(HttpClientPool pool, Serialization serialization,
+      int poolTimeout, int connectTimeout, int readTimeout) {
+    this.pool = pool;
+    this.serialization = serialization;
+    this.poolTimeout = poolTimeout;
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+  }
+
+  /** Returns the pool of connections that this service uses. */
+  public HttpClientPool getPool() {
+    return pool;
   }
 
-  @Override public String apply(String request) {
+  /** Sends a request and decodes the response. */
+  protected <T extends Response> T send(Request request,
+      Class<T> responseClass) {
     try {
       final HttpURLConnection connection =
-          (HttpURLConnection) url.openConnection();
-      connection.setRequestMethod("POST");
-      connection.setRequestProperty("request", request);
-      final int responseCode = connection.getResponseCode();
-      if (responseCode != HttpURLConnection.HTTP_OK) {
-        throw new RuntimeException("response code " + responseCode);
-      }
-      final InputStream inputStream = connection.getInputStream();
-      final byte[] bytes = new byte[4096];
-      final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-      for (;;) {
-        int count = inputStream.read(bytes, 0, bytes.length);
-        if (count < 0) {
-          break;
+          pool.acquire(poolTimeout, connectTimeout, readTimeout);
+      boolean failed = true;
+      try {
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setRequestProperty("Content-Type",
+            serialization.contentType);
+        final OutputStream outputStream = connection.getOutputStream();
+        try {
+          serialization.writeRequest(request, outputStream);
+        } finally {
+          outputStream.close();
+        }
+        final int responseCode = connection.getResponseCode();
+        if (responseCode != HttpURLConnection.HTTP_OK) {
+          throw new RuntimeException("response code " + responseCode);
         }
-        baos.write(bytes, 0, count);
+        final T response =
+            serialization.readResponse(connection.getInputStream(),
+                responseClass);
+        failed = false;
+        return response;
+      } finally {
+        pool.release(connection, failed);
       }
-      return baos.toString();
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
   }
+
+  public ResultSetResponse apply(CatalogsRequest request) {
+    return send(request, ResultSetResponse.class);
+  }
+
+  public ResultSetResponse apply(SchemasRequest request) {
+    return send(request, ResultSetResponse.class);
+  }
+
+  public PrepareResponse apply(PrepareRequest request) {
+    return send(request, PrepareResponse.class);
+  }
+
+  public ResultSetResponse apply(PrepareAndExecuteRequest request) {
+    return send(request, ResultSetResponse.class);
+  }
+
+  public CreateStatementResponse apply(CreateStatementRequest request) {
+    return send(request, CreateStatementResponse.class);
+  }
+
+  public FetchResponse apply(FetchRequest request) {
+    return send(request, FetchResponse.class);
+  }
+
+  public CancelResponse apply(CancelRequest request) {
+    return send(request, CancelResponse.class);
+  }
+
+  public CloseStatementResponse apply(CloseStatementRequest request) {
+    return send(request, CloseStatementResponse.class);
+  }
 }
 
 // End RemoteService.java
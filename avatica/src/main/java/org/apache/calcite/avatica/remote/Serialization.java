@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.avatica.remote;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Format in which requests and responses are sent between the remote driver
+ * and the server.
+ *
+ * @see org.apache.calcite.avatica.BuiltInConnectionProperty#SERIALIZATION
+ */
+public enum Serialization {
+  /** Requests and responses are JSON text. Easy to read and debug. */
+  JSON("application/json") {
+    public void writeRequest(Service.Request request, OutputStream out)
+        throws IOException {
+      JsonService.MAPPER.writeValue(out, request);
+    }
+
+    public Service.Request readRequest(InputStream in) throws IOException {
+      return JsonService.MAPPER.readValue(in, Service.Request.class);
+    }
+
+    public void writeResponse(Service.Response response, OutputStream out)
+        throws IOException {
+      JsonService.MAPPER.writeValue(out, response);
+    }
+
+    public <T extends Service.Response> T readResponse(InputStream in,
+        Class<T> responseClass) throws IOException {
+      return JsonService.MAPPER.readValue(in, responseClass);
+    }
+  },
+
+  /** Frames of rows are encoded column by column in a compact binary format;
+   * see {@link BinaryCodec}. Other parts of messages, which are small, are
+   * JSON. Much cheaper than {@link #JSON} for large, numeric result sets. */
+  BINARY("application/x-avatica-binary") {
+    public void writeRequest(Service.Request request, OutputStream out)
+        throws IOException {
+      JsonService.MAPPER.writeValue(out, request);
+    }
+
+    public Service.Request readRequest(InputStream in) throws IOException {
+      return JsonService.MAPPER.readValue(in, Service.Request.class);
+    }
+
+    public void writeResponse(Service.Response response, OutputStream out)
+        throws IOException {
+      BinaryCodec.writeResponse(response, out);
+    }
+
+    public <T extends Service.Response> T readResponse(InputStream in,
+        Class<T> responseClass) throws IOException {
+      return responseClass.cast(BinaryCodec.readResponse(in, responseClass));
+    }
+  };
+
+  /** MIME type of messages in this format, for the HTTP
+   * {@code Content-Type} header. */
+  public final String contentType;
+
+  Serialization(String contentType) {
+    this.contentType = contentType;
+  }
+
+  /** Returns the serialization that has a given content type, or
+   * {@link #JSON} if none matches. */
+  public static Serialization ofContentType(String contentType) {
+    if (contentType != null) {
+      for (Serialization serialization : values()) {
+        if (contentType.startsWith(serialization.contentType)) {
+          return serialization;
+        }
+      }
+    }
+    return JSON;
+  }
+
+  /** Writes a request to a stream. */
+  public abstract void writeRequest(Service.Request request, OutputStream out)
+      throws IOException;
+
+  /** Reads a request from a stream. */
+  public abstract Service.Request readRequest(InputStream in)
+      throws IOException;
+
+  /** Writes a response to a stream. */
+  public abstract void writeResponse(Service.Response response,
+      OutputStream out) throws IOException;
+
+  /** Reads a response of a given type from a stream. */
+  public abstract <T extends Service.Response> T readResponse(InputStream in,
+      Class<T> responseClass) throws IOException;
+}
+
+// End Serialization.java
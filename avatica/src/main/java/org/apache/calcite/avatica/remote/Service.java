@@ -24,8 +24,6 @@
 import com.fasterxml.jackson.annotation.JsonSubTypes;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 
-import java.util.List;
-
 /**
  * API for request-response calls to an Avatica server.
  */
@@ -35,6 +33,9 @@ public interface Service {
   PrepareResponse apply(PrepareRequest request);
   ResultSetResponse apply(PrepareAndExecuteRequest request);
   CreateStatementResponse apply(CreateStatementRequest request);
+  FetchResponse apply(FetchRequest request);
+  CancelResponse apply(CancelRequest request);
+  CloseStatementResponse apply(CloseStatementRequest request);
 
   /** Factory that creates a {@code Service}. */
   interface Factory {
@@ -53,7 +54,11 @@ interface Factory {
       @JsonSubTypes.Type(value = PrepareAndExecuteRequest.class,
           name = "prepareAndExecute"),
       @JsonSubTypes.Type(value = CreateStatementRequest.class,
-          name = "createStatement") })
+          name = "createStatement"),
+      @JsonSubTypes.Type(value = FetchRequest.class, name = "fetch"),
+      @JsonSubTypes.Type(value = CancelRequest.class, name = "cancel"),
+      @JsonSubTypes.Type(value = CloseStatementRequest.class,
+          name = "closeStatement") })
   abstract class Request {
     abstract Response accept(Service service);
   }
@@ -67,7 +72,11 @@ abstract class Request {
       @JsonSubTypes.Type(value = ResultSetResponse.class, name = "resultSet"),
       @JsonSubTypes.Type(value = PrepareResponse.class, name = "prepare"),
       @JsonSubTypes.Type(value = CreateStatementResponse.class,
-          name = "createStatement") })
+          name = "createStatement"),
+      @JsonSubTypes.Type(value = FetchResponse.class, name = "fetch"),
+      @JsonSubTypes.Type(value = CancelResponse.class, name = "cancel"),
+      @JsonSubTypes.Type(value = CloseStatementResponse.class,
+          name = "closeStatement") })
   abstract class Response {
   }
 
@@ -102,22 +111,26 @@ ResultSetResponse accept(Service service) {
    * <p>Several types of request, including
    * {@link org.apache.calcite.avatica.Meta#getCatalogs()} and
    * {@link org.apache.calcite.avatica.Meta#getSchemas(String, org.apache.calcite.avatica.Meta.Pat)}
-   * return this response. */
+   * return this response.
+   *
+   * <p>The response contains the first frame of rows. If the frame is not
+   * {@link org.apache.calcite.avatica.Meta.Frame#done done}, the client
+   * retrieves further rows by sending a {@link FetchRequest}. */
   class ResultSetResponse extends Response {
     public final int statementId;
     public final boolean ownStatement;
     public final Meta.Signature signature;
-    public final List<Object> rows;
+    public final Meta.Frame firstFrame;
 
     @JsonCreator
     public ResultSetResponse(@JsonProperty("statementId") int statementId,
         @JsonProperty("ownStatement") boolean ownStatement,
         @JsonProperty("signature") Meta.Signature signature,
-        @JsonProperty("rows") List<Object> rows) {
+        @JsonProperty("firstFrame") Meta.Frame firstFrame) {
       this.statementId = statementId;
       this.ownStatement = ownStatement;
       this.signature = signature;
-      this.rows = rows;
+      this.firstFrame = firstFrame;
     }
   }
 
@@ -201,6 +214,91 @@ public CreateStatementResponse(@JsonProperty("id") int id) {
       this.id = id;
     }
   }
+
+  /** Request for the next frame of rows of a result set that is being
+   * executed, in response to a {@link PrepareAndExecuteRequest} or a metadata
+   * request, in a statement. */
+  class FetchRequest extends Request {
+    public final int statementId;
+    public final int offset;
+    /** Maximum number of rows to be returned in the frame. Negative means no
+     * limit. */
+    public final int fetchMaxRowCount;
+
+    @JsonCreator
+    public FetchRequest(@JsonProperty("statementId") int statementId,
+        @JsonProperty("offset") int offset,
+        @JsonProperty("fetchMaxRowCount") int fetchMaxRowCount) {
+      this.statementId = statementId;
+      this.offset = offset;
+      this.fetchMaxRowCount = fetchMaxRowCount;
+    }
+
+    @Override FetchResponse accept(Service service) {
+      return service.apply(this);
+    }
+  }
+
+  /** Response from
+   * {@link org.apache.calcite.avatica.remote.Service.FetchRequest}. */
+  class FetchResponse extends Response {
+    public final Meta.Frame frame;
+
+    @JsonCreator
+    public FetchResponse(@JsonProperty("frame") Meta.Frame frame) {
+      this.frame = frame;
+    }
+  }
+
+  /** Request to cancel the statement that is executing, or whose result set
+   * is being fetched, in a statement. */
+  class CancelRequest extends Request {
+    public final int statementId;
+
+    @JsonCreator
+    public CancelRequest(@JsonProperty("statementId") int statementId) {
+      this.statementId = statementId;
+    }
+
+    @Override CancelResponse accept(Service service) {
+      return service.apply(this);
+    }
+  }
+
+  /** Response from
+   * {@link org.apache.calcite.avatica.remote.Service.CancelRequest}. */
+  class CancelResponse extends Response {
+    /** Whether the statement was executing, or had an open result set. */
+    public final boolean cancelled;
+
+    @JsonCreator
+    public CancelResponse(@JsonProperty("cancelled") boolean cancelled) {
+      this.cancelled = cancelled;
+    }
+  }
+
+  /** Request to release the server's resources held by a statement, such as
+   * its open result set. */
+  class CloseStatementRequest extends Request {
+    public final int statementId;
+
+    @JsonCreator
+    public CloseStatementRequest(
+        @JsonProperty("statementId") int statementId) {
+      this.statementId = statementId;
+    }
+
+    @Override CloseStatementResponse accept(Service service) {
+      return service.apply(this);
+    }
+  }
+
+  /** Response from
+   * {@link org.apache.calcite.avatica.remote.Service.CloseStatementRequest}. */
+  class CloseStatementResponse extends Response {
+    @JsonCreator
+    public CloseStatementResponse() {}
+  }
 }
 
 // End Service.java
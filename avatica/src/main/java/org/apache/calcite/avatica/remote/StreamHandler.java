@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.avatica.remote;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Handler that reads a request from a stream, sends it to a
+ * {@link Service}, and writes the response to a stream, in a given
+ * {@link Serialization format}.
+ *
+ * <p>Unlike {@link JsonHandler}, it does not build the request or response
+ * as a string, so it is suitable for large responses.
+ *
+ * @see org.apache.calcite.avatica.remote.RemoteService
+ */
+public class StreamHandler {
+  private final Service service;
+
+  public StreamHandler(Service service) {
+    this.service = service;
+  }
+
+  public void apply(Serialization serialization, InputStream in,
+      OutputStream out) throws IOException {
+    final Service.Request request = serialization.readRequest(in);
+    final Service.Response response = request.accept(service);
+    serialization.writeResponse(response, out);
+  }
+}
+
+// End StreamHandler.java
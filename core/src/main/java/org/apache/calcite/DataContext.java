@@ -17,6 +17,7 @@
 package org.apache.calcite;
 
 import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.linq4j.MemoryBudget;
 import org.apache.calcite.linq4j.QueryProvider;
 import org.apache.calcite.linq4j.tree.Expressions;
 import org.apache.calcite.linq4j.tree.ParameterExpression;
@@ -54,7 +55,7 @@ public interface DataContext {
    * Returns a context variable.
    *
    * <p>Supported variables include: "sparkContext", "currentTimestamp",
-   * "localTimestamp".</p>
+   * "localTimestamp", "memoryBudget".</p>
    *
    * @param name Name of variable
    */
@@ -76,6 +77,16 @@ enum Variable {
     /** The Spark engine. Available if Spark is on the class path. */
     SPARK_CONTEXT("sparkContext", Object.class),
 
+    /** Memory budget shared by operators of the current statement, such as
+     * hash joins and sorts, that can spill to disk. */
+    MEMORY_BUDGET("memoryBudget", MemoryBudget.class),
+
+    /** Number of threads that a hash aggregate may use. */
+    AGGREGATE_PARALLELISM("aggregateParallelism", Integer.class),
+
+    /** Whether the interpreter runs each node in its own thread. */
+    INTERPRETER_PIPELINED("interpreterPipelined", Boolean.class),
+
     /** Sql advisor that suggests completion hints. */
     SQL_ADVISOR("sqlAdvisor", SqlAdvisor.class),
 
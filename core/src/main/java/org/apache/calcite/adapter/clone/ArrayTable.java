@@ -25,12 +25,17 @@
 import org.apache.calcite.linq4j.QueryProvider;
 import org.apache.calcite.linq4j.Queryable;
 import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.plan.RelOptUtil;
 import org.apache.calcite.rel.RelCollation;
 import org.apache.calcite.rel.RelCollations;
+import org.apache.calcite.rel.RelDistribution;
 import org.apache.calcite.rel.RelFieldCollation;
+import org.apache.calcite.rel.metadata.RelMdUtil;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.rel.type.RelProtoDataType;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.schema.ProjectableFilterableTable;
 import org.apache.calcite.schema.ScannableTable;
 import org.apache.calcite.schema.SchemaPlus;
 import org.apache.calcite.schema.Statistic;
@@ -45,9 +50,18 @@
 
 import java.lang.reflect.Array;
 import java.lang.reflect.Type;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
 import java.util.AbstractList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -55,8 +69,15 @@
  * Column store formats are chosen based on the type and distribution of the
  * values in the column; see {@link Representation} and
  * {@link RepresentationType}.
+ *
+ * <p>As a {@link ProjectableFilterableTable}, the table evaluates simple
+ * filters against the column stores (see {@link ColumnFilter}) and builds
+ * rows only from the projected columns of rows that pass. Columns may have
+ * a {@link ZoneMap}, which allows a scan to skip blocks of rows, and
+ * allows {@link #getStatistic()} to estimate the selectivity of filters.
  */
-class ArrayTable extends AbstractQueryableTable implements ScannableTable {
+class ArrayTable extends AbstractQueryableTable
+    implements ScannableTable, ProjectableFilterableTable {
   private final RelProtoDataType protoRowType;
   private final Supplier<Content> supplier;
 
@@ -87,7 +108,29 @@ public Statistic getStatistic() {
     } else {
       collations = ImmutableList.of();
     }
-    return Statistics.of(content.size, keys, collations);
+    final Statistic statistic =
+        Statistics.of(content.size, keys, collations);
+    return new Statistic() {
+      public Double getRowCount() {
+        return statistic.getRowCount();
+      }
+
+      public boolean isKey(ImmutableBitSet columns) {
+        return statistic.isKey(columns);
+      }
+
+      public List<RelCollation> getCollations() {
+        return statistic.getCollations();
+      }
+
+      public RelDistribution getDistribution() {
+        return statistic.getDistribution();
+      }
+
+      public Double getSelectivity(RexNode predicate) {
+        return content.selectivity(predicate);
+      }
+    };
   }
 
   public Enumerable<Object[]> scan(DataContext root) {
@@ -99,6 +142,24 @@ public Enumerator<Object[]> enumerator() {
     };
   }
 
+  public Enumerable<Object[]> scan(DataContext root, List<RexNode> filters,
+      final int[] projects) {
+    final List<ColumnFilter> columnFilters = Lists.newArrayList();
+    for (Iterator<RexNode> iterator = filters.iterator(); iterator.hasNext();) {
+      final List<ColumnFilter> list = ColumnFilter.of(iterator.next());
+      if (list != null) {
+        columnFilters.addAll(list);
+        iterator.remove();
+      }
+    }
+    return new AbstractEnumerable<Object[]>() {
+      public Enumerator<Object[]> enumerator() {
+        final Content content = supplier.get();
+        return content.arrayEnumerator(columnFilters, projects);
+      }
+    };
+  }
+
   public <T> Queryable<T> asQueryable(final QueryProvider queryProvider,
       SchemaPlus schema, String tableName) {
     return new AbstractTableQueryable<T>(queryProvider, schema, this,
@@ -203,18 +264,31 @@ public static class Column {
     final Representation representation;
     final Object dataSet;
     final int cardinality;
+    /** Statistics of each block of rows; null if not known. */
+    final ZoneMap zoneMap;
 
     Column(Representation representation, Object data, int cardinality) {
+      this(representation, data, cardinality, null);
+    }
+
+    Column(Representation representation, Object data, int cardinality,
+        ZoneMap zoneMap) {
       this.representation = representation;
       this.dataSet = data;
       this.cardinality = cardinality;
+      this.zoneMap = zoneMap;
     }
 
     public Column permute(int[] sources) {
+      final Object permuted = representation.permute(dataSet, sources);
       return new Column(
           representation,
-          representation.permute(dataSet, sources),
-          cardinality);
+          permuted,
+          cardinality,
+          zoneMap == null
+              ? null
+              : ZoneMap.of(
+                  asList(representation, permuted).subList(0, sources.length)));
     }
 
     @Override public String toString() {
@@ -314,11 +388,15 @@ public String toString(Object dataSet) {
   }
 
   /** Representation that stores the values of a column in an array of
-   * primitive values. */
+   * primitive values.
+   *
+   * <p>The data set is an array of {@link #primitive} values, or, if the
+   * column has been read from a {@link ColumnStore}, a {@link Buffer} of
+   * them. */
   public static class PrimitiveArray implements Representation {
     final int ordinal;
-    private final Primitive primitive;
-    private final Primitive p;
+    final Primitive primitive;
+    final Primitive p;
 
     public PrimitiveArray(int ordinal, Primitive primitive, Primitive p) {
       this.ordinal = ordinal;
@@ -344,23 +422,102 @@ public Object freeze(ColumnLoader.ValueSet valueSet, int[] sources) {
     }
 
     public Object permute(Object dataSet, int[] sources) {
-      return primitive.permute(dataSet, sources);
+      return primitive.permute(ColumnStore.toArray(dataSet), sources);
     }
 
     public Object getObject(Object dataSet, int ordinal) {
+      if (dataSet instanceof Buffer) {
+        switch (primitive) {
+        case FLOAT:
+          return ((FloatBuffer) dataSet).get(ordinal);
+        case DOUBLE:
+          return ((DoubleBuffer) dataSet).get(ordinal);
+        }
+        final long v = getLong(dataSet, ordinal);
+        switch (p) {
+        case BYTE:
+          return (byte) v;
+        case CHAR:
+          return (char) v;
+        case SHORT:
+          return (short) v;
+        case INT:
+          return (int) v;
+        case LONG:
+          return v;
+        default:
+          throw new AssertionError(p + " unexpected");
+        }
+      }
       return p.arrayItem(dataSet, ordinal);
     }
 
     public int getInt(Object dataSet, int ordinal) {
+      if (dataSet instanceof Buffer) {
+        return (int) getLong(dataSet, ordinal);
+      }
       return Array.getInt(dataSet, ordinal);
     }
 
+    /** Reads a fixed-precision value without boxing it. */
+    long getLong(Object dataSet, int ordinal) {
+      if (dataSet instanceof Buffer) {
+        switch (primitive) {
+        case BYTE:
+          return ((ByteBuffer) dataSet).get(ordinal);
+        case CHAR:
+          return ((CharBuffer) dataSet).get(ordinal);
+        case SHORT:
+          return ((ShortBuffer) dataSet).get(ordinal);
+        case INT:
+          return ((IntBuffer) dataSet).get(ordinal);
+        case LONG:
+          return ((LongBuffer) dataSet).get(ordinal);
+        default:
+          throw new AssertionError(primitive + " unexpected");
+        }
+      }
+      switch (primitive) {
+      case BYTE:
+        return ((byte[]) dataSet)[ordinal];
+      case CHAR:
+        return ((char[]) dataSet)[ordinal];
+      case SHORT:
+        return ((short[]) dataSet)[ordinal];
+      case INT:
+        return ((int[]) dataSet)[ordinal];
+      case LONG:
+        return ((long[]) dataSet)[ordinal];
+      default:
+        throw new AssertionError(primitive + " unexpected");
+      }
+    }
+
+    /** Reads a floating-point value without boxing it. */
+    double getDouble(Object dataSet, int ordinal) {
+      switch (primitive) {
+      case FLOAT:
+        return dataSet instanceof Buffer
+            ? ((FloatBuffer) dataSet).get(ordinal)
+            : ((float[]) dataSet)[ordinal];
+      case DOUBLE:
+        return dataSet instanceof Buffer
+            ? ((DoubleBuffer) dataSet).get(ordinal)
+            : ((double[]) dataSet)[ordinal];
+      default:
+        return getLong(dataSet, ordinal);
+      }
+    }
+
     public int size(Object dataSet) {
+      if (dataSet instanceof Buffer) {
+        return ((Buffer) dataSet).limit();
+      }
       return Array.getLength(dataSet);
     }
 
     public String toString(Object dataSet) {
-      return p.arrayToString(dataSet);
+      return primitive.arrayToString(ColumnStore.toArray(dataSet));
     }
   }
 
@@ -605,7 +762,10 @@ public String toString(Object dataSet) {
    * array. Each value does not necessarily occupy 8, 16, 32 or 64
    * bits (the number of bits used by the built-in types). This
    * representation is often used to store the value codes for a
-   * dictionary-based representation. */
+   * dictionary-based representation.
+   *
+   * <p>The data set is an array of {@code long} values, or, if the column
+   * has been read from a {@link ColumnStore}, a {@link LongBuffer}. */
   public static class BitSlicedPrimitiveArray implements Representation {
     final int ordinal;
     final int bitCount;
@@ -651,14 +811,14 @@ public Object freeze(ColumnLoader.ValueSet valueSet, int[] sources) {
         for (i = 0; i < n; i++) {
           long v = 0;
           for (int j = 0; j < chunksPerWord; j++) {
-            v |= booleans.get(k++) ? (1 << (bitCount * j)) : 0;
+            v |= booleans.get(k++) ? (1L << (bitCount * j)) : 0;
           }
           longs[i] = v;
         }
         if (remainingChunkCount > 0) {
           long v = 0;
           for (int j = 0; j < remainingChunkCount; j++) {
-            v |= booleans.get(k++) ? (1 << (bitCount * j)) : 0;
+            v |= booleans.get(k++) ? (1L << (bitCount * j)) : 0;
           }
           longs[i] = v;
         }
@@ -684,7 +844,7 @@ public Object freeze(ColumnLoader.ValueSet valueSet, int[] sources) {
     }
 
     public Object permute(Object dataSet, int[] sources) {
-      final long[] longs0 = (long[]) dataSet;
+      final long[] longs0 = (long[]) ColumnStore.toArray(dataSet);
       int n = sources.length;
       final long[] longs = new long[longs0.length];
       for (int i = 0; i < n; i++) {
@@ -696,10 +856,9 @@ public Object permute(Object dataSet, int[] sources) {
     }
 
     public Object getObject(Object dataSet, int ordinal) {
-      final long[] longs = (long[]) dataSet;
       final int chunksPerWord = 64 / bitCount;
       final int word = ordinal / chunksPerWord;
-      final long v = longs[word];
+      final long v = word(dataSet, word);
       final int chunk = ordinal % chunksPerWord;
       final int mask = (1 << bitCount) - 1;
       final int signMask = 1 << (bitCount - 1);
@@ -728,10 +887,14 @@ public Object getObject(Object dataSet, int ordinal) {
     }
 
     public int getInt(Object dataSet, int ordinal) {
-      final long[] longs = (long[]) dataSet;
+      return (int) getLong(dataSet, ordinal);
+    }
+
+    /** Returns the value at a given ordinal without boxing it. */
+    long getLong(Object dataSet, int ordinal) {
       final int chunksPerWord = 64 / bitCount;
       final int word = ordinal / chunksPerWord;
-      final long v = longs[word];
+      final long v = word(dataSet, word);
       final int chunk = ordinal % chunksPerWord;
       final int mask = (1 << bitCount) - 1;
       final int signMask = 1 << (bitCount - 1);
@@ -741,7 +904,15 @@ public int getInt(Object dataSet, int ordinal) {
       if (signed && (x & signMask) != 0) {
         x = -x;
       }
-      return (int) x;
+      return x;
+    }
+
+    /** Returns a word of a data set. */
+    private static long word(Object dataSet, int word) {
+      if (dataSet instanceof LongBuffer) {
+        return ((LongBuffer) dataSet).get(word);
+      }
+      return ((long[]) dataSet)[word];
     }
 
     public static long getLong(int bitCount, long[] values, int ordinal) {
@@ -778,9 +949,11 @@ public static void orLong(
     }
 
     public int size(Object dataSet) {
-      final long[] longs = (long[]) dataSet;
+      final int wordCount = dataSet instanceof LongBuffer
+          ? ((LongBuffer) dataSet).limit()
+          : ((long[]) dataSet).length;
       final int chunksPerWord = 64 / bitCount;
-      return longs.length * chunksPerWord; // may be slightly too high
+      return wordCount * chunksPerWord; // may be slightly too high
     }
 
     public String toString(Object dataSet) {
@@ -806,9 +979,9 @@ public int size() {
 
   /** Contents of a table. */
   public static class Content {
-    private final List<Column> columns;
-    private final int size;
-    private final int sortField;
+    final List<Column> columns;
+    final int size;
+    final int sortField;
 
     public Content(List<? extends Column> columns, int size, int sortField) {
       this.columns = ImmutableList.copyOf(columns);
@@ -829,6 +1002,95 @@ public Enumerator<Object[]> arrayEnumerator() {
       return new ArrayEnumerator(size, columns);
     }
 
+    /** Returns an enumerator over the rows that match all of a list of
+     * filters, each row consisting of the given columns, or of all columns
+     * if {@code projects} is null. */
+    Enumerator<Object[]> arrayEnumerator(List<ColumnFilter> filters,
+        int[] projects) {
+      final List<Column> projectedColumns;
+      if (projects == null) {
+        projectedColumns = columns;
+      } else {
+        projectedColumns = Lists.newArrayList();
+        for (int project : projects) {
+          projectedColumns.add(columns.get(project));
+        }
+      }
+      if (filters.isEmpty()) {
+        return new ArrayEnumerator(size, projectedColumns);
+      }
+      final ColumnFilter.Matcher[] matchers =
+          new ColumnFilter.Matcher[filters.size()];
+      for (int i = 0; i < matchers.length; i++) {
+        final ColumnFilter filter = filters.get(i);
+        matchers[i] = filter.matcher(columns.get(filter.ordinal));
+        if (matchers[i] == ColumnFilter.Matcher.NONE) {
+          return new ArrayEnumerator(0, projectedColumns);
+        }
+      }
+      final boolean[] blocks = candidateBlocks(filters);
+      if (blocks != null && !contains(blocks, true)) {
+        return new ArrayEnumerator(0, projectedColumns);
+      }
+      return new FilterEnumerator(size, projectedColumns, matchers, blocks);
+    }
+
+    /** Returns which blocks of rows may contain rows that match all filters,
+     * according to the columns' zone maps, or null if no filtered column has
+     * a zone map. */
+    private boolean[] candidateBlocks(List<ColumnFilter> filters) {
+      boolean[] blocks = null;
+      for (ColumnFilter filter : filters) {
+        final ZoneMap zoneMap = columns.get(filter.ordinal).zoneMap;
+        if (zoneMap == null) {
+          continue;
+        }
+        if (blocks == null) {
+          blocks = new boolean[zoneMap.blockCount()];
+          Arrays.fill(blocks, true);
+        }
+        for (int block = 0; block < blocks.length; block++) {
+          blocks[block] = blocks[block] && filter.mayMatch(zoneMap, block);
+        }
+      }
+      return blocks;
+    }
+
+    private static boolean contains(boolean[] booleans, boolean b) {
+      for (boolean b0 : booleans) {
+        if (b0 == b) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /** Estimates the fraction of rows that satisfy a predicate. Uses the
+     * zone maps of columns for conjuncts that are {@link ColumnFilter}s and
+     * guesses for other conjuncts; returns null if there are no zone maps
+     * to use. */
+    Double selectivity(RexNode predicate) {
+      double selectivity = 1d;
+      boolean known = false;
+      for (RexNode node : RelOptUtil.conjunctions(predicate)) {
+        final List<ColumnFilter> filters = ColumnFilter.of(node);
+        Double s = null;
+        if (filters != null
+            && filters.size() == 1
+            && filters.get(0).ordinal < columns.size()) {
+          final ColumnFilter filter = filters.get(0);
+          s = filter.selectivity(columns.get(filter.ordinal));
+        }
+        if (s == null) {
+          s = RelMdUtil.guessSelectivity(node);
+        } else {
+          known = true;
+        }
+        selectivity *= s;
+      }
+      return known ? selectivity : null;
+    }
+
     /** Enumerator over a table with a single column; each element
      * returned is an object. */
     private static class ObjectEnumerator implements Enumerator<Object> {
@@ -891,6 +1153,41 @@ public void reset() {
       public void close() {
       }
     }
+
+    /** Enumerator that returns only rows that satisfy every one of a list
+     * of matchers. Skips blocks of rows that zone maps have ruled out. */
+    private static class FilterEnumerator extends ArrayEnumerator {
+      final ColumnFilter.Matcher[] matchers;
+      /** Whether each block of {@link ZoneMap#BLOCK_SIZE} rows may contain
+       * matching rows; null if every block may. */
+      final boolean[] blocks;
+
+      public FilterEnumerator(int rowCount, List<Column> columns,
+          ColumnFilter.Matcher[] matchers, boolean[] blocks) {
+        super(rowCount, columns);
+        this.matchers = matchers;
+        this.blocks = blocks;
+      }
+
+      @Override public boolean moveNext() {
+      rows:
+        while (++i < rowCount) {
+          if (blocks != null
+              && i % ZoneMap.BLOCK_SIZE == 0
+              && !blocks[i / ZoneMap.BLOCK_SIZE]) {
+            i += ZoneMap.BLOCK_SIZE - 1;
+            continue;
+          }
+          for (ColumnFilter.Matcher matcher : matchers) {
+            if (!matcher.matches(i)) {
+              continue rows;
+            }
+          }
+          return true;
+        }
+        return false;
+      }
+    }
   }
 }
 
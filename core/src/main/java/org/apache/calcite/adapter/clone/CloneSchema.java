@@ -23,6 +23,7 @@
 import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.linq4j.QueryProvider;
 import org.apache.calcite.linq4j.Queryable;
+import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelProtoDataType;
 import org.apache.calcite.schema.QueryableTable;
 import org.apache.calcite.schema.Schema;
@@ -31,26 +32,47 @@
 import org.apache.calcite.schema.Schemas;
 import org.apache.calcite.schema.Table;
 import org.apache.calcite.schema.impl.AbstractSchema;
+import org.apache.calcite.util.trace.CalciteTrace;
 
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 
+import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import static org.apache.calcite.schema.impl.MaterializedViewTable.MATERIALIZATION_CONNECTION;
 
 /**
  * Schema that contains in-memory copies of tables from a JDBC schema.
+ *
+ * <p>If a cache directory is specified, the first time a table is loaded its
+ * contents are written to a file in that directory (see
+ * {@link ColumnStore}), and subsequent loads, for instance after the JVM is
+ * restarted, map that file into memory rather than reading the source
+ * table. The file records the path of the source table and its row type
+ * (column names, types and nullability), and is ignored and overwritten if
+ * either is different. The cache is not invalidated if the contents of the
+ * source table change; delete the file to force a table to be reloaded.
+ *
+ * <p>Failures to read or write a file are reported to the
+ * {@link CalciteTrace#getCloneTracer() clone tracer}.
  */
 public class CloneSchema extends AbstractSchema {
   // TODO: implement 'driver' property
   // TODO: implement 'source' property
   // TODO: test Factory
 
+  private static final Logger LOGGER = CalciteTrace.getCloneTracer();
+
   private final SchemaPlus sourceSchema;
+  private final File cacheDirectory;
 
   /**
    * Creates a CloneSchema.
@@ -58,8 +80,20 @@ public class CloneSchema extends AbstractSchema {
    * @param sourceSchema JDBC data source
    */
   public CloneSchema(SchemaPlus sourceSchema) {
+    this(sourceSchema, null);
+  }
+
+  /**
+   * Creates a CloneSchema that caches the contents of its tables in files.
+   *
+   * @param sourceSchema JDBC data source
+   * @param cacheDirectory Directory for files containing table contents, or
+   *                       null
+   */
+  public CloneSchema(SchemaPlus sourceSchema, File cacheDirectory) {
     super();
     this.sourceSchema = sourceSchema;
+    this.cacheDirectory = cacheDirectory;
   }
 
   @Override protected Map<String, Table> getTableMap() {
@@ -82,13 +116,51 @@ private Table createCloneTable(QueryProvider queryProvider,
     final JavaTypeFactory typeFactory =
         ((CalciteConnection) queryProvider).getTypeFactory();
     return createCloneTable(typeFactory, Schemas.proto(sourceTable), null,
-        queryable);
+        queryable,
+        cacheDirectory == null
+            ? null
+            : new File(cacheDirectory, name + ".columns"),
+        sourcePath(name));
+  }
+
+  /** Returns the path of a table in the source schema, starting with the
+   * name of the root schema. */
+  private List<String> sourcePath(String name) {
+    final List<String> path = new ArrayList<String>();
+    for (SchemaPlus schema = sourceSchema; schema != null;
+         schema = schema.getParentSchema()) {
+      path.add(0, schema.getName());
+    }
+    path.add(name);
+    return path;
   }
 
   public static <T> Table createCloneTable(final JavaTypeFactory typeFactory,
       final RelProtoDataType protoRowType,
       final List<ColumnMetaData.Rep> repList,
       final Enumerable<T> source) {
+    return createCloneTable(typeFactory, protoRowType, repList, source, null,
+        null);
+  }
+
+  /** Creates a table that contains a copy of the rows of a source.
+   *
+   * @param typeFactory Type factory
+   * @param protoRowType Row type
+   * @param repList Physical representation of each column, or null
+   * @param source Source rows
+   * @param cacheFile File that holds, or will hold, the contents of the
+   *                  table; or null
+   * @param sourcePath Path of the source table, recorded in the cache file
+   *                   so that a file written for a different table is not
+   *                   used; or null
+   */
+  public static <T> Table createCloneTable(final JavaTypeFactory typeFactory,
+      final RelProtoDataType protoRowType,
+      final List<ColumnMetaData.Rep> repList,
+      final Enumerable<T> source,
+      final File cacheFile,
+      final List<String> sourcePath) {
     final Type elementType;
     if (source instanceof QueryableTable) {
       elementType = ((QueryableTable) source).getElementType();
@@ -107,15 +179,53 @@ public static <T> Table createCloneTable(final JavaTypeFactory typeFactory,
         Suppliers.memoize(
             new Supplier<ArrayTable.Content>() {
               public ArrayTable.Content get() {
+                final String fingerprint = cacheFile == null
+                    ? null
+                    : fingerprint(sourcePath,
+                        protoRowType.apply(typeFactory));
+                if (cacheFile != null && cacheFile.exists()) {
+                  try {
+                    return ColumnStore.read(cacheFile, fingerprint);
+                  } catch (IOException e) {
+                    // Corrupt, written by a different version, or for a
+                    // different table. Reload the table, and overwrite the
+                    // file.
+                    LOGGER.log(Level.FINE, "Cannot use cache file "
+                        + cacheFile + "; reloading table", e);
+                  }
+                }
                 final ColumnLoader loader =
                     new ColumnLoader<T>(typeFactory, source, protoRowType,
                         repList);
-                return new ArrayTable.Content(loader.representationValues,
-                    loader.size(), loader.sortField);
+                final ArrayTable.Content content =
+                    new ArrayTable.Content(loader.representationValues,
+                        loader.size(), loader.sortField);
+                if (cacheFile != null) {
+                  try {
+                    ColumnStore.write(content, cacheFile, fingerprint);
+                    // Use the mapped file, so that the copy on the heap
+                    // can be garbage-collected.
+                    return ColumnStore.read(cacheFile, fingerprint);
+                  } catch (IOException e) {
+                    // Cannot write the file (perhaps the table contains
+                    // values that are not serializable). Use the copy on
+                    // the heap.
+                    LOGGER.log(Level.WARNING, "Cannot write cache file "
+                        + cacheFile + "; table will be reloaded next time",
+                        e);
+                  }
+                }
+                return content;
               }
             }));
   }
 
+  /** Returns a string that describes a table: its path and its row type,
+   * including the name, type and nullability of each column. */
+  static String fingerprint(List<String> sourcePath, RelDataType rowType) {
+    return sourcePath + " " + rowType.getFullTypeString();
+  }
+
   /** Schema factory that creates a
    * {@link org.apache.calcite.adapter.clone.CloneSchema}.
    * This allows you to create a clone schema inside a model.json file.
@@ -133,12 +243,16 @@ public ArrayTable.Content get() {
    *         jdbcDriver: 'com.mysql.jdbc.Driver',
    *         jdbcUrl: 'jdbc:mysql://localhost/foodmart',
    *         jdbcUser: 'foodmart',
-   *         jdbcPassword: 'foodmart'
+   *         jdbcPassword: 'foodmart',
+   *         cacheDirectory: '/tmp/foodmart-clone'
    *       }
    *     }
    *   ]
    * }
    * }</pre>
+   *
+   * <p>The {@code cacheDirectory} operand is optional; see
+   * {@link CloneSchema#CloneSchema(SchemaPlus, File)}.
    */
   public static class Factory implements SchemaFactory {
     public Schema create(
@@ -148,7 +262,9 @@ public Schema create(
       SchemaPlus schema =
           parentSchema.add(name,
               JdbcSchema.create(parentSchema, name + "$source", operand));
-      return new CloneSchema(schema);
+      final String cacheDirectory = (String) operand.get("cacheDirectory");
+      return new CloneSchema(schema,
+          cacheDirectory == null ? null : new File(cacheDirectory));
     }
   }
 }
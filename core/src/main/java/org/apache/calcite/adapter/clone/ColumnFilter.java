@@ -0,0 +1,586 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.clone;
+
+import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexInputRef;
+import org.apache.calcite.rex.RexLiteral;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.util.NlsString;
+import org.apache.calcite.util.Pair;
+
+import com.google.common.collect.Lists;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Condition on one column of an {@link ArrayTable}, of the form
+ * "column op literal" or "column IS [NOT] NULL".
+ *
+ * <p>A condition is evaluated directly against the column's
+ * {@link ArrayTable.Representation}, without creating a row. On a
+ * {@link ArrayTable.ObjectDictionary} column, the literal is converted
+ * into a range of codes (the dictionary is sorted), so that each row
+ * needs just an integer comparison. Values of
+ * {@link ArrayTable.PrimitiveArray} and
+ * {@link ArrayTable.BitSlicedPrimitiveArray} columns are compared without
+ * being boxed. A {@link ArrayTable.Constant} column is evaluated just once.
+ *
+ * <p>If the column has a {@link ZoneMap}, the filter tells which blocks of
+ * rows cannot contain a match, and estimates its own selectivity.
+ */
+class ColumnFilter {
+  final int ordinal;
+  final SqlKind kind;
+  /** Literal value; a {@link Long}, {@link Double}, {@link String} or
+   * {@link Boolean}, or null if {@link #kind} is IS [NOT] NULL. */
+  final Comparable value;
+
+  private ColumnFilter(int ordinal, SqlKind kind, Comparable value) {
+    this.ordinal = ordinal;
+    this.kind = kind;
+    this.value = value;
+  }
+
+  @Override public String toString() {
+    return "$" + ordinal + " " + kind + (value == null ? "" : " " + value);
+  }
+
+  /** Converts a filter condition into a list of column filters, one per
+   * conjunct, or returns null if any conjunct cannot be converted. */
+  static List<ColumnFilter> of(RexNode condition) {
+    final List<ColumnFilter> list = Lists.newArrayList();
+    for (RexNode node : RelOptUtil.conjunctions(condition)) {
+      final ColumnFilter filter = of1(node);
+      if (filter == null) {
+        return null;
+      }
+      list.add(filter);
+    }
+    return list;
+  }
+
+  private static ColumnFilter of1(RexNode node) {
+    if (!(node instanceof RexCall)) {
+      return null;
+    }
+    final RexCall call = (RexCall) node;
+    SqlKind kind = call.getKind();
+    switch (kind) {
+    case IS_NULL:
+    case IS_NOT_NULL:
+      if (call.getOperands().get(0) instanceof RexInputRef) {
+        final RexInputRef ref = (RexInputRef) call.getOperands().get(0);
+        return new ColumnFilter(ref.getIndex(), kind, null);
+      }
+      return null;
+    case EQUALS:
+    case NOT_EQUALS:
+    case LESS_THAN:
+    case LESS_THAN_OR_EQUAL:
+    case GREATER_THAN:
+    case GREATER_THAN_OR_EQUAL:
+      RexNode left = call.getOperands().get(0);
+      RexNode right = call.getOperands().get(1);
+      if (left instanceof RexLiteral && right instanceof RexInputRef) {
+        final RexNode temp = left;
+        left = right;
+        right = temp;
+        kind = reverse(kind);
+      }
+      if (left instanceof RexInputRef && right instanceof RexLiteral) {
+        final int ordinal = ((RexInputRef) left).getIndex();
+        final Comparable value = value(left.getType(), (RexLiteral) right);
+        if (value != null) {
+          return new ColumnFilter(ordinal, kind, value);
+        }
+      }
+      return null;
+    default:
+      return null;
+    }
+  }
+
+  /** Returns the comparison that gives the same result if its operands are
+   * swapped. */
+  private static SqlKind reverse(SqlKind kind) {
+    switch (kind) {
+    case LESS_THAN:
+      return SqlKind.GREATER_THAN;
+    case LESS_THAN_OR_EQUAL:
+      return SqlKind.GREATER_THAN_OR_EQUAL;
+    case GREATER_THAN:
+      return SqlKind.LESS_THAN;
+    case GREATER_THAN_OR_EQUAL:
+      return SqlKind.LESS_THAN_OR_EQUAL;
+    default:
+      return kind;
+    }
+  }
+
+  /** Converts a literal to a value that can be compared with the values of
+   * a column of a given type, or returns null if the comparison would need
+   * conversions that this class does not attempt. */
+  private static Comparable value(RelDataType type, RexLiteral literal) {
+    final Comparable v = literal.getValue();
+    switch (type.getSqlTypeName()) {
+    case TINYINT:
+    case SMALLINT:
+    case INTEGER:
+    case BIGINT:
+      if (v instanceof BigDecimal) {
+        try {
+          return ((BigDecimal) v).longValueExact();
+        } catch (ArithmeticException e) {
+          // Has a fractional part, or is too large. A comparison with a
+          // value that is not an integer needs more care than we give it.
+          return null;
+        }
+      }
+      return null;
+    case FLOAT:
+    case DOUBLE:
+      if (v instanceof BigDecimal) {
+        return ((BigDecimal) v).doubleValue();
+      }
+      return null;
+    case CHAR:
+    case VARCHAR:
+      if (v instanceof NlsString) {
+        return ((NlsString) v).getValue();
+      }
+      return null;
+    case BOOLEAN:
+      if (v instanceof Boolean) {
+        return v;
+      }
+      return null;
+    default:
+      return null;
+    }
+  }
+
+  /** Creates a matcher that evaluates this filter against the rows of a
+   * column. */
+  Matcher matcher(ArrayTable.Column column) {
+    final ArrayTable.Representation representation = column.representation;
+    final Object dataSet = column.dataSet;
+    if (value == null) {
+      return new ObjectMatcher(representation, dataSet);
+    }
+    switch (representation.getType()) {
+    case CONSTANT:
+      return matches(representation.getObject(dataSet, 0))
+          ? Matcher.ALL
+          : Matcher.NONE;
+    case PRIMITIVE_ARRAY:
+      final ArrayTable.PrimitiveArray primitiveArray =
+          (ArrayTable.PrimitiveArray) representation;
+      if (value instanceof Long && isFixed(primitiveArray.primitive)) {
+        return new LongMatcher() {
+          long get(int row) {
+            return primitiveArray.getLong(dataSet, row);
+          }
+        };
+      }
+      if (value instanceof Double) {
+        return new DoubleMatcher(primitiveArray, dataSet);
+      }
+      break;
+    case BIT_SLICED_PRIMITIVE_ARRAY:
+      final ArrayTable.BitSlicedPrimitiveArray bitSlicedArray =
+          (ArrayTable.BitSlicedPrimitiveArray) representation;
+      if (value instanceof Long && isFixed(bitSlicedArray.primitive)) {
+        return new LongMatcher() {
+          long get(int row) {
+            return bitSlicedArray.getLong(dataSet, row);
+          }
+        };
+      }
+      break;
+    case OBJECT_DICTIONARY:
+      return dictionaryMatcher(
+          ((ArrayTable.ObjectDictionary) representation).representation,
+          dataSet);
+    }
+    return new ObjectMatcher(representation, dataSet);
+  }
+
+  private static boolean isFixed(Primitive primitive) {
+    switch (primitive) {
+    case BYTE:
+    case SHORT:
+    case INT:
+    case LONG:
+      return true;
+    default:
+      return false;
+    }
+  }
+
+  /** Creates a matcher on a dictionary column. Because the dictionary is
+   * sorted, the values that satisfy the condition have a contiguous range of
+   * codes (or, for "&lt;&gt;", all codes but a contiguous range). */
+  private Matcher dictionaryMatcher(
+      final ArrayTable.Representation codeRepresentation, Object dataSet) {
+    @SuppressWarnings("unchecked")
+    final Pair<Object, Comparable[]> pair =
+        (Pair<Object, Comparable[]>) dataSet;
+    final Object codes = pair.left;
+    final Comparable[] codeValues = pair.right;
+    int n = codeValues.length;
+    if (n > 0 && codeValues[n - 1] == null) {
+      --n; // the null value, if present, has the highest code
+    }
+    final int lessCount = search(codeValues, n, false);
+    final int lessOrEqualCount = search(codeValues, n, true);
+    final int lo;
+    final int hi;
+    switch (kind) {
+    case EQUALS:
+    case NOT_EQUALS:
+      lo = lessCount;
+      hi = lessOrEqualCount;
+      break;
+    case LESS_THAN:
+      lo = 0;
+      hi = lessCount;
+      break;
+    case LESS_THAN_OR_EQUAL:
+      lo = 0;
+      hi = lessOrEqualCount;
+      break;
+    case GREATER_THAN:
+      lo = lessOrEqualCount;
+      hi = n;
+      break;
+    case GREATER_THAN_OR_EQUAL:
+      lo = lessCount;
+      hi = n;
+      break;
+    default:
+      throw new AssertionError(kind);
+    }
+    final boolean negate = kind == SqlKind.NOT_EQUALS;
+    if (!negate && lo >= hi) {
+      return Matcher.NONE;
+    }
+    final int nonNullCount = n;
+    return new Matcher() {
+      boolean matches(int row) {
+        final int code = codeRepresentation.getInt(codes, row);
+        return code < nonNullCount && (code >= lo && code < hi) != negate;
+      }
+    };
+  }
+
+  /** Returns the number of values in a sorted array that are less than (or,
+   * if {@code orEqual}, less than or equal to) the literal. */
+  private int search(Comparable[] values, int n, boolean orEqual) {
+    int lo = 0;
+    int hi = n;
+    while (lo < hi) {
+      final int mid = (lo + hi) >>> 1;
+      final int c = compare(values[mid]);
+      if (c < 0 || orEqual && c == 0) {
+        lo = mid + 1;
+      } else {
+        hi = mid;
+      }
+    }
+    return lo;
+  }
+
+  /** Compares a non-null column value with the literal. */
+  private int compare(Object o) {
+    if (value instanceof Long) {
+      final long x = ((Number) o).longValue();
+      final long v = (Long) value;
+      return x < v ? -1 : x == v ? 0 : 1;
+    }
+    if (value instanceof Double) {
+      // Unlike Double.compare, -0.0 equals 0.0. NaN is greater than any
+      // number, as it is in the sort order of Double.compareTo.
+      final double x = ((Number) o).doubleValue();
+      final double v = (Double) value;
+      return x < v ? -1 : x == v ? 0 : 1;
+    }
+    //noinspection unchecked
+    return ((Comparable) o).compareTo(value);
+  }
+
+  /** Returns whether a column value satisfies this filter. As in SQL, a
+   * comparison with null is never true. */
+  private boolean matches(Object o) {
+    switch (kind) {
+    case IS_NULL:
+      return o == null;
+    case IS_NOT_NULL:
+      return o != null;
+    }
+    if (o == null) {
+      return false;
+    }
+    if (value instanceof Double) {
+      return matches(((Number) o).doubleValue());
+    }
+    return satisfies(compare(o));
+  }
+
+  private boolean matches(double d) {
+    final double v = (Double) value;
+    switch (kind) {
+    case EQUALS:
+      return d == v;
+    case NOT_EQUALS:
+      return d != v;
+    case LESS_THAN:
+      return d < v;
+    case LESS_THAN_OR_EQUAL:
+      return d <= v;
+    case GREATER_THAN:
+      return d > v;
+    case GREATER_THAN_OR_EQUAL:
+      return d >= v;
+    default:
+      throw new AssertionError(kind);
+    }
+  }
+
+  /** Returns whether the result of a comparison satisfies this filter. */
+  private boolean satisfies(int c) {
+    switch (kind) {
+    case EQUALS:
+      return c == 0;
+    case NOT_EQUALS:
+      return c != 0;
+    case LESS_THAN:
+      return c < 0;
+    case LESS_THAN_OR_EQUAL:
+      return c <= 0;
+    case GREATER_THAN:
+      return c > 0;
+    case GREATER_THAN_OR_EQUAL:
+      return c >= 0;
+    default:
+      throw new AssertionError(kind);
+    }
+  }
+
+  /** Returns whether any row in a block of a column may satisfy this
+   * filter, according to the column's zone map. */
+  boolean mayMatch(ZoneMap zoneMap, int block) {
+    switch (kind) {
+    case IS_NULL:
+      return zoneMap.nullCounts[block] > 0;
+    case IS_NOT_NULL:
+      return zoneMap.nullCounts[block] < zoneMap.blockRowCount(block);
+    }
+    final Comparable min = zoneMap.mins[block];
+    if (min == null) {
+      return false; // every value in the block is null
+    }
+    final int cmin = compare(min);
+    final int cmax = compare(zoneMap.maxes[block]);
+    switch (kind) {
+    case EQUALS:
+      return cmin <= 0 && cmax >= 0;
+    case NOT_EQUALS:
+      return cmin != 0 || cmax != 0;
+    case LESS_THAN:
+      return cmin < 0;
+    case LESS_THAN_OR_EQUAL:
+      return cmin <= 0;
+    case GREATER_THAN:
+      return cmax > 0;
+    case GREATER_THAN_OR_EQUAL:
+      return cmax >= 0;
+    default:
+      throw new AssertionError(kind);
+    }
+  }
+
+  /** Estimates the fraction of the rows of a column that satisfy this
+   * filter, or returns null if the column has no zone map. */
+  Double selectivity(ArrayTable.Column column) {
+    final ZoneMap zoneMap = column.zoneMap;
+    if (zoneMap == null || zoneMap.rowCount == 0) {
+      return null;
+    }
+    int nullCount = 0;
+    for (int block = 0; block < zoneMap.blockCount(); block++) {
+      nullCount += zoneMap.nullCounts[block];
+    }
+    final double rowCount = zoneMap.rowCount;
+    final double nonNullCount = zoneMap.rowCount - nullCount;
+    switch (kind) {
+    case IS_NULL:
+      return nullCount / rowCount;
+    case IS_NOT_NULL:
+      return nonNullCount / rowCount;
+    case EQUALS:
+      return equalCount(column, zoneMap, nullCount) / rowCount;
+    case NOT_EQUALS:
+      return (nonNullCount - equalCount(column, zoneMap, nullCount))
+          / rowCount;
+    }
+    double count = 0;
+    for (int block = 0; block < zoneMap.blockCount(); block++) {
+      if (mayMatch(zoneMap, block)) {
+        count += (zoneMap.blockRowCount(block) - zoneMap.nullCounts[block])
+            * fraction(zoneMap.mins[block], zoneMap.maxes[block]);
+      }
+    }
+    return count / rowCount;
+  }
+
+  /** Estimates the number of rows whose value equals the literal. Assumes
+   * that each distinct value occurs equally often, but allows no more rows
+   * than there are non-null values in blocks that may contain the
+   * literal. */
+  private double equalCount(ArrayTable.Column column, ZoneMap zoneMap,
+      int nullCount) {
+    final int distinctCount =
+        Math.max(1, column.cardinality - (nullCount > 0 ? 1 : 0));
+    int candidateCount = 0;
+    for (int block = 0; block < zoneMap.blockCount(); block++) {
+      final Comparable min = zoneMap.mins[block];
+      if (min != null
+          && compare(min) <= 0
+          && compare(zoneMap.maxes[block]) >= 0) {
+        candidateCount +=
+            zoneMap.blockRowCount(block) - zoneMap.nullCounts[block];
+      }
+    }
+    return Math.min(candidateCount,
+        (double) (zoneMap.rowCount - nullCount) / distinctCount);
+  }
+
+  /** Estimates the fraction of the non-null values in a block that satisfy
+   * this range filter, given the least and greatest values in the block.
+   * Numeric values are assumed to be uniformly distributed. */
+  private double fraction(Comparable min, Comparable max) {
+    if (satisfies(compare(min)) && satisfies(compare(max))) {
+      return 1d;
+    }
+    if (value instanceof Number
+        && min instanceof Number
+        && max instanceof Number) {
+      final double lo = ((Number) min).doubleValue();
+      final double hi = ((Number) max).doubleValue();
+      final double v = ((Number) value).doubleValue();
+      if (hi > lo) {
+        final double f = Math.max(0d, Math.min(1d, (v - lo) / (hi - lo)));
+        switch (kind) {
+        case LESS_THAN:
+        case LESS_THAN_OR_EQUAL:
+          return f;
+        default:
+          return 1d - f;
+        }
+      }
+    }
+    return 0.5d;
+  }
+
+  /** Evaluates a filter against a row, given its ordinal. */
+  abstract static class Matcher {
+    static final Matcher ALL =
+        new Matcher() {
+          boolean matches(int row) {
+            return true;
+          }
+        };
+
+    static final Matcher NONE =
+        new Matcher() {
+          boolean matches(int row) {
+            return false;
+          }
+        };
+
+    abstract boolean matches(int row);
+  }
+
+  /** Matcher that reads each value as an object. Works on any
+   * representation. */
+  private class ObjectMatcher extends Matcher {
+    private final ArrayTable.Representation representation;
+    private final Object dataSet;
+
+    ObjectMatcher(ArrayTable.Representation representation, Object dataSet) {
+      this.representation = representation;
+      this.dataSet = dataSet;
+    }
+
+    boolean matches(int row) {
+      return ColumnFilter.this.matches(representation.getObject(dataSet, row));
+    }
+  }
+
+  /** Matcher on a column of fixed-precision values, which cannot be
+   * null. */
+  private abstract class LongMatcher extends Matcher {
+    private final long v = (Long) value;
+
+    abstract long get(int row);
+
+    boolean matches(int row) {
+      final long x = get(row);
+      switch (kind) {
+      case EQUALS:
+        return x == v;
+      case NOT_EQUALS:
+        return x != v;
+      case LESS_THAN:
+        return x < v;
+      case LESS_THAN_OR_EQUAL:
+        return x <= v;
+      case GREATER_THAN:
+        return x > v;
+      case GREATER_THAN_OR_EQUAL:
+        return x >= v;
+      default:
+        throw new AssertionError(kind);
+      }
+    }
+  }
+
+  /** Matcher on a column of primitive values, which cannot be null,
+   * compared as floating-point numbers. */
+  private class DoubleMatcher extends Matcher {
+    private final ArrayTable.PrimitiveArray primitiveArray;
+    private final Object dataSet;
+
+    DoubleMatcher(ArrayTable.PrimitiveArray primitiveArray, Object dataSet) {
+      this.primitiveArray = primitiveArray;
+      this.dataSet = dataSet;
+    }
+
+    boolean matches(int row) {
+      return ColumnFilter.this.matches(
+          primitiveArray.getDouble(dataSet, row));
+    }
+  }
+}
+
+// End ColumnFilter.java
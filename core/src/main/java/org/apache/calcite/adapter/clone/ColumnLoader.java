@@ -20,6 +20,7 @@
 import org.apache.calcite.avatica.ColumnMetaData;
 import org.apache.calcite.avatica.util.DateTimeUtils;
 import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.linq4j.Ord;
 import org.apache.calcite.linq4j.function.Function1;
 import org.apache.calcite.linq4j.function.Functions;
@@ -27,6 +28,7 @@
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeField;
 import org.apache.calcite.rel.type.RelProtoDataType;
+import org.apache.calcite.util.trace.CalciteTrace;
 
 import java.lang.reflect.Type;
 import java.sql.Date;
@@ -39,10 +41,21 @@
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Column loader.
  *
+ * <p>Reads the rows of a source table in chunks of {@link #CHUNK_SIZE}, and
+ * encodes columns on a {@link ForkJoinPool}: while one chunk is being read,
+ * the values of the previous chunk are added to each column's
+ * {@link ValueSet} in parallel; when all rows have been read, the value sets
+ * are frozen into columns in parallel.
+ *
  * @param <T> Element type of source table
  */
 class ColumnLoader<T> {
@@ -77,11 +90,26 @@ public Integer apply(Date a0) {
         }
       };
 
+  /** Number of rows that are read from the source before their values are
+   * added to the value sets. */
+  static final int CHUNK_SIZE = 1 << 16;
+
+  /** Pool that encodes columns in parallel. Its threads are daemons. */
+  private static final ForkJoinPool POOL = new ForkJoinPool();
+
+  private static final Logger LOGGER = CalciteTrace.getCloneTracer();
+
   public final List<T> list = new ArrayList<T>();
   public final List<ArrayTable.Column> representationValues =
       new ArrayList<ArrayTable.Column>();
   private final JavaTypeFactory typeFactory;
   public final int sortField;
+  /** Time taken to load the table, in nanoseconds. */
+  public final long loadNanos;
+  /** Time spent encoding each column (adding its values to its value set,
+   * and freezing it), in nanoseconds. Columns are encoded in parallel, and
+   * while rows are being read, so the total may exceed {@link #loadNanos}. */
+  public final long[] columnNanos;
 
   /** Creates a column loader, and performs the load.
    *
@@ -100,10 +128,23 @@ public Integer apply(Date a0) {
           Collections.nCopies(rowType.getFieldCount(),
               ColumnMetaData.Rep.OBJECT);
     }
-    sourceTable.into(list);
+    final long start = System.nanoTime();
+    this.columnNanos = new long[rowType.getFieldCount()];
+    final List<ValueSet> valueSets = new ArrayList<ValueSet>();
+    for (RelDataTypeField field : rowType.getFieldList()) {
+      final Type type = typeFactory.getJavaClass(field.getType());
+      valueSets.add(
+          new ValueSet(type instanceof Class ? (Class) type : Object.class));
+    }
+    ingest(sourceTable, rowType, repList, valueSets);
     final int[] sorts = {-1};
-    load(rowType, repList, sorts);
+    final int[] sources = sort(valueSets, sorts);
     this.sortField = sorts[0];
+    freeze(valueSets, sources);
+    this.loadNanos = System.nanoTime() - start;
+    if (LOGGER.isLoggable(Level.FINE)) {
+      trace(rowType);
+    }
   }
 
   static int nextPowerOf2(int v) {
@@ -172,53 +213,93 @@ public int size() {
     return list.size();
   }
 
-  private void load(final RelDataType elementType,
-      List<ColumnMetaData.Rep> repList, int[] sort) {
-    final List<Type> types =
-        new AbstractList<Type>() {
-          final List<RelDataTypeField> fields =
-              elementType.getFieldList();
-          public Type get(int index) {
-            return typeFactory.getJavaClass(
-                fields.get(index).getType());
+  /** Reads the rows of the source table in chunks. As each chunk is read,
+   * submits a task that adds the values of each of its columns to that
+   * column's value set, in parallel. At most one chunk is in flight, so
+   * the values of each column are added in order. */
+  private void ingest(Enumerable<T> sourceTable, RelDataType rowType,
+      List<ColumnMetaData.Rep> repList, List<ValueSet> valueSets) {
+    final Enumerator<T> enumerator = sourceTable.enumerator();
+    try {
+      ForkJoinTask<?> pending = null;
+      boolean more = true;
+      while (more) {
+        final List<T> chunk = new ArrayList<T>();
+        while (chunk.size() < CHUNK_SIZE) {
+          if (!enumerator.moveNext()) {
+            more = false;
+            break;
           }
+          chunk.add(enumerator.current());
+        }
+        if (pending != null) {
+          pending.join();
+          pending = null;
+        }
+        if (!chunk.isEmpty()) {
+          list.addAll(chunk);
+          pending = POOL.submit(addTask(chunk, rowType, repList, valueSets));
+        }
+      }
+      if (pending != null) {
+        pending.join();
+      }
+    } finally {
+      enumerator.close();
+    }
+  }
 
-          public int size() {
-            return fields.size();
-          }
-        };
-    int[] sources = null;
-    for (final Ord<Type> pair : Ord.zip(types)) {
-      @SuppressWarnings("unchecked")
-      final List<?> sliceList =
-          types.size() == 1
-              ? list
-              : new AbstractList<Object>() {
-                final int slice = pair.i;
-
-                public Object get(int index) {
-                  return ((Object[]) list.get(index))[slice];
-                }
-
-                public int size() {
-                  return list.size();
-                }
-              };
-      final List<?> list2 =
-          wrap(
-              repList.get(pair.i),
-              sliceList,
-              elementType.getFieldList().get(pair.i).getType());
-      final Class clazz = pair.e instanceof Class
-          ? (Class) pair.e
-          : Object.class;
-      ValueSet valueSet = new ValueSet(clazz);
-      for (Object o : list2) {
-        valueSet.add((Comparable) o);
+  /** Creates a task that adds the values of a chunk of rows to the value
+   * sets, with one sub-task per column. */
+  private ForkJoinTask<?> addTask(final List<T> chunk, RelDataType rowType,
+      final List<ColumnMetaData.Rep> repList,
+      final List<ValueSet> valueSets) {
+    final List<RelDataTypeField> fields = rowType.getFieldList();
+    final List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+    for (final RelDataTypeField field : fields) {
+      tasks.add(
+          new RecursiveAction() {
+            protected void compute() {
+              final long start = System.nanoTime();
+              final int i = field.getIndex();
+              final ValueSet valueSet = valueSets.get(i);
+              final List<?> sliceList =
+                  wrap(repList.get(i), slice(chunk, fields.size(), i),
+                      field.getType());
+              for (Object o : sliceList) {
+                valueSet.add((Comparable) o);
+              }
+              columnNanos[i] += System.nanoTime() - start;
+            }
+          });
+    }
+    return all(tasks);
+  }
+
+  /** Returns a view of one column of a list of rows. */
+  private static List<?> slice(final List<?> rows, int fieldCount,
+      final int ordinal) {
+    if (fieldCount == 1) {
+      return rows;
+    }
+    return new AbstractList<Object>() {
+      public Object get(int index) {
+        return ((Object[]) rows.get(index))[ordinal];
+      }
+
+      public int size() {
+        return rows.size();
       }
-      if (sort != null
-          && sort[0] < 0
-          && valueSet.map.keySet().size() == list.size()) {
+    };
+  }
+
+  /** Finds the first column whose values are unique, and returns the
+   * permutation that sorts the rows on that column; or null if there is no
+   * such column, or if the rows are already sorted. */
+  private int[] sort(List<ValueSet> valueSets, int[] sort) {
+    for (Ord<ValueSet> pair : Ord.zip(valueSets)) {
+      final ValueSet valueSet = pair.e;
+      if (valueSet.map.keySet().size() == list.size()) {
         // We have discovered a the first unique key in the table.
         sort[0] = pair.i;
         final Comparable[] values =
@@ -228,26 +309,68 @@ public int size() {
           kevs[i] = new Kev(i, values[i]);
         }
         Arrays.sort(kevs);
-        sources = new int[list.size()];
+        final int[] sources = new int[list.size()];
         for (int i = 0; i < sources.length; i++) {
           sources[i] = kevs[i].source;
         }
-
         if (isIdentity(sources)) {
           // Table was already sorted. Clear the permutation.
-          // We've already set sort[0], so we won't check for another
-          // sorted column.
-          sources = null;
-        } else {
-          // Re-sort all previous columns.
-          for (int i = 0; i < pair.i; i++) {
-            representationValues.set(
-                i, representationValues.get(i).permute(sources));
-          }
+          return null;
         }
+        return sources;
+      }
+    }
+    return null;
+  }
+
+  /** Freezes each value set into a column, in parallel. */
+  private void freeze(final List<ValueSet> valueSets, final int[] sources) {
+    final ArrayTable.Column[] columns =
+        new ArrayTable.Column[valueSets.size()];
+    final List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+    for (int i = 0; i < columns.length; i++) {
+      final int ordinal = i;
+      tasks.add(
+          new RecursiveAction() {
+            protected void compute() {
+              final long start = System.nanoTime();
+              columns[ordinal] =
+                  valueSets.get(ordinal).freeze(ordinal, sources);
+              columnNanos[ordinal] += System.nanoTime() - start;
+            }
+          });
+    }
+    POOL.invoke(all(tasks));
+    representationValues.addAll(Arrays.asList(columns));
+  }
+
+  /** Creates a task that runs a list of tasks in parallel. */
+  private static ForkJoinTask<?> all(final List<RecursiveAction> tasks) {
+    return new RecursiveAction() {
+      protected void compute() {
+        invokeAll(tasks);
       }
-      representationValues.add(valueSet.freeze(pair.i, sources));
+    };
+  }
+
+  private void trace(RelDataType rowType) {
+    final StringBuilder buf = new StringBuilder();
+    buf.append("Loaded ")
+        .append(list.size())
+        .append(" rows in ")
+        .append(loadNanos / 1000000)
+        .append(" ms");
+    for (RelDataTypeField field : rowType.getFieldList()) {
+      final int i = field.getIndex();
+      buf.append("; ")
+          .append(field.getName())
+          .append(": ")
+          .append(representationValues.get(i).representation.getType())
+          .append(" in ")
+          .append(columnNanos[i] / 1000000)
+          .append(" ms");
     }
+    LOGGER.fine(buf.toString());
   }
 
   /** Adapt for some types that we represent differently internally than their
@@ -330,7 +453,12 @@ ArrayTable.Column freeze(int ordinal, int[] sources) {
       ArrayTable.Representation representation = chooseRep(ordinal);
       final int cardinality = map.size() + (containsNull ? 1 : 0);
       final Object data = representation.freeze(this, sources);
-      return new ArrayTable.Column(representation, data, cardinality);
+      final ZoneMap zoneMap =
+          ZoneMap.of(
+              ArrayTable.Column.asList(representation, data)
+                  .subList(0, values.size()));
+      return new ArrayTable.Column(representation, data, cardinality,
+          zoneMap);
     }
 
     ArrayTable.Representation chooseRep(int ordinal) {
@@ -0,0 +1,468 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.clone;
+
+import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.util.Pair;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Array;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Persistent store for the contents of an {@link ArrayTable}.
+ *
+ * <p>{@link #write} writes the columns of a table to a file, and
+ * {@link #read} maps such a file into memory using {@link FileChannel#map}.
+ * Values of {@link ArrayTable.PrimitiveArray} and
+ * {@link ArrayTable.BitSlicedPrimitiveArray} columns, including the codes of
+ * {@link ArrayTable.ObjectDictionary} columns, are not copied onto the heap;
+ * representations read them from the mapped file via a {@link Buffer}.
+ * Object values (in {@link ArrayTable.ObjectArray} columns, dictionaries and
+ * constants) are serialized, and deserialized when the file is read, as
+ * is each column's {@link ZoneMap}.
+ *
+ * <p>The header contains a fingerprint, supplied by the caller, that
+ * describes the table whose contents the file holds (say, its source and row
+ * type). {@link #read} rejects a file whose fingerprint is different.
+ *
+ * <p>A file must be smaller than 2GB. Numbers are big-endian, and primitive
+ * arrays are aligned to 8 bytes, so that a view can be created on them.
+ */
+class ColumnStore {
+  private static final int MAGIC = 0xCA1C173E;
+  private static final int VERSION = 3;
+
+  private ColumnStore() {}
+
+  /** Writes the contents of a table to a file.
+   *
+   * <p>Writes to a temporary file and then renames it, so that a reader
+   * never sees a partially written file.
+   *
+   * @param content Contents of table
+   * @param file File
+   * @param fingerprint Description of the table, to be checked when the file
+   *                    is read
+   */
+  static void write(ArrayTable.Content content, File file,
+      String fingerprint) throws IOException {
+    final File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+      throw new IOException("cannot create directory " + parent);
+    }
+    final File tempFile = new File(file.getPath() + ".tmp");
+    final DataOutputStream out =
+        new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(tempFile)));
+    boolean written = false;
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      writeObject(out, fingerprint);
+      out.writeInt(content.size);
+      out.writeInt(content.sortField);
+      out.writeInt(content.columns.size());
+      for (ArrayTable.Column column : content.columns) {
+        out.writeInt(column.cardinality);
+        writeRepresentation(out, column.representation);
+        writeData(out, column.representation, column.dataSet);
+        writeObject(out, column.zoneMap);
+      }
+      out.flush();
+      // DataOutputStream.size() sticks at Integer.MAX_VALUE on overflow
+      if (out.size() == Integer.MAX_VALUE) {
+        throw new IOException("too large to map: " + file);
+      }
+      written = true;
+    } finally {
+      out.close();
+      if (!written) {
+        //noinspection ResultOfMethodCallIgnored
+        tempFile.delete();
+      }
+    }
+    //noinspection ResultOfMethodCallIgnored
+    file.delete();
+    if (!tempFile.renameTo(file)) {
+      throw new IOException("cannot rename " + tempFile + " to " + file);
+    }
+  }
+
+  /** Reads the contents of a table from a file written by {@link #write},
+   * mapping the file into memory.
+   *
+   * @param file File
+   * @param fingerprint Description of the table; must be the same as when
+   *                    the file was written
+   * @throws IOException if the file cannot be read, is corrupt, or has a
+   *                     different fingerprint
+   */
+  static ArrayTable.Content read(File file, String fingerprint)
+      throws IOException {
+    final ByteBuffer buffer;
+    final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    try {
+      final long length = randomAccessFile.length();
+      if (length > Integer.MAX_VALUE) {
+        throw new IOException("too large to map: " + file);
+      }
+      // The mapping remains valid after the file is closed.
+      buffer = randomAccessFile.getChannel()
+          .map(FileChannel.MapMode.READ_ONLY, 0, length);
+    } finally {
+      randomAccessFile.close();
+    }
+    try {
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        throw new IOException("not a column store, or wrong version: "
+            + file);
+      }
+      final Object fingerprint2 = readObject(buffer);
+      if (!fingerprint.equals(fingerprint2)) {
+        throw new IOException("column store " + file
+            + " was written for a different table; expected fingerprint ["
+            + fingerprint + "], actual [" + fingerprint2 + "]");
+      }
+      final int size = buffer.getInt();
+      final int sortField = buffer.getInt();
+      final int columnCount = buffer.getInt();
+      final List<ArrayTable.Column> columns =
+          new ArrayList<ArrayTable.Column>(columnCount);
+      for (int i = 0; i < columnCount; i++) {
+        final int cardinality = buffer.getInt();
+        final ArrayTable.Representation representation =
+            readRepresentation(buffer);
+        final Object dataSet = readData(buffer, representation);
+        final ZoneMap zoneMap = (ZoneMap) readObject(buffer);
+        columns.add(
+            new ArrayTable.Column(representation, dataSet, cardinality,
+                zoneMap));
+      }
+      return new ArrayTable.Content(columns, size, sortField);
+    } catch (RuntimeException e) {
+      // E.g. BufferUnderflowException, if the file is truncated
+      throw new IOException("corrupt column store: " + file, e);
+    }
+  }
+
+  private static void writeRepresentation(DataOutputStream out,
+      ArrayTable.Representation representation) throws IOException {
+    out.writeByte(representation.getType().ordinal());
+    switch (representation.getType()) {
+    case CONSTANT:
+      out.writeInt(((ArrayTable.Constant) representation).ordinal);
+      return;
+    case OBJECT_ARRAY:
+      out.writeInt(((ArrayTable.ObjectArray) representation).ordinal);
+      return;
+    case PRIMITIVE_ARRAY:
+      final ArrayTable.PrimitiveArray primitiveArray =
+          (ArrayTable.PrimitiveArray) representation;
+      out.writeInt(primitiveArray.ordinal);
+      out.writeByte(primitiveArray.primitive.ordinal());
+      out.writeByte(primitiveArray.p.ordinal());
+      return;
+    case BIT_SLICED_PRIMITIVE_ARRAY:
+      final ArrayTable.BitSlicedPrimitiveArray bitSliced =
+          (ArrayTable.BitSlicedPrimitiveArray) representation;
+      out.writeInt(bitSliced.ordinal);
+      out.writeInt(bitSliced.bitCount);
+      out.writeByte(bitSliced.primitive.ordinal());
+      out.writeBoolean(bitSliced.signed);
+      return;
+    case OBJECT_DICTIONARY:
+      final ArrayTable.ObjectDictionary dictionary =
+          (ArrayTable.ObjectDictionary) representation;
+      out.writeInt(dictionary.ordinal);
+      writeRepresentation(out, dictionary.representation);
+      return;
+    default:
+      throw new IOException("cannot store " + representation);
+    }
+  }
+
+  private static ArrayTable.Representation readRepresentation(
+      ByteBuffer buffer) {
+    final ArrayTable.RepresentationType type =
+        ArrayTable.RepresentationType.values()[buffer.get()];
+    switch (type) {
+    case CONSTANT:
+      return new ArrayTable.Constant(buffer.getInt());
+    case OBJECT_ARRAY:
+      return new ArrayTable.ObjectArray(buffer.getInt());
+    case PRIMITIVE_ARRAY:
+      return new ArrayTable.PrimitiveArray(buffer.getInt(),
+          Primitive.values()[buffer.get()],
+          Primitive.values()[buffer.get()]);
+    case BIT_SLICED_PRIMITIVE_ARRAY:
+      return new ArrayTable.BitSlicedPrimitiveArray(buffer.getInt(),
+          buffer.getInt(), Primitive.values()[buffer.get()],
+          buffer.get() != 0);
+    case OBJECT_DICTIONARY:
+      return new ArrayTable.ObjectDictionary(buffer.getInt(),
+          readRepresentation(buffer));
+    default:
+      throw new AssertionError("unexpected " + type);
+    }
+  }
+
+  private static void writeData(DataOutputStream out,
+      ArrayTable.Representation representation, Object dataSet)
+      throws IOException {
+    switch (representation.getType()) {
+    case CONSTANT:
+      @SuppressWarnings("unchecked")
+      final Pair<Object, Integer> constant = (Pair<Object, Integer>) dataSet;
+      writeObject(out, constant.left);
+      out.writeInt(constant.right);
+      return;
+    case OBJECT_ARRAY:
+      writeObject(out, dataSet);
+      return;
+    case PRIMITIVE_ARRAY:
+    case BIT_SLICED_PRIMITIVE_ARRAY:
+      writeArray(out, toArray(dataSet));
+      return;
+    case OBJECT_DICTIONARY:
+      @SuppressWarnings("unchecked")
+      final Pair<Object, Comparable[]> dictionary =
+          (Pair<Object, Comparable[]>) dataSet;
+      writeData(out, ((ArrayTable.ObjectDictionary) representation)
+          .representation, dictionary.left);
+      writeObject(out, dictionary.right);
+      return;
+    default:
+      throw new IOException("cannot store " + representation);
+    }
+  }
+
+  private static Object readData(ByteBuffer buffer,
+      ArrayTable.Representation representation) throws IOException {
+    switch (representation.getType()) {
+    case CONSTANT:
+      final Object value = readObject(buffer);
+      return Pair.of(value, buffer.getInt());
+    case OBJECT_ARRAY:
+      return readObject(buffer);
+    case PRIMITIVE_ARRAY:
+    case BIT_SLICED_PRIMITIVE_ARRAY:
+      return readArray(buffer);
+    case OBJECT_DICTIONARY:
+      final Object codes = readData(buffer,
+          ((ArrayTable.ObjectDictionary) representation).representation);
+      return Pair.of(codes, (Comparable[]) readObject(buffer));
+    default:
+      throw new AssertionError("unexpected " + representation);
+    }
+  }
+
+  private static void writeObject(DataOutputStream out, Object o)
+      throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final ObjectOutputStream objectOut = new ObjectOutputStream(bytes);
+    objectOut.writeObject(o);
+    objectOut.close();
+    out.writeInt(bytes.size());
+    bytes.writeTo(out);
+  }
+
+  private static Object readObject(ByteBuffer buffer) throws IOException {
+    final byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    final ObjectInputStream objectIn =
+        new ObjectInputStream(new ByteArrayInputStream(bytes));
+    try {
+      return objectIn.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new IOException(e);
+    } finally {
+      objectIn.close();
+    }
+  }
+
+  /** Writes an array of primitive values: its element type, its length,
+   * padding to a multiple of 8 bytes, and its elements. */
+  private static void writeArray(DataOutputStream out, Object array)
+      throws IOException {
+    final Primitive primitive =
+        Primitive.of(array.getClass().getComponentType());
+    final int length = Array.getLength(array);
+    out.writeByte(primitive.ordinal());
+    out.writeInt(length);
+    while (out.size() % 8 != 0) {
+      out.writeByte(0);
+    }
+    switch (primitive) {
+    case BYTE:
+      out.write((byte[]) array);
+      break;
+    case CHAR:
+      for (char c : (char[]) array) {
+        out.writeChar(c);
+      }
+      break;
+    case SHORT:
+      for (short v : (short[]) array) {
+        out.writeShort(v);
+      }
+      break;
+    case INT:
+      for (int v : (int[]) array) {
+        out.writeInt(v);
+      }
+      break;
+    case LONG:
+      for (long v : (long[]) array) {
+        out.writeLong(v);
+      }
+      break;
+    case FLOAT:
+      for (float v : (float[]) array) {
+        out.writeFloat(v);
+      }
+      break;
+    case DOUBLE:
+      for (double v : (double[]) array) {
+        out.writeDouble(v);
+      }
+      break;
+    default:
+      throw new IOException("cannot store array of " + primitive);
+    }
+  }
+
+  /** Reads an array written by {@link #writeArray}, returning a view onto
+   * the buffer, without copying. */
+  private static Buffer readArray(ByteBuffer buffer) {
+    final Primitive primitive = Primitive.values()[buffer.get()];
+    final int length = buffer.getInt();
+    buffer.position((buffer.position() + 7) & ~7);
+    final int byteCount = length * byteCount(primitive);
+    final ByteBuffer slice = buffer.slice();
+    slice.limit(byteCount);
+    buffer.position(buffer.position() + byteCount);
+    switch (primitive) {
+    case BYTE:
+      return slice;
+    case CHAR:
+      return slice.asCharBuffer();
+    case SHORT:
+      return slice.asShortBuffer();
+    case INT:
+      return slice.asIntBuffer();
+    case LONG:
+      return slice.asLongBuffer();
+    case FLOAT:
+      return slice.asFloatBuffer();
+    case DOUBLE:
+      return slice.asDoubleBuffer();
+    default:
+      throw new AssertionError("unexpected " + primitive);
+    }
+  }
+
+  private static int byteCount(Primitive primitive) {
+    switch (primitive) {
+    case BYTE:
+      return 1;
+    case CHAR:
+    case SHORT:
+      return 2;
+    case INT:
+    case FLOAT:
+      return 4;
+    case LONG:
+    case DOUBLE:
+      return 8;
+    default:
+      throw new AssertionError("unexpected " + primitive);
+    }
+  }
+
+  /** Converts a data set that may be a {@link Buffer} into an array of
+   * primitive values. If it is already an array, returns it unchanged. */
+  static Object toArray(Object dataSet) {
+    if (!(dataSet instanceof Buffer)) {
+      return dataSet;
+    }
+    if (dataSet instanceof ByteBuffer) {
+      final ByteBuffer buffer = ((ByteBuffer) dataSet).duplicate();
+      buffer.rewind();
+      final byte[] array = new byte[buffer.limit()];
+      buffer.get(array);
+      return array;
+    } else if (dataSet instanceof CharBuffer) {
+      final CharBuffer buffer = ((CharBuffer) dataSet).duplicate();
+      buffer.rewind();
+      final char[] array = new char[buffer.limit()];
+      buffer.get(array);
+      return array;
+    } else if (dataSet instanceof ShortBuffer) {
+      final ShortBuffer buffer = ((ShortBuffer) dataSet).duplicate();
+      buffer.rewind();
+      final short[] array = new short[buffer.limit()];
+      buffer.get(array);
+      return array;
+    } else if (dataSet instanceof IntBuffer) {
+      final IntBuffer buffer = ((IntBuffer) dataSet).duplicate();
+      buffer.rewind();
+      final int[] array = new int[buffer.limit()];
+      buffer.get(array);
+      return array;
+    } else if (dataSet instanceof LongBuffer) {
+      final LongBuffer buffer = ((LongBuffer) dataSet).duplicate();
+      buffer.rewind();
+      final long[] array = new long[buffer.limit()];
+      buffer.get(array);
+      return array;
+    } else if (dataSet instanceof FloatBuffer) {
+      final FloatBuffer buffer = ((FloatBuffer) dataSet).duplicate();
+      buffer.rewind();
+      final float[] array = new float[buffer.limit()];
+      buffer.get(array);
+      return array;
+    } else {
+      final DoubleBuffer buffer = ((DoubleBuffer) dataSet).duplicate();
+      buffer.rewind();
+      final double[] array = new double[buffer.limit()];
+      buffer.get(array);
+      return array;
+    }
+  }
+}
+
+// End ColumnStore.java
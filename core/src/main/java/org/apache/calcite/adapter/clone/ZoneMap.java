@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.adapter.clone;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Minimum value, maximum value and number of null values of each block of
+ * {@link #BLOCK_SIZE} consecutive rows of a column of an {@link ArrayTable}.
+ *
+ * <p>Allows a scan to skip blocks in which no row can satisfy a
+ * {@link ColumnFilter}, and allows the table to estimate the selectivity of
+ * a filter.
+ */
+class ZoneMap implements Serializable {
+  /** Number of rows in a block. */
+  static final int BLOCK_SIZE = 1 << 16;
+
+  final int rowCount;
+  /** Minimum non-null value in each block; null if every value in the block
+   * is null. */
+  final Comparable[] mins;
+  /** Maximum non-null value in each block; null if every value in the block
+   * is null. */
+  final Comparable[] maxes;
+  final int[] nullCounts;
+
+  private ZoneMap(int rowCount, Comparable[] mins, Comparable[] maxes,
+      int[] nullCounts) {
+    this.rowCount = rowCount;
+    this.mins = mins;
+    this.maxes = maxes;
+    this.nullCounts = nullCounts;
+  }
+
+  /** Creates a zone map of a list of values. */
+  static ZoneMap of(List<? extends Comparable> values) {
+    final int rowCount = values.size();
+    final int blockCount = (rowCount + BLOCK_SIZE - 1) / BLOCK_SIZE;
+    final Comparable[] mins = new Comparable[blockCount];
+    final Comparable[] maxes = new Comparable[blockCount];
+    final int[] nullCounts = new int[blockCount];
+    for (int i = 0; i < rowCount; i++) {
+      final Comparable value = values.get(i);
+      final int block = i / BLOCK_SIZE;
+      if (value == null) {
+        ++nullCounts[block];
+        continue;
+      }
+      //noinspection unchecked
+      if (mins[block] == null || mins[block].compareTo(value) > 0) {
+        mins[block] = value;
+      }
+      //noinspection unchecked
+      if (maxes[block] == null || maxes[block].compareTo(value) < 0) {
+        maxes[block] = value;
+      }
+    }
+    return new ZoneMap(rowCount, mins, maxes, nullCounts);
+  }
+
+  @Override public String toString() {
+    final StringBuilder buf = new StringBuilder("ZoneMap(");
+    for (int block = 0; block < mins.length; block++) {
+      if (block > 0) {
+        buf.append(", ");
+      }
+      buf.append("[")
+          .append(mins[block])
+          .append("..")
+          .append(maxes[block])
+          .append(", nulls=")
+          .append(nullCounts[block])
+          .append("]");
+    }
+    return buf.append(")").toString();
+  }
+
+  /** Returns the number of blocks. */
+  int blockCount() {
+    return mins.length;
+  }
+
+  /** Returns the number of rows in a given block. */
+  int blockRowCount(int block) {
+    return Math.min(BLOCK_SIZE, rowCount - block * BLOCK_SIZE);
+  }
+}
+
+// End ZoneMap.java
@@ -16,16 +16,21 @@
  */
 package org.apache.calcite.adapter.enumerable;
 
+import org.apache.calcite.DataContext;
 import org.apache.calcite.adapter.enumerable.impl.AggAddContextImpl;
 import org.apache.calcite.adapter.enumerable.impl.AggResultContextImpl;
 import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.linq4j.LongGroupTable;
+import org.apache.calcite.linq4j.function.EqualityComparer;
 import org.apache.calcite.linq4j.function.Function0;
 import org.apache.calcite.linq4j.function.Function1;
 import org.apache.calcite.linq4j.function.Function2;
 import org.apache.calcite.linq4j.tree.BlockBuilder;
+import org.apache.calcite.linq4j.tree.BlockStatement;
 import org.apache.calcite.linq4j.tree.Expression;
 import org.apache.calcite.linq4j.tree.Expressions;
 import org.apache.calcite.linq4j.tree.ParameterExpression;
+import org.apache.calcite.linq4j.tree.Primitive;
 import org.apache.calcite.plan.RelOptCluster;
 import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.prepare.CalcitePrepareImpl;
@@ -38,6 +43,10 @@
 import org.apache.calcite.rex.RexInputRef;
 import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.sql.SqlAggFunction;
+import org.apache.calcite.sql.fun.SqlCountAggFunction;
+import org.apache.calcite.sql.fun.SqlSumAggFunction;
+import org.apache.calcite.sql.fun.SqlSumEmptyIsZeroAggFunction;
+import org.apache.calcite.sql.type.SqlTypeName;
 import org.apache.calcite.util.BuiltInMethod;
 import org.apache.calcite.util.ImmutableBitSet;
 import org.apache.calcite.util.Pair;
@@ -420,18 +429,226 @@ public RexToLixTranslator rowTranslator() {
                   resultBlock.toBlock(),
                   key_,
                   acc_));
+      // The number of threads is not known until run time:
+      //   Integer parallelism = (Integer) root.get("aggregateParallelism");
+      //   return EnumerableDefaults.groupBy(child, keySelector,
+      //       accumulatorInitializer, accumulatorAdder, resultSelector,
+      //       comparer, parallelism == null ? 1 : parallelism.intValue());
+      final Expression parallelism_ =
+          builder.append("parallelism",
+              Expressions.convert_(
+                  Expressions.call(DataContext.ROOT,
+                      BuiltInMethod.DATA_CONTEXT_GET.method,
+                      Expressions.constant(
+                          DataContext.Variable.AGGREGATE_PARALLELISM
+                              .camelName)),
+                  Integer.class));
+      // If keys and accumulators can be primitive, and the aggregation is
+      // single-threaded, aggregate without boxing:
+      //   if (parallelism == null || parallelism.intValue() <= 1) {
+      //     ... (see implementLongGroupBy)
+      //   }
+      final BlockStatement longGroupBy =
+          implementLongGroupBy(builder, childExp, inputPhysType, physType);
+      if (longGroupBy != null) {
+        builder.add(
+            Expressions.ifThen(
+                Expressions.orElse(
+                    Expressions.equal(parallelism_,
+                        Expressions.constant(null)),
+                    Expressions.lessThanOrEqual(
+                        Expressions.call(parallelism_, "intValue"),
+                        Expressions.constant(1))),
+                longGroupBy));
+      }
       builder.add(
           Expressions.return_(null,
-              Expressions.call(childExp,
-                  BuiltInMethod.GROUP_BY2.method,
-                  Expressions.list(keySelector_,
-                      accumulatorInitializer,
-                      accumulatorAdder,
-                      resultSelector_)
-                      .appendIfNotNull(keyPhysType.comparer()))));
+              Expressions.call(BuiltInMethod.GROUP_BY_PARALLEL.method,
+                  childExp,
+                  keySelector_,
+                  accumulatorInitializer,
+                  accumulatorAdder,
+                  resultSelector_,
+                  Util.first(keyPhysType.comparer(),
+                      Expressions.constant(null, EqualityComparer.class)),
+                  Expressions.condition(
+                      Expressions.equal(parallelism_,
+                          Expressions.constant(null)),
+                      Expressions.constant(1),
+                      Expressions.call(parallelism_, "intValue")))));
     }
     return implementor.result(physType, builder.toBlock());
   }
+
+  /** Generates code that aggregates into a {@link LongGroupTable}, or
+   * returns null if this aggregate is not suitable.
+   *
+   * <p>It is suitable if there is one group key, of an integer type and not
+   * nullable, and each aggregate function is a {@code COUNT} of non-nullable
+   * arguments or a {@code SUM} of a non-nullable integer. Then keys and
+   * accumulators are primitive {@code long} values, and there is no
+   * allocation per row or per group:
+   *
+   * <blockquote><pre>
+   * final LongGroupTable table = new LongGroupTable(2);
+   * final Enumerator enumerator = child.enumerator();
+   * while (enumerator.moveNext()) {
+   *   final Employee in = (Employee) enumerator.current();
+   *   final int group = table.group((long) in.deptno);
+   *   table.add(0, group, 1L);
+   *   table.add(1, group, (long) in.empid);
+   * }
+   * enumerator.close();
+   * final List list = new ArrayList(table.size());
+   * for (int g = 0; g &lt; table.size(); g++) {
+   *   list.add(new Object[] {
+   *       (int) table.key(g), table.get(0, g), (int) table.get(1, g)});
+   * }
+   * return Linq4j.asEnumerable(list);
+   * </pre></blockquote>
+   */
+  private BlockStatement implementLongGroupBy(BlockBuilder parent,
+      Expression childExp, PhysType inputPhysType, PhysType physType) {
+    if (getGroupType() != Group.SIMPLE || groupSet.cardinality() != 1) {
+      return null;
+    }
+    final List<RelDataTypeField> fields =
+        getInput().getRowType().getFieldList();
+    final int key = groupSet.nth(0);
+    if (!isLongType(fields.get(key).getType())) {
+      return null;
+    }
+    for (AggregateCall aggCall : aggCalls) {
+      final SqlAggFunction aggregation = aggCall.getAggregation();
+      if (aggregation instanceof SqlCountAggFunction) {
+        for (int arg : aggCall.getArgList()) {
+          if (fields.get(arg).getType().isNullable()) {
+            return null;
+          }
+        }
+      } else if (aggregation instanceof SqlSumAggFunction
+          || aggregation instanceof SqlSumEmptyIsZeroAggFunction) {
+        if (aggCall.getArgList().size() != 1
+            || !isLongType(fields.get(aggCall.getArgList().get(0)).getType())
+            || !SqlTypeName.INT_TYPES.contains(
+                aggCall.type.getSqlTypeName())) {
+          return null;
+        }
+      } else {
+        return null;
+      }
+    }
+
+    final BlockBuilder builder = new BlockBuilder(true, parent);
+    final Expression table_ =
+        builder.append("table",
+            Expressions.new_(LongGroupTable.class,
+                Expressions.constant(aggCalls.size())),
+            false);
+    final Expression enumerator_ =
+        builder.append("enumerator",
+            Expressions.call(childExp,
+                BuiltInMethod.ENUMERABLE_ENUMERATOR.method),
+            false);
+
+    final BlockBuilder builder2 = new BlockBuilder(true, builder);
+    final Expression in_ =
+        builder2.append("in",
+            RexToLixTranslator.convert(
+                Expressions.call(enumerator_,
+                    BuiltInMethod.ENUMERATOR_CURRENT.method),
+                inputPhysType.getJavaRowType()),
+            false);
+    final Expression group_ =
+        builder2.append("group",
+            Expressions.call(table_,
+                BuiltInMethod.LONG_GROUP_TABLE_GROUP.method,
+                longField(inputPhysType, in_, key)),
+            false);
+    for (int i = 0; i < aggCalls.size(); i++) {
+      final AggregateCall aggCall = aggCalls.get(i);
+      final Expression value;
+      if (aggCall.getAggregation() instanceof SqlCountAggFunction) {
+        value = Expressions.constant(1L);
+      } else {
+        value = longField(inputPhysType, in_, aggCall.getArgList().get(0));
+      }
+      builder2.add(
+          Expressions.statement(
+              Expressions.call(table_,
+                  BuiltInMethod.LONG_GROUP_TABLE_ADD.method,
+                  Expressions.constant(i), group_, value)));
+    }
+    builder.add(
+        Expressions.while_(
+            Expressions.call(enumerator_,
+                BuiltInMethod.ENUMERATOR_MOVE_NEXT.method),
+            builder2.toBlock()));
+    builder.add(
+        Expressions.statement(
+            Expressions.call(enumerator_,
+                BuiltInMethod.ENUMERATOR_CLOSE.method)));
+
+    final Expression size_ =
+        Expressions.call(table_, BuiltInMethod.LONG_GROUP_TABLE_SIZE.method);
+    final Expression list_ =
+        builder.append("list", Expressions.new_(ArrayList.class, size_),
+            false);
+    final ParameterExpression g_ =
+        Expressions.parameter(int.class, builder.newName("g"));
+    final List<Expression> results = Expressions.list();
+    results.add(
+        fromLong(physType, 0,
+            Expressions.call(table_,
+                BuiltInMethod.LONG_GROUP_TABLE_KEY.method, g_)));
+    for (int i = 0; i < aggCalls.size(); i++) {
+      results.add(
+          fromLong(physType, i + 1,
+              Expressions.call(table_,
+                  BuiltInMethod.LONG_GROUP_TABLE_GET.method,
+                  Expressions.constant(i), g_)));
+    }
+    builder.add(
+        Expressions.for_(
+            Expressions.declare(0, g_, Expressions.constant(0)),
+            Expressions.lessThan(g_, size_),
+            Expressions.preIncrementAssign(g_),
+            Expressions.statement(
+                Expressions.call(list_, BuiltInMethod.COLLECTION_ADD.method,
+                    physType.record(results)))));
+    builder.add(
+        Expressions.return_(null,
+            Expressions.call(BuiltInMethod.AS_ENUMERABLE2.method, list_)));
+    return builder.toBlock();
+  }
+
+  /** Returns whether a type is an integer type that is not nullable, and
+   * therefore can be held in a {@code long} value. */
+  private static boolean isLongType(RelDataType type) {
+    return !type.isNullable()
+        && SqlTypeName.INT_TYPES.contains(type.getSqlTypeName());
+  }
+
+  /** Generates an expression that reads an integer field as a
+   * {@code long}. */
+  private static Expression longField(PhysType physType, Expression row,
+      int field) {
+    return RexToLixTranslator.convert(physType.fieldReference(row, field),
+        long.class);
+  }
+
+  /** Generates an expression that converts a {@code long} value to the
+   * Java type of a field. */
+  private static Expression fromLong(PhysType physType, int field,
+      Expression expression) {
+    final Primitive primitive =
+        Primitive.ofBoxOr(physType.getJavaFieldType(field));
+    if (primitive != null && primitive != Primitive.LONG) {
+      expression = Expressions.convert_(expression, primitive.primitiveClass);
+    }
+    return RexToLixTranslator.convert(expression,
+        physType.getJavaFieldType(field));
+  }
 }
 
 // End EnumerableAggregate.java
@@ -42,14 +42,11 @@
 import org.apache.calcite.runtime.Typed;
 import org.apache.calcite.runtime.Utilities;
 import org.apache.calcite.util.Util;
+import org.apache.calcite.util.javac.CompiledClassCache;
 
 import org.codehaus.commons.compiler.CompileException;
-import org.codehaus.commons.compiler.CompilerFactoryFactory;
-import org.codehaus.commons.compiler.IClassBodyEvaluator;
-import org.codehaus.commons.compiler.ICompilerFactory;
 
 import java.io.IOException;
-import java.io.StringReader;
 import java.util.List;
 import java.util.Map;
 
@@ -118,26 +115,12 @@ static ArrayBindable getArrayBindable(ClassDeclaration expr, String s,
 
   static Bindable getBindable(ClassDeclaration expr, String s, int fieldCount)
       throws CompileException, IOException {
-    ICompilerFactory compilerFactory;
-    try {
-      compilerFactory = CompilerFactoryFactory.getDefaultCompilerFactory();
-    } catch (Exception e) {
-      throw new IllegalStateException(
-          "Unable to instantiate java compiler", e);
-    }
-    IClassBodyEvaluator cbe = compilerFactory.newClassBodyEvaluator();
-    cbe.setClassName(expr.name);
-    cbe.setExtendedClass(Utilities.class);
-    cbe.setImplementedInterfaces(
+    return (Bindable) CompiledClassCache.INSTANCE.createInstance(expr.name,
+        Utilities.class,
         fieldCount == 1
             ? new Class[] {Bindable.class, Typed.class}
-            : new Class[] {ArrayBindable.class});
-    cbe.setParentClassLoader(EnumerableInterpretable.class.getClassLoader());
-    if (CalcitePrepareImpl.DEBUG) {
-      // Add line numbers to the generated janino class
-      cbe.setDebuggingInformation(true, true, true);
-    }
-    return (Bindable) cbe.createInstance(new StringReader(s));
+            : new Class[] {ArrayBindable.class},
+        EnumerableInterpretable.class.getClassLoader(), s);
   }
 
   /** Converts a bindable over scalar values into an array bindable, with each
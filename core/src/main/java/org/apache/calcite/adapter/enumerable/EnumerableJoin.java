@@ -16,6 +16,8 @@
  */
 package org.apache.calcite.adapter.enumerable;
 
+import org.apache.calcite.DataContext;
+import org.apache.calcite.linq4j.MemoryBudget;
 import org.apache.calcite.linq4j.tree.BlockBuilder;
 import org.apache.calcite.linq4j.tree.Expression;
 import org.apache.calcite.linq4j.tree.Expressions;
@@ -177,9 +179,9 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
         physType,
         builder.append(
             Expressions.call(
-                leftExpression,
-                BuiltInMethod.JOIN.method,
+                BuiltInMethod.HASH_JOIN.method,
                 Expressions.list(
+                    leftExpression,
                     rightExpression,
                     leftResult.physType.generateAccessor(leftKeys),
                     rightResult.physType.generateAccessor(rightKeys),
@@ -194,7 +196,15 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
                         Expressions.constant(joinType.generatesNullsOnLeft()))
                     .append(
                         Expressions.constant(
-                            joinType.generatesNullsOnRight())))).toBlock());
+                            joinType.generatesNullsOnRight()))
+                    .append(
+                        Expressions.convert_(
+                            Expressions.call(DataContext.ROOT,
+                                BuiltInMethod.DATA_CONTEXT_GET.method,
+                                Expressions.constant(
+                                    DataContext.Variable.MEMORY_BUDGET
+                                        .camelName)),
+                            MemoryBudget.class)))).toBlock());
   }
 
 }
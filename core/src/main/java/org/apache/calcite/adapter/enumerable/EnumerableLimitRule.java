@@ -21,12 +21,17 @@
 import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.Sort;
+import org.apache.calcite.rex.RexLiteral;
 
 /**
  * Rule to convert an {@link org.apache.calcite.rel.core.Sort} that has
  * {@code offset} or {@code fetch} set to an
  * {@link EnumerableLimit}
  * on top of a "pure" {@code Sort} that has no offset or fetch.
+ *
+ * <p>If the sort has a sort key and a constant {@code fetch}, also converts it
+ * to an {@link EnumerableSort} that retains its offset and fetch, and which
+ * therefore needs to hold only {@code offset + fetch} rows in memory.
  */
 class EnumerableLimitRule extends RelOptRule {
   EnumerableLimitRule() {
@@ -43,6 +48,18 @@ class EnumerableLimitRule extends RelOptRule {
     final RelTraitSet traitSet =
         sort.getTraitSet().replace(EnumerableConvention.INSTANCE);
     RelNode input = sort.getInput();
+    if (!sort.getCollation().getFieldCollations().isEmpty()
+        && sort.fetch instanceof RexLiteral
+        && (sort.offset == null || sort.offset instanceof RexLiteral)) {
+      // Top-N sort. Usually cheaper than the full sort and limit below.
+      call.transformTo(
+          EnumerableSort.create(
+              convert(input,
+                  input.getTraitSet().replace(EnumerableConvention.INSTANCE)),
+              sort.getCollation(),
+              sort.offset,
+              sort.fetch));
+    }
     if (!sort.getCollation().getFieldCollations().isEmpty()) {
       // Create a sort with the same sort key, but no offset or fetch.
       input = sort.copy(
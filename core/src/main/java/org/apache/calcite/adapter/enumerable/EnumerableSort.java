@@ -16,20 +16,37 @@
  */
 package org.apache.calcite.adapter.enumerable;
 
+import org.apache.calcite.DataContext;
+import org.apache.calcite.linq4j.MemoryBudget;
 import org.apache.calcite.linq4j.tree.BlockBuilder;
 import org.apache.calcite.linq4j.tree.Expression;
 import org.apache.calcite.linq4j.tree.Expressions;
 import org.apache.calcite.plan.RelOptCluster;
+import org.apache.calcite.plan.RelOptCost;
+import org.apache.calcite.plan.RelOptPlanner;
 import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.rel.RelCollation;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.Sort;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.rex.RexDynamicParam;
+import org.apache.calcite.rex.RexLiteral;
 import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.util.BuiltInMethod;
 import org.apache.calcite.util.Pair;
+import org.apache.calcite.util.Util;
+
+import java.util.Comparator;
 
 /** Implementation of {@link org.apache.calcite.rel.core.Sort} in
- * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention enumerable calling convention}. */
+ * {@link org.apache.calcite.adapter.enumerable.EnumerableConvention enumerable calling convention}.
+ *
+ * <p>If {@code fetch} is set (a "top-N" sort), rows are held in a bounded
+ * heap of {@code offset + fetch} rows, rather than sorting the whole input
+ * and then applying an {@link EnumerableLimit}. Otherwise, the sort holds no
+ * more rows in memory than the statement's
+ * {@link org.apache.calcite.linq4j.MemoryBudget} allows, and spills sorted
+ * runs to disk if necessary. */
 public class EnumerableSort extends Sort implements EnumerableRel {
   /**
    * Creates an EnumerableSort.
@@ -64,6 +81,22 @@ public static EnumerableSort create(RelNode child, RelCollation collation,
         offset, fetch);
   }
 
+  @Override public RelOptCost computeSelfCost(RelOptPlanner planner) {
+    if (!(fetch instanceof RexLiteral)) {
+      return super.computeSelfCost(planner);
+    }
+    // A top-N sort costs n log k, where k = offset + fetch is the size of
+    // its heap, rather than the n log n of a full sort. The cost has the
+    // same form as in Sort, so that the two are comparable.
+    final double rowCount = RelMetadataQuery.getRowCount(this);
+    final double limit = RexLiteral.intValue(fetch)
+        + (offset instanceof RexLiteral ? RexLiteral.intValue(offset) : 0);
+    final double bytesPerRow = getRowType().getFieldCount() * 4;
+    return planner.getCostFactory().makeCost(
+        rowCount * Math.log(Math.max(limit, Math.E)) * bytesPerRow, rowCount,
+        0);
+  }
+
   public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
     final BlockBuilder builder = new BlockBuilder();
     final EnumerableRel child = (EnumerableRel) getInput();
@@ -81,16 +114,65 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
         inputPhysType.generateCollationKey(
             collation.getFieldCollations());
 
-    builder.add(
-        Expressions.return_(null,
-            Expressions.call(childExp,
-                BuiltInMethod.ORDER_BY.method,
-                Expressions.list(
-                    builder.append("keySelector", pair.left))
-                    .appendIfNotNull(
-                        builder.appendIfNotNull("comparator", pair.right)))));
+    final Expression keySelector = builder.append("keySelector", pair.left);
+    if (fetch instanceof RexLiteral) {
+      builder.add(
+          Expressions.return_(null,
+              Expressions.call(BuiltInMethod.ORDER_BY_LIMIT.method,
+                  childExp,
+                  keySelector,
+                  Util.first(
+                      builder.appendIfNotNull("comparator", pair.right),
+                      Expressions.constant(null, Comparator.class)),
+                  offset == null
+                      ? Expressions.constant(0)
+                      : getExpression(offset),
+                  getExpression(fetch))));
+      return implementor.result(physType, builder.toBlock());
+    }
+    Expression v =
+        builder.append("sorted",
+            Expressions.call(BuiltInMethod.ORDER_BY_SPILL.method,
+                childExp,
+                keySelector,
+                Util.first(
+                    builder.appendIfNotNull("comparator", pair.right),
+                    Expressions.constant(null, Comparator.class)),
+                Expressions.convert_(
+                    Expressions.call(DataContext.ROOT,
+                        BuiltInMethod.DATA_CONTEXT_GET.method,
+                        Expressions.constant(
+                            DataContext.Variable.MEMORY_BUDGET.camelName)),
+                    MemoryBudget.class)));
+    // If fetch is not a literal, such as a dynamic parameter, the size of
+    // the heap is not known, so sort fully and then apply the limit.
+    if (offset != null) {
+      v = Expressions.call(v, BuiltInMethod.SKIP.method,
+          getExpression(offset));
+    }
+    if (fetch != null) {
+      v = Expressions.call(v, BuiltInMethod.TAKE.method,
+          getExpression(fetch));
+    }
+    builder.add(Expressions.return_(null, v));
     return implementor.result(physType, builder.toBlock());
   }
+
+  /** Returns an expression for the value of {@code offset} or {@code fetch},
+   * which is either a literal or a dynamic parameter. */
+  private static Expression getExpression(RexNode node) {
+    if (node instanceof RexDynamicParam) {
+      final RexDynamicParam param = (RexDynamicParam) node;
+      return Expressions.call(
+          Expressions.convert_(
+              Expressions.call(DataContext.ROOT,
+                  BuiltInMethod.DATA_CONTEXT_GET.method,
+                  Expressions.constant("?" + param.getIndex())),
+              Number.class),
+          "intValue");
+    }
+    return Expressions.constant(RexLiteral.intValue(node));
+  }
 }
 
 // End EnumerableSort.java
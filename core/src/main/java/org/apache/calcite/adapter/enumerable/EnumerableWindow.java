@@ -20,6 +20,7 @@
 import org.apache.calcite.adapter.enumerable.impl.WinAggResetContextImpl;
 import org.apache.calcite.adapter.enumerable.impl.WinAggResultContextImpl;
 import org.apache.calcite.adapter.java.JavaTypeFactory;
+import org.apache.calcite.linq4j.function.Function1;
 import org.apache.calcite.linq4j.tree.BinaryExpression;
 import org.apache.calcite.linq4j.tree.BlockBuilder;
 import org.apache.calcite.linq4j.tree.BlockStatement;
@@ -34,10 +35,12 @@
 import org.apache.calcite.plan.RelOptPlanner;
 import org.apache.calcite.plan.RelTraitSet;
 import org.apache.calcite.prepare.CalcitePrepareImpl;
+import org.apache.calcite.rel.RelCollation;
 import org.apache.calcite.rel.RelFieldCollation;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.AggregateCall;
 import org.apache.calcite.rel.core.Window;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.rex.RexInputRef;
@@ -47,6 +50,7 @@
 import org.apache.calcite.runtime.SortedMultiMap;
 import org.apache.calcite.sql.SqlAggFunction;
 import org.apache.calcite.util.BuiltInMethod;
+import org.apache.calcite.util.ImmutableBitSet;
 import org.apache.calcite.util.Pair;
 import org.apache.calcite.util.Util;
 
@@ -172,13 +176,14 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
 
     PhysType inputPhysType = result.physType;
 
-    ParameterExpression prevStart =
-        Expressions.parameter(int.class, builder.newName("prevStart"));
-    ParameterExpression prevEnd =
-        Expressions.parameter(int.class, builder.newName("prevEnd"));
-
-    builder.add(Expressions.declare(0, prevStart, null));
-    builder.add(Expressions.declare(0, prevEnd, null));
+    // If the input is sorted, and each group in turn finds it sorted on its
+    // partition and order keys, a group can read one partition at a time,
+    // and emit the partition's output rows before reading the next. Its
+    // output is in the same order as its input, so the next group can do the
+    // same.
+    final List<RelCollation> inputCollations =
+        RelMetadataQuery.collations(child);
+    boolean sorted = inputCollations != null;
 
     for (int windowIdx = 0; windowIdx < groups.size(); windowIdx++) {
       Group group = groups.get(windowIdx);
@@ -196,11 +201,44 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
               inputPhysType.generateComparator(
                   group.collation()));
 
-      Pair<Expression, Expression> partitionIterator =
-          getPartitionIterator(builder, source_, inputPhysType, group,
-              comparator_);
-      final Expression collectionExpr = partitionIterator.left;
-      final Expression iterator_ = partitionIterator.right;
+      sorted = sorted && isSorted(inputCollations, group);
+      final Expression collectionExpr;
+      final Expression iterator_;
+      if (sorted) {
+        collectionExpr = null;
+        iterator_ = null;
+      } else {
+        final Pair<Expression, Expression> partitionIterator =
+            getPartitionIterator(builder, source_, inputPhysType, group,
+                comparator_);
+        collectionExpr = partitionIterator.left;
+        iterator_ = partitionIterator.right;
+      }
+
+      // builder3 generates the code that computes the output rows of one
+      // partition. If the input is sorted, that code is the body of a
+      // function that is applied to each partition in turn as the output is
+      // consumed; otherwise it is the body of a loop over all partitions, and
+      // "builder" holds the state and the output list.
+      final BlockBuilder builder3 = new BlockBuilder();
+      final BlockBuilder stateBuilder = sorted ? builder3 : builder;
+      final Expression rows_ =
+          sorted
+              ? Expressions.parameter(Object[].class, "rows")
+              : builder3.append(
+                  "rows",
+                  Expressions.convert_(
+                      Expressions.call(
+                          iterator_, BuiltInMethod.ITERATOR_NEXT.method),
+                      Object[].class),
+                  false);
+
+      final ParameterExpression prevStart =
+          Expressions.parameter(int.class, stateBuilder.newName("prevStart"));
+      final ParameterExpression prevEnd =
+          Expressions.parameter(int.class, stateBuilder.newName("prevEnd"));
+      stateBuilder.add(Expressions.declare(0, prevStart, null));
+      stateBuilder.add(Expressions.declare(0, prevEnd, null));
 
       List<AggImpState> aggs = new ArrayList<AggImpState>();
       List<AggregateCall> aggregateCalls = group.getAggregateCalls(this);
@@ -222,28 +260,24 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
               typeFactory, outputRowType, pref.prefer(result.format));
 
       final Expression list_ =
-          builder.append(
+          stateBuilder.append(
               "list",
-              Expressions.new_(
-                  ArrayList.class,
-                  Expressions.call(
-                      collectionExpr, BuiltInMethod.COLLECTION_SIZE.method)),
+              sorted
+                  ? Expressions.new_(ArrayList.class,
+                      Expressions.field(rows_, "length"))
+                  : collectionExpr == null
+                  ? Expressions.new_(ArrayList.class)
+                  : Expressions.new_(
+                      ArrayList.class,
+                      Expressions.call(
+                          collectionExpr,
+                          BuiltInMethod.COLLECTION_SIZE.method)),
               false);
 
       Pair<Expression, Expression> collationKey =
           getRowCollationKey(builder, inputPhysType, group, windowIdx);
       Expression keySelector = collationKey.left;
       Expression keyComparator = collationKey.right;
-      final BlockBuilder builder3 = new BlockBuilder();
-      final Expression rows_ =
-          builder3.append(
-              "rows",
-              Expressions.convert_(
-                  Expressions.call(
-                      iterator_, BuiltInMethod.ITERATOR_NEXT.method),
-                  Object[].class),
-              false);
-
       builder3.add(
           Expressions.statement(
               Expressions.assign(prevStart, Expressions.constant(-1))));
@@ -283,7 +317,7 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
                 outputPhysType.getJavaFieldType(i)));
       }
 
-      declareAndResetState(typeFactory, builder, result, windowIdx, aggs,
+      declareAndResetState(typeFactory, stateBuilder, result, windowIdx, aggs,
           outputPhysType, outputRow);
 
       // There are assumptions that minX==0. If ever change this, look for
@@ -489,25 +523,48 @@ public List<RexNode> apply(AggImpState agg) {
               Expressions.preIncrementAssign(i_),
               builder4.toBlock()));
 
-      builder.add(
-          Expressions.while_(
-              Expressions.call(
-                  iterator_,
-                  BuiltInMethod.ITERATOR_HAS_NEXT.method),
-              builder3.toBlock()));
-      builder.add(
-          Expressions.statement(
-              Expressions.call(
-                  collectionExpr,
-                  BuiltInMethod.MAP_CLEAR.method)));
-
       // We're not assigning to "source". For each group, create a new
       // final variable called "source" or "sourceN".
-      source_ =
-          builder.append(
-              "source",
-              Expressions.call(
-                  BuiltInMethod.AS_ENUMERABLE.method, list_));
+      if (sorted) {
+        //   final Enumerable source1 =
+        //       SortedMultiMap.mapSortedPartitions(source, keySelector,
+        //           new Function1<Object[], List>() {
+        //             public List apply(Object[] rows) {
+        //               ...
+        //               return list;
+        //             }
+        //           });
+        builder3.add(Expressions.return_(null, list_));
+        source_ =
+            builder.append(
+                "source",
+                Expressions.call(
+                    null,
+                    BuiltInMethod.SORTED_MULTI_MAP_SORTED_PARTITIONS.method,
+                    source_,
+                    getSortedPartitionKeySelector(inputPhysType, group),
+                    Expressions.lambda(Function1.class, builder3.toBlock(),
+                        (ParameterExpression) rows_)));
+      } else {
+        builder.add(
+            Expressions.while_(
+                Expressions.call(
+                    iterator_,
+                    BuiltInMethod.ITERATOR_HAS_NEXT.method),
+                builder3.toBlock()));
+        if (collectionExpr != null) {
+          builder.add(
+              Expressions.statement(
+                  Expressions.call(
+                      collectionExpr,
+                      BuiltInMethod.MAP_CLEAR.method)));
+        }
+        source_ =
+            builder.append(
+                "source",
+                Expressions.call(
+                    BuiltInMethod.AS_ENUMERABLE.method, list_));
+      }
 
       inputPhysType = outputPhysType;
     }
@@ -635,6 +692,57 @@ public Expression getPartitionRowCount() {
     };
   }
 
+  /** Returns whether one of the collations of the input sorts on the
+   * partition keys of a group (in any order and direction) followed by the
+   * group's order keys. */
+  private static boolean isSorted(List<RelCollation> collations,
+      Group group) {
+    final int keyCount = group.keys.cardinality();
+    for (RelCollation collation : collations) {
+      final List<RelFieldCollation> fieldCollations =
+          collation.getFieldCollations();
+      if (fieldCollations.size() < keyCount) {
+        continue;
+      }
+      final ImmutableBitSet.Builder keys = ImmutableBitSet.builder();
+      for (RelFieldCollation fieldCollation
+          : fieldCollations.subList(0, keyCount)) {
+        keys.set(fieldCollation.getFieldIndex());
+      }
+      if (keys.build().equals(group.keys)
+          && Util.startsWith(
+              fieldCollations.subList(keyCount, fieldCollations.size()),
+              group.orderKeys.getFieldCollations())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Generates the partition key selector for a source that is already
+   * sorted on the group's partition and order keys; null if the group has
+   * no partition keys.
+   *
+   * <blockquote><pre>
+   * new Function1&lt;Employee, Integer&gt;() {
+   *   public Integer apply(Employee v) {
+   *     return v.deptno;
+   *   }
+   * }
+   * </pre></blockquote> */
+  private Expression getSortedPartitionKeySelector(PhysType inputPhysType,
+      Group group) {
+    if (group.keys.isEmpty()) {
+      return Expressions.constant(null, Function1.class);
+    }
+    final ParameterExpression v_ =
+        Expressions.parameter(inputPhysType.getJavaRowType(), "v");
+    return Expressions.lambda(
+        inputPhysType.selector(v_, group.keys.toList(),
+            JavaRowFormat.CUSTOM),
+        v_);
+  }
+
   private Pair<Expression, Expression> getPartitionIterator(
       BlockBuilder builder,
       Expression source_,
@@ -24,6 +24,7 @@
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeField;
 import org.apache.calcite.rex.RexCall;
+import org.apache.calcite.rex.RexDynamicParam;
 import org.apache.calcite.rex.RexInputRef;
 import org.apache.calcite.rex.RexLiteral;
 import org.apache.calcite.rex.RexLocalRef;
@@ -34,6 +35,7 @@
 import org.apache.calcite.sql.SqlCall;
 import org.apache.calcite.sql.SqlDataTypeSpec;
 import org.apache.calcite.sql.SqlDialect;
+import org.apache.calcite.sql.SqlDynamicParam;
 import org.apache.calcite.sql.SqlIdentifier;
 import org.apache.calcite.sql.SqlJoin;
 import org.apache.calcite.sql.SqlLiteral;
@@ -141,6 +143,11 @@ SqlNode toSql(RexProgram program, RexNode rex) {
       case INPUT_REF:
         return field(((RexInputRef) rex).getIndex());
 
+      case DYNAMIC_PARAM:
+        // Pass the parameter through to the JDBC data source, so that the
+        // SQL does not change when the parameter's value changes.
+        return new SqlDynamicParam(((RexDynamicParam) rex).getIndex(), POS);
+
       case LITERAL:
         final RexLiteral literal = (RexLiteral) rex;
         if (literal.getTypeName() == SqlTypeName.SYMBOL) {
@@ -22,6 +22,7 @@
 import org.apache.calcite.rel.type.RelDataTypeImpl;
 import org.apache.calcite.rel.type.RelDataTypeSystem;
 import org.apache.calcite.rel.type.RelProtoDataType;
+import org.apache.calcite.runtime.ResultSetEnumerable;
 import org.apache.calcite.schema.Function;
 import org.apache.calcite.schema.Schema;
 import org.apache.calcite.schema.SchemaFactory;
@@ -61,6 +62,8 @@ public class JdbcSchema implements Schema {
   final String schema;
   public final SqlDialect dialect;
   final JdbcConvention convention;
+  final int fetchSize;
+  final int queryTimeout;
   private ImmutableMap<String, JdbcTable> tableMap;
 
   /**
@@ -74,12 +77,34 @@ public class JdbcSchema implements Schema {
    */
   public JdbcSchema(DataSource dataSource, SqlDialect dialect,
       JdbcConvention convention, String catalog, String schema) {
+    this(dataSource, dialect, convention, catalog, schema, 0,
+        ResultSetEnumerable.DEFAULT_QUERY_TIMEOUT);
+  }
+
+  /**
+   * Creates a JDBC schema, specifying how queries are executed.
+   *
+   * @param dataSource Data source
+   * @param dialect SQL dialect
+   * @param convention Calling convention
+   * @param catalog Catalog name, or null
+   * @param schema Schema name pattern
+   * @param fetchSize Number of rows to fetch at a time, or 0 to use the
+   *                  driver's default
+   * @param queryTimeout Number of seconds to wait for a query to execute, or
+   *                     0 to wait indefinitely
+   */
+  public JdbcSchema(DataSource dataSource, SqlDialect dialect,
+      JdbcConvention convention, String catalog, String schema,
+      int fetchSize, int queryTimeout) {
     super();
     this.dataSource = dataSource;
     this.dialect = dialect;
     this.convention = convention;
     this.catalog = catalog;
     this.schema = schema;
+    this.fetchSize = fetchSize;
+    this.queryTimeout = queryTimeout;
     assert dialect != null;
     assert dataSource != null;
   }
@@ -90,12 +115,25 @@ public static JdbcSchema create(
       DataSource dataSource,
       String catalog,
       String schema) {
+    return create(parentSchema, name, dataSource, catalog, schema, 0,
+        ResultSetEnumerable.DEFAULT_QUERY_TIMEOUT);
+  }
+
+  public static JdbcSchema create(
+      SchemaPlus parentSchema,
+      String name,
+      DataSource dataSource,
+      String catalog,
+      String schema,
+      int fetchSize,
+      int queryTimeout) {
     final Expression expression =
         Schemas.subSchemaExpression(parentSchema, name, JdbcSchema.class);
     final SqlDialect dialect = createDialect(dataSource);
     final JdbcConvention convention =
         JdbcConvention.of(dialect, expression, name);
-    return new JdbcSchema(dataSource, dialect, convention, catalog, schema);
+    return new JdbcSchema(dataSource, dialect, convention, catalog, schema,
+        fetchSize, queryTimeout);
   }
 
   /**
@@ -128,8 +166,14 @@ public static JdbcSchema create(
     }
     String jdbcCatalog = (String) operand.get("jdbcCatalog");
     String jdbcSchema = (String) operand.get("jdbcSchema");
+    final Number jdbcFetchSize = (Number) operand.get("jdbcFetchSize");
+    final Number jdbcQueryTimeout = (Number) operand.get("jdbcQueryTimeout");
     return JdbcSchema.create(parentSchema, name, dataSource, jdbcCatalog,
-        jdbcSchema);
+        jdbcSchema,
+        jdbcFetchSize == null ? 0 : jdbcFetchSize.intValue(),
+        jdbcQueryTimeout == null
+            ? ResultSetEnumerable.DEFAULT_QUERY_TIMEOUT
+            : jdbcQueryTimeout.intValue());
   }
 
   /** Returns a suitable SQL dialect for the given data source. */
@@ -161,6 +205,16 @@ public DataSource getDataSource() {
     return dataSource;
   }
 
+  // Used by generated code.
+  public int getFetchSize() {
+    return fetchSize;
+  }
+
+  // Used by generated code.
+  public int getQueryTimeout() {
+    return queryTimeout;
+  }
+
   public Expression getExpression(SchemaPlus parentSchema, String name) {
     return Schemas.subSchemaExpression(parentSchema, name, JdbcSchema.class);
   }
@@ -388,7 +442,9 @@ private static void close(
    *         jdbcDriver: 'com.mysql.jdbc.Driver',
    *         jdbcUrl: 'jdbc:mysql://localhost/foodmart',
    *         jdbcUser: 'foodmart',
-   *         jdbcPassword: 'foodmart'
+   *         jdbcPassword: 'foodmart',
+   *         jdbcFetchSize: 1000,
+   *         jdbcQueryTimeout: 60
    *       }
    *     }
    *   ]
@@ -163,6 +163,7 @@ public Enumerable<Object[]> scan(DataContext root) {
     final JavaTypeFactory typeFactory = root.getTypeFactory();
     final SqlString sql = generateSql();
     return ResultSetEnumerable.of(jdbcSchema.getDataSource(), sql.getSql(),
+        new Object[0], jdbcSchema.getFetchSize(), jdbcSchema.getQueryTimeout(),
         JdbcUtils.ObjectArrayRowBuilder.factory(fieldClasses(typeFactory)));
   }
 
@@ -186,6 +187,9 @@ public Enumerator<T> enumerator() {
       final Enumerable<T> enumerable = (Enumerable<T>) ResultSetEnumerable.of(
           jdbcSchema.getDataSource(),
           sql.getSql(),
+          new Object[0],
+          jdbcSchema.getFetchSize(),
+          jdbcSchema.getQueryTimeout(),
           JdbcUtils.ObjectArrayRowBuilder.factory(fieldClasses(typeFactory)));
       return enumerable.enumerator();
     }
@@ -42,6 +42,7 @@
 import org.apache.calcite.schema.Schemas;
 import org.apache.calcite.sql.SqlDialect;
 import org.apache.calcite.sql.type.SqlTypeName;
+import org.apache.calcite.sql.util.SqlString;
 import org.apache.calcite.util.BuiltInMethod;
 
 import java.lang.reflect.Method;
@@ -77,7 +78,9 @@ protected JdbcToEnumerableConverter(
 
   public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
     // Generate:
-    //   ResultSetEnumerable.of(schema.getDataSource(), "select ...")
+    //   ResultSetEnumerable.of(schema.getDataSource(), "select ...",
+    //       new Object[] {root.get("?0"), ...}, schema.getFetchSize(),
+    //       schema.getQueryTimeout(), rowBuilderFactory)
     final BlockBuilder builder0 = new BlockBuilder(false);
     final JdbcRel child = (JdbcRel) getInput();
     final PhysType physType =
@@ -86,13 +89,24 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
             pref.prefer(JavaRowFormat.CUSTOM));
     final JdbcConvention jdbcConvention =
         (JdbcConvention) child.getConvention();
-    String sql = generateSql(jdbcConvention.dialect);
+    final SqlString sqlString = generateSql(jdbcConvention.dialect);
+    final String sql = sqlString.getSql();
     if (CalcitePrepareImpl.DEBUG) {
       System.out.println("[" + sql + "]");
     }
     Hook.QUERY_PLAN.run(sql);
     final Expression sql_ =
         builder0.append("sql", Expressions.constant(sql));
+    final List<Expression> parameters = new ArrayList<Expression>();
+    for (int index : sqlString.getDynamicParameters()) {
+      parameters.add(
+          Expressions.call(implementor.getRootExpression(),
+              BuiltInMethod.DATA_CONTEXT_GET.method,
+              Expressions.constant("?" + index)));
+    }
+    final Expression parameters_ =
+        builder0.append("parameters",
+            Expressions.newArrayInit(Object.class, parameters));
     final int fieldCount = getRowType().getFieldCount();
     BlockBuilder builder = new BlockBuilder();
     final ParameterExpression resultSet_ =
@@ -148,16 +162,22 @@ public Result implement(EnumerableRelImplementor implementor, Prefer pref) {
                                                 RuntimeException.class,
                                                 e_)))))))),
                 resultSet_));
+    final Expression schema_ =
+        builder0.append("schema",
+            Schemas.unwrap(jdbcConvention.expression, JdbcSchema.class));
     final Expression enumerable =
         builder0.append(
             "enumerable",
             Expressions.call(
-                BuiltInMethod.RESULT_SET_ENUMERABLE_OF.method,
-                Expressions.call(
-                    Schemas.unwrap(jdbcConvention.expression,
-                        JdbcSchema.class),
+                BuiltInMethod.RESULT_SET_ENUMERABLE_OF_PREPARED.method,
+                Expressions.call(schema_,
                     BuiltInMethod.JDBC_SCHEMA_DATA_SOURCE.method),
                 sql_,
+                parameters_,
+                Expressions.call(schema_,
+                    BuiltInMethod.JDBC_SCHEMA_FETCH_SIZE.method),
+                Expressions.call(schema_,
+                    BuiltInMethod.JDBC_SCHEMA_QUERY_TIMEOUT.method),
                 rowBuilderFactory_));
     builder0.add(
         Expressions.return_(null, enumerable));
@@ -278,13 +298,13 @@ private String jdbcGetMethod(Primitive primitive) {
         : "get" + SqlFunctions.initcap(primitive.primitiveName);
   }
 
-  private String generateSql(SqlDialect dialect) {
+  private SqlString generateSql(SqlDialect dialect) {
     final JdbcImplementor jdbcImplementor =
         new JdbcImplementor(dialect,
             (JavaTypeFactory) getCluster().getTypeFactory());
     final JdbcImplementor.Result result =
         jdbcImplementor.visitChild(0, getInput());
-    return result.asQuery().toSqlString(dialect).getSql();
+    return result.asQuery().toSqlString(dialect);
   }
 
   /** Whether this JDBC driver needs you to pass a Calendar object to methods
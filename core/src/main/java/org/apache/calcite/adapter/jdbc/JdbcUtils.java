@@ -208,6 +208,11 @@ private static Date shift(Date v) {
   public static class DataSourcePool {
     public static final DataSourcePool INSTANCE = new DataSourcePool();
 
+    /** Maximum number of prepared statements that each connection keeps
+     * open. When the limit is reached, idle statements are closed, oldest
+     * first. */
+    private static final int MAX_OPEN_PREPARED_STATEMENTS = 100;
+
     private final LoadingCache<List<String>, BasicDataSource> cache =
         CacheBuilder.newBuilder().softValues().build(
             new CacheLoader<List<String>, BasicDataSource>() {
@@ -217,6 +222,12 @@ public static class DataSourcePool {
                 dataSource.setUsername(key.get(1));
                 dataSource.setPassword(key.get(2));
                 dataSource.setDriverClassName(key.get(3));
+                // Each pooled connection keeps the statements that it has
+                // prepared, so that running the same query again does not
+                // require the database to parse it again.
+                dataSource.setPoolPreparedStatements(true);
+                dataSource.setMaxOpenPreparedStatements(
+                    MAX_OPEN_PREPARED_STATEMENTS);
                 return dataSource;
               }
             });
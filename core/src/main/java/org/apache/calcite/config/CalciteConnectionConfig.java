@@ -48,6 +48,18 @@ public interface CalciteConnectionConfig extends ConnectionConfig {
   boolean forceDecorrelate();
   /** @see CalciteConnectionProperty#TYPE_SYSTEM */
   <T> T typeSystem(Class<T> typeSystemClass, T defaultTypeSystem);
+  /** @see CalciteConnectionProperty#PLAN_CACHE_SIZE */
+  int planCacheSize();
+  /** @see CalciteConnectionProperty#MEMORY_BUDGET */
+  long memoryBudget();
+  /** @see CalciteConnectionProperty#AGGREGATE_PARALLELISM */
+  int aggregateParallelism();
+  /** @see CalciteConnectionProperty#INTERPRETER_PIPELINED */
+  boolean interpreterPipelined();
+  /** @see CalciteConnectionProperty#PLANNER_TIMEOUT */
+  long plannerTimeout();
+  /** @see CalciteConnectionProperty#PLANNER_RULE_FIRE_LIMIT */
+  int plannerRuleFireLimit();
 }
 
 // End CalciteConnectionConfig.java
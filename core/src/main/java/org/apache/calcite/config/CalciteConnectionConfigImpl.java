@@ -92,6 +92,36 @@ public <T> T typeSystem(Class<T> typeSystemClass, T defaultTypeSystem) {
     return CalciteConnectionProperty.TYPE_SYSTEM.wrap(properties)
         .getPlugin(typeSystemClass, defaultTypeSystem);
   }
+
+  public int planCacheSize() {
+    return CalciteConnectionProperty.PLAN_CACHE_SIZE.wrap(properties)
+        .getInt();
+  }
+
+  public long memoryBudget() {
+    return CalciteConnectionProperty.MEMORY_BUDGET.wrap(properties)
+        .getLong();
+  }
+
+  public int aggregateParallelism() {
+    return CalciteConnectionProperty.AGGREGATE_PARALLELISM.wrap(properties)
+        .getInt();
+  }
+
+  public boolean interpreterPipelined() {
+    return CalciteConnectionProperty.INTERPRETER_PIPELINED.wrap(properties)
+        .getBoolean();
+  }
+
+  public long plannerTimeout() {
+    return CalciteConnectionProperty.PLANNER_TIMEOUT.wrap(properties)
+        .getLong();
+  }
+
+  public int plannerRuleFireLimit() {
+    return CalciteConnectionProperty.PLANNER_RULE_FIRE_LIMIT.wrap(properties)
+        .getInt();
+  }
 }
 
 // End CalciteConnectionConfigImpl.java
@@ -79,7 +79,42 @@ public enum CalciteConnectionProperty implements ConnectionProperty {
   /** Type system. The name of a class that implements
    * {@link org.apache.calcite.rel.type.RelDataTypeSystem} and has a public
    * default constructor or an {@code INSTANCE} constant. */
-  TYPE_SYSTEM("typeSystem", Type.PLUGIN, null, false);
+  TYPE_SYSTEM("typeSystem", Type.PLUGIN, null, false),
+
+  /** Maximum number of prepared plans to cache per connection. A statement
+   * whose SQL text, configuration and schema version match a cached plan
+   * skips parsing, validation, planning and code generation. If 0 (the
+   * default), plans are not cached. */
+  PLAN_CACHE_SIZE("planCacheSize", Type.NUMBER, 0, false),
+
+  /** Maximum number of bytes of memory that the operators of a statement may
+   * use to hold rows. An operator that exceeds it, such as a sort or the
+   * build side of a hash join, writes rows to temporary files. If 0 (the
+   * default), memory is unbounded and operators never spill. */
+  MEMORY_BUDGET("memoryBudget", Type.NUMBER, 0L, false),
+
+  /** Number of threads that a hash aggregate may use. If greater than 1,
+   * rows are sent to threads by the hash of their GROUP BY key, and each
+   * thread aggregates into its own hash table. Default is 1. */
+  AGGREGATE_PARALLELISM("aggregateParallelism", Type.NUMBER, 1, false),
+
+  /** Whether the interpreter runs in pipelined mode. If true, each node of a
+   * plan that is executed by the interpreter runs in its own thread, and
+   * nodes pass rows to each other through bounded queues. If false (the
+   * default), nodes run one after another on the calling thread. */
+  INTERPRETER_PIPELINED("interpreterPipelined", Type.BOOLEAN, false, false),
+
+  /** Maximum time, in milliseconds, that the Volcano planner spends firing
+   * rules for a statement. When the time is up, the planner returns the
+   * cheapest plan it has found so far (but it carries on until it has found
+   * at least one). If 0 (the default), there is no limit. */
+  PLANNER_TIMEOUT("plannerTimeout", Type.NUMBER, 0L, false),
+
+  /** Maximum number of rule matches that the Volcano planner fires for a
+   * statement. Like {@link #PLANNER_TIMEOUT}, if the limit is reached the
+   * planner returns the cheapest plan found so far. If 0 (the default),
+   * there is no limit. */
+  PLANNER_RULE_FIRE_LIMIT("plannerRuleFireLimit", Type.NUMBER, 0, false);
 
   private final String camelName;
   private final Type type;
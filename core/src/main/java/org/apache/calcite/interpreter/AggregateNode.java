@@ -90,10 +90,12 @@ public AggregateNode(Interpreter interpreter, Aggregate rel) {
   }
 
   public void run() throws InterruptedException {
-    Row r;
-    while ((r = source.receive()) != null) {
-      for (Grouping group : groups) {
-        group.send(r);
+    List<Row> rows;
+    while ((rows = source.receiveBatch()) != null) {
+      for (Row r : rows) {
+        for (Grouping group : groups) {
+          group.send(r);
+        }
       }
     }
 
@@ -32,6 +32,8 @@
 import org.apache.calcite.rel.InvalidRelException;
 import org.apache.calcite.rel.RelCollation;
 import org.apache.calcite.rel.RelCollationTraitDef;
+import org.apache.calcite.rel.RelCollations;
+import org.apache.calcite.rel.RelFieldCollation;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.RelWriter;
 import org.apache.calcite.rel.convert.ConverterRule;
@@ -55,11 +57,13 @@
 import org.apache.calcite.rel.logical.LogicalValues;
 import org.apache.calcite.rel.logical.LogicalWindow;
 import org.apache.calcite.rel.metadata.RelMdCollation;
+import org.apache.calcite.rel.metadata.RelMdUtil;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeFactory;
 import org.apache.calcite.rel.type.RelDataTypeField;
 import org.apache.calcite.rex.RexLiteral;
 import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.rex.RexUtil;
 import org.apache.calcite.schema.FilterableTable;
 import org.apache.calcite.schema.ProjectableFilterableTable;
 import org.apache.calcite.schema.ScannableTable;
@@ -70,6 +74,7 @@
 import com.google.common.base.Preconditions;
 import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 
 import java.util.List;
 import java.util.Set;
@@ -178,7 +183,7 @@ public static BindableTableScan create(RelOptCluster cluster,
     /** Creates a BindableTableScan. */
     public static BindableTableScan create(RelOptCluster cluster,
         RelOptTable relOptTable, List<RexNode> filters,
-        List<Integer> projects) {
+        final List<Integer> projects) {
       final Table table = relOptTable.unwrap(Table.class);
       final RelTraitSet traitSet =
           cluster.traitSetOf(BindableConvention.INSTANCE)
@@ -186,7 +191,8 @@ public static BindableTableScan create(RelOptCluster cluster,
                   new Supplier<List<RelCollation>>() {
                     public List<RelCollation> get() {
                       if (table != null) {
-                        return table.getStatistic().getCollations();
+                        return collations(
+                            table.getStatistic().getCollations(), projects);
                       }
                       return ImmutableList.of();
                     }
@@ -195,6 +201,30 @@ public List<RelCollation> get() {
           ImmutableList.copyOf(filters), ImmutableIntList.copyOf(projects));
     }
 
+    /** Returns the collations of a table, re-mapped to the columns that a
+     * scan projects. Each collation is truncated before its first field that
+     * is not projected. */
+    public static List<RelCollation> collations(
+        List<RelCollation> collations, List<Integer> projects) {
+      final ImmutableList.Builder<RelCollation> builder =
+          ImmutableList.builder();
+      for (RelCollation collation : collations) {
+        final List<RelFieldCollation> fieldCollations = Lists.newArrayList();
+        for (RelFieldCollation fieldCollation
+            : collation.getFieldCollations()) {
+          final int i = projects.indexOf(fieldCollation.getFieldIndex());
+          if (i < 0) {
+            break;
+          }
+          fieldCollations.add(fieldCollation.copy(i));
+        }
+        if (!fieldCollations.isEmpty()) {
+          builder.add(RelCollations.of(fieldCollations));
+        }
+      }
+      return builder.build();
+    }
+
     @Override public RelDataType deriveRowType() {
       final RelDataTypeFactory.FieldInfoBuilder builder =
           getCluster().getTypeFactory().builder();
@@ -220,6 +250,15 @@ public Class<Object[]> getElementType() {
       return super.computeSelfCost(planner).multiplyBy(0.01d);
     }
 
+    @Override public double getRows() {
+      // Estimate as a Filter on the table would, so that pushing filters into
+      // the scan does not make the rest of the plan look more expensive.
+      return super.getRows()
+          * RelMdUtil.getTableSelectivity(table,
+              RexUtil.composeConjunction(getCluster().getRexBuilder(),
+                  filters, true));
+    }
+
     public static boolean canHandle(RelOptTable table) {
       return table.unwrap(ScannableTable.class) != null
           || table.unwrap(FilterableTable.class) != null
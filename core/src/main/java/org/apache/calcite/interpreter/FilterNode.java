@@ -20,13 +20,22 @@
 
 import com.google.common.collect.ImmutableList;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Interpreter node that implements a
  * {@link org.apache.calcite.rel.core.Filter}.
+ *
+ * <p>Evaluates the condition on a batch of rows at a time.
  */
 public class FilterNode extends AbstractSingleNode<Filter> {
   private final Scalar condition;
   private final Context context;
+  /** Buffers for the input and output of the condition, reused for each
+   * batch and grown if a batch is larger than any seen before. */
+  private Object[][] inputs = new Object[0][];
+  private Object[][] outputs = new Object[0][];
 
   public FilterNode(Interpreter interpreter, Filter rel) {
     super(interpreter, rel);
@@ -37,12 +46,26 @@ public FilterNode(Interpreter interpreter, Filter rel) {
   }
 
   public void run() throws InterruptedException {
-    Row row;
-    while ((row = source.receive()) != null) {
-      context.values = row.getValues();
-      Boolean b = (Boolean) condition.execute(context);
-      if (b != null && b) {
-        sink.send(row);
+    List<Row> rows;
+    while ((rows = source.receiveBatch()) != null) {
+      final int count = rows.size();
+      if (count > inputs.length) {
+        inputs = new Object[count][];
+        outputs = new Object[count][1];
+      }
+      for (int i = 0; i < count; i++) {
+        inputs[i] = rows.get(i).getValues();
+      }
+      condition.execute(context, inputs, count, outputs);
+      final List<Row> selected = new ArrayList<Row>(count);
+      for (int i = 0; i < count; i++) {
+        if (Boolean.TRUE.equals(outputs[i][0])) {
+          selected.add(rows.get(i));
+        }
+        inputs[i] = null;
+      }
+      if (!selected.isEmpty()) {
+        sink.send(selected);
       }
     }
   }
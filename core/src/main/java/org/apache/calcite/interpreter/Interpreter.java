@@ -45,9 +45,21 @@
 
 import java.math.BigDecimal;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Interpreter.
@@ -55,16 +67,92 @@
  * <p>Contains the context for interpreting relational expressions. In
  * particular it holds working state while the data flow graph is being
  * assembled.</p>
+ *
+ * <p>By default, the interpreter runs each node to completion, leaves
+ * first, on the thread that reads the results, and each node's output is
+ * held in memory until its consumer runs. If you supply an
+ * {@link ExecutorService}, the interpreter instead runs every node as a
+ * separate task, and nodes pass rows to each other in batches through
+ * bounded queues. A node that produces rows faster than its consumer can
+ * use them blocks when its queue is full, so memory use is bounded (except
+ * in nodes, such as sort and aggregate, that need to see all of their input)
+ * and nodes execute in parallel.</p>
  */
 public class Interpreter extends AbstractEnumerable<Object[]> {
+  /** Default number of rows in a batch passed between nodes, in pipelined
+   * mode. */
+  public static final int DEFAULT_BATCH_SIZE = 256;
+
+  /** Default number of batches that a queue between nodes can hold, in
+   * pipelined mode. */
+  public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+  /** Executor that creates a daemon thread for each task, if no thread is
+   * idle. Suitable for pipelined mode, which needs a thread for every node
+   * at the same time. */
+  public static final ExecutorService DEFAULT_EXECUTOR =
+      Executors.newCachedThreadPool(
+          new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+              final Thread thread =
+                  new Thread(r, "interpreter-" + count.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+
   final Map<RelNode, NodeInfo> nodes = Maps.newLinkedHashMap();
   private final DataContext dataContext;
   private final RelNode rootRel;
   private final Map<RelNode, List<RelNode>> relInputs = Maps.newHashMap();
   protected final ScalarCompiler scalarCompiler;
 
+  /** Executor for pipelined mode; null in sequential mode. */
+  private final ExecutorService executor;
+  private final int batchSize;
+  private final int queueCapacity;
+  /** In pipelined mode, the queues that each node reads from. */
+  private final Map<RelNode, List<QueueSink>> inputQueues =
+      Maps.newHashMap();
+  private final List<Future<?>> futures =
+      new CopyOnWriteArrayList<Future<?>>();
+  private final AtomicReference<Throwable> failure =
+      new AtomicReference<Throwable>();
+  /** Set when the consumer closes the enumerator. Nodes that are interrupted
+   * after that have not failed. */
+  private volatile boolean closed;
+
+  /** Creates an Interpreter.
+   *
+   * <p>Runs in pipelined mode, on {@link #DEFAULT_EXECUTOR}, if the data
+   * context's {@link DataContext.Variable#INTERPRETER_PIPELINED} variable is
+   * true; otherwise runs nodes one after another on the calling thread. */
   public Interpreter(DataContext dataContext, RelNode rootRel) {
+    this(dataContext, rootRel, executor(dataContext), DEFAULT_BATCH_SIZE,
+        DEFAULT_QUEUE_CAPACITY);
+  }
+
+  /** Creates an Interpreter.
+   *
+   * @param dataContext   Data context
+   * @param rootRel       Relational expression to execute
+   * @param executor      Executor on which to run nodes in pipelined mode,
+   *                      or null to run them sequentially. It must be able
+   *                      to run a task for every node at the same time.
+   * @param batchSize     Number of rows in a batch, in pipelined mode
+   * @param queueCapacity Number of batches a queue can hold, in pipelined
+   *                      mode
+   */
+  public Interpreter(DataContext dataContext, RelNode rootRel,
+      ExecutorService executor, int batchSize, int queueCapacity) {
+    Preconditions.checkArgument(batchSize > 0);
+    Preconditions.checkArgument(queueCapacity > 0);
     this.dataContext = Preconditions.checkNotNull(dataContext);
+    this.executor = executor;
+    this.batchSize = batchSize;
+    this.queueCapacity = queueCapacity;
     this.scalarCompiler =
         new JaninoRexCompiler(rootRel.getCluster().getRexBuilder());
     final RelNode rel = optimize(rootRel);
@@ -72,6 +160,17 @@ public Interpreter(DataContext dataContext, RelNode rootRel) {
     this.rootRel = compiler.visitRoot(rel);
   }
 
+  /** Returns the executor that the data context asks for, or null. */
+  private static ExecutorService executor(DataContext dataContext) {
+    if (dataContext != null
+        && Boolean.TRUE.equals(
+            dataContext.get(
+                DataContext.Variable.INTERPRETER_PIPELINED.camelName))) {
+      return DEFAULT_EXECUTOR;
+    }
+    return null;
+  }
+
   private RelNode optimize(RelNode rootRel) {
     final HepProgram hepProgram = new HepProgramBuilder()
         .addRuleInstance(CalcSplitRule.INSTANCE)
@@ -86,6 +185,9 @@ private RelNode optimize(RelNode rootRel) {
   }
 
   public Enumerator<Object[]> enumerator() {
+    if (executor != null) {
+      return pipelinedEnumerator();
+    }
     start();
     final ArrayDeque<Row> queue = nodes.get(rootRel).sink.list;
     return new Enumerator<Object[]>() {
@@ -114,6 +216,44 @@ public void close() {
     };
   }
 
+  private Enumerator<Object[]> pipelinedEnumerator() {
+    final QueueSink rootSink = nodes.get(rootRel).queueSink;
+    final Source source = rootSink.source();
+    startPipelined();
+    return new Enumerator<Object[]>() {
+      Row row;
+
+      public Object[] current() {
+        return row.getValues();
+      }
+
+      public boolean moveNext() {
+        try {
+          row = source.receive();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new RuntimeException(e);
+        }
+        if (row == null) {
+          final Throwable e = failure.get();
+          if (e != null) {
+            throw new RuntimeException("Error while interpreting", e);
+          }
+          return false;
+        }
+        return true;
+      }
+
+      public void reset() {
+        row = null;
+      }
+
+      public void close() {
+        Interpreter.this.close();
+      }
+    };
+  }
+
   private void start() {
     // We rely on the nodes being ordered leaves first.
     for (Map.Entry<RelNode, NodeInfo> entry : nodes.entrySet()) {
@@ -126,8 +266,72 @@ private void start() {
     }
   }
 
+  /** Starts a task for each node. */
+  private void startPipelined() {
+    for (final NodeInfo nodeInfo : nodes.values()) {
+      final List<QueueSink> inputs = inputQueues.get(nodeInfo.rel);
+      futures.add(
+          executor.submit(
+              new Runnable() {
+                public void run() {
+                  try {
+                    nodeInfo.node.run();
+                    // Not all nodes call end(), so make sure.
+                    nodeInfo.queueSink.end();
+                  } catch (ConsumerClosedException e) {
+                    // The consumer has all the rows it needs.
+                  } catch (Throwable e) {
+                    fail(e);
+                  } finally {
+                    if (inputs != null) {
+                      for (QueueSink input : inputs) {
+                        input.close();
+                      }
+                    }
+                  }
+                }
+              }));
+    }
+    if (failure.get() != null) {
+      // A node failed before all tasks had started; stop the rest.
+      cancel();
+    }
+  }
+
+  /** Records the first failure of a node, stops the other nodes, and tells
+   * the consumer of the root node that there are no more rows. */
+  private void fail(Throwable e) {
+    if (isInterrupt(e) && (closed || failure.get() != null)) {
+      return; // interrupted because the consumer closed, or a node failed
+    }
+    if (failure.compareAndSet(null, e)) {
+      cancel();
+      nodes.get(rootRel).queueSink.abort();
+    }
+  }
+
+  private void cancel() {
+    for (Future<?> future : futures) {
+      future.cancel(true);
+    }
+  }
+
   private void close() {
-    // TODO:
+    if (executor != null) {
+      closed = true;
+      cancel();
+    }
+  }
+
+  /** Returns whether an exception was caused by the thread being
+   * interrupted. Some nodes wrap the {@link InterruptedException}. */
+  private static boolean isInterrupt(Throwable e) {
+    for (; e != null; e = e.getCause()) {
+      if (e instanceof InterruptedException) {
+        return true;
+      }
+    }
+    return false;
   }
 
   /** Compiles an expression to an executable form. */
@@ -161,6 +365,14 @@ public void execute(final Context context, Object[] results) {
             results[0] = execute(context);
           }
 
+          public void execute(Context context, Object[][] inputs, int count,
+              Object[][] outputs) {
+            for (int i = 0; i < count; i++) {
+              context.values = inputs[i];
+              execute(context, outputs[i]);
+            }
+          }
+
           public Object execute(Context context) {
             Comparable o0;
             Comparable o1;
@@ -241,6 +453,14 @@ public void execute(Context context, Object[] results) {
           results[0] = execute(context);
         }
 
+        public void execute(Context context, Object[][] inputs, int count,
+            Object[][] outputs) {
+          for (int i = 0; i < count; i++) {
+            context.values = inputs[i];
+            execute(context, outputs[i]);
+          }
+        }
+
         public Object execute(Context context) {
           switch (node.getKind()) {
           case LITERAL:
@@ -261,6 +481,15 @@ public Source source(RelNode rel, int ordinal) {
     if (x == null) {
       throw new AssertionError("should be registered: " + rel);
     }
+    if (x.queueSink != null) {
+      List<QueueSink> list = inputQueues.get(rel);
+      if (list == null) {
+        list = Lists.newArrayList();
+        inputQueues.put(rel, list);
+      }
+      list.add(x.queueSink);
+      return x.queueSink.source();
+    }
     return new ListSource(x.sink);
   }
 
@@ -273,9 +502,14 @@ private RelNode getInput(RelNode rel, int ordinal) {
   }
 
   public Sink sink(RelNode rel) {
+    if (executor != null) {
+      final QueueSink sink = new QueueSink(batchSize, queueCapacity);
+      nodes.put(rel, new NodeInfo(rel, null, sink));
+      return sink;
+    }
     final ArrayDeque<Row> queue = new ArrayDeque<Row>(1);
     final ListSink sink = new ListSink(queue);
-    final NodeInfo nodeInfo = new NodeInfo(rel, sink);
+    final NodeInfo nodeInfo = new NodeInfo(rel, sink, null);
     nodes.put(rel, nodeInfo);
     return sink;
   }
@@ -291,12 +525,16 @@ public DataContext getDataContext() {
   /** Information about a node registered in the data flow graph. */
   private static class NodeInfo {
     final RelNode rel;
+    /** Output of the node in sequential mode; otherwise null. */
     final ListSink sink;
+    /** Output of the node in pipelined mode; otherwise null. */
+    final QueueSink queueSink;
     Node node;
 
-    public NodeInfo(RelNode rel, ListSink sink) {
+    public NodeInfo(RelNode rel, ListSink sink, QueueSink queueSink) {
       this.rel = rel;
       this.sink = sink;
+      this.queueSink = queueSink;
     }
   }
 
@@ -312,12 +550,19 @@ public void send(Row row) throws InterruptedException {
       list.add(row);
     }
 
+    public void send(List<Row> rows) throws InterruptedException {
+      list.addAll(rows);
+    }
+
     public void end() throws InterruptedException {
     }
   }
 
   /** Implementation of {@link Source} using a {@link java.util.ArrayDeque}. */
   private static class ListSource implements Source {
+    /** Maximum number of rows returned by {@link #receiveBatch()}. */
+    private static final int BATCH_SIZE = 1024;
+
     private final ArrayDeque<Row> list;
 
     public ListSource(ListSink sink) {
@@ -331,6 +576,148 @@ public Row receive() {
         return null;
       }
     }
+
+    public List<Row> receiveBatch() {
+      if (list.isEmpty()) {
+        return null;
+      }
+      final List<Row> rows =
+          new ArrayList<Row>(Math.min(list.size(), BATCH_SIZE));
+      while (rows.size() < BATCH_SIZE && !list.isEmpty()) {
+        rows.add(list.remove());
+      }
+      return rows;
+    }
+  }
+
+  /** Thrown by {@link QueueSink#send} when the consumer of the queue has
+   * finished, to stop the producing node. */
+  private static class ConsumerClosedException extends RuntimeException {
+    static final ConsumerClosedException INSTANCE =
+        new ConsumerClosedException();
+
+    private ConsumerClosedException() {
+      super(null, null, false, false);
+    }
+  }
+
+  /** Implementation of {@link Sink} that sends batches of rows to a bounded
+   * {@link BlockingQueue}, for pipelined mode. */
+  private static class QueueSink implements Sink {
+    /** Marks the end of the rows. */
+    private static final List<Row> END = Collections.emptyList();
+
+    private final int batchSize;
+    private final BlockingQueue<List<Row>> queue;
+    private List<Row> batch;
+    private boolean ended;
+    /** Set when the consumer no longer wants rows. */
+    private volatile boolean closed;
+    /** Set when execution has failed. */
+    private volatile boolean aborted;
+
+    QueueSink(int batchSize, int queueCapacity) {
+      this.batchSize = batchSize;
+      this.queue = new ArrayBlockingQueue<List<Row>>(queueCapacity);
+      this.batch = new ArrayList<Row>(batchSize);
+    }
+
+    public void send(Row row) throws InterruptedException {
+      batch.add(row);
+      if (batch.size() >= batchSize) {
+        put(batch);
+        batch = new ArrayList<Row>(batchSize);
+      }
+    }
+
+    public void send(List<Row> rows) throws InterruptedException {
+      if (batch.isEmpty() && rows.size() >= batchSize) {
+        put(rows);
+      } else {
+        for (Row row : rows) {
+          send(row);
+        }
+      }
+    }
+
+    public void end() throws InterruptedException {
+      if (ended || closed) {
+        return;
+      }
+      ended = true;
+      if (!batch.isEmpty()) {
+        put(batch);
+        batch = null;
+      }
+      put(END);
+    }
+
+    /** Adds a batch to the queue, waiting while the queue is full, unless the
+     * consumer closes the queue. */
+    private void put(List<Row> rows) throws InterruptedException {
+      while (!closed) {
+        if (queue.offer(rows, 10, TimeUnit.MILLISECONDS)) {
+          return;
+        }
+      }
+      throw ConsumerClosedException.INSTANCE;
+    }
+
+    /** Called when the consumer has finished. Discards queued rows, and
+     * causes the producer to stop at its next batch. */
+    void close() {
+      closed = true;
+      queue.clear();
+    }
+
+    /** Called when execution has failed. Discards queued rows, and tells the
+     * consumer that there are no more. */
+    void abort() {
+      aborted = true;
+      do {
+        queue.clear();
+      } while (!queue.offer(END));
+    }
+
+    Source source() {
+      return new Source() {
+        private List<Row> rows = Collections.emptyList();
+        private int i;
+        private boolean done;
+
+        public Row receive() throws InterruptedException {
+          while (i >= rows.size()) {
+            if (done || aborted) {
+              return null;
+            }
+            rows = queue.take();
+            i = 0;
+            if (rows == END) {
+              done = true;
+              return null;
+            }
+          }
+          return rows.get(i++);
+        }
+
+        public List<Row> receiveBatch() throws InterruptedException {
+          while (i >= rows.size()) {
+            if (done || aborted) {
+              return null;
+            }
+            rows = queue.take();
+            i = 0;
+            if (rows == END) {
+              done = true;
+              return null;
+            }
+          }
+          final List<Row> batch = i == 0 ? rows : rows.subList(i, rows.size());
+          i = rows.size();
+          return batch;
+        }
+      };
+    }
   }
 
   /**
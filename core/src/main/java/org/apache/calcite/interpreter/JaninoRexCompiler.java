@@ -38,17 +38,14 @@
 import org.apache.calcite.util.BuiltInMethod;
 import org.apache.calcite.util.Pair;
 import org.apache.calcite.util.Util;
+import org.apache.calcite.util.javac.CompiledClassCache;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
 import org.codehaus.commons.compiler.CompileException;
-import org.codehaus.commons.compiler.CompilerFactoryFactory;
-import org.codehaus.commons.compiler.IClassBodyEvaluator;
-import org.codehaus.commons.compiler.ICompilerFactory;
 
 import java.io.IOException;
-import java.io.StringReader;
 import java.lang.reflect.Modifier;
 import java.lang.reflect.Type;
 import java.util.List;
@@ -113,7 +110,10 @@ public RexToLixTranslator.InputGetter apply(String a0) {
   }
 
   /** Given a method that implements {@link Scalar#execute(Context, Object[])},
-   * adds a bridge method that implements {@link Scalar#execute(Context)}, and
+   * adds a bridge method that implements {@link Scalar#execute(Context)} and
+   * a method that implements
+   * {@link Scalar#execute(Context, Object[][], int, Object[][])} by
+   * evaluating the same code in a loop over a batch of rows, and
    * compiles. */
   static Scalar baz(ParameterExpression context_,
       ParameterExpression outputValues_, BlockStatement block) {
@@ -143,6 +143,43 @@ static Scalar baz(ParameterExpression context_,
             BuiltInMethod.SCALAR_EXECUTE1.method.getName(),
             ImmutableList.of(context_), builder.toBlock()));
 
+    // public void execute(Context, Object[][] inputs, int count,
+    //     Object[][] outputs)
+    //
+    // The body of the loop is the body of execute(Context, Object[]), with
+    // "outputValues" declared as a local variable, so there is no method call
+    // per row. The names of the parameters and the loop variable must not
+    // clash with the names of variables declared in that body.
+    final ParameterExpression inputs_ =
+        Expressions.parameter(Object[][].class, "batchInputs");
+    final ParameterExpression count_ =
+        Expressions.parameter(int.class, "batchCount");
+    final ParameterExpression outputs_ =
+        Expressions.parameter(Object[][].class, "batchOutputs");
+    final ParameterExpression i_ = Expressions.parameter(int.class, "batchRow");
+    final BlockBuilder builder2 = new BlockBuilder(false);
+    builder2.add(
+        Expressions.statement(
+            Expressions.assign(
+                Expressions.field(context_, BuiltInMethod.CONTEXT_VALUES.field),
+                Expressions.arrayIndex(inputs_, i_))));
+    builder2.add(
+        Expressions.declare(Modifier.FINAL, outputValues_,
+            Expressions.arrayIndex(outputs_, i_)));
+    builder2.add(block);
+    final BlockBuilder builder3 = new BlockBuilder(false);
+    builder3.add(
+        Expressions.for_(
+            Expressions.declare(0, i_, Expressions.constant(0)),
+            Expressions.lessThan(i_, count_),
+            Expressions.preIncrementAssign(i_),
+            builder2.toBlock()));
+    declarations.add(
+        Expressions.methodDecl(Modifier.PUBLIC, void.class,
+            BuiltInMethod.SCALAR_EXECUTE2.method.getName(),
+            ImmutableList.of(context_, inputs_, count_, outputs_),
+            builder3.toBlock()));
+
     final ClassDeclaration classDeclaration =
         Expressions.classDecl(Modifier.PUBLIC, "Buzz", null,
             ImmutableList.<Type>of(Scalar.class), declarations);
@@ -161,22 +198,9 @@ static Scalar baz(ParameterExpression context_,
 
   static Scalar getScalar(ClassDeclaration expr, String s)
       throws CompileException, IOException {
-    ICompilerFactory compilerFactory;
-    try {
-      compilerFactory = CompilerFactoryFactory.getDefaultCompilerFactory();
-    } catch (Exception e) {
-      throw new IllegalStateException(
-          "Unable to instantiate java compiler", e);
-    }
-    IClassBodyEvaluator cbe = compilerFactory.newClassBodyEvaluator();
-    cbe.setClassName(expr.name);
-    cbe.setImplementedInterfaces(new Class[]{Scalar.class});
-    cbe.setParentClassLoader(JaninoRexCompiler.class.getClassLoader());
-    if (CalcitePrepareImpl.DEBUG) {
-      // Add line numbers to the generated janino class
-      cbe.setDebuggingInformation(true, true, true);
-    }
-    return (Scalar) cbe.createInstance(new StringReader(s));
+    return (Scalar) CompiledClassCache.INSTANCE.createInstance(expr.name, null,
+        new Class[] {Scalar.class}, JaninoRexCompiler.class.getClassLoader(),
+        s);
   }
 }
 
@@ -17,15 +17,34 @@
 package org.apache.calcite.interpreter;
 
 import org.apache.calcite.rel.core.Join;
+import org.apache.calcite.rel.core.JoinInfo;
+import org.apache.calcite.rel.core.JoinRelType;
+import org.apache.calcite.rel.metadata.RelMetadataQuery;
+import org.apache.calcite.util.ImmutableIntList;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Interpreter node that implements a
  * {@link org.apache.calcite.rel.core.Join}.
+ *
+ * <p>Reads all rows of one input (the "build" input, preferably the one
+ * with fewer rows) into a hash table keyed on its equi-join keys, then
+ * streams the rows of the other (the "probe" input), and for each evaluates
+ * the join condition only against build rows with the same key. If the
+ * condition has no equi-join keys, every build row is a candidate, and the
+ * join degenerates to nested loops.
+ *
+ * <p>Supports inner, left, right and full outer joins.
  */
 public class JoinNode implements Node {
   private final Source leftSource;
@@ -34,6 +53,9 @@ public class JoinNode implements Node {
   private final Join rel;
   private final Scalar condition;
   private final Context context;
+  private final JoinInfo joinInfo;
+  /** Whether the right input is the build input. */
+  private final boolean buildRight;
 
   public JoinNode(Interpreter interpreter, Join rel) {
     this.leftSource = interpreter.source(rel, 0);
@@ -43,33 +65,144 @@ public JoinNode(Interpreter interpreter, Join rel) {
         interpreter.combinedRowType(rel.getInputs()));
     this.rel = rel;
     this.context = interpreter.createContext();
-
+    this.joinInfo = rel.analyzeCondition();
+    final Double leftRowCount = RelMetadataQuery.getRowCount(rel.getLeft());
+    final Double rightRowCount = RelMetadataQuery.getRowCount(rel.getRight());
+    this.buildRight = leftRowCount == null
+        || rightRowCount == null
+        || rightRowCount <= leftRowCount;
   }
 
   public void run() throws InterruptedException {
-    List<Row> rightList = null;
     final int leftCount = rel.getLeft().getRowType().getFieldCount();
     final int rightCount = rel.getRight().getRowType().getFieldCount();
+    final JoinRelType joinType = rel.getJoinType();
+    final Source buildSource = buildRight ? rightSource : leftSource;
+    final Source probeSource = buildRight ? leftSource : rightSource;
+    final ImmutableIntList buildKeys =
+        buildRight ? joinInfo.rightKeys : joinInfo.leftKeys;
+    final ImmutableIntList probeKeys =
+        buildRight ? joinInfo.leftKeys : joinInfo.rightKeys;
+    // Whether unmatched rows of the build and probe inputs are emitted,
+    // padded with nulls.
+    final boolean buildOuter = buildRight
+        ? joinType.generatesNullsOnLeft()
+        : joinType.generatesNullsOnRight();
+    final boolean probeOuter = buildRight
+        ? joinType.generatesNullsOnRight()
+        : joinType.generatesNullsOnLeft();
+
+    // Build phase.
+    final List<Row> buildRows = Lists.newArrayList();
+    final Map<Object, List<Integer>> table = Maps.newHashMap();
+    Row row;
+    while ((row = buildSource.receive()) != null) {
+      final Object key = key(row, buildKeys);
+      if (key != null) {
+        List<Integer> list = table.get(key);
+        if (list == null) {
+          list = new ArrayList<Integer>(1);
+          table.put(key, list);
+        }
+        list.add(buildRows.size());
+      }
+      buildRows.add(row);
+    }
+    final BitSet matched = new BitSet(buildRows.size());
+
+    // Probe phase.
     context.values = new Object[rel.getRowType().getFieldCount()];
-    Row left;
-    Row right;
-    while ((left = leftSource.receive()) != null) {
-      System.arraycopy(left.getValues(), 0, context.values, 0, leftCount);
-      if (rightList == null) {
-        rightList = Lists.newArrayList();
-        while ((right = rightSource.receive()) != null) {
-          rightList.add(right);
+    while ((row = probeSource.receive()) != null) {
+      boolean probeMatched = false;
+      final Object key = key(row, probeKeys);
+      final List<Integer> candidates =
+          key == null ? Collections.<Integer>emptyList() : table.get(key);
+      if (candidates != null) {
+        for (int i : candidates) {
+          final Row buildRow = buildRows.get(i);
+          if (buildRight) {
+            copy(row, buildRow, leftCount, rightCount);
+          } else {
+            copy(buildRow, row, leftCount, rightCount);
+          }
+          final Boolean execute = (Boolean) condition.execute(context);
+          if (execute != null && execute) {
+            sink.send(Row.asCopy(context.values));
+            probeMatched = true;
+            matched.set(i);
+          }
+        }
+      }
+      if (!probeMatched && probeOuter) {
+        if (buildRight) {
+          copy(row, null, leftCount, rightCount);
+        } else {
+          copy(null, row, leftCount, rightCount);
+        }
+        sink.send(Row.asCopy(context.values));
+      }
+    }
+
+    // Emit unmatched build rows.
+    if (buildOuter) {
+      for (int i = matched.nextClearBit(0); i < buildRows.size();
+           i = matched.nextClearBit(i + 1)) {
+        if (buildRight) {
+          copy(null, buildRows.get(i), leftCount, rightCount);
+        } else {
+          copy(buildRows.get(i), null, leftCount, rightCount);
         }
+        sink.send(Row.asCopy(context.values));
       }
-      for (Row right2 : rightList) {
-        System.arraycopy(right2.getValues(), 0, context.values, leftCount,
-            rightCount);
-        final Boolean execute = (Boolean) condition.execute(context);
-        if (execute != null && execute) {
-          sink.send(Row.asCopy(context.values));
+    }
+  }
+
+  /** Copies a left and right row into the context, setting the fields of a
+   * null row to null. */
+  private void copy(Row left, Row right, int leftCount, int rightCount) {
+    if (left == null) {
+      Arrays.fill(context.values, 0, leftCount, null);
+    } else {
+      System.arraycopy(left.getValues(), 0, context.values, 0, leftCount);
+    }
+    if (right == null) {
+      Arrays.fill(context.values, leftCount, leftCount + rightCount, null);
+    } else {
+      System.arraycopy(right.getValues(), 0, context.values, leftCount,
+          rightCount);
+    }
+  }
+
+  /** Returns the hash key of a row, or null if any of its key fields is null
+   * (and therefore the row cannot match any row).
+   *
+   * <p>Numeric values are converted to {@link Double}, so that values of
+   * different types that are equal have equal keys. Rows with equal keys are
+   * only candidates; the join condition decides whether they match. */
+  private static Object key(Row row, ImmutableIntList keys) {
+    switch (keys.size()) {
+    case 0:
+      return Collections.emptyList();
+    case 1:
+      return normalize(row.getObject(keys.get(0)));
+    default:
+      final Object[] values = new Object[keys.size()];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = normalize(row.getObject(keys.get(i)));
+        if (values[i] == null) {
+          return null;
         }
       }
+      return Arrays.asList(values);
+    }
+  }
+
+  private static Object normalize(Object o) {
+    if (o instanceof Number) {
+      final double d = ((Number) o).doubleValue();
+      return d == 0d ? 0d : d; // treat -0.0 and 0.0 as equal
     }
+    return o;
   }
 }
 
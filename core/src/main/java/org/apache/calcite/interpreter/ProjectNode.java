@@ -18,6 +18,9 @@
 
 import org.apache.calcite.rel.core.Project;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Interpreter node that implements a
  * {@link org.apache.calcite.rel.logical.LogicalFilter}.
@@ -26,6 +29,8 @@ public class ProjectNode extends AbstractSingleNode<Project> {
   private final Scalar scalar;
   private final Context context;
   private final int projectCount;
+  /** Buffer for the input rows, reused for each batch. */
+  private Object[][] inputs = new Object[0][];
 
   public ProjectNode(Interpreter interpreter, Project rel) {
     super(interpreter, rel);
@@ -36,12 +41,24 @@ public ProjectNode(Interpreter interpreter, Project rel) {
   }
 
   public void run() throws InterruptedException {
-    Row row;
-    while ((row = source.receive()) != null) {
-      context.values = row.getValues();
-      Object[] values = new Object[projectCount];
-      scalar.execute(context, values);
-      sink.send(new Row(values));
+    List<Row> rows;
+    while ((rows = source.receiveBatch()) != null) {
+      final int count = rows.size();
+      if (count > inputs.length) {
+        inputs = new Object[count][];
+      }
+      // Each output array becomes a row, so cannot be reused.
+      final Object[][] outputs = new Object[count][projectCount];
+      for (int i = 0; i < count; i++) {
+        inputs[i] = rows.get(i).getValues();
+      }
+      scalar.execute(context, inputs, count, outputs);
+      final List<Row> projected = new ArrayList<Row>(count);
+      for (int i = 0; i < count; i++) {
+        projected.add(new Row(outputs[i]));
+        inputs[i] = null;
+      }
+      sink.send(projected);
     }
   }
 }
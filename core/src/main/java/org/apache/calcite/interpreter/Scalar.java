@@ -22,6 +22,18 @@
 public interface Scalar {
   Object execute(Context context);
   void execute(Context context, Object[] results);
+
+  /** Evaluates the expressions for each of a batch of rows.
+   *
+   * <p>For each {@code i} less than {@code count}, sets
+   * {@link Context#values} to {@code inputs[i]} and writes the results into
+   * {@code outputs[i]}. Equivalent to calling
+   * {@link #execute(Context, Object[])} for each row, but the generated code
+   * evaluates the expressions inside the loop, so there is no method call
+   * for each row. {@code outputs[i]} must be non-null and large enough to
+   * hold the results. */
+  void execute(Context context, Object[][] inputs, int count,
+      Object[][] outputs);
 }
 
 // End Scalar.java
@@ -16,6 +16,8 @@
  */
 package org.apache.calcite.interpreter;
 
+import java.util.List;
+
 /**
  * Sink to which to send rows.
  *
@@ -24,6 +26,10 @@
 public interface Sink {
   void send(Row row) throws InterruptedException;
 
+  /** Sends a batch of rows. The sink may retain the list, so the caller must
+   * not modify it afterwards. */
+  void send(List<Row> rows) throws InterruptedException;
+
   void end() throws InterruptedException;
 }
 
@@ -16,6 +16,8 @@
  */
 package org.apache.calcite.interpreter;
 
+import java.util.List;
+
 /**
  * Source of rows.
  *
@@ -23,7 +25,11 @@
  */
 public interface Source {
   /** Reads a row. Null means end of data. */
-  Row receive();
+  Row receive() throws InterruptedException;
+
+  /** Reads a batch of rows. Returns null at end of data, and never returns an
+   * empty list. The caller must not modify the list. */
+  List<Row> receiveBatch() throws InterruptedException;
 }
 
 // End Source.java
@@ -31,6 +31,7 @@
 import org.apache.calcite.linq4j.BaseQueryable;
 import org.apache.calcite.linq4j.Enumerable;
 import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.MemoryBudget;
 import org.apache.calcite.linq4j.Ord;
 import org.apache.calcite.linq4j.QueryProvider;
 import org.apache.calcite.linq4j.Queryable;
@@ -267,7 +268,8 @@ public CalciteConnection getConnection() {
 
   /** Implementation of Server. */
   private static class CalciteServerImpl implements CalciteServer {
-    final Map<Integer, CalciteServerStatement> statementMap = Maps.newHashMap();
+    final Map<Integer, CalciteServerStatement> statementMap =
+        Maps.newConcurrentMap();
 
     public void removeStatement(Meta.StatementHandle h) {
       statementMap.remove(h.id);
@@ -327,7 +329,13 @@ static class DataContextImpl implements DataContext {
       builder.put(Variable.UTC_TIMESTAMP.camelName, time)
           .put(Variable.CURRENT_TIMESTAMP.camelName, time + currentOffset)
           .put(Variable.LOCAL_TIMESTAMP.camelName, time + localOffset)
-          .put(Variable.TIME_ZONE.camelName, timeZone);
+          .put(Variable.TIME_ZONE.camelName, timeZone)
+          .put(Variable.MEMORY_BUDGET.camelName,
+              new MemoryBudget(connection.config().memoryBudget(), null))
+          .put(Variable.AGGREGATE_PARALLELISM.camelName,
+              connection.config().aggregateParallelism())
+          .put(Variable.INTERPRETER_PIPELINED.camelName,
+              connection.config().interpreterPipelined());
       for (Map.Entry<String, Object> entry : parameters.entrySet()) {
         Object e = entry.getValue();
         if (e == null) {
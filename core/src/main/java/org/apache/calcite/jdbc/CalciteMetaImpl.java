@@ -135,6 +135,23 @@ public static Pattern likeToRegex(Pat pattern) {
     return h;
   }
 
+  @Override public void closeStatement(StatementHandle h) {
+    final CalciteConnectionImpl calciteConnection = getConnection();
+    calciteConnection.server.removeStatement(h);
+    // A remote client's statement has a wrapper in this connection; close it.
+    // Closing a local statement brings us here too, but by then it is marked
+    // closed, so we do not recurse.
+    final AvaticaStatement statement =
+        calciteConnection.statementMap.remove(h.id);
+    if (statement != null) {
+      try {
+        statement.close();
+      } catch (SQLException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+
   private <E> MetaResultSet createResultSet(Enumerable<E> enumerable,
       Class clazz, String... names) {
     final List<ColumnMetaData> columns = new ArrayList<ColumnMetaData>();
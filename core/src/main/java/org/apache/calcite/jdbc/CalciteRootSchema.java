@@ -18,14 +18,28 @@
 
 import org.apache.calcite.schema.Schema;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Root schema.
  */
 public class CalciteRootSchema extends CalciteSchema {
+  /** Incremented each time an object is explicitly added to this schema or
+   * any of its descendants. */
+  final AtomicLong version = new AtomicLong();
+
   /** Creates a root schema. */
   CalciteRootSchema(Schema schema) {
     super(null, schema, "");
   }
+
+  /** Returns a stamp that changes whenever a table, function, lattice or
+   * sub-schema is added anywhere in this schema tree, or a schema's path is
+   * changed. Objects derived from the schema, such as prepared plans, are
+   * valid only as long as the stamp is unchanged. */
+  public long getVersion() {
+    return version.get();
+  }
 }
 
 // End CalciteRootSchema.java
@@ -0,0 +1,115 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.materialize;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * HyperLogLog sketch, which estimates the number of distinct values in a
+ * stream using a fixed, small amount of memory.
+ *
+ * <p>Values are supplied as 64-bit hashes; see {@link #hash(Object)}. A
+ * sketch with precision {@code p} has {@code 2^p} one-byte registers and a
+ * standard error of about {@code 1.04 / sqrt(2^p)}.
+ */
+class HyperLogLog {
+  private final int p;
+  private final byte[] registers;
+
+  /** Creates a HyperLogLog sketch with a given precision. */
+  HyperLogLog(int p) {
+    Preconditions.checkArgument(p >= 4 && p <= 18);
+    this.p = p;
+    this.registers = new byte[1 << p];
+  }
+
+  /** Adds a value, given its 64-bit hash. */
+  void add(long hash) {
+    final int index = (int) (hash >>> (64 - p));
+    final long w = (hash << p) | (1L << (p - 1));
+    final byte rank = (byte) (Long.numberOfLeadingZeros(w) + 1);
+    if (rank > registers[index]) {
+      registers[index] = rank;
+    }
+  }
+
+  /** Returns the estimated number of distinct values added. */
+  double estimate() {
+    final int m = registers.length;
+    double sum = 0d;
+    int zeros = 0;
+    for (byte register : registers) {
+      sum += 1d / (1L << register);
+      if (register == 0) {
+        ++zeros;
+      }
+    }
+    final double alpha = 0.7213d / (1d + 1.079d / m);
+    final double e = alpha * m * m / sum;
+    if (e <= 2.5d * m && zeros > 0) {
+      // Small range correction: linear counting.
+      return m * Math.log((double) m / zeros);
+    }
+    // With 64-bit hashes, no large range correction is necessary.
+    return e;
+  }
+
+  /** Returns a 64-bit hash of a value. Null is a value like any other. Numeric
+   * values that are equal as integers have the same hash, whatever their
+   * type. */
+  static long hash(Object o) {
+    final long h;
+    if (o == null) {
+      h = 0x5bd1e995L;
+    } else if (o instanceof Integer || o instanceof Long
+        || o instanceof Short || o instanceof Byte) {
+      h = ((Number) o).longValue();
+    } else if (o instanceof Double || o instanceof Float) {
+      h = Double.doubleToLongBits(((Number) o).doubleValue());
+    } else if (o instanceof String) {
+      // FNV-1a; String.hashCode has only 32 bits
+      final String s = (String) o;
+      long x = 0xcbf29ce484222325L;
+      for (int i = 0; i < s.length(); i++) {
+        x ^= s.charAt(i);
+        x *= 0x100000001b3L;
+      }
+      h = x;
+    } else {
+      h = o.hashCode();
+    }
+    return mix(h);
+  }
+
+  /** Combines two hashes into one. */
+  static long combine(long h0, long h1) {
+    return mix(h0 * 31L + h1);
+  }
+
+  /** Finalization step of MurmurHash3, which spreads the bits of a value
+   * evenly over the 64 bits of the result. */
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
+
+// End HyperLogLog.java
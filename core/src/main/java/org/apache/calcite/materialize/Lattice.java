@@ -16,9 +16,11 @@
  */
 package org.apache.calcite.materialize;
 
+import org.apache.calcite.avatica.util.DateTimeUtils;
 import org.apache.calcite.jdbc.CalcitePrepare;
 import org.apache.calcite.jdbc.CalciteSchema;
 import org.apache.calcite.plan.RelOptUtil;
+import org.apache.calcite.plan.SubstitutionVisitor;
 import org.apache.calcite.prepare.CalcitePrepareImpl;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.AggregateCall;
@@ -26,6 +28,7 @@
 import org.apache.calcite.rel.core.TableScan;
 import org.apache.calcite.rel.logical.LogicalJoin;
 import org.apache.calcite.rel.logical.LogicalProject;
+import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rex.RexCall;
 import org.apache.calcite.rex.RexInputRef;
 import org.apache.calcite.rex.RexNode;
@@ -38,13 +41,17 @@
 import org.apache.calcite.sql.SqlDialect;
 import org.apache.calcite.sql.SqlJoin;
 import org.apache.calcite.sql.SqlKind;
+import org.apache.calcite.sql.SqlLiteral;
 import org.apache.calcite.sql.SqlNode;
 import org.apache.calcite.sql.SqlSelect;
 import org.apache.calcite.sql.SqlUtil;
 import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.sql.parser.SqlParserPos;
+import org.apache.calcite.sql.type.SqlTypeFamily;
 import org.apache.calcite.sql.validate.SqlValidatorUtil;
 import org.apache.calcite.util.BitSets;
 import org.apache.calcite.util.ImmutableBitSet;
+import org.apache.calcite.util.Util;
 import org.apache.calcite.util.graph.DefaultDirectedGraph;
 import org.apache.calcite.util.graph.DefaultEdge;
 import org.apache.calcite.util.graph.DirectedGraph;
@@ -61,7 +68,9 @@
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 
+import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.Calendar;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -91,10 +100,28 @@ public Integer apply(Column input) {
   public final boolean algorithm;
   public final long algorithmMaxMillis;
   public final double rowCountEstimate;
+  public final boolean computeStatistics;
+  public final double statisticsSampleRate;
+  /** Column of the fact table whose values increase as rows are added, or
+   * null. If not null, tiles can be refreshed incrementally. */
+  public final Column monotonicColumn;
+  /** Type of {@link #monotonicColumn}, or null. */
+  private final RelDataType monotonicType;
+  public final long maxStalenessMillis;
   public final ImmutableList<Measure> defaultMeasures;
   public final ImmutableList<Tile> tiles;
   public final ImmutableList<String> uniqueColumnNames;
 
+  final CalciteSchema rootSchema;
+
+  /** Statistics, either supplied when the lattice was defined, or computed by
+   * {@link #getStatistics()}; null if not known yet. */
+  private LatticeStatistics statistics;
+
+  /** Whether statistics are being computed. Prevents re-entrant computation
+   * if the query that computes statistics is planned using this lattice. */
+  private boolean computingStatistics;
+
   private final Function<Integer, Column> toColumnFunction =
       new Function<Integer, Column>() {
         public Column apply(Integer input) {
@@ -109,10 +136,14 @@ public Measure apply(AggregateCall input) {
         }
       };
 
-  private Lattice(ImmutableList<Node> nodes, boolean auto, boolean algorithm,
-      long algorithmMaxMillis,
-      Double rowCountEstimate, ImmutableList<Column> columns,
-      ImmutableList<Measure> defaultMeasures, ImmutableList<Tile> tiles) {
+  private Lattice(CalciteSchema rootSchema, ImmutableList<Node> nodes,
+      boolean auto, boolean algorithm, long algorithmMaxMillis,
+      Double rowCountEstimate, boolean computeStatistics,
+      double statisticsSampleRate, Map<String, Double> distinctCounts,
+      Column monotonicColumn, long maxStalenessMillis,
+      ImmutableList<Column> columns, ImmutableList<Measure> defaultMeasures,
+      ImmutableList<Tile> tiles) {
+    this.rootSchema = rootSchema;
     this.nodes = Preconditions.checkNotNull(nodes);
     this.columns = Preconditions.checkNotNull(columns);
     this.auto = auto;
@@ -146,6 +177,60 @@ private Lattice(ImmutableList<Node> nodes, boolean auto, boolean algorithm,
     }
     Preconditions.checkArgument(rowCountEstimate > 0d);
     this.rowCountEstimate = rowCountEstimate;
+    Preconditions.checkArgument(statisticsSampleRate > 0d
+        && statisticsSampleRate <= 1d);
+    this.computeStatistics = computeStatistics;
+    this.statisticsSampleRate = statisticsSampleRate;
+    if (monotonicColumn != null) {
+      if (monotonicColumn.ordinal >= nodes.get(0).endCol) {
+        throw new RuntimeException("Monotonic column '" + monotonicColumn.alias
+            + "' must belong to the fact table");
+      }
+      monotonicType = nodes.get(0).scan.getRowType().getFieldList()
+          .get(monotonicColumn.ordinal).getType();
+      switch (Util.first(monotonicType.getSqlTypeName().getFamily(),
+          SqlTypeFamily.ANY)) {
+      case NUMERIC:
+      case CHARACTER:
+      case DATE:
+      case TIME:
+      case TIMESTAMP:
+        break;
+      default:
+        throw new RuntimeException("Monotonic column '" + monotonicColumn.alias
+            + "' must be numeric, character, date, time or timestamp, but"
+            + " has type " + monotonicType);
+      }
+    } else {
+      monotonicType = null;
+    }
+    this.monotonicColumn = monotonicColumn;
+    this.maxStalenessMillis = maxStalenessMillis;
+    if (!distinctCounts.isEmpty()) {
+      this.statistics =
+          LatticeStatistics.of(rowCountEstimate,
+              resolveDistinctCounts(distinctCounts));
+    }
+  }
+
+  /** Converts distinct counts keyed by column names, such as "the_year" or
+   * "the_year,quarter", to distinct counts keyed by column ordinals. */
+  private Map<ImmutableBitSet, Double> resolveDistinctCounts(
+      Map<String, Double> distinctCounts) {
+    final Map<ImmutableBitSet, Double> map = Maps.newHashMap();
+    for (Map.Entry<String, Double> entry : distinctCounts.entrySet()) {
+      final ImmutableBitSet.Builder builder = ImmutableBitSet.builder();
+      for (String name : entry.getKey().split(",")) {
+        final int i = uniqueColumnNames.indexOf(name.trim());
+        if (i < 0) {
+          throw new RuntimeException("Unknown lattice column '" + name
+              + "' in distinct count '" + entry.getKey() + "'");
+        }
+        builder.set(i);
+      }
+      map.put(builder.build(), entry.getValue());
+    }
+    return map;
   }
 
   /** Creates a Lattice. */
@@ -229,6 +314,123 @@ private static int[] inputField(List<RelNode> leaves, RexNode rex) {
   }
 
   public String sql(ImmutableBitSet groupSet, List<Measure> aggCallList) {
+    return sql(groupSet, true, aggCallList);
+  }
+
+  /** Generates a SQL query over the lattice. If {@code group} is false, the
+   * query returns the columns in {@code groupSet} for each row of the star,
+   * and {@code aggCallList} must be empty. */
+  public String sql(ImmutableBitSet groupSet, boolean group,
+      List<Measure> aggCallList) {
+    return sql(groupSet, group, aggCallList, null);
+  }
+
+  /** Generates a SQL query that aggregates the rows of the star whose value
+   * of {@link #monotonicColumn} is greater than {@code lower} and not greater
+   * than {@code upper}.
+   *
+   * <p>If {@code lower} is null, there is no lower bound. If {@code upper} is
+   * null, the fact table had no rows when the bound was read, and the query
+   * returns no rows. Rows whose value is null are never included.
+   *
+   * <p>Bounds are values of the column's internal representation, as returned
+   * by {@link #maxSql}; for example, a TIMESTAMP value is a {@link Long}
+   * number of milliseconds since the epoch. */
+  public String sql(ImmutableBitSet groupSet, List<Measure> aggCallList,
+      Object lower, Object upper) {
+    return sql(groupSet, true, aggCallList,
+        upper == null ? "FALSE" : rangeCondition(lower, upper));
+  }
+
+  /** Generates a SQL query that returns the greatest value of
+   * {@link #monotonicColumn} that is greater than {@code lower}, or null if
+   * there is none. If {@code lower} is null, there is no lower bound. */
+  public String maxSql(Object lower) {
+    final Measure max =
+        new Measure(SqlStdOperatorTable.MAX, ImmutableList.of(monotonicColumn));
+    return sql(ImmutableBitSet.of(), true, ImmutableList.of(max),
+        rangeCondition(lower, null));
+  }
+
+  /** Generates a SQL query that counts the rows of the star whose value of
+   * {@link #monotonicColumn} is equal to {@code value}. */
+  public String countSql(Object value) {
+    Preconditions.checkState(monotonicColumn != null,
+        "lattice has no monotonic column");
+    Preconditions.checkNotNull(value);
+    final Measure count =
+        new Measure(SqlStdOperatorTable.COUNT, ImmutableList.<Column>of());
+    final SqlDialect dialect = SqlDialect.DatabaseProduct.CALCITE.getDialect();
+    final StringBuilder buf = new StringBuilder();
+    dialect.quoteIdentifier(buf, monotonicColumn.identifiers());
+    buf.append(" = ").append(literal(dialect, value));
+    return sql(ImmutableBitSet.of(), true, ImmutableList.of(count),
+        buf.toString());
+  }
+
+  /** Generates a condition on {@link #monotonicColumn}. See
+   * {@link #sql(ImmutableBitSet, List, Object, Object)}; except that a null
+   * {@code upper} means that there is no upper bound. */
+  private String rangeCondition(Object lower, Object upper) {
+    Preconditions.checkState(monotonicColumn != null,
+        "lattice has no monotonic column");
+    final SqlDialect dialect = SqlDialect.DatabaseProduct.CALCITE.getDialect();
+    final StringBuilder buf = new StringBuilder();
+    dialect.quoteIdentifier(buf, monotonicColumn.identifiers());
+    final String column = buf.toString();
+    if (lower == null) {
+      buf.append(" IS NOT NULL");
+    } else {
+      buf.append(" > ").append(literal(dialect, lower));
+    }
+    if (upper != null) {
+      buf.append(" AND ").append(column).append(" <= ")
+          .append(literal(dialect, upper));
+    }
+    return buf.toString();
+  }
+
+  /** Converts a value of {@link #monotonicColumn}, in its internal
+   * representation, to a SQL literal of the column's type. */
+  private String literal(SqlDialect dialect, Object value) {
+    final SqlLiteral literal;
+    switch (monotonicType.getSqlTypeName().getFamily()) {
+    case NUMERIC:
+      if (value instanceof BigDecimal) {
+        return ((BigDecimal) value).toPlainString();
+      }
+      return ((Number) value).toString();
+    case CHARACTER:
+      return dialect.quoteStringLiteral((String) value);
+    case DATE:
+      literal = SqlLiteral.createDate(
+          calendar(((Number) value).longValue() * DateTimeUtils.MILLIS_PER_DAY),
+          SqlParserPos.ZERO);
+      break;
+    case TIME:
+      // Precision 3, so that the bound keeps its milliseconds.
+      literal = SqlLiteral.createTime(
+          calendar(((Number) value).longValue()), 3, SqlParserPos.ZERO);
+      break;
+    case TIMESTAMP:
+      literal = SqlLiteral.createTimestamp(
+          calendar(((Number) value).longValue()), 3, SqlParserPos.ZERO);
+      break;
+    default:
+      throw new AssertionError(monotonicType);
+    }
+    return literal.toSqlString(dialect).getSql();
+  }
+
+  private static Calendar calendar(long millis) {
+    final Calendar calendar = Calendar.getInstance(DateTimeUtils.GMT_ZONE);
+    calendar.setTimeInMillis(millis);
+    return calendar;
+  }
+
+  private String sql(ImmutableBitSet groupSet, boolean group,
+      List<Measure> aggCallList, String condition) {
+    Preconditions.checkArgument(group || aggCallList.isEmpty());
     final ImmutableBitSet.Builder columnSetBuilder =
         ImmutableBitSet.builder(groupSet);
     for (Measure call : aggCallList) {
@@ -321,10 +523,15 @@ public String sql(ImmutableBitSet groupSet, List<Measure> aggCallList) {
         }
       }
     }
+    if (condition != null) {
+      buf.append("\nWHERE ").append(condition);
+    }
     if (CalcitePrepareImpl.DEBUG) {
       System.out.println("Lattice SQL:\n" + buf);
     }
-    buf.append(groupBuf);
+    if (group) {
+      buf.append(groupBuf);
+    }
     return buf.toString();
   }
 
@@ -360,14 +567,49 @@ public Iterable<? extends Tile> computeTiles() {
     return new TileSuggester(this).tiles();
   }
 
+  /** Returns statistics about the data in this lattice, or null if none are
+   * known.
+   *
+   * <p>Statistics are known if they were supplied when the lattice was
+   * defined (see {@link Builder#distinctCount}). Otherwise, if
+   * {@link #computeStatistics} is true, the first call computes them by
+   * scanning the data. */
+  public synchronized LatticeStatistics getStatistics() {
+    if (statistics == null && computeStatistics && !computingStatistics) {
+      computingStatistics = true;
+      try {
+        statistics = LatticeStatistics.compute(this, statisticsSampleRate);
+      } finally {
+        computingStatistics = false;
+      }
+    }
+    return statistics;
+  }
+
+  /** Returns statistics about the data in this lattice, or null if they are
+   * not known; unlike {@link #getStatistics()}, never computes them. */
+  public synchronized LatticeStatistics peekStatistics() {
+    return statistics;
+  }
+
   /** Returns an estimate of the number of rows in the un-aggregated star. */
   public double getFactRowCount() {
+    final LatticeStatistics statistics = getStatistics();
+    if (statistics != null) {
+      return statistics.rowCount;
+    }
     return rowCountEstimate;
   }
 
   /** Returns an estimate of the number of rows in the tile with the given
    * dimensions. */
   public double getRowCount(List<Column> columns) {
+    final LatticeStatistics statistics = getStatistics();
+    if (statistics != null) {
+      return statistics.getRowCount(
+          ImmutableBitSet.of(Lists.transform(columns, GET_ORDINAL)));
+    }
+    // No statistics. Guess column cardinalities.
     // The expected number of distinct values when choosing p values
     // with replacement from n integers is n . (1 - ((n - 1) / n) ^ p).
     //
@@ -381,19 +623,12 @@ public double getRowCount(List<Column> columns) {
         n = n.multiply(BigInteger.valueOf(cardinality));
       }
     }
-    final double nn = n.doubleValue();
-    final double f = getFactRowCount();
-    final double a = (nn - 1d) / nn;
-    if (a == 1d) {
-      // A under-flows if nn is large.
-      return f;
-    }
-    final double v = nn * (1d - Math.pow(a, f));
-    // Cap at fact-row-count, because numerical artifacts can cause it
-    // to go a few % over.
-    return Math.min(v, f);
+    return LatticeStatistics.expectedDistinctCount(n.doubleValue(),
+        getFactRowCount());
   }
 
+  /** Cardinalities of FoodMart columns, used to estimate the size of tiles if
+   * the lattice has no {@link LatticeStatistics statistics}. */
   public static final Map<String, Integer> CARDINALITY_MAP =
       ImmutableMap.<String, Integer>builder()
           .put("brand_name", 111)
@@ -539,6 +774,14 @@ public List<Integer> argOrdinals() {
       return Lists.transform(args, GET_ORDINAL);
     }
 
+    /** Returns the aggregate function that combines values of this measure,
+     * or null if values cannot be combined. For example, the roll-up of
+     * {@code COUNT} is {@code $SUM0}; {@code COUNT(DISTINCT ...)} has no
+     * roll-up. */
+    public SqlAggFunction getRollup() {
+      return SubstitutionVisitor.getRollup(agg);
+    }
+
     private static int compare(List<Column> list0, List<Column> list1) {
       final int size = Math.min(list0.size(), list1.size());
       for (int i = 0; i < size; i++) {
@@ -605,8 +848,15 @@ public static class Builder {
     private long algorithmMaxMillis = -1;
     private boolean auto = true;
     private Double rowCountEstimate;
+    private boolean computeStatistics = false;
+    private double statisticsSampleRate = 1d;
+    private final Map<String, Double> distinctCounts = Maps.newLinkedHashMap();
+    private Column monotonicColumn;
+    private long maxStalenessMillis = -1;
+    private final CalciteSchema rootSchema;
 
     public Builder(CalciteSchema schema, String sql) {
+      this.rootSchema = schema.root();
       CalcitePrepare.ConvertResult parsed =
           Schemas.convert(MaterializedViewTable.MATERIALIZATION_CONNECTION,
               schema, schema.path(null), sql);
@@ -710,10 +960,44 @@ public Builder rowCountEstimate(double rowCountEstimate) {
       return this;
     }
 
+    /** Sets the "computeStatistics" attribute (default false). */
+    public Builder computeStatistics(boolean computeStatistics) {
+      this.computeStatistics = computeStatistics;
+      return this;
+    }
+
+    /** Sets the "statisticsSampleRate" attribute (default 1). */
+    public Builder statisticsSampleRate(double statisticsSampleRate) {
+      this.statisticsSampleRate = statisticsSampleRate;
+      return this;
+    }
+
+    /** Adds an entry to the "distinctCounts" attribute: the number of distinct
+     * values of a column, such as "the_year", or of a combination of
+     * columns, such as "the_year,quarter". */
+    public Builder distinctCount(String columnNames, double count) {
+      this.distinctCounts.put(columnNames, count);
+      return this;
+    }
+
+    /** Sets the "monotonicColumn" attribute (default null). */
+    public Builder monotonicColumn(Object name) {
+      this.monotonicColumn = name == null ? null : resolveColumn(name);
+      return this;
+    }
+
+    /** Sets the "maxStalenessMillis" attribute (default -1). */
+    public Builder maxStalenessMillis(long maxStalenessMillis) {
+      this.maxStalenessMillis = maxStalenessMillis;
+      return this;
+    }
+
     /** Builds a lattice. */
     public Lattice build() {
-      return new Lattice(ImmutableList.copyOf(nodes), auto, algorithm,
-          algorithmMaxMillis, rowCountEstimate, columns,
+      return new Lattice(rootSchema, ImmutableList.copyOf(nodes), auto,
+          algorithm, algorithmMaxMillis, rowCountEstimate, computeStatistics,
+          statisticsSampleRate, distinctCounts, monotonicColumn,
+          maxStalenessMillis, columns,
           defaultMeasureListBuilder.build(), tileListBuilder.build());
     }
 
@@ -54,6 +54,20 @@ static class Materialization {
     CalciteSchema.TableEntry materializedTable;
     final String sql;
     final RelDataType rowType;
+    /** Greatest value of the lattice's monotonic column among the rows that
+     * the materialized table contains, if the materialization is a tile that
+     * is maintained incrementally. Null if the fact table had no rows. */
+    Object highWaterMark;
+    /** Number of rows of the star whose value of the monotonic column was
+     * equal to {@link #highWaterMark} when it was read. If a refresh finds a
+     * different number, rows have been added at the high-water mark. */
+    long highWaterMarkCount;
+    /** Whether the materialization is a tile that is maintained
+     * incrementally. */
+    boolean incremental;
+    /** Time, in milliseconds since the epoch, that {@link #highWaterMark} was
+     * read. The materialized table is stale by at most the time since. */
+    long refreshTime;
 
     /** Creates a materialization.
      *
@@ -27,33 +27,52 @@
 import org.apache.calcite.jdbc.CalciteSchema;
 import org.apache.calcite.linq4j.AbstractQueryable;
 import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.Linq4j;
 import org.apache.calcite.linq4j.QueryProvider;
 import org.apache.calcite.linq4j.function.Function1;
 import org.apache.calcite.linq4j.function.Functions;
 import org.apache.calcite.linq4j.tree.Expression;
 import org.apache.calcite.prepare.Prepare;
 import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeField;
 import org.apache.calcite.rel.type.RelDataTypeImpl;
 import org.apache.calcite.runtime.Hook;
+import org.apache.calcite.schema.ScannableTable;
 import org.apache.calcite.schema.Schemas;
 import org.apache.calcite.schema.Table;
+import org.apache.calcite.sql.SqlAggFunction;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
 import org.apache.calcite.util.ImmutableBitSet;
+import org.apache.calcite.util.NumberUtil;
 import org.apache.calcite.util.Pair;
 import org.apache.calcite.util.Util;
+import org.apache.calcite.util.trace.CalciteTrace;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
 
 import java.lang.reflect.Type;
+import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Manages the collection of materialized tables known to the system,
@@ -88,8 +107,42 @@ public int compare(Pair<CalciteSchema.TableEntry, TileKey> o0,
         }
       };
 
+  /** Properties of the connection that reads rows for an incremental
+   * refresh. Queries must not create materializations, nor read from them,
+   * because a materialization might be stale. */
+  private static final ImmutableMap<CalciteConnectionProperty, String>
+      REFRESH_PROPERTIES =
+          ImmutableMap.of(
+              CalciteConnectionProperty.CREATE_MATERIALIZATIONS, "false",
+              CalciteConnectionProperty.MATERIALIZATIONS_ENABLED, "false");
+
+  private static final Function1<ColumnMetaData, ColumnMetaData.Rep> TO_REP =
+      new Function1<ColumnMetaData, ColumnMetaData.Rep>() {
+        public ColumnMetaData.Rep apply(ColumnMetaData column) {
+          return column.type.representation;
+        }
+      };
+
+  private static final Logger LOGGER = CalciteTrace.getMaterializeTracer();
+
   private final MaterializationActor actor = new MaterializationActor();
 
+  /** Executor that refreshes and derives tiles in the background; created
+   * when first needed. */
+  private ScheduledExecutorService executor;
+
+  /** Background refresh task of each lattice. */
+  private final Map<Lattice, ScheduledFuture<?>> refreshTasks =
+      Maps.newIdentityHashMap();
+
+  /** Tiles that are being derived in the background, and the tasks that are
+   * deriving them. */
+  private final Map<TileKey, Future<?>> pendingTiles = Maps.newHashMap();
+
+  /** Held while tiles are refreshed, so that two refreshes of a tile do not
+   * both read its rows and then both replace it. */
+  private final Object refreshLock = new Object();
+
   private MaterializationService() {
   }
 
@@ -97,38 +150,55 @@ private MaterializationService() {
   public MaterializationKey defineMaterialization(final CalciteSchema schema,
       TileKey tileKey, String viewSql, List<String> viewSchemaPath,
       final String suggestedTableName, boolean create) {
+    return defineMaterialization(schema, tileKey, viewSql, viewSql, null,
+        viewSchemaPath, suggestedTableName, create).left;
+  }
+
+  /** Defines a new materialization, populating it using a query that may
+   * differ from the query that it materializes, or from a table that already
+   * contains its rows. Returns its key, or null if it does not exist and
+   * {@code create} is false; and whether this call created it.
+   *
+   * <p>Prepares the query without holding the lock on this service, so that
+   * other threads can look up materializations meanwhile. If another thread
+   * defines the same materialization first, returns that one. */
+  private Pair<MaterializationKey, Boolean> defineMaterialization(
+      final CalciteSchema schema, TileKey tileKey, String viewSql,
+      String populateSql, Table table, List<String> viewSchemaPath,
+      final String suggestedTableName, boolean create) {
     final MaterializationActor.QueryKey queryKey =
         new MaterializationActor.QueryKey(viewSql, schema, viewSchemaPath);
-    final MaterializationKey existingKey = actor.keyBySql.get(queryKey);
-    if (existingKey != null) {
-      return existingKey;
+    synchronized (this) {
+      final MaterializationKey existingKey = actor.keyBySql.get(queryKey);
+      if (existingKey != null) {
+        return Pair.of(existingKey, false);
+      }
     }
     if (!create) {
-      return null;
+      return Pair.of((MaterializationKey) null, false);
     }
 
     final CalciteConnection connection =
         CalciteMetaImpl.connect(schema.root(), null);
-    final Pair<String, Table> pair = schema.getTableBySql(viewSql);
-    Table materializedTable = pair == null ? null : pair.right;
+    Table materializedTable = table;
+    if (materializedTable == null) {
+      final Pair<String, Table> pair = schema.getTableBySql(viewSql);
+      materializedTable = pair == null ? null : pair.right;
+    }
     RelDataType rowType = null;
     if (materializedTable == null) {
       final ImmutableMap<CalciteConnectionProperty, String> map =
           ImmutableMap.of(CalciteConnectionProperty.CREATE_MATERIALIZATIONS,
               "false");
       final CalcitePrepare.CalciteSignature<Object> calciteSignature =
-          Schemas.prepare(connection, schema, viewSchemaPath, viewSql, map);
+          Schemas.prepare(connection, schema, viewSchemaPath, populateSql,
+              map);
       rowType = calciteSignature.rowType;
       final JavaTypeFactory typeFactory = connection.getTypeFactory();
       materializedTable =
           CloneSchema.createCloneTable(typeFactory,
               RelDataTypeImpl.proto(calciteSignature.rowType),
-              Functions.adapt(calciteSignature.columns,
-                  new Function1<ColumnMetaData, ColumnMetaData.Rep>() {
-                    public ColumnMetaData.Rep apply(ColumnMetaData column) {
-                      return column.type.representation;
-                    }
-                  }),
+              Functions.adapt(calciteSignature.columns, TO_REP),
               new AbstractQueryable<Object>() {
                 public Enumerator<Object> enumerator() {
                   final DataContext dataContext =
@@ -155,32 +225,40 @@ public Iterator<Object> iterator() {
                 }
               });
     }
-    final String tableName =
-        Schemas.uniqueTableName(schema, Util.first(suggestedTableName, "m"));
-    final CalciteSchema.TableEntry tableEntry =
-        schema.add(tableName, materializedTable, ImmutableList.of(viewSql));
-    Hook.CREATE_MATERIALIZATION.run(tableName);
     if (rowType == null) {
       // If we didn't validate the SQL by populating a table, validate it now.
       final CalcitePrepare.ParseResult parse =
           Schemas.parse(connection, schema, viewSchemaPath, viewSql);
       rowType = parse.rowType;
     }
+    final String tableName;
     final MaterializationKey key = new MaterializationKey();
-    final MaterializationActor.Materialization materialization =
-        new MaterializationActor.Materialization(key, schema.root(),
-            tableEntry, viewSql, rowType);
-    actor.keyMap.put(materialization.key, materialization);
-    actor.keyBySql.put(queryKey, materialization.key);
-    if (tileKey != null) {
-      actor.keyByTile.put(tileKey, materialization.key);
-    }
-    return key;
+    synchronized (this) {
+      final MaterializationKey existingKey = actor.keyBySql.get(queryKey);
+      if (existingKey != null) {
+        return Pair.of(existingKey, false);
+      }
+      tableName =
+          Schemas.uniqueTableName(schema, Util.first(suggestedTableName, "m"));
+      final CalciteSchema.TableEntry tableEntry =
+          schema.add(tableName, materializedTable, ImmutableList.of(viewSql));
+      final MaterializationActor.Materialization materialization =
+          new MaterializationActor.Materialization(key, schema.root(),
+              tableEntry, viewSql, rowType);
+      actor.keyMap.put(materialization.key, materialization);
+      actor.keyBySql.put(queryKey, materialization.key);
+      if (tileKey != null) {
+        actor.keyByTile.put(tileKey, materialization.key);
+      }
+    }
+    Hook.CREATE_MATERIALIZATION.run(tableName);
+    return Pair.of(key, true);
   }
 
   /** Checks whether a materialization is valid, and if so, returns the table
    * where the data are stored. */
-  public CalciteSchema.TableEntry checkValid(MaterializationKey key) {
+  public synchronized CalciteSchema.TableEntry checkValid(
+      MaterializationKey key) {
     final MaterializationActor.Materialization materialization =
         actor.keyMap.get(key);
     if (materialization != null) {
@@ -196,117 +274,616 @@ public CalciteSchema.TableEntry checkValid(MaterializationKey key) {
    * from being created if one does not exist. Critically, it is set to false
    * during the recursive SQL that populates a materialization. Otherwise a
    * materialization would try to create itself to populate itself!
+   *
+   * <p>Holds the lock on this service only while it reads or changes the
+   * state of materializations; not while it reads the star or another tile,
+   * so that planners that look up tiles do not wait for that work.
    */
-  public Pair<CalciteSchema.TableEntry, TileKey> defineTile(Lattice lattice,
-      ImmutableBitSet groupSet, List<Lattice.Measure> measureList,
+  public Pair<CalciteSchema.TableEntry, TileKey> defineTile(
+      Lattice lattice, ImmutableBitSet groupSet,
+      List<Lattice.Measure> measureList,
       CalciteSchema schema, boolean create, boolean exact) {
     MaterializationKey materializationKey;
     final TileKey tileKey =
         new TileKey(lattice, groupSet, ImmutableList.copyOf(measureList));
+    final TileKey tileKey0 =
+        new TileKey(lattice, groupSet, ImmutableList.<Lattice.Measure>of());
+    final List<TileKey> obsolete = Lists.newArrayList();
+    final TileKey newTileKey;
+    final String sql;
+    final List<String> path = schema.path(null);
+    final boolean exists;
+    final Pair<CalciteSchema.TableEntry, TileKey> source;
+    boolean incremental = false;
+    long refreshTime = System.currentTimeMillis();
+    Object highWaterMark = null;
+    long highWaterMarkCount = 0L;
+    synchronized (this) {
+      // Step 1. Look for an exact match for the tile.
+      materializationKey = actor.keyByTile.get(tileKey);
+      if (materializationKey != null) {
+        final CalciteSchema.TableEntry tableEntry =
+            checkValid(materializationKey);
+        if (tableEntry != null) {
+          return Pair.of(tableEntry, tileKey);
+        }
+      }
+
+      // Step 2. Look for a match of the tile with the same dimensionality and
+      // an acceptable list of measures.
+      for (TileKey tileKey1 : actor.tilesByDimensionality.get(tileKey0)) {
+        assert tileKey1.dimensions.equals(groupSet);
+        if (allSatisfiable(measureList, tileKey1)) {
+          materializationKey = actor.keyByTile.get(tileKey1);
+          if (materializationKey != null) {
+            final CalciteSchema.TableEntry tableEntry =
+                checkValid(materializationKey);
+            if (tableEntry != null) {
+              return Pair.of(tableEntry, tileKey1);
+            }
+          }
+        }
+      }
+
+      // Step 3. There's nothing at the exact dimensionality. Look for a
+      // roll-up from tiles that have a super-set of dimensions and all the
+      // measures we need.
+      //
+      // If there are several roll-ups, choose the one with the fewest rows.
+      //
+      // TODO: Allow/deny roll-up based on a size factor. If the source is
+      // only say 2x larger than the target, don't materialize, but if it is
+      // 3x, do.
+      //
+      // If we are allowed to create, answer from the roll-up for now, and
+      // meanwhile derive the tile we need from it in the background.
+      if (!exact) {
+        final Pair<CalciteSchema.TableEntry, TileKey> rollUp =
+            findRollUp(lattice, groupSet, measureList, false);
+        if (rollUp != null) {
+          if (create && allDerivable(measureList, rollUp.right)) {
+            deriveLater(tileKey, schema);
+          }
+          return rollUp;
+        }
+      }
+
+      // What we need is not there. If we can't create, we're done.
+      if (!create) {
+        return null;
+      }
 
-    // Step 1. Look for an exact match for the tile.
-    materializationKey = actor.keyByTile.get(tileKey);
-    if (materializationKey != null) {
+      // Step 4. Create the tile we need.
+      //
+      // If there were any tiles at this dimensionality, regardless of
+      // whether they were current, create a wider tile that contains their
+      // measures plus the currently requested measures. Then we can obsolete
+      // all other tiles.
+      final LinkedHashSet<Lattice.Measure> measureSet =
+          Sets.newLinkedHashSet();
+      for (TileKey tileKey1 : actor.tilesByDimensionality.get(tileKey0)) {
+        measureSet.addAll(tileKey1.measures);
+        obsolete.add(tileKey1);
+      }
+      measureSet.addAll(measureList);
+      newTileKey =
+          new TileKey(lattice, groupSet, ImmutableList.copyOf(measureSet));
+
+      // If a finer tile has all of the measures we need, derive the tile by
+      // rolling up the rows of the smallest such tile, rather than by reading
+      // the star. The new tile is as fresh as its source.
+      sql = lattice.sql(groupSet, newTileKey.measures);
+      exists = actor.keyBySql.containsKey(
+          new MaterializationActor.QueryKey(sql, schema, path));
+      source = exists
+          ? null
+          : findRollUp(lattice, groupSet, newTileKey.measures, true);
+      if (source != null) {
+        // Take the source's high-water mark along with the table entry whose
+        // rows are read, before reading them, so that the mark describes
+        // those rows even if the source is refreshed while the tile is
+        // derived.
+        final MaterializationActor.Materialization sourceMaterialization =
+            actor.keyMap.get(actor.keyByTile.get(source.right));
+        incremental = sourceMaterialization.incremental
+            && isIncremental(newTileKey);
+        highWaterMark = sourceMaterialization.highWaterMark;
+        highWaterMarkCount = sourceMaterialization.highWaterMarkCount;
+        refreshTime = sourceMaterialization.refreshTime;
+      }
+    }
+
+    // Read the source tile, or the bounds of the star, without the lock.
+    final CalciteConnection connection =
+        CalciteMetaImpl.connect(schema.root(), null);
+    Table table = null;
+    String populateSql = sql;
+    if (source != null) {
+      table = deriveTile(connection, schema, path, sql, newTileKey, source);
+    }
+    if (table == null) {
+      // Otherwise, if the tile can be maintained incrementally, populate it
+      // with the rows up to the current high-water mark, so that a refresh
+      // can add the rows beyond it.
+      incremental = false;
+      if (!exists && isIncremental(newTileKey)) {
+        incremental = true;
+        refreshTime = System.currentTimeMillis();
+        highWaterMark = highWaterMark(connection, schema, lattice, null);
+        highWaterMarkCount =
+            count(connection, schema, lattice, highWaterMark);
+        populateSql =
+            lattice.sql(groupSet, newTileKey.measures, null, highWaterMark);
+      }
+    }
+    final Pair<MaterializationKey, Boolean> pair =
+        defineMaterialization(schema, newTileKey, sql, populateSql, table,
+            path, "m" + groupSet, true);
+    materializationKey = pair.left;
+    if (materializationKey == null) {
+      return null;
+    }
+    synchronized (this) {
       final CalciteSchema.TableEntry tableEntry =
           checkValid(materializationKey);
-      if (tableEntry != null) {
-        return Pair.of(tableEntry, tileKey);
+      if (tableEntry == null) {
+        return null;
+      }
+      // The high-water mark describes the rows of the table only if this
+      // call created it.
+      if (incremental && pair.right) {
+        final MaterializationActor.Materialization materialization =
+            actor.keyMap.get(materializationKey);
+        materialization.incremental = true;
+        materialization.highWaterMark = highWaterMark;
+        materialization.highWaterMarkCount = highWaterMarkCount;
+        materialization.refreshTime = refreshTime;
+        scheduleRefresh(lattice);
+      }
+      // Obsolete all of the narrower tiles.
+      for (TileKey tileKey1 : obsolete) {
+        actor.tilesByDimensionality.remove(tileKey0, tileKey1);
+        actor.keyByTile.remove(tileKey1);
       }
+
+      actor.tilesByDimensionality.put(tileKey0, newTileKey);
+      actor.keyByTile.put(newTileKey, materializationKey);
+      return Pair.of(tableEntry, newTileKey);
     }
+  }
 
-    // Step 2. Look for a match of the tile with the same dimensionality and an
-    // acceptable list of measures.
-    final TileKey tileKey0 =
-        new TileKey(lattice, groupSet, ImmutableList.<Lattice.Measure>of());
-    for (TileKey tileKey1 : actor.tilesByDimensionality.get(tileKey0)) {
-      assert tileKey1.dimensions.equals(groupSet);
-      if (allSatisfiable(measureList, tileKey1)) {
-        materializationKey = actor.keyByTile.get(tileKey1);
-        if (materializationKey != null) {
-          final CalciteSchema.TableEntry tableEntry =
-              checkValid(materializationKey);
-          if (tableEntry != null) {
-            return Pair.of(tableEntry, tileKey1);
-          }
+  /** Finds the tile with the fewest rows that has a super-set of the given
+   * dimensions and from which the given measures can be computed. If
+   * {@code derive}, the measures must be computable by rolling up rows of the
+   * tile without reading the star; see {@link #allDerivable}.
+   *
+   * <p>TODO: Use a partially-ordered set data structure, so we are not
+   * scanning through all tiles. */
+  private Pair<CalciteSchema.TableEntry, TileKey> findRollUp(Lattice lattice,
+      ImmutableBitSet groupSet, List<Lattice.Measure> measureList,
+      boolean derive) {
+    final PriorityQueue<Pair<CalciteSchema.TableEntry, TileKey>> queue =
+        new PriorityQueue<Pair<CalciteSchema.TableEntry, TileKey>>(1, C);
+    for (Map.Entry<TileKey, MaterializationKey> entry
+        : actor.keyByTile.entrySet()) {
+      final TileKey tileKey2 = entry.getKey();
+      if (tileKey2.lattice == lattice
+          && tileKey2.dimensions.contains(groupSet)
+          && !tileKey2.dimensions.equals(groupSet)
+          && (derive
+              ? allDerivable(measureList, tileKey2)
+              : allSatisfiable(measureList, tileKey2))) {
+        final CalciteSchema.TableEntry tableEntry =
+            checkValid(entry.getValue());
+        if (tableEntry != null) {
+          queue.add(Pair.of(tableEntry, tileKey2));
         }
       }
     }
+    return queue.peek();
+  }
+
+  /** Computes the rows of a tile by rolling up the rows of a finer tile.
+   * Returns null if the rows cannot be computed that way.
+   *
+   * <p>Each measure is either a measure of the finer tile, which is combined
+   * using its {@link Lattice.Measure#getRollup() roll-up} function, or a
+   * {@code MIN} or {@code MAX} of one of its dimensions. */
+  private static Table deriveTile(CalciteConnection connection,
+      CalciteSchema schema, List<String> path, String sql, TileKey tileKey,
+      Pair<CalciteSchema.TableEntry, TileKey> source) {
+    final Table sourceTable = source.left.getTable();
+    if (!(sourceTable instanceof ScannableTable)) {
+      return null;
+    }
+
+    // Position in a row of the finer tile of each field of the new tile.
+    final TileKey sourceKey = source.right;
+    final int sourceGroupCount = sourceKey.dimensions.cardinality();
+    final List<Integer> fields = Lists.newArrayList();
+    for (int dimension : tileKey.dimensions) {
+      fields.add(sourceKey.dimensions.indexOf(dimension));
+    }
+    for (Lattice.Measure measure : tileKey.measures) {
+      final int i = sourceKey.measures.indexOf(measure);
+      fields.add(i >= 0
+          ? sourceGroupCount + i
+          : sourceKey.dimensions.indexOf(measure.argOrdinals().get(0)));
+    }
+
+    final DataContext dataContext = Schemas.createDataContext(connection);
+    final int groupCount = tileKey.dimensions.cardinality();
+    final Map<List<Object>, Object[]> rows = Maps.newLinkedHashMap();
+    for (Object[] sourceRow
+        : ((ScannableTable) sourceTable).scan(dataContext)) {
+      final Object[] row = new Object[fields.size()];
+      for (int i = 0; i < row.length; i++) {
+        row[i] = sourceRow[fields.get(i)];
+      }
+      merge(rows, row, groupCount, tileKey.measures);
+    }
+    if (rows.isEmpty() && groupCount == 0) {
+      // Aggregating no rows without GROUP BY yields one row, whose values
+      // depend on the aggregate functions. Let the star compute it.
+      return null;
+    }
+
+    final JavaTypeFactory typeFactory = connection.getTypeFactory();
+    final RelDataType rowType =
+        Schemas.parse(connection, schema, path, sql).rowType;
+    final List<ColumnMetaData.Rep> repList = Lists.newArrayList();
+    for (RelDataTypeField field : rowType.getFieldList()) {
+      repList.add(
+          ColumnMetaData.Rep.of(typeFactory.getJavaClass(field.getType())));
+    }
+    return CloneSchema.createCloneTable(typeFactory,
+        RelDataTypeImpl.proto(rowType), repList,
+        Linq4j.asEnumerable(toList(rows.values(), repList.size() == 1)));
+  }
 
-    // Step 3. There's nothing at the exact dimensionality. Look for a roll-up
-    // from tiles that have a super-set of dimensions and all the measures we
-    // need.
-    //
-    // If there are several roll-ups, choose the one with the fewest rows.
-    //
-    // TODO: Allow/deny roll-up based on a size factor. If the source is only
-    // say 2x larger than the target, don't materialize, but if it is 3x, do.
-    //
-    // TODO: Use a partially-ordered set data structure, so we are not scanning
-    // through all tiles.
-    if (!exact) {
-      final PriorityQueue<Pair<CalciteSchema.TableEntry, TileKey>> queue =
-          new PriorityQueue<Pair<CalciteSchema.TableEntry, TileKey>>(1, C);
+  /** Derives a tile in the background. Does nothing if the tile is already
+   * being derived.
+   *
+   * <p>Until the tile is ready, queries can roll up a finer tile. */
+  private void deriveLater(final TileKey tileKey, final CalciteSchema schema) {
+    if (pendingTiles.containsKey(tileKey)) {
+      return;
+    }
+    final Future<?> future =
+        executor().submit(
+            new Runnable() {
+              public void run() {
+                try {
+                  defineTile(tileKey.lattice, tileKey.dimensions,
+                      tileKey.measures, schema, true, true);
+                } catch (RuntimeException e) {
+                  LOGGER.log(Level.WARNING, "Error while deriving tile", e);
+                } finally {
+                  synchronized (MaterializationService.this) {
+                    pendingTiles.remove(tileKey);
+                  }
+                }
+              }
+            });
+    pendingTiles.put(tileKey, future);
+  }
+
+  /** Waits until the tiles that are being derived in the background are
+   * ready. Used by tests. */
+  public void awaitPendingTiles() {
+    final List<Future<?>> futures;
+    synchronized (this) {
+      futures = ImmutableList.copyOf(pendingTiles.values());
+    }
+    for (Future<?> future : futures) {
+      Futures.getUnchecked(future);
+    }
+  }
+
+  /** Returns whether a tile can be maintained incrementally: its lattice has
+   * a monotonic column, and each of its measures can be rolled up. */
+  private static boolean isIncremental(TileKey tileKey) {
+    if (tileKey.lattice.monotonicColumn == null) {
+      return false;
+    }
+    for (Lattice.Measure measure : tileKey.measures) {
+      if (measure.getRollup() == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Refreshes the tiles of a lattice that are maintained incrementally.
+   *
+   * <p>For each tile, reads the rows of the star that have been added since
+   * the tile was populated or last refreshed (that is, whose value of the
+   * lattice's {@link Lattice#monotonicColumn monotonic column} is greater
+   * than the tile's high-water mark), aggregates them, and merges them into
+   * the tile using each measure's {@link Lattice.Measure#getRollup() roll-up}
+   * function. Returns the number of tiles that changed.
+   *
+   * <p>Values of the monotonic column need not be unique. If rows have been
+   * added whose value equals a tile's high-water mark, the tile cannot tell
+   * them from the rows it already contains, so the refresh rebuilds the tile
+   * from all rows up to the new high-water mark.
+   *
+   * <p>Refreshes run one at a time. They hold the lock on this service only
+   * to read and to replace the state of a tile, not while they read the star
+   * or the tile. */
+  public int refresh(Lattice lattice) {
+    final List<Pair<TileKey, MaterializationKey>> tiles = Lists.newArrayList();
+    synchronized (this) {
       for (Map.Entry<TileKey, MaterializationKey> entry
           : actor.keyByTile.entrySet()) {
-        final TileKey tileKey2 = entry.getKey();
-        if (tileKey2.lattice == lattice
-            && tileKey2.dimensions.contains(groupSet)
-            && !tileKey2.dimensions.equals(groupSet)
-            && allSatisfiable(measureList, tileKey2)) {
-          materializationKey = entry.getValue();
-          final CalciteSchema.TableEntry tableEntry =
-              checkValid(materializationKey);
-          if (tableEntry != null) {
-            queue.add(Pair.of(tableEntry, tileKey2));
-          }
+        if (entry.getKey().lattice == lattice) {
+          tiles.add(Pair.of(entry.getKey(), entry.getValue()));
         }
       }
-      if (!queue.isEmpty()) {
-        return queue.peek();
+    }
+    int count = 0;
+    synchronized (refreshLock) {
+      for (Pair<TileKey, MaterializationKey> tile : tiles) {
+        if (refreshTile(tile.left, tile.right)) {
+          ++count;
+        }
       }
     }
+    return count;
+  }
 
-    // What we need is not there. If we can't create, we're done.
-    if (!create) {
-      return null;
+  private boolean refreshTile(TileKey tileKey, MaterializationKey key) {
+    final MaterializationActor.Materialization materialization;
+    final CalciteSchema.TableEntry tableEntry;
+    Object lower;
+    final long lowerCount;
+    synchronized (this) {
+      materialization = actor.keyMap.get(key);
+      if (materialization == null
+          || !materialization.incremental
+          || !(materialization.materializedTable.getTable()
+              instanceof ScannableTable)) {
+        return false;
+      }
+      tableEntry = materialization.materializedTable;
+      lower = materialization.highWaterMark;
+      lowerCount = materialization.highWaterMarkCount;
     }
-
-    // Step 4. Create the tile we need.
-    //
-    // If there were any tiles at this dimensionality, regardless of
-    // whether they were current, create a wider tile that contains their
-    // measures plus the currently requested measures. Then we can obsolete all
-    // other tiles.
-    final List<TileKey> obsolete = Lists.newArrayList();
-    final LinkedHashSet<Lattice.Measure> measureSet = Sets.newLinkedHashSet();
-    for (TileKey tileKey1 : actor.tilesByDimensionality.get(tileKey0)) {
-      measureSet.addAll(tileKey1.measures);
-      obsolete.add(tileKey1);
-    }
-    measureSet.addAll(measureList);
-    final TileKey newTileKey =
-        new TileKey(lattice, groupSet, ImmutableList.copyOf(measureSet));
-
-    final String sql = lattice.sql(groupSet, newTileKey.measures);
-    materializationKey =
-        defineMaterialization(schema, newTileKey, sql, schema.path(null),
-            "m" + groupSet, true);
-    if (materializationKey != null) {
-      final CalciteSchema.TableEntry tableEntry =
-          checkValid(materializationKey);
-      if (tableEntry != null) {
-        // Obsolete all of the narrower tiles.
-        for (TileKey tileKey1 : obsolete) {
-          actor.tilesByDimensionality.remove(tileKey0, tileKey1);
-          actor.keyByTile.remove(tileKey1);
+    final CalciteSchema schema = tableEntry.schema;
+    final Lattice lattice = tileKey.lattice;
+    final CalciteConnection connection =
+        CalciteMetaImpl.connect(schema.root(), null);
+    final long refreshTime = System.currentTimeMillis();
+    boolean rebuild = false;
+    if (lower != null
+        && count(connection, schema, lattice, lower) != lowerCount) {
+      // Rows have been added at the high-water mark. Rebuild the tile.
+      lower = null;
+      rebuild = true;
+    }
+    final Object upper = highWaterMark(connection, schema, lattice, lower);
+    if (upper == null) {
+      // No rows have been added.
+      synchronized (this) {
+        if (materialization.materializedTable == tableEntry) {
+          materialization.refreshTime = refreshTime;
         }
+      }
+      return false;
+    }
+    // Count before aggregating. If rows are added at the new high-water mark
+    // in between, the next refresh sees more and rebuilds, rather than
+    // missing them.
+    final long upperCount = count(connection, schema, lattice, upper);
+    final CalcitePrepare.CalciteSignature<Object> signature =
+        Schemas.prepare(connection, schema, schema.path(null),
+            lattice.sql(tileKey.dimensions, tileKey.measures, lower, upper),
+            REFRESH_PROPERTIES);
 
-        actor.tilesByDimensionality.put(tileKey0, newTileKey);
-        actor.keyByTile.put(newTileKey, materializationKey);
-        return Pair.of(tableEntry, newTileKey);
+    // Merge the existing rows of the tile with the aggregated new rows.
+    final DataContext dataContext = Schemas.createDataContext(connection);
+    final int groupCount = tileKey.dimensions.cardinality();
+    final Map<List<Object>, Object[]> rows = Maps.newLinkedHashMap();
+    if (!rebuild) {
+      for (Object[] row
+          : ((ScannableTable) tableEntry.getTable()).scan(dataContext)) {
+        merge(rows, row, groupCount, tileKey.measures);
       }
     }
-    return null;
+    for (Object o : signature.enumerable(dataContext)) {
+      merge(rows, o instanceof Object[] ? (Object[]) o : new Object[] {o},
+          groupCount, tileKey.measures);
+    }
+    final Table table =
+        CloneSchema.createCloneTable(connection.getTypeFactory(),
+            RelDataTypeImpl.proto(materialization.rowType),
+            Functions.adapt(signature.columns, TO_REP),
+            Linq4j.asEnumerable(
+                toList(rows.values(),
+                    materialization.rowType.getFieldCount() == 1)));
+
+    // Replace the table, unless the service has been cleared meanwhile. Its
+    // name, hence the SQL of plans that use it, does not change.
+    synchronized (this) {
+      if (actor.keyMap.get(key) != materialization
+          || materialization.materializedTable != tableEntry) {
+        return false;
+      }
+      materialization.materializedTable =
+          schema.add(tableEntry.name, table,
+              ImmutableList.copyOf(tableEntry.sqls));
+      materialization.highWaterMark = upper;
+      materialization.highWaterMarkCount = upperCount;
+      materialization.refreshTime = refreshTime;
+    }
+    return true;
+  }
+
+  /** Returns the greatest value of a lattice's monotonic column that is
+   * greater than {@code lower}, or null if there is none. */
+  private static Object highWaterMark(CalciteConnection connection,
+      CalciteSchema schema, Lattice lattice, Object lower) {
+    final CalcitePrepare.CalciteSignature<Object> signature =
+        Schemas.prepare(connection, schema, schema.path(null),
+            lattice.maxSql(lower), REFRESH_PROPERTIES);
+    final Enumerator<Object> enumerator =
+        signature.enumerable(Schemas.createDataContext(connection))
+            .enumerator();
+    try {
+      return enumerator.moveNext() ? enumerator.current() : null;
+    } finally {
+      enumerator.close();
+    }
+  }
+
+  /** Returns the number of rows of the star whose value of a lattice's
+   * monotonic column is equal to {@code value}; 0 if {@code value} is null. */
+  private static long count(CalciteConnection connection,
+      CalciteSchema schema, Lattice lattice, Object value) {
+    if (value == null) {
+      return 0L;
+    }
+    final CalcitePrepare.CalciteSignature<Object> signature =
+        Schemas.prepare(connection, schema, schema.path(null),
+            lattice.countSql(value), REFRESH_PROPERTIES);
+    final Enumerator<Object> enumerator =
+        signature.enumerable(Schemas.createDataContext(connection))
+            .enumerator();
+    try {
+      return enumerator.moveNext()
+          ? ((Number) enumerator.current()).longValue()
+          : 0L;
+    } finally {
+      enumerator.close();
+    }
+  }
+
+  /** Adds a row to a map of rows keyed by their dimension values. If there is
+   * already a row with the same key, rolls up the measures of the two. */
+  private static void merge(Map<List<Object>, Object[]> rows, Object[] row,
+      int groupCount, List<Lattice.Measure> measures) {
+    final List<Object> key = Arrays.asList(Arrays.copyOf(row, groupCount));
+    final Object[] existing = rows.get(key);
+    if (existing == null) {
+      rows.put(key, row.clone());
+      return;
+    }
+    for (int i = 0; i < measures.size(); i++) {
+      final int j = groupCount + i;
+      existing[j] = rollUp(measures.get(i).getRollup(), existing[j], row[j]);
+    }
+  }
+
+  /** Converts rows to the elements of a table. If the table has one column,
+   * its elements are the values, not arrays. */
+  private static List<Object> toList(Iterable<Object[]> rows,
+      boolean scalar) {
+    final List<Object> list = Lists.newArrayList();
+    for (Object[] row : rows) {
+      list.add(scalar ? row[0] : row);
+    }
+    return list;
+  }
+
+  /** Combines two values of a measure using its roll-up function. */
+  private static Object rollUp(SqlAggFunction rollup, Object v0, Object v1) {
+    if (v0 == null) {
+      return v1;
+    }
+    if (v1 == null) {
+      return v0;
+    }
+    if (rollup == SqlStdOperatorTable.MIN
+        || rollup == SqlStdOperatorTable.MAX) {
+      //noinspection unchecked
+      final int c = ((Comparable) v0).compareTo(v1);
+      return (c <= 0) == (rollup == SqlStdOperatorTable.MIN) ? v0 : v1;
+    }
+    // SUM and $SUM0. The sum has the type of the values.
+    final Number n0 = (Number) v0;
+    final Number n1 = (Number) v1;
+    if (v0 instanceof BigDecimal) {
+      return ((BigDecimal) v0).add(NumberUtil.toBigDecimal(n1));
+    } else if (v0 instanceof Double) {
+      return n0.doubleValue() + n1.doubleValue();
+    } else if (v0 instanceof Float) {
+      return n0.floatValue() + n1.floatValue();
+    } else if (v0 instanceof Long) {
+      return n0.longValue() + n1.longValue();
+    } else if (v0 instanceof Integer) {
+      return n0.intValue() + n1.intValue();
+    } else if (v0 instanceof Short) {
+      return (short) (n0.shortValue() + n1.shortValue());
+    } else if (v0 instanceof Byte) {
+      return (byte) (n0.byteValue() + n1.byteValue());
+    } else {
+      throw new AssertionError("cannot add " + v0.getClass());
+    }
+  }
+
+  /** Schedules a task to refresh the tiles of a lattice periodically, if the
+   * lattice has a staleness bound and there is no such task already.
+   *
+   * <p>The task runs twice per staleness period, so that tiles are within the
+   * bound provided that a refresh takes less than half of the period. */
+  private synchronized void scheduleRefresh(final Lattice lattice) {
+    if (lattice.maxStalenessMillis <= 0
+        || refreshTasks.containsKey(lattice)) {
+      return;
+    }
+    final long period = Math.max(1L, lattice.maxStalenessMillis / 2L);
+    final ScheduledFuture<?> future =
+        executor().scheduleWithFixedDelay(
+            new Runnable() {
+              public void run() {
+                try {
+                  refresh(lattice);
+                } catch (RuntimeException e) {
+                  // Keep the task scheduled; the next refresh may succeed.
+                  LOGGER.log(Level.WARNING, "Error while refreshing tiles", e);
+                }
+              }
+            }, period, period, TimeUnit.MILLISECONDS);
+    refreshTasks.put(lattice, future);
+  }
+
+  /** Returns the executor that maintains tiles in the background, creating
+   * it if necessary. Its thread is a daemon, so does not prevent the JVM from
+   * exiting. */
+  private synchronized ScheduledExecutorService executor() {
+    if (executor == null) {
+      executor = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+              final Thread thread = new Thread(r, "tile-maintainer");
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+    }
+    return executor;
+  }
+
+  /** Returns whether each of a list of measures can be computed by rolling up
+   * the rows of a tile, without reading the star. A measure can be computed
+   * if the tile contains it and it has a roll-up function (as do
+   * {@code SUM}, {@code COUNT}, {@code MIN} and {@code MAX}), or if it is
+   * {@code MIN} or {@code MAX} of one of the tile's dimensions. */
+  private static boolean allDerivable(List<Lattice.Measure> measureList,
+      TileKey tileKey) {
+    for (Lattice.Measure measure : measureList) {
+      if (tileKey.measures.contains(measure)) {
+        if (measure.getRollup() == null) {
+          return false;
+        }
+      } else if (!((measure.agg == SqlStdOperatorTable.MIN
+              || measure.agg == SqlStdOperatorTable.MAX)
+          && measure.args.size() == 1
+          && tileKey.dimensions.contains(measure.argBitSet()))) {
+        return false;
+      }
+    }
+    return true;
   }
 
   private boolean allSatisfiable(List<Lattice.Measure> measureList,
@@ -326,7 +903,8 @@ private boolean allSatisfiable(List<Lattice.Measure> measureList,
    * schema. (Each root schema defines a disconnected namespace, with no overlap
    * with the current schema. Especially in a test run, the contents of two
    * root schemas may look similar.) */
-  public List<Prepare.Materialization> query(CalciteSchema rootSchema) {
+  public synchronized List<Prepare.Materialization> query(
+      CalciteSchema rootSchema) {
     final List<Prepare.Materialization> list =
         new ArrayList<Prepare.Materialization>();
     for (MaterializationActor.Materialization materialization
@@ -341,13 +919,34 @@ public List<Prepare.Materialization> query(CalciteSchema rootSchema) {
     return list;
   }
 
-  /** De-registers all materialized tables in the system. */
-  public void clear() {
+  /** De-registers all materialized tables in the system, stops refreshing
+   * and deriving tiles in the background, and shuts down the background
+   * thread. */
+  public synchronized void clear() {
     actor.keyMap.clear();
+    for (ScheduledFuture<?> future : refreshTasks.values()) {
+      future.cancel(false);
+    }
+    refreshTasks.clear();
+    for (Future<?> future : pendingTiles.values()) {
+      future.cancel(false);
+    }
+    pendingTiles.clear();
+    if (executor != null) {
+      // Lets a task that is running finish; the thread then exits.
+      executor.shutdown();
+      executor = null;
+    }
   }
 
-  /** Used by tests, to ensure that they see their own service. */
+  /** Used by tests, to ensure that they see their own service. Clears the
+   * service that the current thread previously used, if any, so that its
+   * background thread exits. */
   public static void setThreadLocal() {
+    final MaterializationService previous = THREAD_INSTANCE.get();
+    if (previous != null) {
+      previous.clear();
+    }
     THREAD_INSTANCE.set(new MaterializationService());
   }
 
@@ -29,6 +29,14 @@ public class JsonJdbcSchema extends JsonSchema {
   public String jdbcCatalog;
   public String jdbcSchema;
 
+  /** Number of rows to fetch from the database at a time. Optional; if not
+   * specified, the JDBC driver's default is used. */
+  public Integer jdbcFetchSize;
+
+  /** Number of seconds to wait for a query to execute; 0 means wait
+   * indefinitely. Optional; the default is 10. */
+  public Integer jdbcQueryTimeout;
+
   @Override public void accept(ModelHandler handler) {
     handler.visit(this);
   }
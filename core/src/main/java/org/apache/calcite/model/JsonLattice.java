@@ -19,6 +19,7 @@
 import com.google.common.collect.Lists;
 
 import java.util.List;
+import java.util.Map;
 
 /**
  * Element that describes a star schema and provides a framework for defining,
@@ -52,9 +53,52 @@ public class JsonLattice {
 
   /** Estimated number of rows.
    *
-   * <p>If null, Calcite will a query to find the real value. */
+   * <p>If null, and {@link #computeStatistics} is true, Calcite will run a
+   * query to find the real value; otherwise it assumes 1,000 rows. */
   public Double rowCountEstimate;
 
+  /** Whether to compute statistics (the number of rows, and the number of
+   * distinct values of each column and pair of columns) by scanning the data,
+   * if {@link #distinctCounts} is not specified. The algorithm uses them to
+   * estimate the size of tiles.
+   *
+   * <p>Default is false, in which case column cardinalities are guessed. */
+  public boolean computeStatistics = false;
+
+  /** Fraction of rows to sample when computing statistics.
+   *
+   * <p>Default is 1, meaning every row. */
+  public double statisticsSampleRate = 1d;
+
+  /** Number of distinct values of columns and combinations of columns,
+   * typically computed on a previous occasion.
+   *
+   * <p>Keys are column names, such as "the_year", or comma-separated lists of
+   * column names, such as "the_year,quarter". If specified, statistics are not
+   * computed, and the number of rows is {@link #rowCountEstimate}. */
+  public Map<String, Double> distinctCounts;
+
+  /** Column of the fact table whose value increases as rows are added, such
+   * as a sequence number or a timestamp; a string or a list of 1 or 2 strings.
+   *
+   * <p>If specified, tiles are maintained incrementally: each tile records
+   * the greatest value of the column among its rows, and a refresh
+   * aggregates only the rows beyond that value and merges them into the
+   * tile. Rows whose value is null are ignored.
+   *
+   * <p>The column must be numeric, character, DATE, TIME or TIMESTAMP. Its
+   * values need not be unique, but a row must not be added with a value less
+   * than an existing row's. If rows are added with a value equal to a tile's
+   * greatest value, the refresh rebuilds the tile. */
+  public Object monotonicColumn;
+
+  /** Maximum time, in milliseconds, by which a tile may lag the fact table.
+   * If positive, and {@link #monotonicColumn} is specified, tiles are
+   * refreshed in the background.
+   *
+   * <p>Default is -1, meaning that tiles are refreshed only on request. */
+  public long maxStalenessMillis = -1;
+
   /** List of materialized aggregates to create up front. */
   public final List<JsonTile> tiles = Lists.newArrayList();
 
@@ -20,6 +20,7 @@
 import org.apache.calcite.jdbc.CalciteConnection;
 import org.apache.calcite.jdbc.CalciteSchema;
 import org.apache.calcite.materialize.Lattice;
+import org.apache.calcite.runtime.ResultSetEnumerable;
 import org.apache.calcite.schema.AggregateFunction;
 import org.apache.calcite.schema.ScalarFunction;
 import org.apache.calcite.schema.Schema;
@@ -251,7 +252,10 @@ public void visit(JsonJdbcSchema jsonSchema) {
             jsonSchema.jdbcPassword);
     JdbcSchema schema =
         JdbcSchema.create(parentSchema, jsonSchema.name, dataSource,
-            jsonSchema.jdbcCatalog, jsonSchema.jdbcSchema);
+            jsonSchema.jdbcCatalog, jsonSchema.jdbcSchema,
+            Util.first(jsonSchema.jdbcFetchSize, 0),
+            Util.first(jsonSchema.jdbcQueryTimeout,
+                ResultSetEnumerable.DEFAULT_QUERY_TIMEOUT));
     final SchemaPlus schemaPlus = parentSchema.add(jsonSchema.name, schema);
     populateSchema(jsonSchema, schemaPlus);
   }
@@ -291,6 +295,16 @@ public void visit(JsonLattice jsonLattice) {
       if (jsonLattice.rowCountEstimate != null) {
         latticeBuilder.rowCountEstimate(jsonLattice.rowCountEstimate);
       }
+      latticeBuilder.computeStatistics(jsonLattice.computeStatistics)
+          .statisticsSampleRate(jsonLattice.statisticsSampleRate)
+          .monotonicColumn(jsonLattice.monotonicColumn)
+          .maxStalenessMillis(jsonLattice.maxStalenessMillis);
+      if (jsonLattice.distinctCounts != null) {
+        for (Map.Entry<String, Double> entry
+            : jsonLattice.distinctCounts.entrySet()) {
+          latticeBuilder.distinctCount(entry.getKey(), entry.getValue());
+        }
+      }
       populateLattice(jsonLattice, latticeBuilder);
       schema.add(jsonLattice.name, latticeBuilder.build());
     } catch (Exception e) {
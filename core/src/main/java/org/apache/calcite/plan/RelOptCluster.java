@@ -17,6 +17,7 @@
 package org.apache.calcite.plan;
 
 import org.apache.calcite.rel.metadata.DefaultRelMetadataProvider;
+import org.apache.calcite.rel.metadata.JaninoRelMetadataProvider;
 import org.apache.calcite.rel.metadata.MetadataFactory;
 import org.apache.calcite.rel.metadata.MetadataFactoryImpl;
 import org.apache.calcite.rel.metadata.RelMetadataProvider;
@@ -98,11 +99,16 @@ public RelMetadataProvider getMetadataProvider() {
   /**
    * Overrides the default metadata provider for this cluster.
    *
+   * <p>Metadata requests made via {@link #getMetadataFactory()} are
+   * dispatched to the provider by generated code; see
+   * {@link JaninoRelMetadataProvider}.
+   *
    * @param metadataProvider custom provider
    */
   public void setMetadataProvider(RelMetadataProvider metadataProvider) {
     this.metadataProvider = metadataProvider;
-    this.metadataFactory = new MetadataFactoryImpl(metadataProvider);
+    this.metadataFactory =
+        new MetadataFactoryImpl(JaninoRelMetadataProvider.of(metadataProvider));
   }
 
   public MetadataFactory getMetadataFactory() {
@@ -60,9 +60,11 @@ public RelNode rewrite(RelNode node) {
    * <p>The current implementation creates a materialization and populates it,
    * provided that {@link Lattice#auto} is true.
    *
-   * <p>Future implementations might return materializations at a different
-   * level of aggregation, from which the desired result can be obtained by
-   * rolling up.
+   * <p>If there is a materialization at a finer level of aggregation, returns
+   * it, and the desired result can be obtained by rolling up. If
+   * {@link Lattice#auto} is true, the materialization at the desired level is
+   * meanwhile derived from it in the background, and subsequent calls will
+   * return that.
    *
    * @param planner Current planner
    * @param groupSet Grouping key
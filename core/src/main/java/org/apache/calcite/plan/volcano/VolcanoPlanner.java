@@ -91,6 +91,7 @@
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.IdentityHashMap;
@@ -152,6 +153,27 @@ public List<String> apply(RelOptTable relOptTable) {
    */
   protected boolean impatient = false;
 
+  /**
+   * Maximum time, in milliseconds, that {@link #findBestExp()} spends firing
+   * rules; 0 means no limit.
+   *
+   * <p>The planner checks the limit only once it has found an implementable
+   * plan. When the limit is reached, the planner stops and uses the cheapest
+   * plan found so far.
+   */
+  private long timeout;
+
+  /**
+   * Maximum number of rule matches that {@link #findBestExp()} fires; 0 means
+   * no limit. Like {@link #timeout}, checked only once the planner has found
+   * an implementable plan.
+   */
+  private int ruleFireLimit;
+
+  /** Statistics of the most recent call to {@link #findBestExp()}, or
+   * null. */
+  private VolcanoPlannerStats stats;
+
   /**
    * Operands that apply to a given class of {@link RelNode}.
    *
@@ -301,6 +323,12 @@ public VolcanoPlanner(RelOptCostFactory costFactory, //
     super(costFactory == null ? VolcanoCost.FACTORY : costFactory, //
         externalContext);
     this.zeroCost = this.costFactory.makeZeroCost();
+    final CalciteConnectionConfig config =
+        context.unwrap(CalciteConnectionConfig.class);
+    if (config != null) {
+      this.timeout = config.plannerTimeout();
+      this.ruleFireLimit = config.plannerRuleFireLimit();
+    }
   }
 
   //~ Methods ----------------------------------------------------------------
@@ -725,14 +753,27 @@ public RelOptPlanner chooseDelegate() {
    * found, the artificially raised importance values are cleared (see
    * {@link #clearImportanceBoost()}).
    *
+   * <p>If the planner has a budget (see {@link #setTimeout(long)} and
+   * {@link #setRuleFireLimit(int)}) and exceeds it, it skips the remaining
+   * iterations and phases as soon as it has an implementable plan, and
+   * returns the cheapest plan found so far.
+   *
    * @return the most efficient RelNode tree found for implementing the given
    * query
    */
   public RelNode findBestExp() {
+    final long startNanos = System.nanoTime();
+    final long deadlineNanos =
+        timeout > 0 ? startNanos + timeout * 1000000L : Long.MAX_VALUE;
+    final Map<VolcanoPlannerPhase, Long> phaseNanos =
+        new EnumMap<VolcanoPlannerPhase, Long>(VolcanoPlannerPhase.class);
+    int ruleFireCount = 0;
+    boolean budgetExhausted = false;
     ensureRootConverters();
     useApplicableMaterializations();
     int cumulativeTicks = 0;
     for (VolcanoPlannerPhase phase : VolcanoPlannerPhase.values()) {
+      final long phaseStartNanos = System.nanoTime();
       setInitialImportance();
 
       RelOptCost targetCost = costFactory.makeHugeCost();
@@ -786,6 +827,14 @@ public RelNode findBestExp() {
               + "; COST = " + root.bestCost);
         }
 
+        if (!root.bestCost.isInfinite()
+            && (ruleFireLimit > 0 && ruleFireCount >= ruleFireLimit
+                || System.nanoTime() > deadlineNanos)) {
+          // Out of budget. Take the current best.
+          budgetExhausted = true;
+          break;
+        }
+
         VolcanoRuleMatch match = ruleQueue.popMatch(phase);
         if (match == null) {
           break;
@@ -793,6 +842,7 @@ public RelNode findBestExp() {
 
         assert match.getRule().matches(match);
         match.onMatch();
+        ++ruleFireCount;
 
         // The root may have been merged with another
         // subset. Find the new root subset.
@@ -800,6 +850,16 @@ public RelNode findBestExp() {
       }
 
       ruleQueue.phaseCompleted(phase);
+      phaseNanos.put(phase, System.nanoTime() - phaseStartNanos);
+      if (budgetExhausted) {
+        break;
+      }
+    }
+    stats = new VolcanoPlannerStats(ruleFireCount, nextSetId, phaseNanos,
+        budgetExhausted);
+    Hook.PLANNER_STATS.run(stats);
+    if (LOGGER.isLoggable(Level.FINE)) {
+      LOGGER.fine(stats.toString());
     }
     if (LOGGER.isLoggable(Level.FINER)) {
       StringWriter sw = new StringWriter();
@@ -1917,6 +1977,42 @@ public void setLocked(boolean locked) {
     this.locked = locked;
   }
 
+  /**
+   * Sets the maximum time that {@link #findBestExp()} spends firing rules. If
+   * the time runs out before the planner has found an implementable plan,
+   * the planner carries on until it finds one. The initial value comes from
+   * the {@link CalciteConnectionConfig#plannerTimeout() plannerTimeout}
+   * connection property, if the planner's context has a connection
+   * configuration.
+   *
+   * @param timeout Time in milliseconds, or 0 for no limit
+   */
+  public void setTimeout(long timeout) {
+    this.timeout = timeout;
+  }
+
+  /**
+   * Sets the maximum number of rule matches that {@link #findBestExp()} fires.
+   * As with {@link #setTimeout(long)}, the planner always carries on until it
+   * has found an implementable plan. The initial value comes from the
+   * {@link CalciteConnectionConfig#plannerRuleFireLimit() plannerRuleFireLimit}
+   * connection property, if the planner's context has a connection
+   * configuration.
+   *
+   * @param ruleFireLimit Number of rule matches, or 0 for no limit
+   */
+  public void setRuleFireLimit(int ruleFireLimit) {
+    this.ruleFireLimit = ruleFireLimit;
+  }
+
+  /**
+   * Returns statistics of the most recent call to {@link #findBestExp()}, or
+   * null if it has not been called.
+   */
+  public VolcanoPlannerStats getStats() {
+    return stats;
+  }
+
   public void ensureRegistered(
       RelNode rel,
       RelNode equivRel,
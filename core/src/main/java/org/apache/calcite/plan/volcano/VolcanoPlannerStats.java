@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.plan.volcano;
+
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+/**
+ * Statistics of a call to {@link VolcanoPlanner#findBestExp()}.
+ *
+ * @see VolcanoPlanner#getStats()
+ * @see org.apache.calcite.runtime.Hook#PLANNER_STATS
+ */
+public class VolcanoPlannerStats {
+  /** Number of rule matches that were fired. */
+  public final int ruleFireCount;
+
+  /** Number of {@link RelSet}s that the planner had created, including those
+   * created while registering the root and those since merged. */
+  public final int setCount;
+
+  /** Time spent in each phase, in nanoseconds. A phase that was not
+   * reached, because the planner ran out of budget, is absent. */
+  public final ImmutableMap<VolcanoPlannerPhase, Long> phaseNanos;
+
+  /** Whether the planner stopped because it ran out of time or of rule
+   * fires, rather than because there were no more rules to fire or because
+   * the plan stopped improving. */
+  public final boolean budgetExhausted;
+
+  VolcanoPlannerStats(int ruleFireCount, int setCount,
+      Map<VolcanoPlannerPhase, Long> phaseNanos, boolean budgetExhausted) {
+    this.ruleFireCount = ruleFireCount;
+    this.setCount = setCount;
+    this.phaseNanos = ImmutableMap.copyOf(phaseNanos);
+    this.budgetExhausted = budgetExhausted;
+  }
+
+  @Override public String toString() {
+    return "VolcanoPlannerStats(ruleFireCount=" + ruleFireCount
+        + ", setCount=" + setCount
+        + ", phaseNanos=" + phaseNanos
+        + ", budgetExhausted=" + budgetExhausted + ")";
+  }
+}
+
+// End VolcanoPlannerStats.java
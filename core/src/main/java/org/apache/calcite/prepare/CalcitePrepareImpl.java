@@ -63,6 +63,7 @@
 import org.apache.calcite.plan.hep.HepPlanner;
 import org.apache.calcite.plan.hep.HepProgramBuilder;
 import org.apache.calcite.plan.volcano.VolcanoPlanner;
+import org.apache.calcite.plan.volcano.VolcanoPlannerStats;
 import org.apache.calcite.rel.RelCollationTraitDef;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.rules.AggregateExpandDistinctAggregatesRule;
@@ -111,6 +112,7 @@
 import org.apache.calcite.tools.Frameworks;
 import org.apache.calcite.util.Util;
 
+import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -385,6 +387,48 @@ <T> CalciteSignature<T> prepare_(
     if (SIMPLE_SQLS.contains(sql)) {
       return simplePrepare(context, sql);
     }
+    final int planCacheSize =
+        sql == null ? 0 : context.config().planCacheSize();
+    if (planCacheSize > 0) {
+      final PlanCache planCache =
+          PlanCache.instance(context.getRootSchema(), planCacheSize);
+      final List<Object> key =
+          PlanCache.key(context, sql, elementType, maxRowCount);
+      CalciteSignature<T> signature = planCache.get(key);
+      if (signature == null) {
+        // A plan that the planner had to cut short, because it ran out of
+        // time or of rule fires, depends on timing; do not cache it.
+        final boolean[] budgetExhausted = {false};
+        final Hook.Closeable closeable = Hook.PLANNER_STATS.addThread(
+            new Function<VolcanoPlannerStats, Void>() {
+              public Void apply(VolcanoPlannerStats stats) {
+                if (stats.budgetExhausted) {
+                  budgetExhausted[0] = true;
+                }
+                return null;
+              }
+            });
+        try {
+          signature = prepare1_(context, sql, queryable, elementType,
+              maxRowCount);
+        } finally {
+          closeable.close();
+        }
+        if (!budgetExhausted[0]) {
+          planCache.put(key, signature);
+        }
+      }
+      return signature;
+    }
+    return prepare1_(context, sql, queryable, elementType, maxRowCount);
+  }
+
+  <T> CalciteSignature<T> prepare1_(
+      Context context,
+      String sql,
+      Queryable<T> queryable,
+      Type elementType,
+      int maxRowCount) {
     final JavaTypeFactory typeFactory = context.getTypeFactory();
     CalciteCatalogReader catalogReader =
         new CalciteCatalogReader(
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.prepare;
+
+import org.apache.calcite.config.CalciteConnectionConfig;
+import org.apache.calcite.jdbc.CalcitePrepare;
+import org.apache.calcite.jdbc.CalciteRootSchema;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.collect.ImmutableList;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of prepared statements.
+ *
+ * <p>There is one cache per root schema, and hence usually one per
+ * connection. A plan is keyed on its SQL text, the configuration properties
+ * that affect how SQL is parsed and planned, and the
+ * {@link CalciteRootSchema#getVersion() version} of the root schema, so that a
+ * plan is not re-used after a table, function, lattice or sub-schema is added.
+ *
+ * <p>Changes that occur inside a user-defined
+ * {@link org.apache.calcite.schema.Schema} without going through
+ * {@link org.apache.calcite.schema.SchemaPlus} do not change the version;
+ * disable the cache (by setting
+ * {@link org.apache.calcite.config.CalciteConnectionProperty#PLAN_CACHE_SIZE}
+ * to 0) if your schema changes that way.
+ *
+ * <p>A plan is not cached if the planner ran out of time or of rule fires
+ * (see {@link org.apache.calcite.plan.volcano.VolcanoPlannerStats#budgetExhausted})
+ * before it finished, because such a plan depends on timing.
+ */
+public class PlanCache {
+  /** Caches, keyed by root schema. Keys are weak, so a cache becomes garbage
+   * when its root schema does. */
+  private static final Cache<CalciteRootSchema, PlanCache> CACHES =
+      CacheBuilder.newBuilder().weakKeys().build();
+
+  private final Cache<List<Object>, CalcitePrepare.CalciteSignature> cache;
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+
+  private PlanCache(int maximumSize) {
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .removalListener(
+            new RemovalListener<List<Object>,
+                CalcitePrepare.CalciteSignature>() {
+              public void onRemoval(RemovalNotification<List<Object>,
+                  CalcitePrepare.CalciteSignature> notification) {
+                if (notification.wasEvicted()) {
+                  evictionCount.incrementAndGet();
+                }
+              }
+            })
+        .build();
+  }
+
+  /** Returns the plan cache for a given root schema, creating it if
+   * necessary. */
+  public static PlanCache instance(CalciteRootSchema rootSchema,
+      final int maximumSize) {
+    try {
+      return CACHES.get(rootSchema,
+          new Callable<PlanCache>() {
+            public PlanCache call() {
+              return new PlanCache(maximumSize);
+            }
+          });
+    } catch (ExecutionException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /** Returns the plan cache for a given root schema, or null if the root
+   * schema does not have one. */
+  public static PlanCache peek(CalciteRootSchema rootSchema) {
+    return CACHES.getIfPresent(rootSchema);
+  }
+
+  /** Creates a key for a plan. */
+  public static List<Object> key(CalcitePrepare.Context context, String sql,
+      Type elementType, int maxRowCount) {
+    final CalciteConnectionConfig config = context.config();
+    return ImmutableList.<Object>builder()
+        .add(sql)
+        .add(elementType)
+        .add(maxRowCount)
+        .add(context.getDefaultSchemaPath())
+        .add(context.getRootSchema().getVersion())
+        .add(context.getTypeFactory().getTypeSystem())
+        .add(config.quoting())
+        .add(config.quotedCasing())
+        .add(config.unquotedCasing())
+        .add(config.caseSensitive())
+        .add(config.materializationsEnabled())
+        .add(config.forceDecorrelate())
+        .add(config.spark())
+        .add(config.plannerTimeout())
+        .add(config.plannerRuleFireLimit())
+        .build();
+  }
+
+  /** Returns the cached plan for a key, or null. */
+  public <T> CalcitePrepare.CalciteSignature<T> get(List<Object> key) {
+    //noinspection unchecked
+    final CalcitePrepare.CalciteSignature<T> signature =
+        cache.getIfPresent(key);
+    if (signature == null) {
+      missCount.incrementAndGet();
+    } else {
+      hitCount.incrementAndGet();
+    }
+    return signature;
+  }
+
+  /** Adds a plan to the cache. */
+  public void put(List<Object> key, CalcitePrepare.CalciteSignature signature) {
+    cache.put(key, signature);
+  }
+
+  /** Removes all plans from the cache. */
+  public void clear() {
+    cache.invalidateAll();
+  }
+
+  /** Returns the number of plans in the cache. */
+  public long size() {
+    return cache.size();
+  }
+
+  /** Returns the number of times that a plan was found in the cache. */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /** Returns the number of times that a plan was not found in the cache and
+   * had to be prepared. */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /** Returns the number of plans that have been removed from the cache to
+   * make room for others. */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+}
+
+// End PlanCache.java
@@ -17,126 +17,25 @@
 package org.apache.calcite.rel.metadata;
 
 import org.apache.calcite.plan.RelOptPlanner;
-import org.apache.calcite.rel.RelNode;
-
-import com.google.common.base.Function;
-import com.google.common.collect.ImmutableList;
-
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
 
 /**
  * Implementation of the {@link RelMetadataProvider}
  * interface that caches results from an underlying provider.
+ *
+ * <p>Results are cached per relational expression, and a result is
+ * re-computed if the planner's
+ * {@link RelOptPlanner#getRelMetadataTimestamp(org.apache.calcite.rel.RelNode)
+ * timestamp} for the relational expression has changed since it was computed.
+ * Calls are dispatched by generated code; see
+ * {@link JaninoRelMetadataProvider}.
  */
-public class CachingRelMetadataProvider implements RelMetadataProvider {
-  //~ Instance fields --------------------------------------------------------
-
-  private final Map<List, CacheEntry> cache;
-
-  private final RelMetadataProvider underlyingProvider;
-
-  private final RelOptPlanner planner;
-
-  private static final Object NULL_SENTINEL = new Object() {
-    @Override public String toString() {
-      return "{null}";
-    }
-  };
-
+public class CachingRelMetadataProvider extends JaninoRelMetadataProvider {
   //~ Constructors -----------------------------------------------------------
 
   public CachingRelMetadataProvider(
       RelMetadataProvider underlyingProvider,
       RelOptPlanner planner) {
-    this.underlyingProvider = underlyingProvider;
-    this.planner = planner;
-
-    cache = new HashMap<List, CacheEntry>();
-  }
-
-  //~ Methods ----------------------------------------------------------------
-
-  public Function<RelNode, Metadata> apply(Class<? extends RelNode> relClass,
-      final Class<? extends Metadata> metadataClass) {
-    final Function<RelNode, Metadata> function =
-        underlyingProvider.apply(relClass, metadataClass);
-    if (function == null) {
-      return null;
-    }
-
-    // TODO jvs 30-Mar-2006: Use meta-metadata to decide which metadata
-    // query results can stay fresh until the next Ice Age.
-    return new Function<RelNode, Metadata>() {
-      public Metadata apply(RelNode input) {
-        final Metadata metadata = function.apply(input);
-        return (Metadata) Proxy.newProxyInstance(metadataClass.getClassLoader(),
-            new Class[]{metadataClass}, new CachingInvocationHandler(metadata));
-      }
-    };
-  }
-
-  //~ Inner Classes ----------------------------------------------------------
-
-  /** An entry in the cache. Consists of the cached object and the timestamp
-   * when the entry is valid. If read at a later timestamp, the entry will be
-   * invalid and will be re-computed as if it did not exist. The net effect is a
-   * lazy-flushing cache. */
-  private static class CacheEntry {
-    long timestamp;
-
-    Object result;
-  }
-
-  /** Implementation of {@link InvocationHandler} for calls to a
-   * {@link CachingRelMetadataProvider}. Each request first looks in the cache;
-   * if the cache entry is present and not expired, returns the cache entry,
-   * otherwise computes the value and stores in the cache. */
-  private class CachingInvocationHandler implements InvocationHandler {
-    private final Metadata metadata;
-
-    public CachingInvocationHandler(Metadata metadata) {
-      this.metadata = metadata;
-    }
-
-    public Object invoke(Object proxy, Method method, Object[] args)
-        throws Throwable {
-      // Compute hash key.
-      final ImmutableList.Builder<Object> builder = ImmutableList.builder();
-      builder.add(method);
-      builder.add(metadata.rel());
-      if (args != null) {
-        for (Object arg : args) {
-          // Replace null values because ImmutableList does not allow them.
-          builder.add(arg == null ? NULL_SENTINEL : arg);
-        }
-      }
-      List<Object> key = builder.build();
-
-      long timestamp = planner.getRelMetadataTimestamp(metadata.rel());
-
-      // Perform cache lookup.
-      CacheEntry entry = cache.get(key);
-      if (entry != null) {
-        if (timestamp == entry.timestamp) {
-          return entry.result;
-        }
-      }
-
-      // Cache miss or stale.
-      Object result = method.invoke(metadata, args);
-      if (result != null) {
-        entry = new CacheEntry();
-        entry.timestamp = timestamp;
-        entry.result = result;
-        cache.put(key, entry);
-      }
-      return result;
-    }
+    super(underlyingProvider, planner);
   }
 }
 
@@ -39,7 +39,7 @@
 public class ChainedRelMetadataProvider implements RelMetadataProvider {
   //~ Instance fields --------------------------------------------------------
 
-  private final ImmutableList<RelMetadataProvider> providers;
+  final ImmutableList<RelMetadataProvider> providers;
 
   //~ Constructors -----------------------------------------------------------
 
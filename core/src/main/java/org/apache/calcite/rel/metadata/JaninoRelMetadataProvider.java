@@ -0,0 +1,636 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.rel.metadata;
+
+import org.apache.calcite.linq4j.tree.Primitive;
+import org.apache.calcite.plan.RelOptPlanner;
+import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.util.javac.CompiledClassCache;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import org.codehaus.commons.compiler.CompileException;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implementation of the {@link RelMetadataProvider} interface that generates
+ * and compiles, using Janino, a class for each kind of {@link Metadata}.
+ *
+ * <p>The generated class implements the metadata interface. Each method
+ * dispatches, via a {@code switch} on handler numbers computed once per
+ * class of relational expression, directly to the handler methods (such as
+ * {@link RelMdRowCount#getRowCount(org.apache.calcite.rel.core.Filter)})
+ * that a {@link ReflectiveRelMetadataProvider} would call via
+ * {@link java.lang.reflect.Proxy} and {@link Method#invoke}. Handlers in a
+ * {@link ChainedRelMetadataProvider} are tried in order, and the first
+ * non-null result is returned, as before.
+ *
+ * <p>Providers that are not reflective (for example
+ * {@code VolcanoRelMetadataProvider}) are called via their
+ * {@link RelMetadataProvider#apply} method. Handler methods that generated
+ * code cannot reach (because their class is not public, say) are called via
+ * reflection. If the metadata interface itself is not public, this provider
+ * uses the underlying provider.
+ *
+ * <p>If created with a planner, also caches results. The cache is keyed on
+ * the identity of the relational expression, and a result is valid only
+ * while the planner's
+ * {@link RelOptPlanner#getRelMetadataTimestamp(RelNode) timestamp} for the
+ * expression is unchanged. Null results are not cached.
+ *
+ * <p>Generated classes depend only on the classes of the handlers, not on
+ * the handler objects, and are shared among providers.
+ */
+public class JaninoRelMetadataProvider implements RelMetadataProvider {
+  /** Cache of compiled classes. Separate from
+   * {@link CompiledClassCache#INSTANCE} so that metadata classes, of which
+   * there are few, are not evicted by code generated for queries. */
+  private static final CompiledClassCache CLASSES =
+      new CompiledClassCache(1000);
+
+  /** Comparator that sorts methods by their signature, so that generated
+   * code does not depend on the order in which reflection returns them. */
+  private static final Comparator<Method> METHOD_COMPARATOR =
+      new Comparator<Method>() {
+        public int compare(Method m1, Method m2) {
+          return m1.toString().compareTo(m2.toString());
+        }
+      };
+
+  private final RelMetadataProvider provider;
+  private final ImmutableList<RelMetadataProvider> providers;
+  private final RelOptPlanner planner;
+  private final Map<Class<? extends Metadata>, Template> templates =
+      new HashMap<Class<? extends Metadata>, Template>();
+
+  /** Cached results, by relational expression. Each entry has a slot for
+   * each method of each kind of metadata; see {@link Template#slot}. */
+  private final Map<RelNode, Object[]> cache =
+      new IdentityHashMap<RelNode, Object[]>();
+  private int slotCount;
+
+  /**
+   * Creates a JaninoRelMetadataProvider.
+   *
+   * @param provider Underlying provider
+   * @param planner Planner whose timestamps determine whether a cached result
+   *                is valid, or null to not cache
+   */
+  protected JaninoRelMetadataProvider(RelMetadataProvider provider,
+      RelOptPlanner planner) {
+    this.provider = provider;
+    this.planner = planner;
+    final List<RelMetadataProvider> list = Lists.newArrayList();
+    flatten(list, provider);
+    this.providers = ImmutableList.copyOf(list);
+  }
+
+  /** Returns a provider that dispatches to the given provider via generated
+   * code, without caching. */
+  public static RelMetadataProvider of(RelMetadataProvider provider) {
+    if (provider instanceof JaninoRelMetadataProvider) {
+      return provider;
+    }
+    return new JaninoRelMetadataProvider(provider, null);
+  }
+
+  private static void flatten(List<RelMetadataProvider> list,
+      RelMetadataProvider provider) {
+    if (provider instanceof ChainedRelMetadataProvider) {
+      for (RelMetadataProvider p
+          : ((ChainedRelMetadataProvider) provider).providers) {
+        flatten(list, p);
+      }
+    } else {
+      list.add(provider);
+    }
+  }
+
+  public Function<RelNode, Metadata> apply(Class<? extends RelNode> relClass,
+      Class<? extends Metadata> metadataClass) {
+    final Template template = template(metadataClass);
+    if (template.prototype == null) {
+      return provider.apply(relClass, metadataClass);
+    }
+    final int methodCount = template.methods.size();
+    final List<List<Integer>> idLists = Lists.newArrayList();
+    for (int i = 0; i < methodCount; i++) {
+      idLists.add(new ArrayList<Integer>());
+    }
+    final List<Function<RelNode, Metadata>> functions = Lists.newArrayList();
+    boolean found = false;
+    for (int p = 0; p < providers.size(); p++) {
+      final Map<Method, Integer> handlerIds = template.handlerIds.get(p);
+      if (handlerIds != null) {
+        final Map<Method, Method> handlers =
+            ((ReflectiveRelMetadataProvider) providers.get(p))
+                .handlers(relClass, metadataClass);
+        if (handlers == null) {
+          continue;
+        }
+        found = true;
+        for (int i = 0; i < methodCount; i++) {
+          final Method handler = handlers.get(template.methods.get(i));
+          if (handler != null
+              && handler.getParameterTypes()[0].isAssignableFrom(relClass)) {
+            idLists.get(i).add(handlerIds.get(handler));
+          }
+        }
+      } else {
+        final Function<RelNode, Metadata> function =
+            providers.get(p).apply(relClass, metadataClass);
+        if (function == null) {
+          continue;
+        }
+        found = true;
+        final int id = template.handlers.size() + functions.size();
+        functions.add(function);
+        for (List<Integer> idList : idLists) {
+          idList.add(id);
+        }
+      }
+    }
+    if (!found) {
+      return null;
+    }
+    final int[][] ids = new int[methodCount][];
+    for (int i = 0; i < methodCount; i++) {
+      ids[i] = toIntArray(idLists.get(i));
+    }
+    final Dispatch dispatch = new Dispatch(this, template, ids, functions);
+    return new Function<RelNode, Metadata>() {
+      public Metadata apply(RelNode rel) {
+        final GeneratedMetadata metadata = template.prototype.newInstance();
+        metadata.rel = rel;
+        metadata.dispatch = dispatch;
+        return metadata;
+      }
+    };
+  }
+
+  private static int[] toIntArray(List<Integer> list) {
+    final int[] ints = new int[list.size()];
+    for (int i = 0; i < ints.length; i++) {
+      ints[i] = list.get(i);
+    }
+    return ints;
+  }
+
+  private synchronized Template template(
+      Class<? extends Metadata> metadataClass) {
+    Template template = templates.get(metadataClass);
+    if (template == null) {
+      template = new Template(metadataClass, providers, slotCount);
+      slotCount += template.methods.size();
+      templates.put(metadataClass, template);
+    }
+    return template;
+  }
+
+  /** Returns a cached result, or null. */
+  Object lookup(RelNode rel, int slot, Object[] args) {
+    if (planner == null) {
+      return null;
+    }
+    final Object[] slots = cache.get(rel);
+    if (slots == null || slot >= slots.length) {
+      return null;
+    }
+    Object o = slots[slot];
+    if (o != null && args != null) {
+      o = ((Map) o).get(Arrays.asList(args));
+    }
+    if (o == null) {
+      return null;
+    }
+    final CacheEntry entry = (CacheEntry) o;
+    if (entry.timestamp != planner.getRelMetadataTimestamp(rel)) {
+      return null;
+    }
+    return entry.result;
+  }
+
+  /** Stores a result in the cache. */
+  void store(RelNode rel, int slot, Object[] args, Object result) {
+    if (planner == null || result == null) {
+      return;
+    }
+    Object[] slots = cache.get(rel);
+    if (slots == null || slot >= slots.length) {
+      slots = slots == null
+          ? new Object[slotCount]
+          : Arrays.copyOf(slots, slotCount);
+      cache.put(rel, slots);
+    }
+    final CacheEntry entry =
+        new CacheEntry(planner.getRelMetadataTimestamp(rel), result);
+    if (args == null) {
+      slots[slot] = entry;
+    } else {
+      @SuppressWarnings("unchecked")
+      Map<List<Object>, CacheEntry> map =
+          (Map<List<Object>, CacheEntry>) slots[slot];
+      if (map == null) {
+        map = Maps.newHashMap();
+        slots[slot] = map;
+      }
+      map.put(Arrays.asList(args), entry);
+    }
+  }
+
+  /** Returns whether generated code, compiled with a given class loader as
+   * parent, can refer to a class. */
+  private static boolean accessible(Class<?> clazz, ClassLoader classLoader) {
+    while (clazz.isArray()) {
+      clazz = clazz.getComponentType();
+    }
+    if (clazz.isPrimitive()) {
+      return true;
+    }
+    for (Class<?> c = clazz; c != null; c = c.getEnclosingClass()) {
+      if (!Modifier.isPublic(c.getModifiers())) {
+        return false;
+      }
+    }
+    try {
+      return Class.forName(clazz.getName(), false, classLoader) == clazz;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  /** Returns the name of a class as it would appear in Java source. */
+  private static String name(Class<?> clazz) {
+    return clazz.getCanonicalName();
+  }
+
+  /** Returns an expression that converts a value of a given type to an
+   * object. */
+  private static String box(Class<?> type, String expression) {
+    if (type.isPrimitive()) {
+      return name(Primitive.of(type).boxClass) + ".valueOf(" + expression
+          + ")";
+    }
+    return expression;
+  }
+
+  //~ Inner Classes ----------------------------------------------------------
+
+  /** Entry in the cache. */
+  private static class CacheEntry {
+    final long timestamp;
+    final Object result;
+
+    CacheEntry(long timestamp, Object result) {
+      this.timestamp = timestamp;
+      this.result = result;
+    }
+  }
+
+  /** Everything this provider knows about a kind of metadata, independent of
+   * the class of relational expression: the metadata methods, the handler
+   * methods of the reflective providers, and the compiled class. */
+  private static class Template {
+    final Class<? extends Metadata> metadataClass;
+
+    /** Methods of the metadata interface, sorted by signature. */
+    final ImmutableList<Method> methods;
+
+    /** Handler methods of all reflective providers, numbered in order. */
+    final List<Method> handlers = Lists.newArrayList();
+
+    /** Object that implements each handler method. */
+    final List<Object> targets = Lists.newArrayList();
+
+    /** For each provider, the numbers of its handler methods, or null if
+     * the provider is not reflective. */
+    final List<Map<Method, Integer>> handlerIds = Lists.newArrayList();
+
+    /** First cache slot of this kind of metadata. Method {@code i} uses slot
+     * {@code slot + i}. */
+    final int slot;
+
+    /** Instance of the generated class, or null if the metadata interface
+     * cannot be implemented by generated code. */
+    final GeneratedMetadata prototype;
+
+    Template(Class<? extends Metadata> metadataClass,
+        List<RelMetadataProvider> providers, int slot) {
+      this.metadataClass = metadataClass;
+      this.slot = slot;
+      final List<Method> methodList = Lists.newArrayList();
+      for (Method method : metadataClass.getMethods()) {
+        if (method.getDeclaringClass() != Metadata.class
+            && method.getDeclaringClass() != Object.class
+            && !Modifier.isStatic(method.getModifiers())) {
+          methodList.add(method);
+        }
+      }
+      Collections.sort(methodList, METHOD_COMPARATOR);
+      this.methods = ImmutableList.copyOf(methodList);
+      for (RelMetadataProvider provider : providers) {
+        if (!(provider instanceof ReflectiveRelMetadataProvider)
+            || ((ReflectiveRelMetadataProvider) provider).handlerMap
+                == null) {
+          handlerIds.add(null);
+          continue;
+        }
+        final ReflectiveRelMetadataProvider reflective =
+            (ReflectiveRelMetadataProvider) provider;
+        final Map<Method, Integer> ids = Maps.newHashMap();
+        if (reflective.metadataClass0 == metadataClass) {
+          final List<Method> list = Lists.newArrayList();
+          for (Map<Method, Method> map : reflective.handlerMap.values()) {
+            for (Method handler : map.values()) {
+              if (!list.contains(handler)) {
+                list.add(handler);
+              }
+            }
+          }
+          Collections.sort(list, METHOD_COMPARATOR);
+          for (Method handler : list) {
+            ids.put(handler, handlers.size());
+            handlers.add(handler);
+            targets.add(reflective.target);
+          }
+        }
+        handlerIds.add(ids);
+      }
+      this.prototype = compile();
+    }
+
+    private GeneratedMetadata compile() {
+      final ClassLoader classLoader = metadataClass.getClassLoader();
+      if (!accessible(metadataClass, classLoader)) {
+        return null;
+      }
+      for (Method method : methods) {
+        if (!accessible(method.getReturnType(), classLoader)) {
+          return null;
+        }
+        for (Class<?> type : method.getParameterTypes()) {
+          if (!accessible(type, classLoader)) {
+            return null;
+          }
+        }
+      }
+      final String className =
+          "GeneratedMetadata_" + metadataClass.getSimpleName();
+      final String body = generate(className, classLoader);
+      try {
+        return (GeneratedMetadata) CLASSES.createInstance(className,
+            GeneratedMetadata.class, new Class[] {metadataClass}, classLoader,
+            body);
+      } catch (CompileException e) {
+        throw new RuntimeException(
+            "Error while compiling generated Java code:\n" + body, e);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    /** Generates the body of a class that implements the metadata
+     * interface. */
+    private String generate(String className, ClassLoader classLoader) {
+      final StringBuilder buf = new StringBuilder();
+      buf.append("public ").append(name(GeneratedMetadata.class))
+          .append(" newInstance() {\n")
+          .append("  return new ").append(className).append("();\n")
+          .append("}\n");
+      for (int i = 0; i < methods.size(); i++) {
+        final Method method = methods.get(i);
+        final Class<?>[] parameterTypes = method.getParameterTypes();
+        final Class<?> returnType = method.getReturnType();
+        final StringBuilder params = new StringBuilder();
+        final StringBuilder args = new StringBuilder();
+        final StringBuilder boxedArgs = new StringBuilder();
+        for (int j = 0; j < parameterTypes.length; j++) {
+          params.append(", ").append(name(parameterTypes[j]))
+              .append(" a").append(j);
+          args.append(j > 0 ? ", " : "").append("a").append(j);
+          boxedArgs.append(j > 0 ? ", " : "")
+              .append(box(parameterTypes[j], "a" + j));
+        }
+
+        // The public method looks in the cache, and if the result is not
+        // there, computes it.
+        buf.append("public ").append(name(returnType)).append(" ")
+            .append(method.getName()).append("(")
+            .append(params.length() == 0 ? "" : params.substring(2))
+            .append(") {\n")
+            .append("  final Object[] args = ")
+            .append(parameterTypes.length == 0
+                ? "null"
+                : "new Object[] {" + boxedArgs + "}")
+            .append(";\n")
+            .append("  Object v = dispatch.lookup(rel, ").append(i)
+            .append(", args);\n")
+            .append("  if (v == null) {\n")
+            .append("    v = $compute").append(i).append("(args")
+            .append(params.length() == 0 ? "" : ", " + args)
+            .append(");\n")
+            .append("    dispatch.store(rel, ").append(i)
+            .append(", args, v);\n")
+            .append("  }\n");
+        if (returnType == void.class) {
+          // nothing to return
+        } else if (returnType.isPrimitive()) {
+          final Primitive primitive = Primitive.of(returnType);
+          buf.append("  return ((").append(name(primitive.boxClass))
+              .append(") v).").append(primitive.primitiveName)
+              .append("Value();\n");
+        } else {
+          buf.append("  return (").append(name(returnType)).append(") v;\n");
+        }
+        buf.append("}\n");
+
+        // The private method calls each handler in turn until one returns
+        // a non-null result.
+        buf.append("private Object $compute").append(i)
+            .append("(Object[] args").append(params).append(") {\n")
+            .append("  final int[] ids = dispatch.ids[").append(i)
+            .append("];\n")
+            .append("  for (int i = 0; i < ids.length; i++) {\n")
+            .append("    Object o;\n")
+            .append("    switch (ids[i]) {\n");
+        for (int h = 0; h < handlers.size(); h++) {
+          final Method handler = handlers.get(h);
+          if (!handler.getName().equals(method.getName())
+              || !Arrays.equals(
+                  Arrays.copyOfRange(handler.getParameterTypes(), 1,
+                      handler.getParameterTypes().length),
+                  parameterTypes)
+              || !accessible(handler.getDeclaringClass(), classLoader)
+              || !accessible(handler.getReturnType(), classLoader)
+              || !accessible(handler.getParameterTypes()[0], classLoader)) {
+            continue;
+          }
+          final String call = "((" + name(handler.getDeclaringClass())
+              + ") dispatch.targets[" + h + "])." + handler.getName()
+              + "((" + name(handler.getParameterTypes()[0]) + ") rel"
+              + (params.length() == 0 ? "" : ", " + args) + ")";
+          buf.append("    case ").append(h).append(":\n");
+          if (handler.getReturnType() == void.class) {
+            buf.append("      ").append(call).append(";\n")
+                .append("      o = null;\n");
+          } else {
+            buf.append("      o = ")
+                .append(box(handler.getReturnType(), call)).append(";\n");
+          }
+          buf.append("      break;\n");
+        }
+        final String call = "((" + name(metadataClass) + ") m)."
+            + method.getName() + "(" + args + ")";
+        buf.append("    default:\n")
+            .append("      if (ids[i] < ").append(handlers.size())
+            .append(") {\n")
+            .append("        o = dispatch.invoke(ids[i], rel, ").append(i)
+            .append(", args);\n")
+            .append("      } else {\n")
+            .append("        final ").append(name(Metadata.class))
+            .append(" m = dispatch.metadata(ids[i], rel);\n")
+            .append("        if (m == null) {\n")
+            .append("          o = null;\n")
+            .append("        } else {\n");
+        if (returnType == void.class) {
+          buf.append("          ").append(call).append(";\n")
+              .append("          o = null;\n");
+        } else {
+          buf.append("          o = ").append(box(returnType, call))
+              .append(";\n");
+        }
+        buf.append("        }\n")
+            .append("      }\n")
+            .append("    }\n")
+            .append("    if (o != null) {\n")
+            .append("      return o;\n")
+            .append("    }\n")
+            .append("  }\n")
+            .append("  return null;\n")
+            .append("}\n");
+      }
+      return buf.toString();
+    }
+  }
+
+  /** State shared by the metadata objects that a provider creates for a
+   * class of relational expression. Public because generated code uses
+   * it. */
+  public static final class Dispatch {
+    private final JaninoRelMetadataProvider provider;
+    private final Template template;
+
+    /** For each metadata method, the handlers to call, in order. A number
+     * less than the number of handler methods is a handler method;
+     * otherwise, it is a function from {@link #functions}. */
+    public final int[][] ids;
+
+    /** Object that implements each handler method. */
+    public final Object[] targets;
+
+    private final List<Function<RelNode, Metadata>> functions;
+
+    Dispatch(JaninoRelMetadataProvider provider, Template template,
+        int[][] ids, List<Function<RelNode, Metadata>> functions) {
+      this.provider = provider;
+      this.template = template;
+      this.ids = ids;
+      this.targets = template.targets.toArray();
+      this.functions = ImmutableList.copyOf(functions);
+    }
+
+    /** Returns the cached result of a metadata method, or null. */
+    public Object lookup(RelNode rel, int method, Object[] args) {
+      return provider.lookup(rel, template.slot + method, args);
+    }
+
+    /** Stores the result of a metadata method in the cache. */
+    public void store(RelNode rel, int method, Object[] args, Object result) {
+      provider.store(rel, template.slot + method, args, result);
+    }
+
+    /** Calls, via reflection, a handler method that generated code cannot
+     * call directly. */
+    public Object invoke(int id, RelNode rel, int method, Object[] args) {
+      final Method handler = template.handlers.get(id);
+      final Object[] args1;
+      if (args == null) {
+        args1 = new Object[]{rel};
+      } else {
+        args1 = new Object[args.length + 1];
+        args1[0] = rel;
+        System.arraycopy(args, 0, args1, 1, args.length);
+      }
+      try {
+        return handler.invoke(targets[id], args1);
+      } catch (IllegalAccessException e) {
+        throw new RuntimeException(e);
+      } catch (InvocationTargetException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new RuntimeException(cause);
+      }
+    }
+
+    /** Returns the metadata that a non-reflective provider supplies for a
+     * relational expression, or null. */
+    public Metadata metadata(int id, RelNode rel) {
+      return functions.get(id - template.handlers.size()).apply(rel);
+    }
+  }
+
+  /** Base class for generated implementations of metadata interfaces.
+   * Public because generated code extends it. */
+  public abstract static class GeneratedMetadata implements Metadata {
+    protected RelNode rel;
+    protected Dispatch dispatch;
+
+    /** Creates an instance of the same class, not yet bound to a relational
+     * expression. */
+    public abstract GeneratedMetadata newInstance();
+
+    public RelNode rel() {
+      return rel;
+    }
+
+    @Override public String toString() {
+      return dispatch.template.metadataClass.getSimpleName() + "(" + rel + ")";
+    }
+  }
+}
+
+// End JaninoRelMetadataProvider.java
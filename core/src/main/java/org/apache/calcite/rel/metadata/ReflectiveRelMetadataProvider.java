@@ -65,7 +65,15 @@ public int compare(Class<RelNode> c1, Class<RelNode> c2) {
 
   //~ Instance fields --------------------------------------------------------
   private final ImmutableMap<Class<RelNode>, Function<RelNode, Metadata>> map;
-  private final Class<?> metadataClass0;
+  final Class<?> metadataClass0;
+
+  /** Object whose methods implement the metadata, or null if not known. */
+  final Object target;
+
+  /** For each class of relational expression, the methods of {@link #target}
+   * that implement each metadata method; null if not known. Has the same
+   * keys, in the same order, as {@link #map}. */
+  final ImmutableMap<Class<RelNode>, ImmutableMap<Method, Method>> handlerMap;
 
   //~ Constructors -----------------------------------------------------------
 
@@ -78,9 +86,18 @@ public int compare(Class<RelNode> c1, Class<RelNode> c2) {
   protected ReflectiveRelMetadataProvider(
       ImmutableMap<Class<RelNode>, Function<RelNode, Metadata>> map,
       Class<?> metadataClass0) {
+    this(map, metadataClass0, null, null);
+  }
+
+  private ReflectiveRelMetadataProvider(
+      ImmutableMap<Class<RelNode>, Function<RelNode, Metadata>> map,
+      Class<?> metadataClass0, Object target,
+      ImmutableMap<Class<RelNode>, ImmutableMap<Method, Method>> handlerMap) {
     assert !map.isEmpty() : "are your methods named wrong?";
     this.map = map;
     this.metadataClass0 = metadataClass0;
+    this.target = target;
+    this.handlerMap = handlerMap;
   }
 
   /** Returns an implementation of {@link RelMetadataProvider} that scans for
@@ -141,14 +158,23 @@ private static RelMetadataProvider reflectiveSource(final Object target,
 
     final Map<Class<RelNode>, Function<RelNode, Metadata>> treeMap =
         Maps.newTreeMap(SUPERCLASS_COMPARATOR);
+    final Map<Class<RelNode>, ImmutableMap<Method, Method>> treeMap2 =
+        Maps.newTreeMap(SUPERCLASS_COMPARATOR);
 
     for (Class<RelNode> key : classes) {
       ImmutableNullableList.Builder<Method> builder =
           ImmutableNullableList.builder();
+      final ImmutableMap.Builder<Method, Method> builder2 =
+          ImmutableMap.builder();
       for (final Method method : methods) {
-        builder.add(find(classes, handlerMap, key, method));
+        final Method handlerMethod = find(classes, handlerMap, key, method);
+        builder.add(handlerMethod);
+        if (handlerMethod != null) {
+          builder2.put(method, handlerMethod);
+        }
       }
       final List<Method> handlerMethods = builder.build();
+      treeMap2.put(key, builder2.build());
       final Function<RelNode, Metadata> function =
           new Function<RelNode, Metadata>() {
             public Metadata apply(final RelNode rel) {
@@ -203,7 +229,8 @@ public Object invoke(Object proxy, Method method,
     // but it retains the traversal order, and that is sufficient.
     final ImmutableMap<Class<RelNode>, Function<RelNode, Metadata>> map =
         ImmutableMap.copyOf(treeMap);
-    return new ReflectiveRelMetadataProvider(map, metadataClass0);
+    return new ReflectiveRelMetadataProvider(map, metadataClass0, target,
+        ImmutableMap.copyOf(treeMap2));
   }
 
   /** Finds an implementation of a method for {@code relNodeClass} or its
@@ -248,17 +275,34 @@ public Function<RelNode, Metadata> apply(
       Class<? extends RelNode> relClass,
       Class<? extends Metadata> metadataClass) {
     if (metadataClass == metadataClass0) {
-      //noinspection SuspiciousMethodCalls
-      final Function<RelNode, Metadata> function = map.get(relClass);
-      if (function != null) {
-        return function;
-      }
-      for (Map.Entry<Class<RelNode>, Function<RelNode, Metadata>> entry
-          : map.entrySet()) {
-        if (entry.getKey().isAssignableFrom(relClass)) {
-          // REVIEW: We are assuming that the first we find is the "best".
-          return entry.getValue();
-        }
+      return lookup(map, relClass);
+    }
+    return null;
+  }
+
+  /** Returns the methods that implement each metadata method for a given
+   * class of relational expression, or null if this provider does not handle
+   * that class (or does not know its handler methods). Chooses the same
+   * class as {@link #apply}. */
+  Map<Method, Method> handlers(Class<? extends RelNode> relClass,
+      Class<? extends Metadata> metadataClass) {
+    if (metadataClass == metadataClass0 && handlerMap != null) {
+      return lookup(handlerMap, relClass);
+    }
+    return null;
+  }
+
+  private static <V> V lookup(Map<Class<RelNode>, V> map,
+      Class<? extends RelNode> relClass) {
+    //noinspection SuspiciousMethodCalls
+    final V value = map.get(relClass);
+    if (value != null) {
+      return value;
+    }
+    for (Map.Entry<Class<RelNode>, V> entry : map.entrySet()) {
+      if (entry.getKey().isAssignableFrom(relClass)) {
+        // REVIEW: We are assuming that the first we find is the "best".
+        return entry.getValue();
       }
     }
     return null;
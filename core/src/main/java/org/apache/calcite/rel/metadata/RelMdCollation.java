@@ -17,6 +17,7 @@
 package org.apache.calcite.rel.metadata;
 
 import org.apache.calcite.adapter.enumerable.EnumerableMergeJoin;
+import org.apache.calcite.interpreter.Bindables;
 import org.apache.calcite.linq4j.Ord;
 import org.apache.calcite.plan.RelOptTable;
 import org.apache.calcite.plan.hep.HepRelVertex;
@@ -100,6 +101,13 @@ public ImmutableList<RelCollation> collations(TableScan scan) {
     return ImmutableList.copyOf(table(scan.getTable()));
   }
 
+  public ImmutableList<RelCollation> collations(
+      Bindables.BindableTableScan scan) {
+    return ImmutableList.copyOf(
+        Bindables.BindableTableScan.collations(table(scan.getTable()),
+            scan.projects));
+  }
+
   public ImmutableList<RelCollation> collations(EnumerableMergeJoin join) {
     // In general a join is not sorted. But a merge join preserves the sort
     // order of the left and right sides.
@@ -16,6 +16,7 @@
  */
 package org.apache.calcite.rel.metadata;
 
+import org.apache.calcite.materialize.LatticeStatistics;
 import org.apache.calcite.plan.RelOptUtil;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.Aggregate;
@@ -30,6 +31,7 @@
 import org.apache.calcite.rex.RexBuilder;
 import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.rex.RexUtil;
+import org.apache.calcite.schema.impl.StarTable;
 import org.apache.calcite.sql.fun.SqlStdOperatorTable;
 import org.apache.calcite.util.BuiltInMethod;
 import org.apache.calcite.util.ImmutableBitSet;
@@ -273,6 +275,24 @@ public Double getDistinctRowCount(
         RelMetadataQuery.getRowCount(rel));
   }
 
+  public Double getDistinctRowCount(
+      StarTable.StarTableScan rel,
+      ImmutableBitSet groupKey,
+      RexNode predicate) {
+    final StarTable starTable = rel.getTable().unwrap(StarTable.class);
+    final LatticeStatistics statistics =
+        starTable == null ? null : starTable.lattice.peekStatistics();
+    if (statistics == null) {
+      return getDistinctRowCount((RelNode) rel, groupKey, predicate);
+    }
+    final double distinctRowCount = statistics.getRowCount(groupKey);
+    if (predicate == null || predicate.isAlwaysTrue()) {
+      return distinctRowCount;
+    }
+    return RelMdUtil.numDistinctVals(distinctRowCount,
+        statistics.rowCount * RelMdUtil.guessSelectivity(predicate));
+  }
+
   // Catch-all rule when none of the others apply.
   public Double getDistinctRowCount(
       RelNode rel,
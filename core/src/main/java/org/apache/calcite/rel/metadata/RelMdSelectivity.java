@@ -16,6 +16,7 @@
  */
 package org.apache.calcite.rel.metadata;
 
+import org.apache.calcite.interpreter.Bindables;
 import org.apache.calcite.plan.RelOptUtil;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.Aggregate;
@@ -23,6 +24,7 @@
 import org.apache.calcite.rel.core.Project;
 import org.apache.calcite.rel.core.SemiJoin;
 import org.apache.calcite.rel.core.Sort;
+import org.apache.calcite.rel.core.TableScan;
 import org.apache.calcite.rel.core.Union;
 import org.apache.calcite.rex.RexBuilder;
 import org.apache.calcite.rex.RexNode;
@@ -30,6 +32,7 @@
 import org.apache.calcite.sql.fun.SqlStdOperatorTable;
 import org.apache.calcite.util.BuiltInMethod;
 import org.apache.calcite.util.ImmutableBitSet;
+import org.apache.calcite.util.ImmutableIntList;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -184,6 +187,21 @@ public Double getSelectivity(Project rel, RexNode predicate) {
     }
   }
 
+  public Double getSelectivity(TableScan rel, RexNode predicate) {
+    if (rel instanceof Bindables.BindableTableScan) {
+      // The predicate references the scan's projected fields, which are not
+      // the table's fields unless the projection is trivial.
+      final ImmutableIntList projects =
+          ((Bindables.BindableTableScan) rel).projects;
+      if (!projects.equals(
+          ImmutableIntList.identity(
+              rel.getTable().getRowType().getFieldCount()))) {
+        return RelMdUtil.guessSelectivity(predicate);
+      }
+    }
+    return RelMdUtil.getTableSelectivity(rel.getTable(), predicate);
+  }
+
   // Catch-all rule when none of the others apply.
   public Double getSelectivity(RelNode rel, RexNode predicate) {
     return RelMdUtil.guessSelectivity(predicate);
@@ -16,6 +16,7 @@
  */
 package org.apache.calcite.rel.metadata;
 
+import org.apache.calcite.plan.RelOptTable;
 import org.apache.calcite.plan.RelOptUtil;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.Aggregate;
@@ -30,6 +31,7 @@
 import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.rex.RexUtil;
 import org.apache.calcite.rex.RexVisitorImpl;
+import org.apache.calcite.schema.Table;
 import org.apache.calcite.sql.SqlFunction;
 import org.apache.calcite.sql.SqlFunctionCategory;
 import org.apache.calcite.sql.SqlKind;
@@ -376,6 +378,30 @@ public static double capInfinity(Double d) {
     return d.isInfinite() ? Double.MAX_VALUE : d;
   }
 
+  /**
+   * Returns the selectivity of a predicate on the rows of a table. Uses the
+   * table's {@link org.apache.calcite.schema.Statistic} if it has an
+   * estimate, otherwise guesses.
+   *
+   * @param table     table
+   * @param predicate predicate on the fields of the table; null means true
+   * @return estimated selectivity
+   */
+  public static double getTableSelectivity(RelOptTable table,
+      RexNode predicate) {
+    if (predicate == null || predicate.isAlwaysTrue()) {
+      return 1.0;
+    }
+    final Table t = table.unwrap(Table.class);
+    if (t != null) {
+      final Double selectivity = t.getStatistic().getSelectivity(predicate);
+      if (selectivity != null) {
+        return selectivity;
+      }
+    }
+    return guessSelectivity(predicate);
+  }
+
   /**
    * Returns default estimates for selectivities, in the absence of stats.
    *
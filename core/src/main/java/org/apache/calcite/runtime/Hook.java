@@ -50,6 +50,10 @@ public enum Hook {
   /** Called by the planner after substituting a materialization. */
   SUB,
 
+  /** Called by the Volcano planner when it has finished planning, with its
+   * {@link org.apache.calcite.plan.volcano.VolcanoPlannerStats}. */
+  PLANNER_STATS,
+
   /** Called when a constant expression is being reduced. */
   EXPRESSION_REDUCER,
 
@@ -24,6 +24,7 @@
 import org.apache.calcite.linq4j.tree.Primitive;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
@@ -39,11 +40,24 @@
 /**
  * Executes a SQL statement and returns the result as an {@link Enumerable}.
  *
+ * <p>The statement is a {@link PreparedStatement}. If the data source pools
+ * prepared statements, as do those created by
+ * {@link org.apache.calcite.adapter.jdbc.JdbcSchema#dataSource}, executing
+ * the same SQL again re-uses the statement, and the database does not need
+ * to parse it again. Rows are read from the {@link ResultSet} as they are
+ * requested, in batches of the fetch size.
+ *
  * @param <T> Element type
  */
 public class ResultSetEnumerable<T> extends AbstractEnumerable<T> {
+  /** Query timeout, in seconds, used if none is specified. */
+  public static final int DEFAULT_QUERY_TIMEOUT = 10;
+
   private final DataSource dataSource;
   private final String sql;
+  private final Object[] parameters;
+  private final int fetchSize;
+  private final int queryTimeout;
   private final Function1<ResultSet, Function0<T>> rowBuilderFactory;
   private static final Logger LOGGER = Logger.getLogger(
       ResultSetEnumerable.class.getName());
@@ -101,9 +115,15 @@ public Object[] apply() {
   private ResultSetEnumerable(
       DataSource dataSource,
       String sql,
+      Object[] parameters,
+      int fetchSize,
+      int queryTimeout,
       Function1<ResultSet, Function0<T>> rowBuilderFactory) {
     this.dataSource = dataSource;
     this.sql = sql;
+    this.parameters = parameters;
+    this.fetchSize = fetchSize;
+    this.queryTimeout = queryTimeout;
     this.rowBuilderFactory = rowBuilderFactory;
   }
 
@@ -125,23 +145,55 @@ public static <T> Enumerable<T> of(
       DataSource dataSource,
       String sql,
       Function1<ResultSet, Function0<T>> rowBuilderFactory) {
-    return new ResultSetEnumerable<T>(dataSource, sql, rowBuilderFactory);
+    return of(dataSource, sql, new Object[0], 0, DEFAULT_QUERY_TIMEOUT,
+        rowBuilderFactory);
+  }
+
+  /** Executes a SQL query that may contain dynamic parameters ("?"), and
+   * returns the results as an enumerator.
+   *
+   * @param dataSource Data source
+   * @param sql SQL query
+   * @param parameters Value of each dynamic parameter, in order of
+   *                   occurrence in the query
+   * @param fetchSize Number of rows to fetch from the database at a time, or
+   *                  0 to use the driver's default
+   * @param queryTimeout Number of seconds to wait for the query to execute,
+   *                     or 0 to wait indefinitely
+   * @param rowBuilderFactory Converts JDBC column values into rows
+   */
+  public static <T> Enumerable<T> of(
+      DataSource dataSource,
+      String sql,
+      Object[] parameters,
+      int fetchSize,
+      int queryTimeout,
+      Function1<ResultSet, Function0<T>> rowBuilderFactory) {
+    return new ResultSetEnumerable<T>(dataSource, sql, parameters, fetchSize,
+        queryTimeout, rowBuilderFactory);
   }
 
   public Enumerator<T> enumerator() {
     Connection connection = null;
-    Statement statement = null;
+    PreparedStatement statement = null;
     try {
       connection = dataSource.getConnection();
-      statement = connection.createStatement();
+      statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+          ResultSet.CONCUR_READ_ONLY);
       try {
-        statement.setQueryTimeout(10);
+        statement.setQueryTimeout(queryTimeout);
       } catch (SQLFeatureNotSupportedException e) {
         if (LOGGER.isLoggable(Level.FINE)) {
           LOGGER.fine("Failed to set query timeout.");
         }
       }
-      final ResultSet resultSet = statement.executeQuery(sql);
+      if (fetchSize != 0) {
+        statement.setFetchSize(fetchSize);
+      }
+      for (int i = 0; i < parameters.length; i++) {
+        statement.setObject(i + 1, parameters[i]);
+      }
+      final ResultSet resultSet = statement.executeQuery();
       statement = null;
       connection = null;
       return new ResultSetEnumerator<T>(resultSet, rowBuilderFactory);
@@ -16,6 +16,13 @@
  */
 package org.apache.calcite.runtime;
 
+import org.apache.calcite.linq4j.AbstractEnumerable;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
+import org.apache.calcite.linq4j.function.Function1;
+
+import com.google.common.base.Objects;
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -23,6 +30,7 @@
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * Map that allows you to partition values into lists according to a common
@@ -75,6 +83,134 @@ public static <V> Iterator<V[]> singletonArrayIterator(
     multiMap.put("x", list);
     return multiMap.arrays(comparator);
   }
+
+  /** Applies a function to each partition of a source whose rows are
+   * already sorted on the partition key and then the sort key, and returns
+   * the concatenation of the results.
+   *
+   * <p>Unlike {@link #arrays(Comparator)}, does not sort. The result is
+   * lazy: it reads from the source only as far as the end of the current
+   * partition, and applies the function to a partition only when the rows
+   * from the previous partition have been consumed, so that only one
+   * partition and its results are in memory at a time.
+   *
+   * @param source Source, sorted on partition key and then sort key
+   * @param keySelector Partition key, or null if there is one partition
+   * @param partitionFunction Function that computes the result rows for a
+   *                          partition
+   */
+  public static <K, V, R> Enumerable<R> mapSortedPartitions(
+      final Enumerable<V> source, final Function1<V, K> keySelector,
+      final Function1<V[], List<R>> partitionFunction) {
+    return new AbstractEnumerable<R>() {
+      public Enumerator<R> enumerator() {
+        return new Enumerator<R>() {
+          private PartitionIterator<K, V> partitions;
+          private Iterator<R> rows = Collections.<R>emptyList().iterator();
+          private R current;
+
+          public R current() {
+            return current;
+          }
+
+          public boolean moveNext() {
+            if (partitions == null) {
+              partitions =
+                  new PartitionIterator<K, V>(source.enumerator(),
+                      keySelector);
+            }
+            while (!rows.hasNext()) {
+              if (!partitions.hasNext()) {
+                return false;
+              }
+              rows = partitionFunction.apply(partitions.next()).iterator();
+            }
+            current = rows.next();
+            return true;
+          }
+
+          public void reset() {
+            close();
+            partitions = null;
+            rows = Collections.<R>emptyList().iterator();
+            current = null;
+          }
+
+          public void close() {
+            if (partitions != null) {
+              partitions.close();
+            }
+          }
+        };
+      }
+    };
+  }
+
+  /** Iterator that reads consecutive rows with the same key into an
+   * array.
+   *
+   * @param <K> Key type
+   * @param <V> Value type */
+  private static class PartitionIterator<K, V> implements Iterator<V[]> {
+    private final Enumerator<V> enumerator;
+    private final Function1<V, K> keySelector;
+    private boolean hasPending;
+    private V pending;
+
+    PartitionIterator(Enumerator<V> enumerator,
+        Function1<V, K> keySelector) {
+      this.enumerator = enumerator;
+      this.keySelector = keySelector;
+      advance();
+    }
+
+    /** Reads the next row into {@link #pending}, and closes the enumerator
+     * when there are no more rows. */
+    private void advance() {
+      hasPending = enumerator.moveNext();
+      if (hasPending) {
+        pending = enumerator.current();
+      } else {
+        pending = null;
+        enumerator.close();
+      }
+    }
+
+    public boolean hasNext() {
+      return hasPending;
+    }
+
+    /** Closes the enumerator, if it has not already been closed because it
+     * has no more rows. */
+    void close() {
+      if (hasPending) {
+        hasPending = false;
+        pending = null;
+        enumerator.close();
+      }
+    }
+
+    public V[] next() {
+      if (!hasPending) {
+        throw new NoSuchElementException();
+      }
+      final List<V> list = new ArrayList<V>();
+      final K key = keySelector == null ? null : keySelector.apply(pending);
+      do {
+        list.add(pending);
+        advance();
+      } while (hasPending
+          && (keySelector == null
+              || Objects.equal(key, keySelector.apply(pending))));
+      @SuppressWarnings("unchecked")
+      final V[] vs = (V[]) list.toArray();
+      return vs;
+    }
+
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
 }
 
 // End SortedMultiMap.java
@@ -18,6 +18,7 @@
 
 import org.apache.calcite.rel.RelCollation;
 import org.apache.calcite.rel.RelDistribution;
+import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.util.ImmutableBitSet;
 
 import java.util.List;
@@ -43,6 +44,13 @@ public interface Statistic {
 
   /** Returns the distribution of the data in this table. */
   RelDistribution getDistribution();
+
+  /** Returns the estimated fraction of the rows of this table that satisfy
+   * a given predicate, or null if the table cannot estimate better than
+   * {@link org.apache.calcite.rel.metadata.RelMdUtil#guessSelectivity}.
+   *
+   * <p>The predicate references the fields of the table's row type. */
+  Double getSelectivity(RexNode predicate);
 }
 
 // End Statistic.java
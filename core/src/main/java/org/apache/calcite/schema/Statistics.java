@@ -19,6 +19,7 @@
 import org.apache.calcite.rel.RelCollation;
 import org.apache.calcite.rel.RelDistribution;
 import org.apache.calcite.rel.RelDistributionTraitDef;
+import org.apache.calcite.rex.RexNode;
 import org.apache.calcite.util.ImmutableBitSet;
 
 import com.google.common.collect.ImmutableList;
@@ -50,6 +51,10 @@ public List<RelCollation> getCollations() {
         public RelDistribution getDistribution() {
           return RelDistributionTraitDef.INSTANCE.getDefault();
         }
+
+        public Double getSelectivity(RexNode predicate) {
+          return null;
+        }
       };
 
   /** Returns a statistic with a given row count and set of unique keys. */
@@ -82,6 +87,10 @@ public List<RelCollation> getCollations() {
       public RelDistribution getDistribution() {
         return RelDistributionTraitDef.INSTANCE.getDefault();
       }
+
+      public Double getSelectivity(RexNode predicate) {
+        return null;
+      }
     };
   }
 }
@@ -60,8 +60,7 @@ public void unparse(
       SqlWriter writer,
       int leftPrec,
       int rightPrec) {
-    writer.print("?");
-    writer.setNeedWhitespace(false);
+    writer.dynamicParam(index);
   }
 
   public void validate(SqlValidator validator, SqlValidatorScope scope) {
@@ -297,6 +297,16 @@ public String getName() {
    */
   void print(String s);
 
+  /**
+   * Prints a dynamic parameter ("?"), and records its index, so that the
+   * caller knows which parameter value to bind to each marker in the
+   * generated SQL.
+   *
+   * @param index Ordinal of the parameter in the statement that the tree
+   *              was created from
+   */
+  void dynamicParam(int index);
+
   /**
    * Prints an integer.
    *
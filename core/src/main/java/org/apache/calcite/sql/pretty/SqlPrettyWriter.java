@@ -20,17 +20,20 @@
 import org.apache.calcite.sql.SqlDialect;
 import org.apache.calcite.sql.SqlNode;
 import org.apache.calcite.sql.SqlWriter;
-import org.apache.calcite.sql.util.SqlBuilder;
 import org.apache.calcite.sql.util.SqlString;
 import org.apache.calcite.util.Util;
 import org.apache.calcite.util.trace.CalciteLogger;
 
+import com.google.common.collect.ImmutableList;
+
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
@@ -154,6 +157,7 @@ public class SqlPrettyWriter implements SqlWriter {
   private boolean caseClausesOnNewLines;
   private int lineLength;
   private int charCount;
+  private final List<Integer> dynamicParameters = new ArrayList<Integer>();
 
   //~ Constructors -----------------------------------------------------------
 
@@ -273,6 +277,7 @@ public void reset() {
     sw.getBuffer().setLength(0);
     setNeedWhitespace(false);
     nextWhitespace = " ";
+    dynamicParameters.clear();
   }
 
   /**
@@ -803,7 +808,8 @@ public String toString() {
   }
 
   public SqlString toSqlString() {
-    return new SqlBuilder(dialect, toString()).toSqlString();
+    return new SqlString(dialect, toString(),
+        ImmutableList.copyOf(dynamicParameters));
   }
 
   public SqlDialect getDialect() {
@@ -883,6 +889,12 @@ public void print(String s) {
     charCount += s.length();
   }
 
+  public void dynamicParam(int index) {
+    dynamicParameters.add(index);
+    print("?");
+    setNeedWhitespace(false);
+  }
+
   public void print(int x) {
     maybeWhitespace("0");
     pw.print(x);
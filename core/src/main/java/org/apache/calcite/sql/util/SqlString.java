@@ -18,6 +18,8 @@
 
 import org.apache.calcite.sql.SqlDialect;
 
+import com.google.common.collect.ImmutableList;
+
 /**
  * String that represents a kocher SQL statement, expression, or fragment.
  *
@@ -30,6 +32,7 @@
 public class SqlString {
   private final String s;
   private SqlDialect dialect;
+  private final ImmutableList<Integer> dynamicParameters;
 
   /**
    * Creates a SqlString.
@@ -37,10 +40,25 @@ public class SqlString {
    * @param s Contents of string
    */
   public SqlString(SqlDialect dialect, String s) {
+    this(dialect, s, ImmutableList.<Integer>of());
+  }
+
+  /**
+   * Creates a SqlString that contains dynamic parameters.
+   *
+   * @param dialect Dialect
+   * @param s Contents of string
+   * @param dynamicParameters Index of the parameter that each "?" marker in
+   *                          the string stands for, in order of occurrence
+   */
+  public SqlString(SqlDialect dialect, String s,
+      ImmutableList<Integer> dynamicParameters) {
     this.dialect = dialect;
     this.s = s;
+    this.dynamicParameters = dynamicParameters;
     assert s != null;
     assert dialect != null;
+    assert dynamicParameters != null;
   }
 
   @Override public int hashCode() {
@@ -73,6 +91,16 @@ public String getSql() {
     return s;
   }
 
+  /**
+   * Returns the index of the parameter that each "?" marker in this string
+   * stands for, in order of occurrence. An index may occur more than once.
+   *
+   * @return List of parameter indexes; empty if there are no markers
+   */
+  public ImmutableList<Integer> getDynamicParameters() {
+    return dynamicParameters;
+  }
+
   /**
    * Returns the dialect.
    */
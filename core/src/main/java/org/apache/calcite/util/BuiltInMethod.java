@@ -31,6 +31,8 @@
 import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.linq4j.ExtendedEnumerable;
 import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.linq4j.LongGroupTable;
+import org.apache.calcite.linq4j.MemoryBudget;
 import org.apache.calcite.linq4j.QueryProvider;
 import org.apache.calcite.linq4j.Queryable;
 import org.apache.calcite.linq4j.function.EqualityComparer;
@@ -126,12 +128,21 @@ public enum BuiltInMethod {
   DATA_CONTEXT_GET(DataContext.class, "get", String.class),
   DATA_CONTEXT_GET_ROOT_SCHEMA(DataContext.class, "getRootSchema"),
   JDBC_SCHEMA_DATA_SOURCE(JdbcSchema.class, "getDataSource"),
+  JDBC_SCHEMA_FETCH_SIZE(JdbcSchema.class, "getFetchSize"),
+  JDBC_SCHEMA_QUERY_TIMEOUT(JdbcSchema.class, "getQueryTimeout"),
   ROW_VALUE(Row.class, "getObject", int.class),
   ROW_AS_COPY(Row.class, "asCopy", Object[].class),
   RESULT_SET_ENUMERABLE_OF(ResultSetEnumerable.class, "of", DataSource.class,
       String.class, Function1.class),
+  RESULT_SET_ENUMERABLE_OF_PREPARED(ResultSetEnumerable.class, "of",
+      DataSource.class, String.class, Object[].class, int.class, int.class,
+      Function1.class),
   JOIN(ExtendedEnumerable.class, "join", Enumerable.class, Function1.class,
       Function1.class, Function2.class),
+  HASH_JOIN(EnumerableDefaults.class, "join", Enumerable.class,
+      Enumerable.class, Function1.class, Function1.class, Function2.class,
+      EqualityComparer.class, boolean.class, boolean.class,
+      MemoryBudget.class),
   MERGE_JOIN(Enumerables.class, "mergeJoin", Enumerable.class, Enumerable.class,
       Function1.class, Function1.class, Function2.class, boolean.class,
       boolean.class),
@@ -152,6 +163,9 @@ public enum BuiltInMethod {
   GROUP_BY(ExtendedEnumerable.class, "groupBy", Function1.class),
   GROUP_BY2(ExtendedEnumerable.class, "groupBy", Function1.class,
       Function0.class, Function2.class, Function2.class),
+  GROUP_BY_PARALLEL(EnumerableDefaults.class, "groupBy", Enumerable.class,
+      Function1.class, Function0.class, Function2.class, Function2.class,
+      EqualityComparer.class, int.class),
   GROUP_BY_MULTIPLE(EnumerableDefaults.class, "groupByMultiple",
       Enumerable.class, List.class, Function0.class, Function2.class,
       Function2.class),
@@ -159,6 +173,10 @@ public enum BuiltInMethod {
       Function2.class, Function1.class),
   ORDER_BY(ExtendedEnumerable.class, "orderBy", Function1.class,
       Comparator.class),
+  ORDER_BY_SPILL(EnumerableDefaults.class, "orderBy", Enumerable.class,
+      Function1.class, Comparator.class, MemoryBudget.class),
+  ORDER_BY_LIMIT(EnumerableDefaults.class, "orderBy", Enumerable.class,
+      Function1.class, Comparator.class, int.class, int.class),
   UNION(ExtendedEnumerable.class, "union", Enumerable.class),
   CONCAT(ExtendedEnumerable.class, "concat", Enumerable.class),
   INTERSECT(ExtendedEnumerable.class, "intersect", Enumerable.class),
@@ -211,11 +229,20 @@ public enum BuiltInMethod {
   ITERATOR_NEXT(Iterator.class, "next"),
   MATH_MAX(Math.class, "max", int.class, int.class),
   MATH_MIN(Math.class, "min", int.class, int.class),
+  LONG_GROUP_TABLE_GROUP(LongGroupTable.class, "group", long.class),
+  LONG_GROUP_TABLE_ADD(LongGroupTable.class, "add", int.class, int.class,
+      long.class),
+  LONG_GROUP_TABLE_GET(LongGroupTable.class, "get", int.class, int.class),
+  LONG_GROUP_TABLE_KEY(LongGroupTable.class, "key", int.class),
+  LONG_GROUP_TABLE_SIZE(LongGroupTable.class, "size"),
   SORTED_MULTI_MAP_PUT_MULTI(SortedMultiMap.class, "putMulti", Object.class,
       Object.class),
   SORTED_MULTI_MAP_ARRAYS(SortedMultiMap.class, "arrays", Comparator.class),
   SORTED_MULTI_MAP_SINGLETON(SortedMultiMap.class, "singletonArrayIterator",
       Comparator.class, List.class),
+  SORTED_MULTI_MAP_SORTED_PARTITIONS(SortedMultiMap.class,
+      "mapSortedPartitions", Enumerable.class, Function1.class,
+      Function1.class),
   BINARY_SEARCH5_LOWER(BinarySearch.class, "lowerBound", Object[].class,
       Object.class, int.class, int.class, Comparator.class),
   BINARY_SEARCH5_UPPER(BinarySearch.class, "upperBound", Object[].class,
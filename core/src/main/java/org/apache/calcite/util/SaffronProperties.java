@@ -17,6 +17,7 @@
 package org.apache.calcite.util;
 
 import org.eigenbase.util.property.BooleanProperty;
+import org.eigenbase.util.property.IntegerProperty;
 import org.eigenbase.util.property.StringProperty;
 
 import java.io.File;
@@ -114,6 +115,18 @@ public class SaffronProperties extends Properties {
           "saffron.default.collation.strength",
           "primary");
 
+  /**
+   * The integer property "saffron.compiled.class.cache.size" is the maximum
+   * number of classes, generated and compiled at run time, that are retained
+   * so that identical code can be re-used without compiling it again. The
+   * default is 100. If 0, compiled classes are not retained. Used in
+   * {@link org.apache.calcite.util.javac.CompiledClassCache}.
+   */
+  public final IntegerProperty compiledClassCacheSize =
+      new IntegerProperty(
+          this,
+          "saffron.compiled.class.cache.size",
+          100);
 
   //~ Constructors -----------------------------------------------------------
 
@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.util.javac;
+
+import org.apache.calcite.prepare.CalcitePrepareImpl;
+import org.apache.calcite.util.SaffronProperties;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+
+import org.codehaus.commons.compiler.CompileException;
+import org.codehaus.commons.compiler.CompilerFactoryFactory;
+import org.codehaus.commons.compiler.IClassBodyEvaluator;
+import org.codehaus.commons.compiler.ICompilerFactory;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of classes compiled from generated Java code by Janino.
+ *
+ * <p>Compiling a class is expensive, and queries that are executed repeatedly
+ * often generate exactly the same code. This cache is keyed on the source code
+ * of the class body, its name, super-class, interfaces and parent class loader,
+ * and holds the compiled class, so that identical code is compiled only once.
+ *
+ * <p>The cache is bounded (see
+ * {@link SaffronProperties#compiledClassCacheSize}), so that classes of
+ * evicted entries can be unloaded once their instances are no longer in
+ * use.
+ */
+public class CompiledClassCache {
+  /** The singleton instance. */
+  public static final CompiledClassCache INSTANCE =
+      new CompiledClassCache(
+          SaffronProperties.instance().compiledClassCacheSize.get());
+
+  private final Cache<List<Object>, Class> cache;
+  private final int maximumSize;
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+
+  /** Creates a CompiledClassCache. */
+  public CompiledClassCache(int maximumSize) {
+    this.maximumSize = maximumSize;
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(Math.max(maximumSize, 0))
+        .build();
+  }
+
+  /** Compiles a class body, or finds a class compiled earlier from the same
+   * body, and returns a new instance of the class.
+   *
+   * @param className Name of the class
+   * @param extendedClass Super-class, or null
+   * @param implementedInterfaces Interfaces that the class implements
+   * @param parentClassLoader Class loader that will load classes referenced
+   *                          by the code
+   * @param body Source code of the class body
+   * @return New instance of the class
+   */
+  public Object createInstance(final String className,
+      final Class extendedClass, final Class[] implementedInterfaces,
+      final ClassLoader parentClassLoader, final String body)
+      throws CompileException, IOException {
+    final Class clazz;
+    if (maximumSize <= 0) {
+      clazz = compile(className, extendedClass, implementedInterfaces,
+          parentClassLoader, body);
+    } else {
+      final List<Object> key =
+          ImmutableList.of(className,
+              extendedClass == null ? Object.class : extendedClass,
+              ImmutableList.copyOf(implementedInterfaces),
+              parentClassLoader,
+              body);
+      final Class cachedClazz = cache.getIfPresent(key);
+      if (cachedClazz != null) {
+        hitCount.incrementAndGet();
+        clazz = cachedClazz;
+      } else {
+        missCount.incrementAndGet();
+        try {
+          clazz = cache.get(key,
+              new Callable<Class>() {
+                public Class call() throws Exception {
+                  return compile(className, extendedClass,
+                      implementedInterfaces, parentClassLoader, body);
+                }
+              });
+        } catch (ExecutionException e) {
+          final Throwable cause = e.getCause();
+          if (cause instanceof CompileException) {
+            throw (CompileException) cause;
+          }
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          }
+          throw new RuntimeException(cause);
+        }
+      }
+    }
+    try {
+      return clazz.newInstance();
+    } catch (InstantiationException e) {
+      throw new RuntimeException(e);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static Class compile(String className, Class extendedClass,
+      Class[] implementedInterfaces, ClassLoader parentClassLoader,
+      String body) throws CompileException, IOException {
+    ICompilerFactory compilerFactory;
+    try {
+      compilerFactory = CompilerFactoryFactory.getDefaultCompilerFactory();
+    } catch (Exception e) {
+      throw new IllegalStateException(
+          "Unable to instantiate java compiler", e);
+    }
+    IClassBodyEvaluator cbe = compilerFactory.newClassBodyEvaluator();
+    cbe.setClassName(className);
+    if (extendedClass != null) {
+      cbe.setExtendedClass(extendedClass);
+    }
+    cbe.setImplementedInterfaces(implementedInterfaces);
+    cbe.setParentClassLoader(parentClassLoader);
+    if (CalcitePrepareImpl.DEBUG) {
+      // Add line numbers to the generated janino class
+      cbe.setDebuggingInformation(true, true, true);
+    }
+    cbe.cook(new StringReader(body));
+    return cbe.getClazz();
+  }
+
+  /** Removes all classes from the cache. */
+  public void clear() {
+    cache.invalidateAll();
+  }
+
+  /** Returns the number of classes in the cache. */
+  public long size() {
+    return cache.size();
+  }
+
+  /** Returns the number of times that a class was found in the cache. */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /** Returns the number of times that a class was not found in the cache and
+   * had to be compiled. */
+  public long getMissCount() {
+    return missCount.get();
+  }
+}
+
+// End CompiledClassCache.java
@@ -123,6 +123,26 @@ public static Logger getSqlToRelTracer() {
     return Logger.getLogger("org.apache.calcite.sql2rel");
   }
 
+  /**
+   * The "org.apache.calcite.adapter.clone" tracer reports, at level
+   * {@link Level#FINE}, how long it took to load each table of a
+   * {@link org.apache.calcite.adapter.clone.CloneSchema} and to encode each
+   * of its columns, and why a cache file could not be used; and, at level
+   * {@link Level#WARNING}, failures to write a cache file.
+   */
+  public static Logger getCloneTracer() {
+    return Logger.getLogger("org.apache.calcite.adapter.clone");
+  }
+
+  /**
+   * The "org.apache.calcite.materialize" tracer reports, at level
+   * {@link Level#WARNING}, errors while refreshing tiles of a lattice in the
+   * background.
+   */
+  public static Logger getMaterializeTracer() {
+    return Logger.getLogger("org.apache.calcite.materialize");
+  }
+
   /**
    * Thread-local handler that is called with dynamically generated Java code.
    * It exists for unit-testing.
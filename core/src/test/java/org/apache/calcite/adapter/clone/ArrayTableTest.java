@@ -16,21 +16,42 @@
  */
 package org.apache.calcite.adapter.clone;
 
+import org.apache.calcite.DataContext;
+import org.apache.calcite.adapter.java.JavaTypeFactory;
 import org.apache.calcite.jdbc.JavaTypeFactoryImpl;
 import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Enumerator;
 import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.linq4j.QueryProvider;
 import org.apache.calcite.rel.type.RelDataType;
 import org.apache.calcite.rel.type.RelDataTypeImpl;
 import org.apache.calcite.rel.type.RelDataTypeSystem;
+import org.apache.calcite.rex.RexBuilder;
+import org.apache.calcite.rex.RexNode;
+import org.apache.calcite.schema.SchemaPlus;
+import org.apache.calcite.sql.fun.SqlStdOperatorTable;
+import org.apache.calcite.sql.type.SqlTypeName;
+
+import com.google.common.base.Suppliers;
 
 import org.junit.Test;
 
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Unit test for {@link ArrayTable} and {@link ColumnLoader}.
@@ -353,6 +374,303 @@ public class ArrayTableTest {
         "Column(representation=ObjectArray(ordinal=2), value=[Bill, Sebastian, Theodore, Eric])");
   }
 
+  /** Writes the contents of a table to a {@link ColumnStore} and maps them
+   * back into memory. A file is not read back if its fingerprint is
+   * different. */
+  @Test public void testColumnStore() throws IOException {
+    final JavaTypeFactoryImpl typeFactory =
+        new JavaTypeFactoryImpl(RelDataTypeSystem.DEFAULT);
+    final RelDataType rowType =
+        typeFactory.builder()
+            .add("empid", typeFactory.createType(int.class))
+            .add("deptno", typeFactory.createType(int.class))
+            .add("name", typeFactory.createType(String.class))
+            .add("salary", typeFactory.createType(double.class))
+            .add("manager", typeFactory.createType(boolean.class))
+            .build();
+    final List<Object[]> rows = new ArrayList<Object[]>();
+    for (int i = 0; i < 3000; i++) {
+      rows.add(
+          new Object[]{
+            i * 100000, i % 10, "name" + (i % 3), i * 1.5D, i % 7 == 0});
+    }
+    final ColumnLoader<Object[]> loader =
+        new ColumnLoader<Object[]>(typeFactory, Linq4j.asEnumerable(rows),
+            RelDataTypeImpl.proto(rowType), null);
+    final ArrayTable.Content content =
+        new ArrayTable.Content(loader.representationValues, loader.size(),
+            loader.sortField);
+    final File file = File.createTempFile("column", ".store");
+    try {
+      final String fingerprint =
+          CloneSchema.fingerprint(Arrays.asList("s", "emps"), rowType);
+      ColumnStore.write(content, file, fingerprint);
+      final ArrayTable.Content content2 = ColumnStore.read(file, fingerprint);
+      assertEquals(content.size, content2.size);
+      assertEquals(content.sortField, content2.sortField);
+      assertEquals(5, content2.columns.size());
+      for (int i = 0; i < content.columns.size(); i++) {
+        final ArrayTable.Column column = content.columns.get(i);
+        checkColumn(content2.columns.get(i),
+            column.representation.getType(), column.toString());
+      }
+      final Enumerator<Object[]> enumerator = content2.arrayEnumerator();
+      for (Object[] row : rows) {
+        assertTrue(enumerator.moveNext());
+        assertEquals(Arrays.asList(row), Arrays.asList(enumerator.current()));
+      }
+      assertFalse(enumerator.moveNext());
+
+      // Same table in another schema, or a column of a different type
+      final RelDataType rowType2 =
+          typeFactory.builder()
+              .addAll(rowType.getFieldList().subList(0, 4))
+              .add("manager", typeFactory.createType(Boolean.class))
+              .build();
+      for (String fingerprint2
+          : Arrays.asList(
+              CloneSchema.fingerprint(Arrays.asList("t", "emps"), rowType),
+              CloneSchema.fingerprint(Arrays.asList("s", "emps"),
+                  rowType2))) {
+        assertThat(fingerprint2, not(equalTo(fingerprint)));
+        try {
+          final ArrayTable.Content content3 =
+              ColumnStore.read(file, fingerprint2);
+          fail("expected error, got " + content3);
+        } catch (IOException e) {
+          assertThat(e.getMessage(),
+              containsString("was written for a different table"));
+        }
+      }
+    } finally {
+      //noinspection ResultOfMethodCallIgnored
+      file.delete();
+    }
+  }
+
+  /** Tests that {@link ArrayTable} evaluates filters and projects
+   * columns. */
+  @Test public void testFilterProject() {
+    final JavaTypeFactoryImpl typeFactory =
+        new JavaTypeFactoryImpl(RelDataTypeSystem.DEFAULT);
+    final RelDataType rowType =
+        typeFactory.builder()
+            .add("empid", typeFactory.createSqlType(SqlTypeName.INTEGER))
+            .add("deptno", typeFactory.createSqlType(SqlTypeName.INTEGER))
+            .add("name",
+                typeFactory.createTypeWithNullability(
+                    typeFactory.createSqlType(SqlTypeName.VARCHAR, 20), true))
+            .add("salary", typeFactory.createSqlType(SqlTypeName.DOUBLE))
+            .build();
+    final List<Object[]> rows = new ArrayList<Object[]>();
+    for (int i = 0; i < 1000; i++) {
+      rows.add(
+          new Object[]{
+            i, i % 10, i % 7 == 0 ? null : "name" + (i % 3), i * 1.5D});
+    }
+    final ColumnLoader<Object[]> loader =
+        new ColumnLoader<Object[]>(typeFactory, Linq4j.asEnumerable(rows),
+            RelDataTypeImpl.proto(rowType), null);
+    final ArrayTable.Content content =
+        new ArrayTable.Content(loader.representationValues, loader.size(),
+            loader.sortField);
+    final ArrayTable table =
+        new ArrayTable(Object[].class, RelDataTypeImpl.proto(rowType),
+            Suppliers.ofInstance(content));
+    final DataContext root =
+        new DataContext() {
+          public SchemaPlus getRootSchema() {
+            return null;
+          }
+
+          public JavaTypeFactory getTypeFactory() {
+            return typeFactory;
+          }
+
+          public QueryProvider getQueryProvider() {
+            return null;
+          }
+
+          public Object get(String name) {
+            return null;
+          }
+        };
+
+    // deptno < 5 AND 'name1' = name, salary >= 300, empid + 1 > 10
+    final RexBuilder rexBuilder = new RexBuilder(typeFactory);
+    final RelDataType intType = rowType.getFieldList().get(0).getType();
+    final RexNode deptno = rexBuilder.makeInputRef(intType, 1);
+    final RexNode name =
+        rexBuilder.makeInputRef(rowType.getFieldList().get(2).getType(), 2);
+    final RexNode salary =
+        rexBuilder.makeInputRef(rowType.getFieldList().get(3).getType(), 3);
+    final RexNode filter0 =
+        rexBuilder.makeCall(SqlStdOperatorTable.AND,
+            rexBuilder.makeCall(SqlStdOperatorTable.LESS_THAN, deptno,
+                rexBuilder.makeExactLiteral(BigDecimal.valueOf(5))),
+            rexBuilder.makeCall(SqlStdOperatorTable.EQUALS,
+                rexBuilder.makeLiteral("name1"), name));
+    final RexNode filter1 =
+        rexBuilder.makeCall(SqlStdOperatorTable.GREATER_THAN_OR_EQUAL,
+            salary, rexBuilder.makeApproxLiteral(BigDecimal.valueOf(300)));
+    final RexNode filter2 =
+        rexBuilder.makeCall(SqlStdOperatorTable.GREATER_THAN,
+            rexBuilder.makeCall(SqlStdOperatorTable.PLUS,
+                rexBuilder.makeInputRef(intType, 0),
+                rexBuilder.makeExactLiteral(BigDecimal.ONE)),
+            rexBuilder.makeExactLiteral(BigDecimal.TEN));
+    final List<RexNode> filters =
+        new ArrayList<RexNode>(Arrays.asList(filter0, filter1, filter2));
+    final Enumerable<Object[]> enumerable =
+        table.scan(root, filters, new int[]{2, 0});
+
+    // The table cannot evaluate "empid + 1 > 10", so leaves it in the list.
+    assertEquals(Arrays.asList(filter2), filters);
+    int count = 0;
+    for (Object[] row : enumerable) {
+      assertEquals(2, row.length);
+      assertEquals("name1", row[0]);
+      final int empid = (Integer) row[1];
+      assertTrue(empid % 10 < 5 && empid * 1.5D >= 300);
+      ++count;
+    }
+    int expectedCount = 0;
+    for (Object[] row : rows) {
+      if ((Integer) row[1] < 5
+          && "name1".equals(row[2])
+          && (Double) row[3] >= 300) {
+        ++expectedCount;
+      }
+    }
+    assertEquals(expectedCount, count);
+  }
+
+  /** Tests that {@link ColumnLoader} loads a table that has more than one
+   * chunk of rows, and sorts it on its first unique column. */
+  @Test public void testLoadChunks() {
+    final JavaTypeFactoryImpl typeFactory =
+        new JavaTypeFactoryImpl(RelDataTypeSystem.DEFAULT);
+    final RelDataType rowType =
+        typeFactory.builder()
+            .add("deptno", typeFactory.createSqlType(SqlTypeName.INTEGER))
+            .add("empid", typeFactory.createSqlType(SqlTypeName.INTEGER))
+            .add("name", typeFactory.createSqlType(SqlTypeName.VARCHAR, 20))
+            .build();
+    final int rowCount = ColumnLoader.CHUNK_SIZE * 2 + 100;
+    final List<Object[]> rows = new ArrayList<Object[]>();
+    for (int i = 0; i < rowCount; i++) {
+      // empid is unique, and descending
+      final int empid = rowCount - i;
+      rows.add(new Object[]{i % 10, empid, "name" + empid % 7});
+    }
+    final ColumnLoader<Object[]> loader =
+        new ColumnLoader<Object[]>(typeFactory, Linq4j.asEnumerable(rows),
+            RelDataTypeImpl.proto(rowType), null);
+    assertEquals(rowCount, loader.size());
+    assertEquals(1, loader.sortField);
+    assertEquals(3, loader.columnNanos.length);
+    assertTrue(loader.loadNanos > 0);
+    final ArrayTable.Content content =
+        new ArrayTable.Content(loader.representationValues, loader.size(),
+            loader.sortField);
+    final Enumerator<Object[]> enumerator = content.arrayEnumerator();
+    int i = 0;
+    while (enumerator.moveNext()) {
+      final Object[] row = enumerator.current();
+      final int empid = i + 1;
+      assertEquals(empid, row[1]);
+      assertEquals((rowCount - empid) % 10, row[0]);
+      assertEquals("name" + empid % 7, row[2]);
+      ++i;
+    }
+    assertEquals(rowCount, i);
+  }
+
+  /** Tests that {@link ColumnLoader} builds a {@link ZoneMap} for each
+   * column, and that {@link ArrayTable} uses it to skip blocks and to
+   * estimate selectivity. */
+  @Test public void testZoneMap() {
+    final JavaTypeFactoryImpl typeFactory =
+        new JavaTypeFactoryImpl(RelDataTypeSystem.DEFAULT);
+    final RelDataType intType = typeFactory.createSqlType(SqlTypeName.INTEGER);
+    final RelDataType nullableIntType =
+        typeFactory.createTypeWithNullability(intType, true);
+    final RelDataType rowType =
+        typeFactory.builder()
+            .add("id", intType)
+            .add("grp", nullableIntType)
+            .build();
+    final int rowCount = 200000;
+    final List<Object[]> rows = new ArrayList<Object[]>();
+    for (int i = 0; i < rowCount; i++) {
+      rows.add(new Object[]{i, i < ZoneMap.BLOCK_SIZE ? null : i % 10});
+    }
+    final ColumnLoader<Object[]> loader =
+        new ColumnLoader<Object[]>(typeFactory, Linq4j.asEnumerable(rows),
+            RelDataTypeImpl.proto(rowType), null);
+    final ArrayTable.Content content =
+        new ArrayTable.Content(loader.representationValues, loader.size(),
+            loader.sortField);
+    final ZoneMap idZoneMap = content.columns.get(0).zoneMap;
+    assertEquals(4, idZoneMap.blockCount());
+    assertEquals(0, idZoneMap.mins[0]);
+    assertEquals(ZoneMap.BLOCK_SIZE - 1, idZoneMap.maxes[0]);
+    assertEquals(rowCount - 1, idZoneMap.maxes[3]);
+    assertEquals(rowCount - 3 * ZoneMap.BLOCK_SIZE, idZoneMap.blockRowCount(3));
+    final ZoneMap grpZoneMap = content.columns.get(1).zoneMap;
+    assertEquals(ZoneMap.BLOCK_SIZE, grpZoneMap.nullCounts[0]);
+    assertNull(grpZoneMap.mins[0]);
+    assertEquals(0, grpZoneMap.nullCounts[1]);
+
+    final RexBuilder rexBuilder = new RexBuilder(typeFactory);
+    final RexNode id = rexBuilder.makeInputRef(intType, 0);
+    final RexNode grp = rexBuilder.makeInputRef(nullableIntType, 1);
+    final RexNode idGe150000 =
+        rexBuilder.makeCall(SqlStdOperatorTable.GREATER_THAN_OR_EQUAL, id,
+            rexBuilder.makeExactLiteral(BigDecimal.valueOf(150000)));
+    final ColumnFilter filter = ColumnFilter.of(idGe150000).get(0);
+    assertFalse(filter.mayMatch(idZoneMap, 0));
+    assertFalse(filter.mayMatch(idZoneMap, 1));
+    assertTrue(filter.mayMatch(idZoneMap, 2));
+    assertTrue(filter.mayMatch(idZoneMap, 3));
+
+    // Rows in skipped blocks are not returned; rows in other blocks are.
+    final RexNode grpEq3 =
+        rexBuilder.makeCall(SqlStdOperatorTable.EQUALS, grp,
+            rexBuilder.makeExactLiteral(BigDecimal.valueOf(3)));
+    final Enumerator<Object[]> enumerator =
+        content.arrayEnumerator(
+            Arrays.asList(filter, ColumnFilter.of(grpEq3).get(0)), null);
+    int count = 0;
+    while (enumerator.moveNext()) {
+      final Object[] row = enumerator.current();
+      assertTrue((Integer) row[0] >= 150000);
+      assertEquals(3, row[1]);
+      ++count;
+    }
+    assertEquals(5000, count);
+
+    final ArrayTable table =
+        new ArrayTable(Object[].class, RelDataTypeImpl.proto(rowType),
+            Suppliers.ofInstance(content));
+    final RexNode idLt50000 =
+        rexBuilder.makeCall(SqlStdOperatorTable.LESS_THAN, id,
+            rexBuilder.makeExactLiteral(BigDecimal.valueOf(50000)));
+    assertEquals(0.25D,
+        table.getStatistic().getSelectivity(idLt50000), 0.001D);
+    final RexNode grpIsNull =
+        rexBuilder.makeCall(SqlStdOperatorTable.IS_NULL, grp);
+    assertEquals((double) ZoneMap.BLOCK_SIZE / rowCount,
+        table.getStatistic().getSelectivity(grpIsNull), 0.000001D);
+    // 10 distinct non-null values
+    assertEquals(0.1D * (rowCount - ZoneMap.BLOCK_SIZE) / rowCount,
+        table.getStatistic().getSelectivity(grpEq3), 0.000001D);
+    assertEquals(0.25D * 0.1D * (rowCount - ZoneMap.BLOCK_SIZE) / rowCount,
+        table.getStatistic().getSelectivity(
+            rexBuilder.makeCall(SqlStdOperatorTable.AND, idLt50000, grpEq3)),
+        0.001D);
+  }
+
   private void checkColumn(ArrayTable.Column x,
       ArrayTable.RepresentationType expectedRepresentationType,
       String expectedString) {
@@ -17,9 +17,12 @@
 package org.apache.calcite.jdbc;
 
 import org.apache.calcite.avatica.AvaticaConnection;
+import org.apache.calcite.avatica.AvaticaStatement;
 import org.apache.calcite.avatica.Meta;
+import org.apache.calcite.avatica.remote.HttpClientPool;
 import org.apache.calcite.avatica.remote.LocalJsonService;
 import org.apache.calcite.avatica.remote.LocalService;
+import org.apache.calcite.avatica.remote.Serialization;
 import org.apache.calcite.avatica.remote.Service;
 import org.apache.calcite.avatica.server.HttpServer;
 import org.apache.calcite.avatica.server.Main;
@@ -32,20 +35,27 @@
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.URL;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Arrays;
 import java.util.List;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Test for Calcite's remote JDBC driver.
@@ -178,6 +188,221 @@ public ResultSet apply(Connection input) {
     assertThat(n, equalTo(2));
   }
 
+  /** Tests a query whose result set is larger than one frame; the remote
+   * driver has to fetch the later frames from the server. */
+  @Test public void testRemoteExecuteLargeQuery() throws Exception {
+    final Statement statement = remoteConnection.createStatement();
+    final ResultSet resultSet =
+        statement.executeQuery("select * from \"foodmart\".\"employee\"");
+    int n = 0;
+    while (resultSet.next()) {
+      ++n;
+    }
+    assertThat(n, equalTo(1155));
+  }
+
+  /** Tests a remote connection that uses the binary serialization. */
+  @Test public void testRemoteBinary() throws Exception {
+    final Connection connection = DriverManager.getConnection(
+        "jdbc:avatica:remote:url=http://localhost:" + start.getPort()
+        + ";serialization=BINARY");
+    final Statement statement = connection.createStatement();
+    final ResultSet resultSet =
+        statement.executeQuery("select \"employee_id\", \"full_name\",\n"
+            + " \"salary\", \"supervisor_id\"\n"
+            + "from \"foodmart\".\"employee\"\n"
+            + "order by \"employee_id\"");
+    assertTrue(resultSet.next());
+    assertThat(resultSet.getInt(1), equalTo(1));
+    assertThat(resultSet.getString(2), equalTo("Sheri Nowmer"));
+    assertThat(resultSet.getDouble(3), equalTo(80000d));
+    assertThat(resultSet.getInt(4), equalTo(0));
+    int n = 1;
+    while (resultSet.next()) {
+      ++n;
+    }
+    assertThat(n, equalTo(1155));
+    resultSet.close();
+    statement.close();
+    connection.close();
+  }
+
+  /** Tests that remote connections to the same URL with the same pool size
+   * share a pool of HTTP connections, and connections that ask for a
+   * different size get a different pool. */
+  @Test public void testRemoteConnectionPool() throws Exception {
+    // Use an address that no other test uses, so that the pool's
+    // statistics are not affected by tests running in parallel.
+    final String url = "http://127.0.0.1:" + start.getPort();
+    final Connection connection1 = DriverManager.getConnection(
+        "jdbc:avatica:remote:url=" + url
+        + ";maxConnections=2;readTimeout=60000");
+    final Connection connection2 = DriverManager.getConnection(
+        "jdbc:avatica:remote:url=" + url
+        + ";maxConnections=3;poolTimeout=60000");
+    final HttpClientPool pool2 = HttpClientPool.instance(new URL(url), 2);
+    final HttpClientPool pool3 = HttpClientPool.instance(new URL(url), 3);
+    assertThat(pool2.getMaxConnections(), equalTo(2));
+    assertThat(pool3.getMaxConnections(), equalTo(3));
+    assertThat(pool2, not(sameInstance(pool3)));
+    assertThat(HttpClientPool.instance(new URL(url), 2), sameInstance(pool2));
+    final long requestCount2 = pool2.getRequestCount();
+    final long requestCount3 = pool3.getRequestCount();
+    for (Connection connection : Arrays.asList(connection1, connection2)) {
+      final Statement statement = connection.createStatement();
+      final ResultSet resultSet =
+          statement.executeQuery("values (1, 'a'), (2, 'b')");
+      int n = 0;
+      while (resultSet.next()) {
+        ++n;
+      }
+      assertThat(n, equalTo(2));
+      resultSet.close();
+      statement.close();
+    }
+    for (HttpClientPool pool : Arrays.asList(pool2, pool3)) {
+      assertThat(pool.getInFlightCount(), equalTo(0));
+      assertThat(pool.getFailureCount(), equalTo(0L));
+    }
+    assertTrue(pool2.getRequestCount() > requestCount2);
+    assertTrue(pool3.getRequestCount() > requestCount3);
+    connection1.close();
+    connection2.close();
+  }
+
+  /** Tests that a response survives a round trip through each
+   * {@link Serialization}. */
+  @Test public void testSerializationRoundTrip() throws Exception {
+    final List<Object> rows = Arrays.<Object>asList(
+        Arrays.<Object>asList(1, "a", 1.5d, null, true, -7L),
+        Arrays.<Object>asList(null, "\u00e9", -2.5d, null, false, 1L << 40),
+        Arrays.<Object>asList(-300, null, 0d, null, null, 0L));
+    final Service.FetchResponse response =
+        new Service.FetchResponse(new Meta.Frame(10, false, rows));
+    for (Serialization serialization : Serialization.values()) {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      serialization.writeResponse(response, out);
+      final Service.FetchResponse response2 =
+          serialization.readResponse(
+              new ByteArrayInputStream(out.toByteArray()),
+              Service.FetchResponse.class);
+      assertThat(response2.frame.offset, equalTo(10));
+      assertThat(response2.frame.done, is(false));
+      assertThat(response2.frame.rows.toString(), equalTo(rows.toString()));
+    }
+  }
+
+  /** Tests that {@link LocalService} returns the rows of a result set in
+   * frames. */
+  @Test public void testLocalServiceFrames() throws Exception {
+    final Connection connection = CalciteAssert.hr().connect();
+    final Meta meta = CalciteConnectionImpl.TROJAN
+        .getMeta((CalciteConnectionImpl) connection);
+    final LocalService service = new LocalService(meta, 2);
+    final int statementId =
+        service.apply(new Service.CreateStatementRequest(0)).id;
+    final Service.ResultSetResponse response =
+        service.apply(
+            new Service.PrepareAndExecuteRequest(statementId,
+                "values (1), (2), (3), (4), (5)", -1));
+    assertThat(response.firstFrame.offset, equalTo(0));
+    assertThat(response.firstFrame.rows.size(), equalTo(2));
+    assertThat(response.firstFrame.done, is(false));
+
+    Meta.Frame frame =
+        service.apply(new Service.FetchRequest(statementId, 2, 0)).frame;
+    assertThat(frame.offset, equalTo(2));
+    assertThat(frame.rows.size(), equalTo(2));
+    assertThat(frame.done, is(false));
+
+    frame = service.apply(new Service.FetchRequest(statementId, 4, 0)).frame;
+    assertThat(frame.offset, equalTo(4));
+    assertThat(frame.rows.size(), equalTo(1));
+    assertThat(frame.done, is(true));
+    connection.close();
+  }
+
+  /** Tests that {@link LocalService} keeps a registry of statements, with
+   * timings, cancellation and idle expiry. */
+  @Test public void testLocalServiceStatementRegistry() throws Exception {
+    final Connection connection = CalciteAssert.hr().connect();
+    final Meta meta = CalciteConnectionImpl.TROJAN
+        .getMeta((CalciteConnectionImpl) connection);
+    final LocalService service = new LocalService(meta, 2, 0);
+    final int statementId =
+        service.apply(new Service.CreateStatementRequest(0)).id;
+    service.apply(
+        new Service.PrepareAndExecuteRequest(statementId,
+            "values (1), (2), (3), (4), (5)", -1));
+    final LocalService.ServerStatement statement =
+        service.getStatement(statementId);
+    assertThat(statement.hasCursor(), is(true));
+    assertThat(statement.isActive(), is(false));
+    assertThat(statement.getRowCount(), equalTo(2L));
+    assertTrue(statement.getExecuteNanos() > 0);
+
+    // Cancel discards the open result set
+    assertThat(service.apply(new Service.CancelRequest(statementId)).cancelled,
+        is(true));
+    assertThat(statement.hasCursor(), is(false));
+    try {
+      service.apply(new Service.FetchRequest(statementId, 2, 0));
+      fail("expected error");
+    } catch (RuntimeException e) {
+      assertThat(e.getMessage(),
+          equalTo("No open result set in statement " + statementId));
+    }
+    assertThat(service.apply(new Service.CancelRequest(statementId)).cancelled,
+        is(false));
+
+    // The statement can be re-executed after it has been cancelled
+    service.apply(
+        new Service.PrepareAndExecuteRequest(statementId,
+            "values (1), (2), (3)", -1));
+    assertThat(statement.hasCursor(), is(true));
+    assertThat(statement.getRowCount(), equalTo(4L));
+
+    // Idle statements are removed
+    assertThat(service.expireIdle(60000), equalTo(0));
+    Thread.sleep(2);
+    assertThat(service.expireIdle(1), equalTo(1));
+    assertThat(service.getStatement(statementId), CoreMatchers.nullValue());
+    assertThat(statement.hasCursor(), is(false));
+    connection.close();
+  }
+
+  /** Tests that closing and cancelling a statement of a remote connection
+   * releases the statement's resources on the server. */
+  @Test public void testRemoteCloseAndCancel() throws Exception {
+    final Connection connection = DriverManager.getConnection(
+        "jdbc:avatica:remote:factory=" + Factory3.class.getName());
+    final LocalService service = Factory3.service;
+    final Statement statement = connection.createStatement();
+    final int statementId = ((AvaticaStatement) statement).getId();
+    final String sql = "select * from \"foodmart\".\"employee\"";
+    ResultSet resultSet = statement.executeQuery(sql);
+    assertTrue(resultSet.next());
+    final LocalService.ServerStatement serverStatement =
+        service.getStatement(statementId);
+    assertThat(serverStatement.hasCursor(), is(true));
+
+    // Cancel discards the open result set on the server, but the statement
+    // remains registered, and can be re-executed
+    statement.cancel();
+    assertThat(serverStatement.hasCursor(), is(false));
+    assertThat(service.getStatement(statementId),
+        CoreMatchers.sameInstance(serverStatement));
+    resultSet = statement.executeQuery(sql);
+    assertTrue(resultSet.next());
+    assertThat(serverStatement.hasCursor(), is(true));
+
+    // Close removes the statement from the server
+    statement.close();
+    assertThat(serverStatement.hasCursor(), is(false));
+    assertThat(service.getStatement(statementId), CoreMatchers.nullValue());
+    connection.close();
+  }
+
   /** Creates a {@link Meta} that can see the test databases. */
   public static class Factory implements Meta.Factory {
     public Meta create(List<String> args) {
@@ -203,6 +428,25 @@ public Service create(AvaticaConnection connection) {
       }
     }
   }
+
+  /** Factory that creates a {@code LocalJsonService} and remembers its
+   * {@link LocalService}, so that a test can inspect the server's
+   * statements. Used only by {@link #testRemoteCloseAndCancel()}. */
+  public static class Factory3 implements Service.Factory {
+    static volatile LocalService service;
+
+    public Service create(AvaticaConnection connection) {
+      try {
+        Connection localConnection = CalciteAssert.hr().connect();
+        final Meta meta = CalciteConnectionImpl.TROJAN
+            .getMeta((CalciteConnectionImpl) localConnection);
+        service = new LocalService(meta);
+        return new LocalJsonService(service);
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
 }
 
 // End CalciteRemoteDriverTest.java
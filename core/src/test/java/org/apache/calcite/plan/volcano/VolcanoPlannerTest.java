@@ -142,6 +142,51 @@ static RelOptCluster newCluster(VolcanoPlanner planner) {
     assertTrue(result instanceof PhysSingleRel);
   }
 
+  /**
+   * Tests that a planner with a rule-fire limit stops when it has used its
+   * budget and has an implementable plan, and that it reports statistics.
+   */
+  @Test public void testRuleFireLimit() {
+    for (int limit : new int[]{0, 1}) {
+      VolcanoPlanner planner = new VolcanoPlanner();
+      planner.addRelTraitDef(ConventionTraitDef.INSTANCE);
+      planner.setRuleFireLimit(limit);
+
+      planner.addRule(new PhysLeafRule());
+      planner.addRule(new GoodSingleRule());
+
+      RelOptCluster cluster = newCluster(planner);
+      NoneLeafRel leafRel =
+          new NoneLeafRel(
+              cluster,
+              "a");
+      NoneSingleRel singleRel =
+          new NoneSingleRel(
+              cluster,
+              leafRel);
+      RelNode convertedRel =
+          planner.changeTraits(
+              singleRel,
+              cluster.traitSetOf(PHYS_CALLING_CONVENTION));
+      planner.setRoot(convertedRel);
+      RelNode result = planner.chooseDelegate().findBestExp();
+
+      // Even with a limit of 1, the planner fires both rules, because it
+      // needs both to find an implementable plan.
+      assertTrue(result instanceof PhysSingleRel);
+      final VolcanoPlannerStats stats = planner.getStats();
+      assertTrue(stats.ruleFireCount >= 2);
+      assertTrue(stats.setCount >= 2);
+      assertEquals(limit > 0, stats.budgetExhausted);
+      if (limit > 0) {
+        assertEquals(2, stats.ruleFireCount);
+      } else {
+        assertEquals(VolcanoPlannerPhase.values().length,
+            stats.phaseNanos.size());
+      }
+    }
+  }
+
   /**
    * Tests a rule that is fired once per subset (whereas most rules are fired
    * once per rel in a set or rel in a subset)
@@ -19,11 +19,20 @@
 import org.apache.calcite.DataContext;
 import org.apache.calcite.adapter.java.JavaTypeFactory;
 import org.apache.calcite.interpreter.Interpreter;
+import org.apache.calcite.linq4j.Enumerable;
+import org.apache.calcite.linq4j.Linq4j;
 import org.apache.calcite.linq4j.QueryProvider;
 import org.apache.calcite.rel.RelNode;
+import org.apache.calcite.rel.type.RelDataType;
+import org.apache.calcite.rel.type.RelDataTypeFactory;
+import org.apache.calcite.schema.ScannableTable;
+import org.apache.calcite.schema.Schema;
 import org.apache.calcite.schema.SchemaPlus;
+import org.apache.calcite.schema.Statistic;
+import org.apache.calcite.schema.Statistics;
 import org.apache.calcite.sql.SqlNode;
 import org.apache.calcite.sql.parser.SqlParser;
+import org.apache.calcite.sql.type.SqlTypeName;
 import org.apache.calcite.tools.FrameworkConfig;
 import org.apache.calcite.tools.Frameworks;
 import org.apache.calcite.tools.Planner;
@@ -34,6 +43,7 @@
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -236,6 +246,160 @@ private static void assertRows(Interpreter interpreter,
     final Interpreter interpreter = new Interpreter(dataContext, convert);
     assertRows(interpreter, "[0]", "[10]", "[20]", "[30]");
   }
+
+  /** Tests executing plans in pipelined mode, with each node in its own
+   * thread, and queues small enough that producers have to wait for
+   * consumers. */
+  @Test public void testInterpretPipelined() throws Exception {
+    rootSchema.add("simple", new ScannableTableTest.SimpleTable());
+    SqlNode parse =
+        planner.parse("select * from \"simple\"\n"
+            + "union all\n"
+            + "select * from \"simple\"\n");
+    RelNode convert = planner.convert(planner.validate(parse));
+    Interpreter interpreter =
+        new Interpreter(dataContext, convert, Interpreter.DEFAULT_EXECUTOR,
+            1, 1);
+    assertRows(interpreter,
+        "[0]", "[10]", "[20]", "[30]", "[0]", "[10]", "[20]", "[30]");
+    planner.reset();
+
+    // The limit stops reading before its input is exhausted; the scan must
+    // not wait forever for the limit to consume its rows.
+    parse = planner.parse("select * from \"simple\" limit 1");
+    convert = planner.convert(planner.validate(parse));
+    interpreter =
+        new Interpreter(dataContext, convert, Interpreter.DEFAULT_EXECUTOR,
+            1, 1);
+    assertRows(interpreter, "[0]");
+    planner.reset();
+
+    parse = planner.parse("select y, x\n"
+        + "from (values (1, 'a'), (2, 'b'), (3, 'c')) as t(x, y)\n"
+        + "where x > 1");
+    convert = planner.convert(planner.validate(parse));
+    interpreter =
+        new Interpreter(dataContext, convert, Interpreter.DEFAULT_EXECUTOR,
+            2, 1);
+    assertRows(interpreter, "[b, 2]", "[c, 3]");
+  }
+
+  /** Tests that a filter evaluates its condition over batches of rows,
+   * including a last batch that is smaller than the others. */
+  @Test public void testInterpretFilterBatches() throws Exception {
+    assertBatches("select * from \"range\" where mod(\"i\", 3) = 0",
+        834, "[0]", "[2499]");
+  }
+
+  /** Tests that a project evaluates its expressions over batches of rows. */
+  @Test public void testInterpretProjectBatches() throws Exception {
+    assertBatches("select \"i\" * 2, \"i\" + 1 from \"range\"",
+        2500, "[0, 1]", "[4998, 2500]");
+  }
+
+  /** Tests that an aggregate consumes batches of rows. */
+  @Test public void testInterpretAggregateBatches() throws Exception {
+    assertBatches("select mod(\"i\", 10), count(*), sum(\"i\")\n"
+        + "from \"range\"\n"
+        + "group by mod(\"i\", 10)\n"
+        + "order by 1",
+        10, "[0, 250, 311250]", "[9, 250, 313500]");
+  }
+
+  /** Runs a query over a table of 2,500 rows, first in a single thread
+   * (batches of 1,024 rows, the last of 452 rows) and then pipelined
+   * (batches of 7 rows, the last of 1 row), and checks the number of rows
+   * and the first and last row. */
+  private void assertBatches(String sql, int expectedCount,
+      String expectedFirst, String expectedLast) throws Exception {
+    rootSchema.add("range", new RangeTable(2500));
+    for (boolean pipelined : new boolean[] {false, true}) {
+      final SqlNode parse = planner.parse(sql);
+      final RelNode convert = planner.convert(planner.validate(parse));
+      final Interpreter interpreter = pipelined
+          ? new Interpreter(dataContext, convert, Interpreter.DEFAULT_EXECUTOR,
+              7, 2)
+          : new Interpreter(dataContext, convert, null, 1024, 1);
+      final List<String> list = Lists.newArrayList();
+      for (Object[] row : interpreter) {
+        list.add(Arrays.toString(row));
+      }
+      assertThat(list.size(), equalTo(expectedCount));
+      assertThat(list.get(0), equalTo(expectedFirst));
+      assertThat(list.get(list.size() - 1), equalTo(expectedLast));
+      planner.reset();
+    }
+  }
+
+  /** Tests executing an equi-join using an interpreter. */
+  @Test public void testInterpretJoin() throws Exception {
+    assertJoin("join", "t.x = u.x",
+        "[1, a, 1, A]", "[1, a, 1, B]");
+  }
+
+  /** Tests executing outer equi-joins using an interpreter. */
+  @Test public void testInterpretOuterJoin() throws Exception {
+    assertJoin("left join", "t.x = u.x",
+        "[1, a, 1, A]", "[1, a, 1, B]", "[2, b, null, null]",
+        "[3, c, null, null]");
+    assertJoin("right join", "t.x = u.x",
+        "[1, a, 1, A]", "[1, a, 1, B]", "[null, null, 4, D]");
+    assertJoin("full join", "t.x = u.x and t.y <> 'a'",
+        "[1, a, null, null]", "[2, b, null, null]", "[3, c, null, null]",
+        "[null, null, 1, A]", "[null, null, 1, B]", "[null, null, 4, D]");
+  }
+
+  /** Tests executing a join whose condition has no equi-join keys. */
+  @Test public void testInterpretNonEquiJoin() throws Exception {
+    assertJoin("left join", "t.x > u.x",
+        "[1, a, null, null]", "[2, b, 1, A]", "[2, b, 1, B]",
+        "[3, c, 1, A]", "[3, c, 1, B]");
+  }
+
+  private void assertJoin(String join, String condition, String... rows)
+      throws Exception {
+    SqlNode parse =
+        planner.parse("select *\n"
+            + "from (values (1, 'a'), (2, 'b'), (3, 'c')) as t(x, y)\n"
+            + join + " (values (1, 'A'), (1, 'B'), (4, 'D')) as u(x, y)\n"
+            + "on " + condition);
+
+    SqlNode validate = planner.validate(parse);
+    RelNode convert = planner.convert(validate);
+
+    final Interpreter interpreter = new Interpreter(dataContext, convert);
+    assertRowsUnordered(interpreter, rows);
+    planner.reset();
+  }
+
+  /** Table whose single INTEGER column "i" has the values 0 to n - 1. */
+  private static class RangeTable implements ScannableTable {
+    private final int n;
+
+    RangeTable(int n) {
+      this.n = n;
+    }
+
+    public RelDataType getRowType(RelDataTypeFactory typeFactory) {
+      return typeFactory.builder().add("i", SqlTypeName.INTEGER).build();
+    }
+
+    public Statistic getStatistic() {
+      return Statistics.UNKNOWN;
+    }
+
+    public Schema.TableType getJdbcTableType() {
+      return Schema.TableType.TABLE;
+    }
+
+    public Enumerable<Object[]> scan(DataContext root) {
+      final List<Object[]> rows = new ArrayList<Object[]>(n);
+      for (int i = 0; i < n; i++) {
+        rows.add(new Object[] {i});
+      }
+      return Linq4j.asEnumerable(rows);
+    }
+  }
 }
 
 // End InterpreterTest.java
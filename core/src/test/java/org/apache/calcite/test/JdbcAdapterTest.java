@@ -16,8 +16,24 @@
  */
 package org.apache.calcite.test;
 
+import org.apache.calcite.jdbc.CalciteConnection;
+import org.apache.calcite.runtime.Hook;
+
+import com.google.common.base.Function;
+
 import org.junit.Test;
 
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
 /**
  * Tests for the {@code org.apache.calcite.adapter.jdbc} package.
  */
@@ -77,6 +93,54 @@ public class JdbcAdapterTest {
             + "store_id=16; store_name=Store 16\n"
             + "store_id=24; store_name=Store 24\n");
   }
+
+  /** Tests that a dynamic parameter in a query is passed to the JDBC data
+   * source as a dynamic parameter, so that the SQL sent to the data source
+   * does not change when the parameter's value changes. */
+  @Test public void testDynamicParameter() throws Exception {
+    final List<String> sqls = new ArrayList<String>();
+    final Hook.Closeable closeable = Hook.QUERY_PLAN.addThread(
+        new Function<Object, Void>() {
+          public Void apply(Object sql) {
+            sqls.add(String.valueOf(sql));
+            return null;
+          }
+        });
+    try {
+      CalciteAssert.model(JdbcTest.FOODMART_MODEL)
+          .doWithConnection(
+              new Function<CalciteConnection, Void>() {
+                public Void apply(CalciteConnection connection) {
+                  try {
+                    final PreparedStatement statement =
+                        connection.prepareStatement("select \"store_name\"\n"
+                            + "from \"store\"\n"
+                            + "where \"store_id\" = ?");
+                    statement.setInt(1, 3);
+                    ResultSet resultSet = statement.executeQuery();
+                    assertThat(CalciteAssert.toString(resultSet),
+                        equalTo("store_name=Store 3\n"));
+                    resultSet.close();
+                    statement.setInt(1, 7);
+                    resultSet = statement.executeQuery();
+                    assertThat(CalciteAssert.toString(resultSet),
+                        equalTo("store_name=Store 7\n"));
+                    resultSet.close();
+                    statement.close();
+                    return null;
+                  } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                  }
+                }
+              });
+    } finally {
+      closeable.close();
+    }
+    assertTrue(sqls.toString(), !sqls.isEmpty());
+    for (String sql : sqls) {
+      assertThat(sql, containsString(" = ?"));
+    }
+  }
 }
 
 // End JdbcAdapterTest.java
@@ -31,6 +31,7 @@
 import org.apache.calcite.config.Lex;
 import org.apache.calcite.jdbc.CalciteConnection;
 import org.apache.calcite.jdbc.CalciteMetaImpl;
+import org.apache.calcite.jdbc.CalciteRootSchema;
 import org.apache.calcite.jdbc.CalciteSchema;
 import org.apache.calcite.jdbc.Driver;
 import org.apache.calcite.linq4j.BaseQueryable;
@@ -47,6 +48,7 @@
 import org.apache.calcite.plan.RelOptTable;
 import org.apache.calcite.plan.RelOptUtil;
 import org.apache.calcite.prepare.CalcitePrepareImpl;
+import org.apache.calcite.prepare.PlanCache;
 import org.apache.calcite.prepare.Prepare;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.rel.core.TableModify;
@@ -246,6 +248,119 @@ public static List<Pair<String, String>> getFoodmartQueries() {
         equalTo("N=4; C=abcd\n"));
   }
 
+  /** Tests that a connection with
+   * {@link org.apache.calcite.config.CalciteConnectionProperty#PLAN_CACHE_SIZE}
+   * re-uses plans, and discards them when the schema changes. */
+  @Test public void testPlanCache() throws Exception {
+    final Properties info = new Properties();
+    info.setProperty("planCacheSize", "10");
+    Connection connection =
+        DriverManager.getConnection("jdbc:calcite:", info);
+    CalciteConnection calciteConnection =
+        connection.unwrap(CalciteConnection.class);
+    final CalciteRootSchema rootSchema =
+        CalciteSchema.from(calciteConnection.getRootSchema()).root();
+    final String sql = "select * from (values (1, 'a'), (2, 'b')) as t(x, y)\n"
+        + "where x > 1";
+    for (int i = 0; i < 3; i++) {
+      ResultSet resultSet = connection.createStatement().executeQuery(sql);
+      assertThat(CalciteAssert.toString(resultSet), equalTo("X=2; Y=b\n"));
+    }
+    final PlanCache planCache = PlanCache.peek(rootSchema);
+    assertThat(planCache.getMissCount(), equalTo(1L));
+    assertThat(planCache.getHitCount(), equalTo(2L));
+
+    // Adding a schema changes the version, so the plan is not re-used.
+    calciteConnection.getRootSchema().add("s", new AbstractSchema());
+    ResultSet resultSet = connection.createStatement().executeQuery(sql);
+    assertThat(CalciteAssert.toString(resultSet), equalTo("X=2; Y=b\n"));
+    assertThat(planCache.getMissCount(), equalTo(2L));
+    assertThat(planCache.getHitCount(), equalTo(2L));
+    connection.close();
+  }
+
+  /** Tests that a plan is not cached if the planner ran out of budget (here,
+   * {@link org.apache.calcite.config.CalciteConnectionProperty#PLANNER_RULE_FIRE_LIMIT})
+   * and returned the best plan it had found so far. */
+  @Test public void testPlanCacheBudgetExhausted() throws Exception {
+    final Properties info = new Properties();
+    info.setProperty("planCacheSize", "10");
+    info.setProperty("plannerRuleFireLimit", "1");
+    Connection connection =
+        DriverManager.getConnection("jdbc:calcite:", info);
+    CalciteConnection calciteConnection =
+        connection.unwrap(CalciteConnection.class);
+    final CalciteRootSchema rootSchema =
+        CalciteSchema.from(calciteConnection.getRootSchema()).root();
+    final String sql = "select t.x, u.z\n"
+        + "from (values (1, 'a'), (2, 'b')) as t(x, y)\n"
+        + "join (values (2, 'c')) as u(x, z) on t.x = u.x";
+    for (int i = 0; i < 2; i++) {
+      ResultSet resultSet = connection.createStatement().executeQuery(sql);
+      assertThat(CalciteAssert.toString(resultSet), equalTo("X=2; Z=c\n"));
+    }
+    final PlanCache planCache = PlanCache.peek(rootSchema);
+    assertThat(planCache.getMissCount(), equalTo(2L));
+    assertThat(planCache.getHitCount(), equalTo(0L));
+    assertThat(planCache.size(), equalTo(0L));
+    connection.close();
+  }
+
+  /** Tests a join with a very small
+   * {@link org.apache.calcite.config.CalciteConnectionProperty#MEMORY_BUDGET},
+   * which must spill its build input to disk but give the same result. */
+  @Test public void testJoinMemoryBudget() {
+    CalciteAssert.that()
+        .with("memoryBudget", "1")
+        .query("select t.x, t.y, u.z\n"
+            + "from (values (1, 'a'), (2, 'b'), (3, 'c'), (2, 'd')) as t(x, y)\n"
+            + "full join (values (2, 'x'), (3, 'y'), (4, 'z')) as u(x, z)\n"
+            + "on t.x = u.x")
+        .returnsUnordered("X=1; Y=a; Z=null",
+            "X=2; Y=b; Z=x",
+            "X=2; Y=d; Z=x",
+            "X=3; Y=c; Z=y",
+            "X=null; Y=null; Z=z");
+  }
+
+  /** Tests a sort with a very small
+   * {@link org.apache.calcite.config.CalciteConnectionProperty#MEMORY_BUDGET},
+   * which must spill sorted runs to disk and merge them. */
+  @Test public void testSortMemoryBudget() {
+    CalciteAssert.that()
+        .with("memoryBudget", "1")
+        .query("select * from (values (3, 'a'), (1, 'b'), (2, 'c'), (1, 'd'))\n"
+            + "as t(x, y) order by x desc")
+        .returns("X=3; Y=a\n"
+            + "X=2; Y=c\n"
+            + "X=1; Y=b\n"
+            + "X=1; Y=d\n");
+  }
+
+  /** Tests a GROUP BY query with
+   * {@link org.apache.calcite.config.CalciteConnectionProperty#AGGREGATE_PARALLELISM}
+   * set, so that the hash aggregate uses several threads. */
+  @Test public void testAggregateParallelism() {
+    CalciteAssert.hr()
+        .with("aggregateParallelism", "4")
+        .query("select \"deptno\", count(*) as c, sum(\"salary\") as s\n"
+            + "from \"hr\".\"emps\"\n"
+            + "group by \"deptno\"")
+        .returnsUnordered("deptno=10; C=3; S=28500.0",
+            "deptno=20; C=1; S=8000.0");
+  }
+
+  /** Tests a GROUP BY on a non-nullable integer column with COUNT and SUM
+   * of non-nullable integers, which aggregates into primitive arrays. */
+  @Test public void testAggregatePrimitiveKey() {
+    CalciteAssert.hr()
+        .query("select \"deptno\", count(*) as c, sum(\"empid\") as s\n"
+            + "from \"hr\".\"emps\"\n"
+            + "group by \"deptno\"")
+        .returnsUnordered("deptno=10; C=3; S=360",
+            "deptno=20; C=1; S=200");
+  }
+
   /**
    * Tests a table function that returns different row type based on
    * actual call arguments.
@@ -1152,13 +1267,13 @@ public Object apply(CalciteConnection c) {
             + "and p.\"brand_name\" = 'Washington'")
         .explainMatches("including all attributes ",
             CalciteAssert.checkMaskedResultContains(""
-                + "EnumerableJoin(condition=[=($0, $38)], joinType=[inner]): rowcount = 7.050660528307499E8, cumulative cost = {1.0640240216183146E9 rows, 777302.0 cpu, 0.0 io}\n"
-                + "  EnumerableJoin(condition=[=($2, $8)], joinType=[inner]): rowcount = 2.0087351932499997E7, cumulative cost = {2.117504719375143E7 rows, 724261.0 cpu, 0.0 io}\n"
+                + "EnumerableJoin(condition=[=($0, $38)], joinType=[inner]): rowcount = 7.050660528307499E8, cumulative cost = {1.0640112925433146E9 rows, 87726.075 cpu, 0.0 io}\n"
+                + "  EnumerableJoin(condition=[=($2, $8)], joinType=[inner]): rowcount = 2.0087351932499997E7, cumulative cost = {2.116399511875143E7 rows, 87609.075 cpu, 0.0 io}\n"
                 + "    EnumerableTableScan(table=[[foodmart2, sales_fact_1997]]): rowcount = 86837.0, cumulative cost = {86837.0 rows, 86838.0 cpu, 0.0 io}\n"
-                + "    EnumerableCalc(expr#0..28=[{inputs}], expr#29=['San Francisco'], expr#30=[=($t9, $t29)], proj#0..28=[{exprs}], $condition=[$t30]): rowcount = 1542.1499999999999, cumulative cost = {11823.15 rows, 637423.0 cpu, 0.0 io}\n"
-                + "      EnumerableTableScan(table=[[foodmart2, customer]]): rowcount = 10281.0, cumulative cost = {10281.0 rows, 10282.0 cpu, 0.0 io}\n"
-                + "  EnumerableCalc(expr#0..14=[{inputs}], expr#15=['Washington'], expr#16=[=($t2, $t15)], proj#0..14=[{exprs}], $condition=[$t16]): rowcount = 234.0, cumulative cost = {1794.0 rows, 53041.0 cpu, 0.0 io}\n"
-                + "    EnumerableTableScan(table=[[foodmart2, product]]): rowcount = 1560.0, cumulative cost = {1560.0 rows, 1561.0 cpu, 0.0 io}\n"));
+                + "    EnumerableInterpreter: rowcount = 1542.1499999999999, cumulative cost = {771.0749999999999 rows, 771.0749999999999 cpu, 0.0 io}\n"
+                + "      BindableTableScan(table=[[foodmart2, customer]], filters=[[=($9, 'San Francisco')]]): rowcount = 1542.1499999999999, cumulative cost = {102.81 rows, 102.82000000000001 cpu, 0.0 io}\n"
+                + "  EnumerableInterpreter: rowcount = 234.0, cumulative cost = {117.0 rows, 117.0 cpu, 0.0 io}\n"
+                + "    BindableTableScan(table=[[foodmart2, product]], filters=[[=($2, 'Washington')]]): rowcount = 234.0, cumulative cost = {15.6 rows, 15.610000000000001 cpu, 0.0 io}\n"));
   }
 
   /** Tests a query whose best plan is a bushy join.
@@ -2928,6 +3043,18 @@ private static ImmutableMultimap<Class, Integer> x() {
             + "store_id=4; grocery_sqft=16844\n");
   }
 
+  /** Tests ORDER BY ... FETCH on an input that is not sorted. The plan uses a
+   * top-N sort, which holds only as many rows as it will return. */
+  @Test public void testOrderByFetchTopN() {
+    CalciteAssert.hr()
+        .query("select * from \"hr\".\"emps\"\n"
+            + "order by \"salary\" desc fetch first 2 rows only")
+        .explainContains("EnumerableSort(sort0=[$3], dir0=[DESC], fetch=[2])")
+        .returns(""
+            + "empid=110; deptno=10; name=Theodore; salary=11500.0; commission=250\n"
+            + "empid=100; deptno=10; name=Bill; salary=10000.0; commission=1000\n");
+  }
+
   /** Tests ORDER BY ... OFFSET ... FETCH. */
   @Test public void testOrderByOffsetFetch() {
     CalciteAssert.that()
@@ -3875,6 +4002,25 @@ private void startOfGroupStep3(String startOfGroup) {
             "deptno=20; empid=200; commission=500; R=500");
   }
 
+  /** Tests a windowed aggregate whose input is already sorted on its
+   * partition and order keys, so that partitions are read, and their output
+   * rows emitted, one at a time. The generated code must use the sorted
+   * path. */
+  @Test public void testWinAggSortedInput() {
+    CalciteAssert.hr()
+        .query("select \"deptno\", \"empid\",\n"
+            + " sum(\"salary\") over (partition by \"deptno\" order by \"empid\"\n"
+            + "   rows 1 preceding) as s\n"
+            + "from (select * from \"hr\".\"emps\"\n"
+            + "  order by \"deptno\", \"empid\")")
+        .planContains("SortedMultiMap.mapSortedPartitions(")
+        .returnsUnordered(
+            "deptno=10; empid=100; S=10000.0",
+            "deptno=10; empid=110; S=21500.0",
+            "deptno=10; empid=150; S=18500.0",
+            "deptno=20; empid=200; S=8000.0");
+  }
+
   /** Tests for FIRST_VALUE desc */
   @Test public void testWinAggFirstValueDesc() {
     CalciteAssert.hr()
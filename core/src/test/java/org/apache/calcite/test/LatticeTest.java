@@ -16,16 +16,24 @@
  */
 package org.apache.calcite.test;
 
+import org.apache.calcite.adapter.java.ReflectiveSchema;
+import org.apache.calcite.jdbc.CalciteConnection;
+import org.apache.calcite.jdbc.CalciteSchema;
+import org.apache.calcite.materialize.Lattice;
+import org.apache.calcite.materialize.LatticeStatistics;
 import org.apache.calcite.materialize.MaterializationService;
 import org.apache.calcite.plan.RelOptUtil;
 import org.apache.calcite.rel.RelNode;
 import org.apache.calcite.runtime.Hook;
+import org.apache.calcite.schema.SchemaPlus;
+import org.apache.calcite.util.ImmutableBitSet;
 import org.apache.calcite.util.TestUtil;
 import org.apache.calcite.util.Util;
 
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 import org.junit.Ignore;
 import org.junit.Test;
@@ -35,13 +43,20 @@
 import java.sql.DriverManager;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.anyOf;
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
 /**
@@ -224,8 +239,8 @@ public Void apply(RelNode relNode) {
             });
     assertThat(counter.intValue(), equalTo(2));
     that.explainContains(""
-        + "EnumerableCalc(expr#0..1=[{inputs}], brand_name=[$t1], customer_id=[$t0])\n"
-        + "  EnumerableTableScan(table=[[adhoc, m{2, 10}]])")
+        + "EnumerableInterpreter\n"
+        + "  BindableTableScan(table=[[adhoc, m{2, 10}]], projects=[[1, 0]])")
         .returnsCount(69203);
 
     // Run the same query again and see whether it uses the same
@@ -275,8 +290,8 @@ public Void apply(String materializationName) {
             + "group by t.\"the_year\", t.\"quarter\"")
       .enableMaterializations(true)
       .explainContains(""
-          + "EnumerableCalc(expr#0..4=[{inputs}], proj#0..2=[{exprs}])\n"
-          + "  EnumerableTableScan(table=[[adhoc, m{27, 31}")
+          + "EnumerableInterpreter\n"
+          + "  BindableTableScan(table=[[adhoc, m{27, 31}")
       .returnsUnordered("the_year=1997; quarter=Q1; C=21588",
           "the_year=1997; quarter=Q2; C=20368",
           "the_year=1997; quarter=Q3; C=21453",
@@ -346,6 +361,300 @@ public Void apply(String materializationName) {
         .returnsCount(4);
   }
 
+  /** Tests that a lattice can compute statistics by scanning its data, and
+   * that they can be persisted and supplied when the lattice is next
+   * defined. */
+  @Test public void testLatticeStatistics() throws Exception {
+    final Map<String, Double> persisted = Maps.newHashMap();
+    foodmartModel(" auto: false,\n"
+        + "  computeStatistics: true\n")
+        .doWithConnection(
+            new Function<CalciteConnection, Void>() {
+              public Void apply(CalciteConnection connection) {
+                final Lattice lattice = lattice(connection);
+                assertThat(lattice.peekStatistics(), nullValue());
+                final LatticeStatistics statistics = lattice.getStatistics();
+                assertThat(lattice.peekStatistics(), sameInstance(statistics));
+                assertThat(statistics.rowCount, equalTo(86837d));
+                assertThat(lattice.getFactRowCount(), equalTo(86837d));
+                final int year = ordinal(lattice, "the_year");
+                final int quarter = ordinal(lattice, "quarter");
+                final int product = ordinal(lattice, "product_id");
+                assertEquals(1d,
+                    statistics.getDistinctCount(ImmutableBitSet.of(year)),
+                    0.1d);
+                assertEquals(4d,
+                    statistics.getDistinctCount(ImmutableBitSet.of(quarter)),
+                    0.1d);
+                assertEquals(1559d,
+                    statistics.getDistinctCount(ImmutableBitSet.of(product)),
+                    50d);
+                assertEquals(4d,
+                    statistics.getRowCount(ImmutableBitSet.of(year, quarter)),
+                    0.5d);
+                // Pairs and larger combinations are capped at the row count.
+                assertThat(
+                    statistics.getRowCount(
+                        ImmutableBitSet.range(lattice.columns.size())),
+                    equalTo(86837d));
+                persisted.putAll(statistics.toMap(lattice));
+                return null;
+              }
+            });
+    assertThat(persisted.get("the_year"), equalTo(1d));
+    assertThat(persisted.get("the_year,quarter"), equalTo(4d));
+
+    // Supply the statistics; lattice does not need to compute them.
+    foodmartModel(" auto: false,\n"
+        + "  rowCountEstimate: 86837,\n"
+        + "  distinctCounts: { the_year: 1, quarter: 4, 'the_year,quarter': 4 }\n")
+        .doWithConnection(
+            new Function<CalciteConnection, Void>() {
+              public Void apply(CalciteConnection connection) {
+                final Lattice lattice = lattice(connection);
+                final LatticeStatistics statistics = lattice.peekStatistics();
+                assertThat(statistics, notNullValue());
+                final int year = ordinal(lattice, "the_year");
+                final int quarter = ordinal(lattice, "quarter");
+                assertThat(
+                    statistics.getRowCount(ImmutableBitSet.of(year, quarter)),
+                    equalTo(4d));
+                assertThat(
+                    lattice.getRowCount(
+                        ImmutableList.of(lattice.columns.get(quarter))),
+                    equalTo(4d));
+                return null;
+              }
+            });
+  }
+
+  @Test public void testLatticeDistinctCountsInvalidColumn() {
+    foodmartModel(" auto: false,\n"
+        + "  distinctCounts: { 'the_year,foo': 4 }\n")
+        .connectThrows("Unknown lattice column 'foo' in distinct count "
+            + "'the_year,foo'");
+  }
+
+  /** Tests that a tile of a lattice that has a monotonic column is refreshed
+   * incrementally. */
+  @Test public void testIncrementalTile() throws Exception {
+    MaterializationService.setThreadLocal();
+    Shop.INSTANCE.sales = new Shop.Sale[] {
+      new Shop.Sale(1, "apple", 2),
+      new Shop.Sale(2, "pear", 3),
+      new Shop.Sale(3, "apple", 5),
+    };
+    final String sql = "select \"product\", sum(\"units\") as \"u\",\n"
+        + " count(*) as \"c\"\n"
+        + "from \"shop\".\"sales\"\n"
+        + "group by \"product\"\n"
+        + "order by \"product\"";
+    final String before = "product=apple; u=7; c=2\n"
+        + "product=pear; u=3; c=1\n";
+    final String after = "product=apple; u=7; c=2\n"
+        + "product=pear; u=4; c=2\n"
+        + "product=plum; u=4; c=1\n";
+    try {
+      shopModel().doWithConnection(
+          new Function<CalciteConnection, Void>() {
+            public Void apply(CalciteConnection connection) {
+              try {
+                final MaterializationService service =
+                    MaterializationService.instance();
+                assertThat(query(connection, sql), equalTo(before));
+
+                // Rows added after the tile was populated are not visible
+                // until the tile is refreshed.
+                Shop.INSTANCE.sales = new Shop.Sale[] {
+                  Shop.INSTANCE.sales[0],
+                  Shop.INSTANCE.sales[1],
+                  Shop.INSTANCE.sales[2],
+                  new Shop.Sale(4, "pear", 1),
+                  new Shop.Sale(5, "plum", 4),
+                };
+                assertThat(query(connection, sql), equalTo(before));
+                final Lattice lattice = lattice(connection);
+                assertThat(service.refresh(lattice), equalTo(1));
+                assertThat(query(connection, sql), equalTo(after));
+
+                // No rows have been added; the tile does not change.
+                assertThat(service.refresh(lattice), equalTo(0));
+                assertThat(query(connection, sql), equalTo(after));
+                return null;
+              } catch (SQLException e) {
+                throw new RuntimeException(e);
+              }
+            }
+          });
+    } finally {
+      MaterializationService.instance().clear();
+    }
+  }
+
+  /** Tests that a tile is refreshed correctly if rows are added whose value
+   * of the monotonic column equals the tile's high-water mark. */
+  @Test public void testIncrementalTileTies() throws Exception {
+    MaterializationService.setThreadLocal();
+    Shop.INSTANCE.sales = new Shop.Sale[] {
+      new Shop.Sale(1, "apple", 2),
+      new Shop.Sale(2, "pear", 3),
+      new Shop.Sale(3, "apple", 5),
+    };
+    final String sql = "select \"product\", sum(\"units\") as \"u\",\n"
+        + " count(*) as \"c\"\n"
+        + "from \"shop\".\"sales\"\n"
+        + "group by \"product\"\n"
+        + "order by \"product\"";
+    final String before = "product=apple; u=7; c=2\n"
+        + "product=pear; u=3; c=1\n";
+    final String after = "product=apple; u=7; c=2\n"
+        + "product=pear; u=4; c=2\n"
+        + "product=plum; u=4; c=1\n";
+    try {
+      shopModel().doWithConnection(
+          new Function<CalciteConnection, Void>() {
+            public Void apply(CalciteConnection connection) {
+              try {
+                final MaterializationService service =
+                    MaterializationService.instance();
+                assertThat(query(connection, sql), equalTo(before));
+
+                // The first new row has the same id as the last row that the
+                // tile contains.
+                Shop.INSTANCE.sales = new Shop.Sale[] {
+                  Shop.INSTANCE.sales[0],
+                  Shop.INSTANCE.sales[1],
+                  Shop.INSTANCE.sales[2],
+                  new Shop.Sale(3, "pear", 1),
+                  new Shop.Sale(4, "plum", 4),
+                };
+                final Lattice lattice = lattice(connection);
+                assertThat(service.refresh(lattice), equalTo(1));
+                assertThat(query(connection, sql), equalTo(after));
+                assertThat(service.refresh(lattice), equalTo(0));
+                assertThat(query(connection, sql), equalTo(after));
+                return null;
+              } catch (SQLException e) {
+                throw new RuntimeException(e);
+              }
+            }
+          });
+    } finally {
+      MaterializationService.instance().clear();
+    }
+  }
+
+  /** Tests that the bounds of a TIMESTAMP monotonic column, which are held as
+   * milliseconds since the epoch, become TIMESTAMP literals. */
+  @Test public void testMonotonicColumnTimestamp() {
+    modelWithLattice("star", "select 1 from \"foodmart\".\"time_by_day\"",
+        "monotonicColumn: 'the_date'")
+        .doWithConnection(
+            new Function<CalciteConnection, Void>() {
+              public Void apply(CalciteConnection connection) {
+                try {
+                  final Lattice lattice = lattice(connection);
+                  // 1997-01-01 00:00:00 to 1997-01-31 00:00:00.500
+                  final String sql =
+                      lattice.sql(ImmutableBitSet.of(), lattice.defaultMeasures,
+                          852076800000L, 854668800500L);
+                  final String lower =
+                      "\"the_date\" > TIMESTAMP '1997-01-01 00:00:00.000'";
+                  final String upper =
+                      "\"the_date\" <= TIMESTAMP '1997-01-31 00:00:00.500'";
+                  assertThat(sql, containsString(lower));
+                  assertThat(sql, containsString(upper));
+                  assertThat(query(connection, sql), equalTo("m0=30\n"));
+                  return null;
+                } catch (SQLException e) {
+                  throw new RuntimeException(e);
+                }
+              }
+            });
+  }
+
+  /** Tests that it is an error for a monotonic column to have a type that
+   * cannot be compared with a literal bound, such as BOOLEAN. */
+  @Test public void testMonotonicColumnInvalidType() {
+    modelWithLattice("star", "select 1 from \"foodmart\".\"product\"",
+        "monotonicColumn: 'recyclable_package'")
+        .connectThrows("Monotonic column 'recyclable_package' must be numeric, "
+            + "character, date, time or timestamp");
+  }
+
+  /** Tests that a query that can roll up a finer tile uses that tile, and
+   * that the tile it needs is derived from the finer tile in the
+   * background. */
+  @Test public void testTileDerivedFromFinerTile() throws Exception {
+    MaterializationService.setThreadLocal();
+    Shop.INSTANCE.sales = new Shop.Sale[] {
+      new Shop.Sale(1, "apple", 2),
+      new Shop.Sale(2, "pear", 3),
+      new Shop.Sale(3, "apple", 5),
+    };
+    final String sql = "select \"product\", sum(\"units\") as \"u\",\n"
+        + " count(*) as \"c\", min(\"id\") as \"i\"\n"
+        + "from \"shop\".\"sales\"\n"
+        + "group by \"product\"\n"
+        + "order by \"product\"";
+    final String before = "product=apple; u=7; c=2; i=1\n"
+        + "product=pear; u=3; c=1; i=2\n";
+    final String after = "product=apple; u=7; c=2; i=1\n"
+        + "product=pear; u=4; c=2; i=2\n"
+        + "product=plum; u=4; c=1; i=5\n";
+    try {
+      shopModel("      tiles: [ {\n"
+          + "        dimensions: [ 'id', 'product' ],\n"
+          + "        measures: [ {\n"
+          + "          agg: 'sum',\n"
+          + "          args: 'units'\n"
+          + "        }, {\n"
+          + "          agg: 'count'\n"
+          + "        } ]\n"
+          + "      } ]")
+          .doWithConnection(
+              new Function<CalciteConnection, Void>() {
+                public Void apply(CalciteConnection connection) {
+                  try {
+                    final MaterializationService service =
+                        MaterializationService.instance();
+                    final String explain = "explain plan for " + sql;
+                    assertThat(query(connection, explain),
+                        containsString("table=[[adhoc, m{0, 1}]]"));
+                    assertThat(query(connection, sql), equalTo(before));
+
+                    // The tile is derived from the finer tile, and the
+                    // query now uses it.
+                    service.awaitPendingTiles();
+                    final String plan = query(connection, explain);
+                    assertThat(plan,
+                        containsString("table=[[adhoc, m{1}]]"));
+                    assertThat(plan, not(containsString("m{0, 1}")));
+                    assertThat(query(connection, sql), equalTo(before));
+
+                    // The derived tile is maintained incrementally, like the
+                    // tile that it was derived from.
+                    Shop.INSTANCE.sales = new Shop.Sale[] {
+                      Shop.INSTANCE.sales[0],
+                      Shop.INSTANCE.sales[1],
+                      Shop.INSTANCE.sales[2],
+                      new Shop.Sale(4, "pear", 1),
+                      new Shop.Sale(5, "plum", 4),
+                    };
+                    assertThat(service.refresh(lattice(connection)),
+                        equalTo(2));
+                    assertThat(query(connection, sql), equalTo(after));
+                    return null;
+                  } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                  }
+                }
+              });
+    } finally {
+      MaterializationService.instance().clear();
+    }
+  }
+
   /** Tests a query that is created within {@link #testTileAlgorithm()}. */
   @Test public void testJG() {
     CalciteAssert.that().with(CalciteAssert.Config.JDBC_FOODMART)
@@ -449,8 +758,8 @@ public Void apply(String materializationName) {
         .enableMaterializations(true)
         .explainContains("EnumerableCalc(expr#0..1=[{inputs}], C=[$t1])\n"
             + "  EnumerableAggregate(group=[{0}], C=[COUNT($1)])\n"
-            + "    EnumerableCalc(expr#0..4=[{inputs}], proj#0..1=[{exprs}])\n"
-            + "      EnumerableTableScan(table=[[adhoc, m{27, 31}]])")
+            + "    EnumerableInterpreter\n"
+            + "      BindableTableScan(table=[[adhoc, m{27, 31}]], projects=[[0, 1]])")
         .returnsUnordered("C=4");
   }
 
@@ -561,6 +870,55 @@ private CalciteAssert.AssertThat foodmartModelWithOneTile() {
         + "  } ]\n");
   }
 
+  private CalciteAssert.AssertThat shopModel(String... extras) {
+    final StringBuilder buf = new StringBuilder();
+    for (String extra : extras) {
+      buf.append(",\n").append(extra);
+    }
+    return CalciteAssert.model(""
+        + "{\n"
+        + "  version: '1.0',\n"
+        + "  defaultSchema: 'adhoc',\n"
+        + "  schemas: [ {\n"
+        + "    name: 'shop',\n"
+        + "    type: 'custom',\n"
+        + "    factory: '" + ReflectiveSchema.Factory.class.getName() + "',\n"
+        + "    operand: {\n"
+        + "      class: '" + Shop.class.getName() + "',\n"
+        + "      staticMethod: 'instance'\n"
+        + "    }\n"
+        + "  }, {\n"
+        + "    name: 'adhoc',\n"
+        + "    lattices: [ {\n"
+        + "      name: 'star',\n"
+        + "      sql: 'select 1 from \"shop\".\"sales\" as \"x\"',\n"
+        + "      monotonicColumn: 'id'"
+        + buf
+        + "\n"
+        + "    } ]\n"
+        + "  } ]\n"
+        + "}");
+  }
+
+  private static String query(CalciteConnection connection, String sql)
+      throws SQLException {
+    final Statement statement = connection.createStatement();
+    final ResultSet resultSet = statement.executeQuery(sql);
+    final String s = CalciteAssert.toString(resultSet);
+    statement.close();
+    return s;
+  }
+
+  private static Lattice lattice(CalciteConnection connection) {
+    final SchemaPlus schema = connection.getRootSchema().getSubSchema("adhoc");
+    return CalciteSchema.from(schema).getLatticeMap().get("star")
+        .getLattice();
+  }
+
+  private static int ordinal(Lattice lattice, String name) {
+    return lattice.uniqueColumnNames.indexOf(name);
+  }
+
   // Just for debugging.
   private static void runJdbc() throws SQLException {
     final Connection connection = DriverManager.getConnection(
@@ -570,6 +928,30 @@ private static void runJdbc() throws SQLException {
     System.out.println(CalciteAssert.toString(resultSet));
     connection.close();
   }
+
+  /** Schema containing a table of sales, to which a test can add rows. */
+  public static class Shop {
+    public static final Shop INSTANCE = new Shop();
+
+    public Sale[] sales = {};
+
+    public static Shop instance() {
+      return INSTANCE;
+    }
+
+    /** A sale. */
+    public static class Sale {
+      public final int id;
+      public final String product;
+      public final int units;
+
+      public Sale(int id, String product, int units) {
+        this.id = id;
+        this.product = product;
+        this.units = units;
+      }
+    }
+  }
 }
 
 // End LatticeTest.java
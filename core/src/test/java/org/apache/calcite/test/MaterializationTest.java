@@ -52,6 +52,13 @@ public class MaterializationTest {
       CalciteAssert.checkResultContains(
           "EnumerableTableScan(table=[[hr, m0]])");
 
+  /** Checks that the plan reads "m0" with the filter {@code deptno = 10}
+   * pushed into the scan. */
+  private static final Function<ResultSet, Void> CONTAINS_M0_DEPTNO_10 =
+      CalciteAssert.checkResultContains(
+          "EnumerableInterpreter\n"
+              + "    BindableTableScan(table=[[hr, m0]], filters=[[=($0, 10)]])");
+
   final JavaTypeFactoryImpl typeFactory =
       new JavaTypeFactoryImpl(RelDataTypeSystem.DEFAULT);
   final RexBuilder rexBuilder = new RexBuilder(typeFactory);
@@ -81,7 +88,7 @@ public class MaterializationTest {
           .query(
               "select \"empid\" + 1 as x from \"emps\" where \"deptno\" = 10")
           .enableMaterializations(true)
-          .explainContains("EnumerableTableScan(table=[[hr, m0]])")
+          .explainMatches("", CONTAINS_M0_DEPTNO_10)
           .sameResultWithMaterializationsDisabled();
     } finally {
       Prepare.THREAD_TRIM.set(false);
@@ -134,7 +141,8 @@ private void checkNoMaterialize(String materialize, String query,
   @Test public void testFilterQueryOnProjectView0() {
     checkMaterialize(
         "select \"deptno\", \"empid\" from \"emps\"",
-        "select \"empid\" + 1 as x from \"emps\" where \"deptno\" = 10");
+        "select \"empid\" + 1 as x from \"emps\" where \"deptno\" = 10",
+        JdbcTest.HR_MODEL, CONTAINS_M0_DEPTNO_10);
   }
 
   /** As {@link #testFilterQueryOnProjectView()} but with extra column in
@@ -142,7 +150,8 @@ private void checkNoMaterialize(String materialize, String query,
   @Test public void testFilterQueryOnProjectView1() {
     checkMaterialize(
         "select \"deptno\", \"empid\", \"name\" from \"emps\"",
-        "select \"empid\" + 1 as x from \"emps\" where \"deptno\" = 10");
+        "select \"empid\" + 1 as x from \"emps\" where \"deptno\" = 10",
+        JdbcTest.HR_MODEL, CONTAINS_M0_DEPTNO_10);
   }
 
   /** As {@link #testFilterQueryOnProjectView()} but with extra column in both
@@ -150,13 +159,18 @@ private void checkNoMaterialize(String materialize, String query,
   @Test public void testFilterQueryOnProjectView2() {
     checkMaterialize(
         "select \"deptno\", \"empid\", \"name\" from \"emps\"",
-        "select \"empid\" + 1 as x, \"name\" from \"emps\" where \"deptno\" = 10");
+        "select \"empid\" + 1 as x, \"name\" from \"emps\" where \"deptno\" = 10",
+        JdbcTest.HR_MODEL, CONTAINS_M0_DEPTNO_10);
   }
 
   @Test public void testFilterQueryOnProjectView3() {
     checkMaterialize(
         "select \"deptno\" - 10 as \"x\", \"empid\" + 1, \"name\" from \"emps\"",
-        "select \"name\" from \"emps\" where \"deptno\" - 10 = 0");
+        "select \"name\" from \"emps\" where \"deptno\" - 10 = 0",
+        JdbcTest.HR_MODEL,
+        CalciteAssert.checkResultContains(
+            "EnumerableInterpreter\n"
+                + "  BindableTableScan(table=[[hr, m0]], filters=[[=($0, 0)]], projects=[[2]])"));
   }
 
   /** As {@link #testFilterQueryOnProjectView3()} but materialized view cannot
@@ -178,8 +192,8 @@ private void checkNoMaterialize(String materialize, String query,
         + "from \"emps\" where \"deptno\" - 10 = 2",
         JdbcTest.HR_MODEL,
         CalciteAssert.checkResultContains(
-            "EnumerableCalc(expr#0..2=[{inputs}], expr#3=[2], expr#4=[=($t0, $t3)], name=[$t2], E=[$t1], $condition=[$t4])\n"
-                + "  EnumerableTableScan(table=[[hr, m0]]"));
+            "EnumerableInterpreter\n"
+                + "  BindableTableScan(table=[[hr, m0]], filters=[[=($0, 2)]], projects=[[2, 1]])"));
   }
 
   /** Cannot materialize because "name" is not projected in the MV. */
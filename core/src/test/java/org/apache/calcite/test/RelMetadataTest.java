@@ -41,9 +41,11 @@
 import org.apache.calcite.rel.logical.LogicalTableScan;
 import org.apache.calcite.rel.logical.LogicalUnion;
 import org.apache.calcite.rel.logical.LogicalValues;
+import org.apache.calcite.rel.metadata.BuiltInMetadata;
 import org.apache.calcite.rel.metadata.CachingRelMetadataProvider;
 import org.apache.calcite.rel.metadata.ChainedRelMetadataProvider;
 import org.apache.calcite.rel.metadata.DefaultRelMetadataProvider;
+import org.apache.calcite.rel.metadata.JaninoRelMetadataProvider;
 import org.apache.calcite.rel.metadata.Metadata;
 import org.apache.calcite.rel.metadata.ReflectiveRelMetadataProvider;
 import org.apache.calcite.rel.metadata.RelColumnOrigin;
@@ -81,6 +83,7 @@
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
@@ -669,6 +672,20 @@ private void checkRelSelectivity(
     assertThat(buf.size(), equalTo(7));
   }
 
+  /** Tests that metadata requests are dispatched by generated code rather
+   * than via {@link java.lang.reflect.Proxy}. */
+  @Test public void testGeneratedMetadata() {
+    final RelNode rel = convertSql("select * from emp where deptno = 10");
+    final BuiltInMetadata.RowCount metadata =
+        rel.metadata(BuiltInMetadata.RowCount.class);
+    assertThat(metadata,
+        instanceOf(JaninoRelMetadataProvider.GeneratedMetadata.class));
+    assertThat(metadata.rel(), sameInstance(rel));
+    assertThat(metadata.toString(), equalTo("RowCount(" + rel + ")"));
+    assertThat(metadata.getRowCount(),
+        equalTo(RelMetadataQuery.getRowCount(rel)));
+  }
+
   /** Unit test for
    * {@link org.apache.calcite.rel.metadata.RelMdCollation#project}
    * and other helper functions for deducing collations. */
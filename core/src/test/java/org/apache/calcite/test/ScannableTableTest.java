@@ -52,6 +52,8 @@
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertFalse;
@@ -279,6 +281,50 @@ private static Integer getFilter(boolean cooperative, List<RexNode> filters) {
     assertThat(CalciteAssert.toString(resultSet), equalTo("k=1942\nk=1943\n"));
   }
 
+  /** Tests that setting
+   * {@link org.apache.calcite.config.CalciteConnectionProperty#INTERPRETER_PIPELINED}
+   * makes the interpreter run its nodes in their own threads. */
+  @Test public void testInterpreterPipelined() throws Exception {
+    checkInterpreterThread(false);
+    checkInterpreterThread(true);
+  }
+
+  private void checkInterpreterThread(boolean pipelined) throws Exception {
+    final Properties info = new Properties();
+    if (pipelined) {
+      info.setProperty("interpreterPipelined", "true");
+    }
+    Connection connection =
+        DriverManager.getConnection("jdbc:calcite:", info);
+    CalciteConnection calciteConnection =
+        connection.unwrap(CalciteConnection.class);
+    SchemaPlus rootSchema = calciteConnection.getRootSchema();
+    SchemaPlus schema = rootSchema.add("s", new AbstractSchema());
+    final List<Thread> threads = new CopyOnWriteArrayList<Thread>();
+    schema.add("simple",
+        new SimpleTable() {
+          @Override public Enumerable<Object[]> scan(DataContext root) {
+            return new AbstractEnumerable<Object[]>() {
+              public Enumerator<Object[]> enumerator() {
+                threads.add(Thread.currentThread());
+                return tens();
+              }
+            };
+          }
+        });
+    ResultSet resultSet = connection.createStatement().executeQuery(
+        "select * from \"s\".\"simple\" where \"i\" > 15");
+    assertThat(CalciteAssert.toString(resultSet), equalTo("i=20\ni=30\n"));
+    resultSet.close();
+    assertThat(threads.size(), equalTo(1));
+    final Thread thread = threads.get(0);
+    assertThat(thread == Thread.currentThread(), equalTo(!pipelined));
+    if (pipelined) {
+      assertTrue(thread.getName(), thread.getName().startsWith("interpreter-"));
+    }
+    connection.close();
+  }
+
   /** Table that returns one column via the {@link ScannableTable} interface. */
   public static class SimpleTable implements ScannableTable {
     public RelDataType getRowType(RelDataTypeFactory typeFactory) {
@@ -25,6 +25,7 @@
 import org.apache.calcite.sql.util.SqlBuilder;
 import org.apache.calcite.sql.util.SqlString;
 import org.apache.calcite.test.DiffTestCase;
+import org.apache.calcite.util.javac.CompiledClassCache;
 
 import com.google.common.base.Function;
 import com.google.common.collect.ImmutableList;
@@ -1376,6 +1377,31 @@ public String apply(@Nullable String input) {
     assertThat(map.get("X"), is((String) null));
     assertThat(map.get("Y"), equalTo("y"));
   }
+
+  /** Tests that {@link CompiledClassCache} compiles identical code only
+   * once. */
+  @Test public void testCompiledClassCache() throws Exception {
+    final CompiledClassCache cache = new CompiledClassCache(10);
+    final String body = "public int compare(Object o1, Object o2) {\n"
+        + "  return o1.hashCode() - o2.hashCode();\n"
+        + "}\n";
+    final Object o1 = cache.createInstance("Foo", null,
+        new Class[] {Comparator.class}, UtilTest.class.getClassLoader(), body);
+    final Object o2 = cache.createInstance("Foo", null,
+        new Class[] {Comparator.class}, UtilTest.class.getClassLoader(), body);
+    assertTrue(o1 != o2);
+    assertThat(o1.getClass() == o2.getClass(), is(true));
+    assertThat(cache.getMissCount(), equalTo(1L));
+    assertThat(cache.getHitCount(), equalTo(1L));
+
+    // Different body, different class.
+    final Object o3 = cache.createInstance("Foo", null,
+        new Class[] {Comparator.class}, UtilTest.class.getClassLoader(),
+        body.replace("o1.hashCode() - o2", "o2.hashCode() - o1"));
+    assertThat(o1.getClass() == o3.getClass(), is(false));
+    assertThat(cache.getMissCount(), equalTo(2L));
+    assertThat(cache.size(), equalTo(2L));
+  }
 }
 
 // End UtilTest.java
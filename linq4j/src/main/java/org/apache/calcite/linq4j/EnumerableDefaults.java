@@ -50,6 +50,7 @@
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
 import java.util.RandomAccess;
 import java.util.Set;
 import java.util.TreeMap;
@@ -707,6 +708,38 @@ public static <TSource, TKey, TElement, TResult> Enumerable<TResult> groupBy(
         keySelector, accumulatorInitializer, accumulatorAdder, resultSelector);
   }
 
+  /**
+   * Groups the elements of a sequence according to a
+   * specified key selector function, initializing an accumulator for each
+   * group and adding to it each time an element with the same key is seen,
+   * using a given number of threads.
+   *
+   * <p>Elements are sent to threads by the hash of their key, so each thread
+   * sees all elements for a subset of the keys. The accumulator functions must
+   * therefore be safe to call from several threads, but each accumulator is
+   * used by only one thread. If {@code comparer} is null, keys are compared
+   * using {@link Object#equals}. If {@code parallelism} is 1 or less,
+   * behaves the same as the single-threaded overloads.
+   */
+  public static <TSource, TKey, TAccumulate, TResult> Enumerable<TResult>
+  groupBy(Enumerable<TSource> enumerable, Function1<TSource, TKey> keySelector,
+      Function0<TAccumulate> accumulatorInitializer,
+      Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder,
+      Function2<TKey, TAccumulate, TResult> resultSelector,
+      EqualityComparer<TKey> comparer, int parallelism) {
+    if (parallelism > 1) {
+      return new ParallelGroupBy<TSource, TKey, TAccumulate, TResult>(
+          keySelector, accumulatorInitializer, accumulatorAdder,
+          resultSelector, comparer, parallelism).apply(enumerable);
+    }
+    if (comparer != null) {
+      return groupBy(enumerable, keySelector, accumulatorInitializer,
+          accumulatorAdder, resultSelector, comparer);
+    }
+    return groupBy(enumerable, keySelector, accumulatorInitializer,
+        accumulatorAdder, resultSelector);
+  }
+
   private static <TSource, TKey, TAccumulate, TResult> Enumerable<TResult>
   groupBy_(final Map<TKey, TAccumulate> map, Enumerable<TSource> enumerable,
       Function1<TSource, TKey> keySelector,
@@ -940,6 +973,32 @@ public static <TSource, TInner, TKey, TResult> Enumerable<TResult> join(
         resultSelector, comparer, generateNullsOnLeft, generateNullsOnRight);
   }
 
+  /**
+   * Correlates the elements of two sequences based on matching keys, holding
+   * no more of the inner sequence in memory than a given budget allows.
+   *
+   * <p>If the inner sequence does not fit into the budget, rows of both
+   * sequences are partitioned into temporary files and joined partition by
+   * partition; in that case, rows must be {@link java.io.Serializable}. If
+   * the budget is null or unbounded, behaves the same as
+   * {@link #join(Enumerable, Enumerable, Function1, Function1, Function2, EqualityComparer, boolean, boolean)}.
+   */
+  public static <TSource, TInner, TKey, TResult> Enumerable<TResult> join(
+      Enumerable<TSource> outer, Enumerable<TInner> inner,
+      Function1<TSource, TKey> outerKeySelector,
+      Function1<TInner, TKey> innerKeySelector,
+      Function2<TSource, TInner, TResult> resultSelector,
+      EqualityComparer<TKey> comparer, boolean generateNullsOnLeft,
+      boolean generateNullsOnRight, MemoryBudget memoryBudget) {
+    if (memoryBudget == null || memoryBudget.isUnbounded()) {
+      return join_(outer, inner, outerKeySelector, innerKeySelector,
+          resultSelector, comparer, generateNullsOnLeft, generateNullsOnRight);
+    }
+    return new HybridHashJoin<TSource, TInner, TKey, TResult>(outer, inner,
+        outerKeySelector, innerKeySelector, resultSelector, comparer,
+        generateNullsOnLeft, generateNullsOnRight, memoryBudget, 0);
+  }
+
   /** Implementation of join that builds the right input and probes with the
    * left. */
   private static <TSource, TInner, TKey, TResult> Enumerable<TResult> join_(
@@ -1498,6 +1557,91 @@ public static <TSource, TKey> Enumerable<TSource> orderBy(
     return lookup.valuesEnumerable();
   }
 
+  /**
+   * Sorts the elements of a sequence in ascending order according to a key,
+   * holding no more of the sequence in memory than a given budget allows.
+   *
+   * <p>If the sequence does not fit into the budget, sorted runs are written
+   * to temporary files and then merged; in that case, elements must be
+   * {@link java.io.Serializable}. The sort is stable. If the budget is null or
+   * unbounded, behaves the same as
+   * {@link #orderBy(Enumerable, Function1, Comparator)}.
+   */
+  public static <TSource, TKey> Enumerable<TSource> orderBy(
+      Enumerable<TSource> source, Function1<TSource, TKey> keySelector,
+      Comparator<TKey> comparator, MemoryBudget memoryBudget) {
+    if (memoryBudget == null || memoryBudget.isUnbounded()) {
+      return orderBy(source, keySelector, comparator);
+    }
+    return new ExternalSort<TSource, TKey>(source, keySelector, comparator,
+        memoryBudget);
+  }
+
+  /**
+   * Sorts the elements of a sequence in ascending order according to a key,
+   * skips the first {@code offset} elements, and returns at most
+   * {@code fetch} of the rest.
+   *
+   * <p>Returns the same elements, in the same order, as
+   * {@code orderBy(source, keySelector, comparator).skip(offset).take(fetch)},
+   * but holds only {@code offset + fetch} elements in memory at a time.
+   * Elements are held in a bounded heap, so the cost for {@code n} elements
+   * is {@code O(n log (offset + fetch))}.
+   */
+  public static <TSource, TKey> Enumerable<TSource> orderBy(
+      final Enumerable<TSource> source,
+      final Function1<TSource, TKey> keySelector,
+      final Comparator<TKey> comparator, final int offset, final int fetch) {
+    return new AbstractEnumerable<TSource>() {
+      public Enumerator<TSource> enumerator() {
+        if (fetch <= 0) {
+          return Linq4j.emptyEnumerator();
+        }
+        final int limit = offset + fetch;
+        if (limit < 0) {
+          // offset + fetch overflows; a bounded heap would not help
+          return EnumerableDefaults.orderBy(source, keySelector, comparator)
+              .skip(offset)
+              .enumerator();
+        }
+        final Comparator<TopNEntry<TSource, TKey>> entryComparator =
+            TopNEntry.comparator(comparator);
+        // Max-heap: the head is the entry that would be output last.
+        final PriorityQueue<TopNEntry<TSource, TKey>> heap =
+            new PriorityQueue<TopNEntry<TSource, TKey>>(Math.min(limit, 1024),
+                Collections.reverseOrder(entryComparator));
+        long ordinal = 0;
+        final Enumerator<TSource> os = source.enumerator();
+        try {
+          while (os.moveNext()) {
+            final TSource o = os.current();
+            final TopNEntry<TSource, TKey> entry =
+                new TopNEntry<TSource, TKey>(keySelector.apply(o), ordinal++,
+                    o);
+            if (heap.size() < limit) {
+              heap.add(entry);
+            } else if (entryComparator.compare(entry, heap.peek()) < 0) {
+              heap.poll();
+              heap.add(entry);
+            }
+          }
+        } finally {
+          os.close();
+        }
+        final List<TopNEntry<TSource, TKey>> entries =
+            new ArrayList<TopNEntry<TSource, TKey>>(heap);
+        Collections.sort(entries, entryComparator);
+        final List<TSource> list = new ArrayList<TSource>();
+        for (TopNEntry<TSource, TKey> entry
+            : entries.subList(Math.min(offset, entries.size()),
+                entries.size())) {
+          list.add(entry.element);
+        }
+        return Linq4j.enumerator(list);
+      }
+    };
+  }
+
   /**
    * Sorts the elements of a sequence in descending
    * order according to a key.
@@ -2413,8 +2557,42 @@ public void close() {
     }
   }
 
+  /** Element held by the top-N variant of
+   * {@link #orderBy(Enumerable, Function1, Comparator, int, int)}, with its
+   * key and its ordinal in the input (so that the sort is stable). */
+  private static class TopNEntry<T, K> {
+    final K key;
+    final long ordinal;
+    final T element;
+
+    TopNEntry(K key, long ordinal, T element) {
+      this.key = key;
+      this.ordinal = ordinal;
+      this.element = element;
+    }
+
+    static <T, K> Comparator<TopNEntry<T, K>> comparator(
+        final Comparator<K> keyComparator) {
+      return new Comparator<TopNEntry<T, K>>() {
+        public int compare(TopNEntry<T, K> e0, TopNEntry<T, K> e1) {
+          final int c;
+          if (keyComparator != null) {
+            c = keyComparator.compare(e0.key, e1.key);
+          } else {
+            //noinspection unchecked
+            c = ((Comparable) e0.key).compareTo(e1.key);
+          }
+          if (c != 0) {
+            return c;
+          }
+          return e0.ordinal < e1.ordinal ? -1 : e0.ordinal > e1.ordinal ? 1 : 0;
+        }
+      };
+    }
+  }
+
   /** Value wrapped with a comparer. */
-  private static class Wrapped<T> {
+  static class Wrapped<T> {
     private final EqualityComparer<T> comparer;
     private final T element;
 
@@ -2443,7 +2621,7 @@ public T unwrap() {
   }
 
   /** Map that wraps each value. */
-  private static class WrapMap<K, V> extends AbstractMap<K, V> {
+  static class WrapMap<K, V> extends AbstractMap<K, V> {
     private final Map<Wrapped<K>, V> map = new HashMap<Wrapped<K>, V>();
     private final EqualityComparer<K> comparer;
 
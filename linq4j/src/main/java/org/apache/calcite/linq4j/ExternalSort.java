@@ -0,0 +1,269 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.linq4j;
+
+import org.apache.calcite.linq4j.function.Function1;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sort that writes sorted runs to disk if its input does not fit into a
+ * {@link MemoryBudget}, then merges them.
+ *
+ * <p>Rows are accumulated in a list, reserving an estimate of each row's
+ * size from the budget. When a reservation fails, the rows so far are sorted
+ * and written to a {@link SpillFile} as a run, and their memory is released.
+ * When the input is exhausted, the last run is sorted in memory, and all runs
+ * are merged using a heap that holds the current row of each run.
+ *
+ * <p>The sort is stable: rows with equal keys are returned in the order they
+ * were read. (Each run is sorted stably, and when rows from two runs have
+ * equal keys, the row from the earlier run is returned first.)
+ *
+ * <p>Rows that are not {@link Serializable} cannot be spilled. After reading
+ * such a row, the sort writes no more runs, and sorts the remaining rows in
+ * memory regardless of the budget.
+ *
+ * @param <TSource> Element type
+ * @param <TKey> Key type
+ *
+ * @see EnumerableDefaults#orderBy(Enumerable, Function1, Comparator, MemoryBudget)
+ */
+class ExternalSort<TSource, TKey> extends AbstractEnumerable<TSource> {
+  /** Estimated memory used by a row's entry in a run, in addition to the row
+   * itself. */
+  private static final int ENTRY_OVERHEAD = 32;
+
+  private final Enumerable<TSource> source;
+  private final Function1<TSource, TKey> keySelector;
+  private final Comparator<Entry<TSource, TKey>> entryComparator;
+  private final MemoryBudget budget;
+
+  ExternalSort(Enumerable<TSource> source,
+      Function1<TSource, TKey> keySelector, final Comparator<TKey> comparator,
+      MemoryBudget budget) {
+    this.source = source;
+    this.keySelector = keySelector;
+    this.budget = budget;
+    this.entryComparator =
+        new Comparator<Entry<TSource, TKey>>() {
+          public int compare(Entry<TSource, TKey> e0,
+              Entry<TSource, TKey> e1) {
+            if (comparator != null) {
+              return comparator.compare(e0.key, e1.key);
+            }
+            //noinspection unchecked
+            return ((Comparable) e0.key).compareTo(e1.key);
+          }
+        };
+  }
+
+  public Enumerator<TSource> enumerator() {
+    final List<SpillFile<TSource>> files = new ArrayList<SpillFile<TSource>>();
+    List<Entry<TSource, TKey>> run = new ArrayList<Entry<TSource, TKey>>();
+    long reserved = 0;
+    boolean spillable = true;
+    final Enumerator<TSource> os = source.enumerator();
+    try {
+      while (os.moveNext()) {
+        final TSource o = os.current();
+        if (spillable && o != null && !(o instanceof Serializable)) {
+          spillable = false;
+        }
+        final long size = MemoryBudget.estimateSize(o) + ENTRY_OVERHEAD;
+        if (budget.reserve(size)) {
+          reserved += size;
+        } else if (spillable && !run.isEmpty()) {
+          files.add(spill(run));
+          run = new ArrayList<Entry<TSource, TKey>>();
+          budget.release(reserved);
+          reserved = 0;
+          if (budget.reserve(size)) {
+            reserved += size;
+          }
+        }
+        run.add(new Entry<TSource, TKey>(keySelector.apply(o), o));
+      }
+    } catch (RuntimeException e) {
+      budget.release(reserved);
+      for (SpillFile<TSource> file : files) {
+        file.delete();
+      }
+      throw e;
+    } finally {
+      os.close();
+    }
+    Collections.sort(run, entryComparator);
+    if (files.isEmpty()) {
+      final List<TSource> list = new ArrayList<TSource>(run.size());
+      for (Entry<TSource, TKey> entry : run) {
+        list.add(entry.element);
+      }
+      budget.release(reserved);
+      return Linq4j.enumerator(list);
+    }
+    return new MergeEnumerator(files, run, reserved);
+  }
+
+  /** Writes a run, sorted, to a new spill file. */
+  private SpillFile<TSource> spill(List<Entry<TSource, TKey>> run) {
+    Collections.sort(run, entryComparator);
+    final SpillFile<TSource> file = new SpillFile<TSource>(budget);
+    for (Entry<TSource, TKey> entry : run) {
+      file.add(entry.element);
+    }
+    file.finish();
+    return file;
+  }
+
+  /** Row and its sort key. */
+  private static class Entry<TSource, TKey> {
+    final TKey key;
+    final TSource element;
+
+    Entry(TKey key, TSource element) {
+      this.key = key;
+      this.element = element;
+    }
+  }
+
+  /** Current position in a sorted run. */
+  private class Cursor {
+    final int ordinal;
+    final Enumerator<TSource> enumerator;
+    Entry<TSource, TKey> current;
+
+    Cursor(int ordinal, Enumerator<TSource> enumerator) {
+      this.ordinal = ordinal;
+      this.enumerator = enumerator;
+    }
+
+    boolean advance() {
+      if (enumerator.moveNext()) {
+        final TSource o = enumerator.current();
+        current = new Entry<TSource, TKey>(keySelector.apply(o), o);
+        return true;
+      }
+      current = null;
+      return false;
+    }
+  }
+
+  /** Enumerator that merges sorted runs.
+   *
+   * <p>The spill files and the in-memory run are kept until the enumerator
+   * is closed, so that {@link #reset()} can merge them again. */
+  private class MergeEnumerator implements Enumerator<TSource> {
+    private final List<SpillFile<TSource>> files;
+    private final List<TSource> list;
+    private final List<Cursor> cursors = new ArrayList<Cursor>();
+    private final PriorityQueue<Cursor> heap;
+    private long reserved;
+    private Cursor last;
+    private TSource current;
+
+    MergeEnumerator(List<SpillFile<TSource>> files,
+        List<Entry<TSource, TKey>> run, long reserved) {
+      this.files = files;
+      this.reserved = reserved;
+      this.heap = new PriorityQueue<Cursor>(files.size() + 1,
+          new Comparator<Cursor>() {
+            public int compare(Cursor c0, Cursor c1) {
+              final int c = entryComparator.compare(c0.current, c1.current);
+              if (c != 0) {
+                return c;
+              }
+              return c0.ordinal - c1.ordinal;
+            }
+          });
+      this.list = new ArrayList<TSource>(run.size());
+      for (Entry<TSource, TKey> entry : run) {
+        list.add(entry.element);
+      }
+      open();
+    }
+
+    /** Opens a cursor on each run, and puts its first row into the heap. */
+    private void open() {
+      for (SpillFile<TSource> file : files) {
+        cursors.add(new Cursor(cursors.size(), file.asEnumerable()
+            .enumerator()));
+      }
+      // The last run, in memory, was read after all of the spilled runs.
+      cursors.add(new Cursor(cursors.size(), Linq4j.enumerator(list)));
+      for (Cursor cursor : cursors) {
+        if (cursor.advance()) {
+          heap.add(cursor);
+        }
+      }
+    }
+
+    public TSource current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      if (last != null) {
+        if (last.advance()) {
+          heap.add(last);
+        }
+        last = null;
+      }
+      final Cursor cursor = heap.poll();
+      if (cursor == null) {
+        closeCursors();
+        return false;
+      }
+      current = cursor.current.element;
+      last = cursor;
+      return true;
+    }
+
+    public void reset() {
+      closeCursors();
+      current = null;
+      open();
+    }
+
+    private void closeCursors() {
+      for (Cursor cursor : cursors) {
+        cursor.enumerator.close();
+      }
+      cursors.clear();
+      heap.clear();
+      last = null;
+    }
+
+    public void close() {
+      closeCursors();
+      for (SpillFile<TSource> file : files) {
+        file.delete();
+      }
+      files.clear();
+      list.clear();
+      budget.release(reserved);
+      reserved = 0;
+    }
+  }
+}
+
+// End ExternalSort.java
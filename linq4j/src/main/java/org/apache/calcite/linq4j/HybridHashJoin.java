@@ -0,0 +1,453 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.linq4j;
+
+import org.apache.calcite.linq4j.function.EqualityComparer;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.function.Function2;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hash join that spills to disk if its build input does not fit into a
+ * {@link MemoryBudget}.
+ *
+ * <p>Rows of the build (inner) input are assigned to one of
+ * {@link #PARTITION_COUNT} partitions by the hash of their key. Each partition
+ * starts in memory. If a row does not fit into the budget, the largest
+ * partition still in memory is written to a {@link SpillFile}, and so are
+ * later build rows that belong to it. Then the probe (outer) input is read:
+ * rows whose partition is in memory are joined immediately, and rows whose
+ * partition has been spilled are written to a second spill file. Finally each
+ * pair of spilled partitions is joined by a new instance of this algorithm,
+ * which partitions on a different hash function.
+ *
+ * <p>If the budget is never exceeded, the join runs entirely in memory and
+ * writes no files. After {@link #MAX_LEVEL} levels of recursion, which
+ * happens only if many rows have the same key, partitions are held in memory
+ * regardless of the budget. Likewise after the inner input produces a row
+ * that is not {@link java.io.Serializable}, and therefore cannot be written
+ * to a file; if that row belongs to a partition that has already been
+ * spilled, the join fails.
+ *
+ * <p>Outer rows are checked too. If an outer row that is not serializable
+ * belongs to a spilled partition to which no outer rows have yet been
+ * written, that partition is read back into memory, regardless of the
+ * budget, and joined in memory. Typically all outer rows have the same
+ * class, so the first outer row brings every spilled partition back into
+ * memory before anything is written.
+ *
+ * @param <TSource> Element type of outer (probe) input
+ * @param <TInner> Element type of inner (build) input
+ * @param <TKey> Key type
+ * @param <TResult> Element type of result
+ *
+ * @see EnumerableDefaults#join(Enumerable, Enumerable, Function1, Function1, Function2, EqualityComparer, boolean, boolean, MemoryBudget)
+ */
+class HybridHashJoin<TSource, TInner, TKey, TResult>
+    extends AbstractEnumerable<TResult> {
+  /** Number of partitions at each level. Must be a power of 2. */
+  static final int PARTITION_COUNT = 16;
+
+  /** Maximum depth of recursion. */
+  static final int MAX_LEVEL = 4;
+
+  /** Estimated memory used by a hash table entry, in addition to the row. */
+  private static final int ENTRY_OVERHEAD = 48;
+
+  /** Key of inner rows whose key is null. Such rows never match, but are
+   * needed if the join generates nulls on the left. */
+  private static final Object NULL_KEY = new Object();
+
+  private final Enumerable<TSource> outer;
+  private final Enumerable<TInner> inner;
+  private final Function1<TSource, TKey> outerKeySelector;
+  private final Function1<TInner, TKey> innerKeySelector;
+  private final Function2<TSource, TInner, TResult> resultSelector;
+  private final EqualityComparer<TKey> comparer;
+  private final boolean generateNullsOnLeft;
+  private final boolean generateNullsOnRight;
+  private final MemoryBudget budget;
+  private final int level;
+
+  HybridHashJoin(Enumerable<TSource> outer, Enumerable<TInner> inner,
+      Function1<TSource, TKey> outerKeySelector,
+      Function1<TInner, TKey> innerKeySelector,
+      Function2<TSource, TInner, TResult> resultSelector,
+      EqualityComparer<TKey> comparer, boolean generateNullsOnLeft,
+      boolean generateNullsOnRight, MemoryBudget budget, int level) {
+    this.outer = outer;
+    this.inner = inner;
+    this.outerKeySelector = outerKeySelector;
+    this.innerKeySelector = innerKeySelector;
+    this.resultSelector = resultSelector;
+    this.comparer = comparer;
+    this.generateNullsOnLeft = generateNullsOnLeft;
+    this.generateNullsOnRight = generateNullsOnRight;
+    this.budget = budget;
+    this.level = level;
+  }
+
+  public Enumerator<TResult> enumerator() {
+    return new JoinEnumerator();
+  }
+
+  /** Returns the partition of a key. Uses a different hash function at each
+   * level, so that rows that fell into one partition at the previous level
+   * are spread over all partitions at this level. */
+  private int partition(TKey key) {
+    if (key == null) {
+      return 0;
+    }
+    int h = comparer == null ? key.hashCode() : comparer.hashCode(key);
+    h ^= level * 0x9E3779B9;
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    h *= 0xC2B2AE35;
+    h ^= h >>> 16;
+    return h & (PARTITION_COUNT - 1);
+  }
+
+  private Object mapKey(TKey key) {
+    if (key == null) {
+      return NULL_KEY;
+    }
+    return comparer == null ? key : EnumerableDefaults.Wrapped.upAs(comparer,
+        key);
+  }
+
+  /** Inner rows that have the same key. */
+  private static class Bucket<E> {
+    final List<E> rows = new ArrayList<E>(1);
+    boolean matched;
+  }
+
+  /** Inner rows whose keys fall into one partition; and, if the partition has
+   * been spilled, outer rows too. */
+  private class Partition {
+    Map<Object, Bucket<TInner>> map = new HashMap<Object, Bucket<TInner>>();
+    /** Bytes reserved from the budget. */
+    long bytes;
+    SpillFile<TInner> innerFile;
+    SpillFile<TSource> outerFile;
+
+    boolean isSpilled() {
+      return innerFile != null;
+    }
+
+    void add(TKey key, TInner row) {
+      final Object mapKey = mapKey(key);
+      Bucket<TInner> bucket = map.get(mapKey);
+      if (bucket == null) {
+        bucket = new Bucket<TInner>();
+        map.put(mapKey, bucket);
+      }
+      bucket.rows.add(row);
+    }
+
+    /** Writes this partition's rows to a file and frees its memory. */
+    void spill() {
+      innerFile = new SpillFile<TInner>(budget);
+      for (Bucket<TInner> bucket : map.values()) {
+        for (TInner row : bucket.rows) {
+          innerFile.add(row);
+        }
+      }
+      map = null;
+      free();
+    }
+
+    /** Reads this partition's inner rows back from its file, and deletes the
+     * files. Called if an outer row cannot be written to a file. Rows are
+     * held in memory even if they do not fit into the budget. */
+    void unspill() {
+      map = new HashMap<Object, Bucket<TInner>>();
+      final Enumerator<TInner> enumerator =
+          innerFile.asEnumerable().enumerator();
+      try {
+        while (enumerator.moveNext()) {
+          final TInner row = enumerator.current();
+          final long size = MemoryBudget.estimateSize(row) + ENTRY_OVERHEAD;
+          if (budget.reserve(size)) {
+            bytes += size;
+          }
+          add(innerKeySelector.apply(row), row);
+        }
+      } finally {
+        enumerator.close();
+      }
+      delete();
+      innerFile = null;
+      outerFile = null;
+    }
+
+    void free() {
+      budget.release(bytes);
+      bytes = 0;
+    }
+
+    void delete() {
+      if (innerFile != null) {
+        innerFile.delete();
+      }
+      if (outerFile != null) {
+        outerFile.delete();
+      }
+    }
+  }
+
+  /** Enumerator that performs the join. */
+  private class JoinEnumerator implements Enumerator<TResult> {
+    private List<Partition> partitions;
+    private Enumerator<TSource> outers;
+    private TSource outerRow;
+    private Iterator<TInner> inners = Collections.<TInner>emptyList()
+        .iterator();
+    private Iterator<TInner> unmatched;
+    private int spillIndex;
+    private Enumerator<TResult> spillEnumerator;
+    private TResult current;
+
+    public TResult current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      if (partitions == null) {
+        build();
+        outers = outer.enumerator();
+      }
+      if (outers != null) {
+        if (probe()) {
+          return true;
+        }
+        outers.close();
+        outers = null;
+        endProbe();
+      }
+      if (unmatched != null) {
+        if (unmatched.hasNext()) {
+          current = resultSelector.apply(null, unmatched.next());
+          return true;
+        }
+        unmatched = null;
+      }
+      return joinSpilled();
+    }
+
+    /** Reads the inner input into partitions, spilling partitions if the
+     * budget is exceeded. */
+    private void build() {
+      partitions = new ArrayList<Partition>(PARTITION_COUNT);
+      for (int i = 0; i < PARTITION_COUNT; i++) {
+        partitions.add(new Partition());
+      }
+      final Enumerator<TInner> enumerator = inner.enumerator();
+      boolean spillable = level < MAX_LEVEL;
+      try {
+        while (enumerator.moveNext()) {
+          final TInner row = enumerator.current();
+          if (spillable && row != null && !(row instanceof Serializable)) {
+            spillable = false;
+          }
+          final TKey key = innerKeySelector.apply(row);
+          if (key == null && !generateNullsOnLeft) {
+            continue; // will never match, and will not be emitted
+          }
+          final Partition partition = partitions.get(partition(key));
+          if (partition.isSpilled()) {
+            partition.innerFile.add(row);
+            continue;
+          }
+          final long size = MemoryBudget.estimateSize(row) + ENTRY_OVERHEAD;
+          boolean reserved;
+          while (!(reserved = budget.reserve(size)) && spillable) {
+            final Partition victim = largest(partition);
+            victim.spill();
+            if (victim == partition) {
+              break;
+            }
+          }
+          if (partition.isSpilled()) {
+            partition.innerFile.add(row);
+          } else {
+            if (reserved) {
+              partition.bytes += size;
+            }
+            partition.add(key, row);
+          }
+        }
+      } finally {
+        enumerator.close();
+      }
+      for (Partition partition : partitions) {
+        if (partition.isSpilled()) {
+          partition.innerFile.finish();
+          partition.outerFile = new SpillFile<TSource>(budget);
+        }
+      }
+    }
+
+    /** Returns the in-memory partition that uses the most memory, or a given
+     * partition if no partition would free any memory. */
+    private Partition largest(Partition defaultPartition) {
+      Partition largest = defaultPartition;
+      for (Partition partition : partitions) {
+        if (!partition.isSpilled() && partition.bytes > largest.bytes) {
+          largest = partition;
+        }
+      }
+      return largest;
+    }
+
+    /** Reads outer rows until a result row is available; returns false when
+     * the outer input is exhausted. */
+    private boolean probe() {
+      for (;;) {
+        if (inners.hasNext()) {
+          current = resultSelector.apply(outerRow, inners.next());
+          return true;
+        }
+        if (!outers.moveNext()) {
+          return false;
+        }
+        outerRow = outers.current();
+        final TKey key =
+            outerRow == null ? null : outerKeySelector.apply(outerRow);
+        if (key != null) {
+          final Partition partition = partitions.get(partition(key));
+          if (partition.isSpilled()
+              && (outerRow instanceof Serializable
+                  || partition.outerFile.size() > 0)) {
+            partition.outerFile.add(outerRow);
+            continue;
+          }
+          if (partition.isSpilled()) {
+            partition.unspill();
+          }
+          final Bucket<TInner> bucket = partition.map.get(mapKey(key));
+          if (bucket != null) {
+            bucket.matched = true;
+            inners = bucket.rows.iterator();
+            continue;
+          }
+        }
+        if (generateNullsOnRight) {
+          current = resultSelector.apply(outerRow, null);
+          return true;
+        }
+      }
+    }
+
+    /** Called when the outer input is exhausted. Gathers unmatched inner rows
+     * of in-memory partitions, and frees their memory. */
+    private void endProbe() {
+      final List<TInner> list = new ArrayList<TInner>();
+      for (Partition partition : partitions) {
+        if (partition.isSpilled()) {
+          partition.outerFile.finish();
+        } else {
+          if (generateNullsOnLeft) {
+            for (Bucket<TInner> bucket : partition.map.values()) {
+              if (!bucket.matched) {
+                list.addAll(bucket.rows);
+              }
+            }
+          }
+          partition.map = null;
+          partition.free();
+        }
+      }
+      outerRow = null;
+      unmatched = list.iterator();
+    }
+
+    /** Joins each pair of spilled partitions in turn. */
+    private boolean joinSpilled() {
+      for (;;) {
+        if (spillEnumerator != null) {
+          if (spillEnumerator.moveNext()) {
+            current = spillEnumerator.current();
+            return true;
+          }
+          spillEnumerator.close();
+          spillEnumerator = null;
+          partitions.get(spillIndex++).delete();
+        }
+        if (spillIndex >= partitions.size()) {
+          return false;
+        }
+        final Partition partition = partitions.get(spillIndex);
+        if (!partition.isSpilled()
+            || partition.outerFile.size() == 0 && !generateNullsOnLeft
+            || partition.innerFile.size() == 0 && !generateNullsOnRight) {
+          partition.delete();
+          ++spillIndex;
+          continue;
+        }
+        spillEnumerator =
+            new HybridHashJoin<TSource, TInner, TKey, TResult>(
+                partition.outerFile.asEnumerable(),
+                partition.innerFile.asEnumerable(), outerKeySelector,
+                innerKeySelector, resultSelector, comparer,
+                generateNullsOnLeft, generateNullsOnRight, budget, level + 1)
+                .enumerator();
+      }
+    }
+
+    /** Deletes spill files and frees memory. The next call to
+     * {@link #moveNext()} reads the inner and outer inputs again. */
+    public void reset() {
+      close();
+      partitions = null;
+      outerRow = null;
+      inners = Collections.<TInner>emptyList().iterator();
+      unmatched = null;
+      spillIndex = 0;
+      current = null;
+    }
+
+    public void close() {
+      if (outers != null) {
+        outers.close();
+        outers = null;
+      }
+      if (spillEnumerator != null) {
+        spillEnumerator.close();
+        spillEnumerator = null;
+      }
+      if (partitions != null) {
+        for (Partition partition : partitions) {
+          if (partition.map != null) {
+            partition.map = null;
+            partition.free();
+          }
+          partition.delete();
+        }
+      }
+    }
+  }
+}
+
+// End HybridHashJoin.java
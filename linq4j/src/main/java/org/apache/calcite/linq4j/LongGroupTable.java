@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.linq4j;
+
+import java.util.Arrays;
+
+/**
+ * Hash table that aggregates values into groups keyed by a {@code long}
+ * value, without allocating an object per row.
+ *
+ * <p>The table uses open addressing with linear probing. Each group has an
+ * ordinal, assigned in order of first appearance; the key and each
+ * accumulator of a group are stored at that ordinal in parallel arrays of
+ * primitives.
+ *
+ * <p>Typical use, in generated code, to aggregate {@code COUNT(*)} and
+ * {@code SUM(salary)} grouped by {@code deptno}:
+ *
+ * <blockquote><pre>
+ * final LongGroupTable table = new LongGroupTable(2);
+ * while (enumerator.moveNext()) {
+ *   final Employee e = enumerator.current();
+ *   final int group = table.group(e.deptno);
+ *   table.add(0, group, 1L);
+ *   table.add(1, group, e.salary);
+ * }
+ * for (int g = 0; g < table.size(); g++) {
+ *   list.add(
+ *       new Object[] {table.key(g), table.get(0, g), table.get(1, g)});
+ * }
+ * </pre></blockquote>
+ */
+public class LongGroupTable {
+  private static final int INITIAL_CAPACITY = 16;
+
+  /** Slots of the hash table; each contains a group ordinal plus one, or 0
+   * if the slot is empty. Length is a power of 2. */
+  private int[] slots;
+
+  /** Key of each group. */
+  private long[] keys;
+
+  /** Accumulators; {@code accumulators[i][g]} is accumulator {@code i} of
+   * group {@code g}. */
+  private final long[][] accumulators;
+
+  private int size;
+
+  /** Creates a LongGroupTable.
+   *
+   * @param accumulatorCount Number of accumulators per group
+   */
+  public LongGroupTable(int accumulatorCount) {
+    this.slots = new int[INITIAL_CAPACITY * 2];
+    this.keys = new long[INITIAL_CAPACITY];
+    this.accumulators = new long[accumulatorCount][INITIAL_CAPACITY];
+  }
+
+  /** Returns the ordinal of the group with a given key, creating the group
+   * (with accumulators 0) if it does not exist. */
+  public int group(long key) {
+    int mask = slots.length - 1;
+    int i = hash(key) & mask;
+    for (;;) {
+      final int slot = slots[i];
+      if (slot == 0) {
+        break;
+      }
+      if (keys[slot - 1] == key) {
+        return slot - 1;
+      }
+      i = (i + 1) & mask;
+    }
+    if (size == keys.length) {
+      final int capacity = size * 2;
+      keys = Arrays.copyOf(keys, capacity);
+      for (int a = 0; a < accumulators.length; a++) {
+        accumulators[a] = Arrays.copyOf(accumulators[a], capacity);
+      }
+    }
+    keys[size] = key;
+    slots[i] = ++size;
+    if (size * 2 > slots.length) {
+      rehash(slots.length * 2);
+    }
+    return size - 1;
+  }
+
+  /** Adds a value to an accumulator of a group. */
+  public void add(int accumulator, int group, long value) {
+    accumulators[accumulator][group] += value;
+  }
+
+  /** Returns the value of an accumulator of a group. */
+  public long get(int accumulator, int group) {
+    return accumulators[accumulator][group];
+  }
+
+  /** Returns the key of a group. */
+  public long key(int group) {
+    return keys[group];
+  }
+
+  /** Returns the number of groups. */
+  public int size() {
+    return size;
+  }
+
+  private void rehash(int capacity) {
+    slots = new int[capacity];
+    final int mask = capacity - 1;
+    for (int g = 0; g < size; g++) {
+      int i = hash(keys[g]) & mask;
+      while (slots[i] != 0) {
+        i = (i + 1) & mask;
+      }
+      slots[i] = g + 1;
+    }
+  }
+
+  /** Spreads the bits of a key, so that keys that differ only in their high
+   * bits, or are multiples of a power of 2, do not collide. (The finalizer
+   * of MurmurHash3.) */
+  private static int hash(long key) {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    key *= 0xc4ceb9fe1a85ec53L;
+    key ^= key >>> 33;
+    return (int) key;
+  }
+}
+
+// End LongGroupTable.java
@@ -0,0 +1,174 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.linq4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Amount of memory that the operators of a query may use to hold rows, and
+ * statistics about the rows they had to spill to disk when it ran out.
+ *
+ * <p>An operator that needs to hold many rows, such as the build side of a
+ * hash join, calls {@link #reserve} before it adds a row to memory. If the
+ * reservation fails, the operator writes rows to temporary files in
+ * {@link #getDirectory()} instead, and calls {@link #spilled} to record how
+ * much it wrote. When it no longer needs the rows it calls
+ * {@link #release}.
+ *
+ * <p>One budget is shared by all operators of a query, and is thread-safe.
+ * Sizes are estimates (see {@link #estimateSize(Object)}), so the budget is
+ * approximate.
+ */
+public class MemoryBudget {
+  private final long maxBytes;
+  private final File directory;
+  private final AtomicLong reservedBytes = new AtomicLong();
+  private final AtomicLong spilledBytes = new AtomicLong();
+  private final AtomicLong spillFileCount = new AtomicLong();
+
+  /** Creates a MemoryBudget.
+   *
+   * @param maxBytes Maximum number of bytes that may be reserved at a time;
+   *                 0 or negative means unbounded
+   * @param directory Directory for spill files, or null to use the system's
+   *                  temporary directory
+   */
+  public MemoryBudget(long maxBytes, File directory) {
+    this.maxBytes = maxBytes;
+    this.directory = directory;
+  }
+
+  /** Returns whether this budget has no limit, and therefore operators never
+   * need to spill. */
+  public boolean isUnbounded() {
+    return maxBytes <= 0;
+  }
+
+  /** Returns the maximum number of bytes that may be reserved at a time. */
+  public long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /** Returns the directory for spill files, or null. */
+  public File getDirectory() {
+    return directory;
+  }
+
+  /** Tries to reserve a number of bytes. Returns false, and reserves nothing,
+   * if the reservation would exceed the budget. */
+  public boolean reserve(long bytes) {
+    if (isUnbounded()) {
+      reservedBytes.addAndGet(bytes);
+      return true;
+    }
+    for (;;) {
+      final long reserved = reservedBytes.get();
+      if (reserved + bytes > maxBytes) {
+        return false;
+      }
+      if (reservedBytes.compareAndSet(reserved, reserved + bytes)) {
+        return true;
+      }
+    }
+  }
+
+  /** Releases bytes previously reserved by {@link #reserve}. */
+  public void release(long bytes) {
+    reservedBytes.addAndGet(-bytes);
+  }
+
+  /** Records that an operator has written a spill file. */
+  public void spilled(long bytes) {
+    spilledBytes.addAndGet(bytes);
+    spillFileCount.incrementAndGet();
+  }
+
+  /** Creates a temporary file to hold spilled rows. The caller must delete
+   * it. */
+  public File createSpillFile() throws IOException {
+    return File.createTempFile("linq4j-spill", ".tmp", directory);
+  }
+
+  /** Returns the number of bytes currently reserved. */
+  public long getReservedBytes() {
+    return reservedBytes.get();
+  }
+
+  /** Returns the total number of bytes written to spill files. */
+  public long getSpilledBytes() {
+    return spilledBytes.get();
+  }
+
+  /** Returns the number of spill files written. */
+  public long getSpillFileCount() {
+    return spillFileCount.get();
+  }
+
+  /** Estimates the number of bytes of heap occupied by a value, including
+   * the values it references if it is an array or collection.
+   *
+   * <p>The estimate assumes a 64-bit JVM with compressed references, and
+   * does not look inside objects of other classes, so it is only a rough
+   * guide. */
+  public static long estimateSize(Object o) {
+    if (o == null) {
+      return 0;
+    }
+    if (o instanceof Number || o instanceof Boolean
+        || o instanceof Character) {
+      return 16;
+    }
+    if (o instanceof String) {
+      return 40 + 2 * ((String) o).length();
+    }
+    if (o instanceof Object[]) {
+      final Object[] objects = (Object[]) o;
+      long size = 16 + 4 * objects.length;
+      for (Object object : objects) {
+        size += estimateSize(object);
+      }
+      return size;
+    }
+    if (o.getClass().isArray()) {
+      return 16 + 8 * Array.getLength(o);
+    }
+    if (o instanceof Collection) {
+      final Collection<?> collection = (Collection<?>) o;
+      long size = 40 + 8 * collection.size();
+      for (Object object : collection) {
+        size += estimateSize(object);
+      }
+      return size;
+    }
+    if (o instanceof Map) {
+      final Map<?, ?> map = (Map<?, ?>) o;
+      long size = 48 + 40 * map.size();
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        size += estimateSize(entry.getKey()) + estimateSize(entry.getValue());
+      }
+      return size;
+    }
+    return 64;
+  }
+}
+
+// End MemoryBudget.java
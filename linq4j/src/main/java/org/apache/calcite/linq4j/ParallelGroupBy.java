@@ -0,0 +1,267 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.linq4j;
+
+import org.apache.calcite.linq4j.function.EqualityComparer;
+import org.apache.calcite.linq4j.function.Function0;
+import org.apache.calcite.linq4j.function.Function1;
+import org.apache.calcite.linq4j.function.Function2;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hash aggregation that uses several threads.
+ *
+ * <p>The calling thread reads the input and computes each row's key, and
+ * sends the row to one of several worker threads, chosen by the hash of the
+ * key. Each worker aggregates its rows into its own hash table. Since a key
+ * always goes to the same worker, the tables have disjoint keys, and the
+ * result is simply the concatenation of the results of each table.
+ *
+ * <p>The accumulator functions are called from several threads at once, but
+ * each accumulator is only ever used by one thread.
+ *
+ * @param <TSource> Element type of input
+ * @param <TKey> Key type
+ * @param <TAccumulate> Accumulator type
+ * @param <TResult> Element type of result
+ *
+ * @see EnumerableDefaults#groupBy(Enumerable, Function1, Function0, Function2, Function2, EqualityComparer, int)
+ */
+class ParallelGroupBy<TSource, TKey, TAccumulate, TResult> {
+  /** Executor that creates a daemon thread for each task, if no thread is
+   * idle. */
+  static final ExecutorService EXECUTOR =
+      Executors.newCachedThreadPool(
+          new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+              final Thread thread =
+                  new Thread(r, "linq4j-group-by-" + count.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+
+  /** Number of rows sent to a worker at a time. */
+  private static final int BATCH_SIZE = 256;
+
+  /** Number of batches that each worker's queue can hold. */
+  private static final int QUEUE_CAPACITY = 4;
+
+  /** Batch that tells a worker there are no more rows. */
+  private final Batch<TSource, TKey> end = new Batch<TSource, TKey>(0);
+
+  private final Function1<TSource, TKey> keySelector;
+  private final Function0<TAccumulate> accumulatorInitializer;
+  private final Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder;
+  private final Function2<TKey, TAccumulate, TResult> resultSelector;
+  private final EqualityComparer<TKey> comparer;
+  private final int parallelism;
+
+  ParallelGroupBy(Function1<TSource, TKey> keySelector,
+      Function0<TAccumulate> accumulatorInitializer,
+      Function2<TAccumulate, TSource, TAccumulate> accumulatorAdder,
+      Function2<TKey, TAccumulate, TResult> resultSelector,
+      EqualityComparer<TKey> comparer, int parallelism) {
+    this.keySelector = keySelector;
+    this.accumulatorInitializer = accumulatorInitializer;
+    this.accumulatorAdder = accumulatorAdder;
+    this.resultSelector = resultSelector;
+    this.comparer = comparer;
+    this.parallelism = parallelism;
+  }
+
+  /** Returns an enumerable that aggregates the rows of an enumerable. The
+   * input is read, and the worker threads started, each time an enumerator
+   * is created, not when this method is called. */
+  Enumerable<TResult> apply(final Enumerable<TSource> enumerable) {
+    return new AbstractEnumerable<TResult>() {
+      public Enumerator<TResult> enumerator() {
+        return Linq4j.enumerator(ParallelGroupBy.this.aggregate(enumerable));
+      }
+    };
+  }
+
+  /** Aggregates the rows of an enumerable, and returns the results. */
+  private List<TResult> aggregate(Enumerable<TSource> enumerable) {
+    final List<Worker> workers = new ArrayList<Worker>();
+    final List<Future<Map<TKey, TAccumulate>>> futures =
+        new ArrayList<Future<Map<TKey, TAccumulate>>>();
+    for (int i = 0; i < parallelism; i++) {
+      final Worker worker = new Worker();
+      workers.add(worker);
+      futures.add(EXECUTOR.submit(worker));
+    }
+    boolean finished = false;
+    try {
+      final List<Batch<TSource, TKey>> batches =
+          new ArrayList<Batch<TSource, TKey>>();
+      for (int i = 0; i < parallelism; i++) {
+        batches.add(new Batch<TSource, TKey>(BATCH_SIZE));
+      }
+      final Enumerator<TSource> os = enumerable.enumerator();
+      try {
+        while (os.moveNext()) {
+          final TSource o = os.current();
+          final TKey key = keySelector.apply(o);
+          final int i = partition(key);
+          final Batch<TSource, TKey> batch = batches.get(i);
+          batch.keys.add(key);
+          batch.rows.add(o);
+          if (batch.rows.size() >= BATCH_SIZE) {
+            workers.get(i).queue.put(batch);
+            batches.set(i, new Batch<TSource, TKey>(BATCH_SIZE));
+          }
+        }
+        for (int i = 0; i < parallelism; i++) {
+          if (!batches.get(i).rows.isEmpty()) {
+            workers.get(i).queue.put(batches.get(i));
+          }
+        }
+        // Tell workers to finish. Workers keep draining their queue, even if
+        // they have failed, so this will not block for long.
+        for (Worker worker : workers) {
+          worker.queue.put(end);
+        }
+      } finally {
+        os.close();
+      }
+      final List<TResult> results = new ArrayList<TResult>();
+      for (Future<Map<TKey, TAccumulate>> future : futures) {
+        for (Map.Entry<TKey, TAccumulate> entry : future.get().entrySet()) {
+          results.add(resultSelector.apply(entry.getKey(), entry.getValue()));
+        }
+      }
+      finished = true;
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new RuntimeException(cause);
+    } finally {
+      if (!finished) {
+        // We failed or were interrupted, perhaps before every worker received
+        // the end marker. Interrupt the workers, so that none waits forever
+        // for rows.
+        for (Future<Map<TKey, TAccumulate>> future : futures) {
+          future.cancel(true);
+        }
+      }
+    }
+  }
+
+  /** Returns the worker for a key. */
+  private int partition(TKey key) {
+    if (key == null) {
+      return 0;
+    }
+    int h = comparer == null ? key.hashCode() : comparer.hashCode(key);
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    return (h & Integer.MAX_VALUE) % parallelism;
+  }
+
+  /** Rows, and their keys, sent to a worker. */
+  private static class Batch<TSource, TKey> {
+    final List<TKey> keys;
+    final List<TSource> rows;
+
+    Batch(int capacity) {
+      keys = new ArrayList<TKey>(capacity);
+      rows = new ArrayList<TSource>(capacity);
+    }
+  }
+
+  /** Task that aggregates the rows for a subset of the keys. */
+  private class Worker implements Callable<Map<TKey, TAccumulate>> {
+    final BlockingQueue<Batch<TSource, TKey>> queue =
+        new ArrayBlockingQueue<Batch<TSource, TKey>>(QUEUE_CAPACITY);
+
+    public Map<TKey, TAccumulate> call() throws Exception {
+      final Map<TKey, TAccumulate> map =
+          comparer == null
+              ? new HashMap<TKey, TAccumulate>()
+              : new EnumerableDefaults.WrapMap<TKey, TAccumulate>(comparer);
+      Throwable failure = null;
+      for (;;) {
+        final Batch<TSource, TKey> batch = queue.take();
+        if (batch == end) {
+          break;
+        }
+        if (failure != null) {
+          continue; // discard, so that the producer does not block
+        }
+        try {
+          add(map, batch);
+        } catch (Throwable e) {
+          failure = e;
+        }
+      }
+      if (failure instanceof Error) {
+        throw (Error) failure;
+      }
+      if (failure != null) {
+        throw (Exception) failure;
+      }
+      return map;
+    }
+
+    private void add(Map<TKey, TAccumulate> map, Batch<TSource, TKey> batch) {
+      for (int i = 0; i < batch.rows.size(); i++) {
+        final TKey key = batch.keys.get(i);
+        final TSource o = batch.rows.get(i);
+        TAccumulate accumulator = map.get(key);
+        if (accumulator == null) {
+          accumulator = accumulatorInitializer.apply();
+          accumulator = accumulatorAdder.apply(accumulator, o);
+          map.put(key, accumulator);
+        } else {
+          TAccumulate accumulator0 = accumulator;
+          accumulator = accumulatorAdder.apply(accumulator, o);
+          if (accumulator != accumulator0) {
+            map.put(key, accumulator);
+          }
+        }
+      }
+    }
+  }
+}
+
+// End ParallelGroupBy.java
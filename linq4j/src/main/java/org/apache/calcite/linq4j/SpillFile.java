@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite.linq4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Temporary file that holds rows spilled by an operator that has exceeded its
+ * {@link MemoryBudget}.
+ *
+ * <p>Rows are written using Java serialization, so must be
+ * {@link java.io.Serializable}. Call {@link #add} for each row, then
+ * {@link #finish}; then the rows can be read, any number of times, using
+ * {@link #asEnumerable()}. Call {@link #delete} when done.
+ *
+ * <p>When reading, classes are resolved to the classes that were written,
+ * not looked up by name. Rows may be instances of classes that are not
+ * visible to this class's class loader, such as classes generated and
+ * compiled at run time.
+ *
+ * @param <E> Element type
+ */
+class SpillFile<E> {
+  /** Number of rows after which the output stream forgets the objects it has
+   * written, so that its handle table does not grow without limit. */
+  private static final int RESET_INTERVAL = 1024;
+
+  private final MemoryBudget budget;
+  private final File file;
+  private ObjectOutputStream out;
+  private int count;
+  /** Classes that have been written, by name. Populated while writing, and
+   * only read after {@link #finish}. */
+  private final Map<String, Class<?>> classes =
+      new HashMap<String, Class<?>>();
+
+  SpillFile(MemoryBudget budget) {
+    this.budget = budget;
+    try {
+      this.file = budget.createSpillFile();
+      this.out = new SpillOutputStream(
+          new BufferedOutputStream(new FileOutputStream(file)));
+    } catch (IOException e) {
+      throw new RuntimeException("Error while creating spill file", e);
+    }
+  }
+
+  /** Returns the number of rows written. */
+  public int size() {
+    return count;
+  }
+
+  /** Writes a row. */
+  public void add(E e) {
+    try {
+      out.writeObject(e);
+      if (++count % RESET_INTERVAL == 0) {
+        out.reset();
+      }
+    } catch (NotSerializableException e2) {
+      throw new RuntimeException("Cannot write row to spill file " + file
+          + ": " + e2.getMessage() + " is not serializable", e2);
+    } catch (IOException e2) {
+      throw new RuntimeException("Error while writing spill file " + file,
+          e2);
+    }
+  }
+
+  /** Closes the file for writing, and records its size in the budget. */
+  public void finish() {
+    try {
+      out.close();
+    } catch (IOException e) {
+      throw new RuntimeException("Error while writing spill file " + file, e);
+    }
+    out = null;
+    budget.spilled(file.length());
+  }
+
+  /** Closes and deletes the file. */
+  public void delete() {
+    if (out != null) {
+      try {
+        out.close();
+      } catch (IOException e) {
+        // ignore; we are deleting the file anyway
+      }
+      out = null;
+    }
+    //noinspection ResultOfMethodCallIgnored
+    file.delete();
+  }
+
+  /** Returns an enumerable that reads the rows from the file. */
+  public Enumerable<E> asEnumerable() {
+    assert out == null : "must call finish before reading";
+    return new AbstractEnumerable<E>() {
+      public Enumerator<E> enumerator() {
+        return new SpillEnumerator();
+      }
+    };
+  }
+
+  /** Enumerator that reads rows from a spill file. */
+  private class SpillEnumerator implements Enumerator<E> {
+    private ObjectInputStream in;
+    private int i;
+    private E current;
+
+    public E current() {
+      return current;
+    }
+
+    public boolean moveNext() {
+      if (i >= count) {
+        close();
+        return false;
+      }
+      try {
+        if (in == null) {
+          in = new SpillInputStream(
+              new BufferedInputStream(new FileInputStream(file)));
+        }
+        //noinspection unchecked
+        current = (E) in.readObject();
+        ++i;
+        return true;
+      } catch (IOException e) {
+        throw new RuntimeException("Error while reading spill file " + file,
+            e);
+      } catch (ClassNotFoundException e) {
+        throw new RuntimeException("Error while reading spill file " + file,
+            e);
+      }
+    }
+
+    public void reset() {
+      close();
+      i = 0;
+      current = null;
+    }
+
+    public void close() {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException e) {
+          // ignore
+        }
+        in = null;
+      }
+    }
+  }
+
+  /** Output stream that records each class that it writes. */
+  private class SpillOutputStream extends ObjectOutputStream {
+    SpillOutputStream(OutputStream out) throws IOException {
+      super(out);
+    }
+
+    @Override protected void annotateClass(Class<?> cl) {
+      classes.put(cl.getName(), cl);
+    }
+  }
+
+  /** Input stream that resolves classes to those recorded by
+   * {@link SpillOutputStream}, falling back to the default mechanism and then
+   * to the thread's context class loader. */
+  private class SpillInputStream extends ObjectInputStream {
+    SpillInputStream(InputStream in) throws IOException {
+      super(in);
+    }
+
+    @Override protected Class<?> resolveClass(ObjectStreamClass desc)
+        throws IOException, ClassNotFoundException {
+      final Class<?> c = classes.get(desc.getName());
+      if (c != null) {
+        return c;
+      }
+      try {
+        return super.resolveClass(desc);
+      } catch (ClassNotFoundException e) {
+        final ClassLoader loader =
+            Thread.currentThread().getContextClassLoader();
+        if (loader == null) {
+          throw e;
+        }
+        return Class.forName(desc.getName(), false, loader);
+      }
+    }
+  }
+}
+
+// End SpillFile.java
@@ -23,7 +23,9 @@
 import org.apache.calcite.linq4j.ExtendedEnumerable;
 import org.apache.calcite.linq4j.Grouping;
 import org.apache.calcite.linq4j.Linq4j;
+import org.apache.calcite.linq4j.LongGroupTable;
 import org.apache.calcite.linq4j.Lookup;
+import org.apache.calcite.linq4j.MemoryBudget;
 import org.apache.calcite.linq4j.Queryable;
 import org.apache.calcite.linq4j.QueryableDefaults;
 import org.apache.calcite.linq4j.function.EqualityComparer;
@@ -39,14 +41,20 @@
 
 import com.example.Linq4jExample;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
 
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -61,6 +69,7 @@
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
@@ -977,6 +986,499 @@ public String apply(Employee v1, Department v2) {
         s);
   }
 
+  /** Tests a join whose inner input does not fit into its memory budget, and
+   * therefore spills to disk. Results must be the same as an in-memory
+   * join. */
+  @Test public void testJoinSpill() {
+    final List<Integer> outers = new ArrayList<Integer>();
+    for (int i = 0; i < 5000; i++) {
+      outers.add(i % 2000);
+    }
+    outers.add(null);
+    final List<Integer> inners = new ArrayList<Integer>();
+    for (int i = 0; i < 3000; i++) {
+      inners.add(i + 1000);
+      inners.add(7); // skewed key
+    }
+    inners.add(null);
+    for (boolean nullsOnLeft : new boolean[] {false, true}) {
+      for (boolean nullsOnRight : new boolean[] {false, true}) {
+        final MemoryBudget budget = new MemoryBudget(20000, null);
+        final List<String> expected =
+            spillJoin(outers, inners, nullsOnLeft, nullsOnRight, null);
+        final List<String> actual =
+            spillJoin(outers, inners, nullsOnLeft, nullsOnRight, budget);
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected, actual);
+        assertTrue(budget.getSpilledBytes() > 0);
+        assertTrue(budget.getSpillFileCount() > 0);
+        assertEquals(0, budget.getReservedBytes());
+      }
+    }
+  }
+
+  /** Tests that a join that spills to disk can be reset, and produces the
+   * same rows the second time. */
+  @Test public void testJoinSpillReset() {
+    final List<Integer> outers = new ArrayList<Integer>();
+    final List<Integer> inners = new ArrayList<Integer>();
+    for (int i = 0; i < 3000; i++) {
+      outers.add(i);
+      inners.add(i + 1000);
+    }
+    final MemoryBudget budget = new MemoryBudget(20000, null);
+    final Function1<Integer, Integer> identity = Functions.identitySelector();
+    final Enumerator<String> enumerator =
+        EnumerableDefaults.join(Linq4j.asEnumerable(outers),
+            Linq4j.asEnumerable(inners), identity, identity,
+            new Function2<Integer, Integer, String>() {
+              public String apply(Integer v0, Integer v1) {
+                return v0 + ":" + v1;
+              }
+            }, null, false, false, budget).enumerator();
+    final List<String> first = new ArrayList<String>();
+    while (enumerator.moveNext()) {
+      first.add(enumerator.current());
+    }
+    final long spillFileCount = budget.getSpillFileCount();
+    assertTrue(spillFileCount > 0);
+    enumerator.reset();
+    final List<String> second = new ArrayList<String>();
+    for (int i = 0; i < 10 && enumerator.moveNext(); i++) {
+      second.add(enumerator.current());
+    }
+    // reset in the middle, while files are open
+    enumerator.reset();
+    second.clear();
+    while (enumerator.moveNext()) {
+      second.add(enumerator.current());
+    }
+    enumerator.close();
+    assertEquals(2000, first.size());
+    assertEquals(first, second);
+    assertTrue(budget.getSpillFileCount() > spillFileCount);
+    assertEquals(0, budget.getReservedBytes());
+  }
+
+  /** Tests a join whose inner input spills to disk but whose outer rows are
+   * not serializable. The spilled partitions are read back into memory. */
+  @Test public void testJoinSpillUnserializableOuter() {
+    final List<LocalRow> outers = new ArrayList<LocalRow>();
+    final List<Integer> inners = new ArrayList<Integer>();
+    for (int i = 0; i < 3000; i++) {
+      outers.add(new LocalRow(i));
+      inners.add(i + 1000);
+    }
+    final MemoryBudget budget = new MemoryBudget(20000, null);
+    final List<String> list =
+        EnumerableDefaults.join(Linq4j.asEnumerable(outers),
+            Linq4j.asEnumerable(inners),
+            new Function1<LocalRow, Integer>() {
+              public Integer apply(LocalRow a0) {
+                return a0.i;
+              }
+            },
+            Functions.<Integer>identitySelector(),
+            new Function2<LocalRow, Integer, String>() {
+              public String apply(LocalRow v0, Integer v1) {
+                return v0.i + ":" + v1;
+              }
+            }, null, false, true, budget).toList();
+    assertEquals(3000, list.size());
+    assertTrue(list.contains("999:null"));
+    assertTrue(list.contains("1000:1000"));
+    assertTrue(budget.getSpillFileCount() > 0);
+    assertEquals(0, budget.getReservedBytes());
+  }
+
+  /** Tests a sort whose input does not fit into its memory budget, and
+   * therefore spills sorted runs to disk. Results, including the order of
+   * rows with equal keys, must be the same as an in-memory sort. */
+  @Test public void testOrderBySpill() {
+    final List<Integer[]> list = new ArrayList<Integer[]>();
+    for (int i = 0; i < 10000; i++) {
+      list.add(new Integer[] {(i * 7919) % 503, i});
+    }
+    final Function1<Integer[], Integer> keySelector =
+        new Function1<Integer[], Integer>() {
+          public Integer apply(Integer[] a0) {
+            return a0[0];
+          }
+        };
+    final MemoryBudget budget = new MemoryBudget(50000, null);
+    final List<Integer[]> expected =
+        EnumerableDefaults.orderBy(Linq4j.asEnumerable(list), keySelector,
+            Collections.<Integer>reverseOrder()).toList();
+    final List<Integer[]> actual =
+        EnumerableDefaults.orderBy(Linq4j.asEnumerable(list), keySelector,
+            Collections.<Integer>reverseOrder(), budget).toList();
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertTrue(Arrays.equals(expected.get(i), actual.get(i)));
+    }
+    assertTrue(budget.getSpillFileCount() > 1);
+    assertEquals(0, budget.getReservedBytes());
+  }
+
+  /** Tests that a sort that spills runs to disk can be reset, both while
+   * merging and after the last row, and produces the same rows again. */
+  @Test public void testOrderBySpillReset() {
+    final List<Integer> list = new ArrayList<Integer>();
+    for (int i = 0; i < 5000; i++) {
+      list.add((i * 7919) % 5003);
+    }
+    final MemoryBudget budget = new MemoryBudget(20000, null);
+    final Enumerator<Integer> enumerator =
+        EnumerableDefaults.orderBy(Linq4j.asEnumerable(list),
+            Functions.<Integer>identitySelector(),
+            Collections.<Integer>reverseOrder(), budget).enumerator();
+    final List<Integer> first = new ArrayList<Integer>();
+    while (enumerator.moveNext()) {
+      first.add(enumerator.current());
+    }
+    enumerator.reset();
+    final List<Integer> second = new ArrayList<Integer>();
+    for (int i = 0; i < 10 && enumerator.moveNext(); i++) {
+      second.add(enumerator.current());
+    }
+    enumerator.reset();
+    second.clear();
+    while (enumerator.moveNext()) {
+      second.add(enumerator.current());
+    }
+    enumerator.close();
+    assertEquals(5000, first.size());
+    assertEquals(first, second);
+    assertTrue(budget.getSpillFileCount() > 1);
+    assertEquals(0, budget.getReservedBytes());
+  }
+
+  /** Tests a sort that spills runs of rows of a class that cannot be found
+   * by name, like the classes that Calcite generates at run time. */
+  @Test public void testOrderBySpillIsolatedClass() throws Exception {
+    final Class<?> rowClass = isolatedClass(SpillRow.class);
+    final List<Object> list = new ArrayList<Object>();
+    for (int i = 0; i < 5000; i++) {
+      list.add(rowClass.getConstructor(int.class).newInstance(i));
+    }
+    final MemoryBudget budget = new MemoryBudget(20000, null);
+    final List<Object> actual =
+        EnumerableDefaults.orderBy(Linq4j.asEnumerable(list),
+            new Function1<Object, Integer>() {
+              public Integer apply(Object a0) {
+                return Integer.valueOf(a0.toString());
+              }
+            },
+            Collections.<Integer>reverseOrder(), budget).toList();
+    assertEquals(5000, actual.size());
+    for (int i = 0; i < actual.size(); i++) {
+      assertEquals(rowClass, actual.get(i).getClass());
+      assertEquals(Integer.toString(4999 - i), actual.get(i).toString());
+    }
+    assertTrue(budget.getSpillFileCount() > 1);
+    assertEquals(0, budget.getReservedBytes());
+  }
+
+  /** Tests a sort whose rows are not all serializable. After the first row
+   * that is not serializable, the sort writes no more runs. */
+  @Test public void testOrderBySpillNotSerializable() {
+    final List<Object> list = new ArrayList<Object>();
+    for (int i = 0; i < 5000; i++) {
+      list.add(i);
+    }
+    final Object notSerializable = new Object();
+    list.set(3000, notSerializable);
+    final MemoryBudget budget = new MemoryBudget(20000, null);
+    final List<Object> actual =
+        EnumerableDefaults.orderBy(Linq4j.asEnumerable(list),
+            new Function1<Object, Integer>() {
+              public Integer apply(Object a0) {
+                return a0 instanceof Integer ? (Integer) a0 : -1;
+              }
+            }, null, budget).toList();
+    assertEquals(5000, actual.size());
+    assertSame(notSerializable, actual.get(0));
+    assertEquals(0, actual.get(1));
+    assertEquals(4999, actual.get(4999));
+    assertTrue(budget.getSpillFileCount() > 0);
+    assertEquals(0, budget.getReservedBytes());
+  }
+
+  /** Tests a group by that uses several threads. Results must be the same
+   * as a single-threaded group by. */
+  @Test public void testGroupByParallel() {
+    final List<Integer> list = new ArrayList<Integer>();
+    for (int i = 0; i < 20000; i++) {
+      list.add(i % 1013);
+    }
+    list.add(null);
+    final Function1<Integer, Integer> keySelector =
+        Functions.identitySelector();
+    final Function0<long[]> init =
+        new Function0<long[]>() {
+          public long[] apply() {
+            return new long[1];
+          }
+        };
+    final Function2<long[], Integer, long[]> adder =
+        new Function2<long[], Integer, long[]>() {
+          public long[] apply(long[] v0, Integer v1) {
+            ++v0[0];
+            return v0;
+          }
+        };
+    final Function2<Integer, long[], String> resultSelector =
+        new Function2<Integer, long[], String>() {
+          public String apply(Integer v0, long[] v1) {
+            return v0 + ":" + v1[0];
+          }
+        };
+    final List<String> expected =
+        EnumerableDefaults.groupBy(Linq4j.asEnumerable(list), keySelector,
+            init, adder, resultSelector).toList();
+    final List<String> actual =
+        EnumerableDefaults.groupBy(Linq4j.asEnumerable(list), keySelector,
+            init, adder, resultSelector, null, 4).toList();
+    assertEquals(1014, actual.size());
+    Collections.sort(expected);
+    Collections.sort(actual);
+    assertEquals(expected, actual);
+  }
+
+  /** Tests that a group by that uses several threads does not read its input
+   * until its result is enumerated. */
+  @Test public void testGroupByParallelIsLazy() {
+    final int[] reads = {0};
+    final Enumerable<Integer> source =
+        new AbstractEnumerable<Integer>() {
+          public Enumerator<Integer> enumerator() {
+            ++reads[0];
+            return Linq4j.enumerator(Arrays.asList(1, 2, 1, 3));
+          }
+        };
+    final Function1<Integer, Integer> keySelector =
+        Functions.identitySelector();
+    final Enumerable<String> result =
+        EnumerableDefaults.groupBy(source, keySelector,
+            new Function0<int[]>() {
+              public int[] apply() {
+                return new int[1];
+              }
+            },
+            new Function2<int[], Integer, int[]>() {
+              public int[] apply(int[] v0, Integer v1) {
+                ++v0[0];
+                return v0;
+              }
+            },
+            new Function2<Integer, int[], String>() {
+              public String apply(Integer v0, int[] v1) {
+                return v0 + ":" + v1[0];
+              }
+            },
+            null, 4);
+    assertEquals(0, reads[0]);
+    final List<String> list = result.toList();
+    Collections.sort(list);
+    assertEquals("[1:2, 2:1, 3:1]", list.toString());
+    assertEquals(1, reads[0]);
+  }
+
+  /** Tests that if the thread that runs a parallel group by is interrupted
+   * while it is reading rows, and again while it is cleaning up, the query
+   * fails and the workers stop, rather than waiting for rows forever. */
+  @Test public void testGroupByParallelInterrupted() throws Exception {
+    final List<Integer> list = new ArrayList<Integer>();
+    for (int i = 0; i < 10000; i++) {
+      list.add(i);
+    }
+    final Enumerable<Integer> source =
+        new AbstractEnumerable<Integer>() {
+          public Enumerator<Integer> enumerator() {
+            final Enumerator<Integer> enumerator = Linq4j.enumerator(list);
+            return new Enumerator<Integer>() {
+              public Integer current() {
+                return enumerator.current();
+              }
+
+              public boolean moveNext() {
+                if (enumerator.moveNext()) {
+                  if (enumerator.current() == 5000) {
+                    // the next batch sent to a worker will fail
+                    Thread.currentThread().interrupt();
+                  }
+                  return true;
+                }
+                return false;
+              }
+
+              public void reset() {
+                enumerator.reset();
+              }
+
+              public void close() {
+                enumerator.close();
+                Thread.currentThread().interrupt();
+              }
+            };
+          }
+        };
+    final List<Thread> threads =
+        Collections.synchronizedList(new ArrayList<Thread>());
+    final Enumerable<String> result =
+        EnumerableDefaults.groupBy(source,
+            Functions.<Integer>identitySelector(),
+            new Function0<int[]>() {
+              public int[] apply() {
+                threads.add(Thread.currentThread());
+                return new int[1];
+              }
+            },
+            new Function2<int[], Integer, int[]>() {
+              public int[] apply(int[] v0, Integer v1) {
+                ++v0[0];
+                return v0;
+              }
+            },
+            new Function2<Integer, int[], String>() {
+              public String apply(Integer v0, int[] v1) {
+                return v0 + ":" + v1[0];
+              }
+            },
+            null, 4);
+    try {
+      final List<String> list2 = result.toList();
+      fail("expected error, got " + list2.size() + " rows");
+    } catch (RuntimeException e) {
+      assertTrue(e.getCause() instanceof InterruptedException);
+    } finally {
+      // Clear the interrupt flag
+      assertTrue(Thread.interrupted());
+    }
+    // Each worker must leave the group by, although the threads remain in
+    // the pool.
+    assertFalse(threads.isEmpty());
+    for (Thread thread : ImmutableSet.copyOf(threads)) {
+      for (int i = 0;; i++) {
+        if (!Arrays.toString(thread.getStackTrace())
+            .contains("ParallelGroupBy$Worker.call")) {
+          break;
+        }
+        assertTrue("worker " + thread + " did not stop", i < 100);
+        Thread.sleep(100);
+      }
+    }
+  }
+
+  @Test public void testLongGroupTable() {
+    final LongGroupTable table = new LongGroupTable(2);
+    final Map<Long, long[]> expected = new LinkedHashMap<Long, long[]>();
+    for (int i = 0; i < 20000; i++) {
+      // Keys are multiples of a power of 2, some negative
+      final long key = (i % 1013 - 500) * 1024L;
+      final int group = table.group(key);
+      table.add(0, group, 1L);
+      table.add(1, group, i);
+      long[] acc = expected.get(key);
+      if (acc == null) {
+        acc = new long[2];
+        expected.put(key, acc);
+      }
+      ++acc[0];
+      acc[1] += i;
+    }
+    assertEquals(1013, table.size());
+    int g = 0;
+    for (Map.Entry<Long, long[]> entry : expected.entrySet()) {
+      assertEquals(entry.getKey().longValue(), table.key(g));
+      assertEquals(entry.getValue()[0], table.get(0, g));
+      assertEquals(entry.getValue()[1], table.get(1, g));
+      ++g;
+    }
+  }
+
+  /** Tests a join that spills rows of a class that cannot be found by name,
+   * like the classes that Calcite generates at run time. Rows read back from
+   * the spill file must be of the same class. */
+  @Test public void testJoinSpillIsolatedClass() throws Exception {
+    final Class<?> rowClass = isolatedClass(SpillRow.class);
+    assertNotEquals(SpillRow.class, rowClass);
+    final List<Integer> outers = new ArrayList<Integer>();
+    final List<Object> inners = new ArrayList<Object>();
+    for (int i = 0; i < 3000; i++) {
+      outers.add(i);
+      inners.add(rowClass.getConstructor(int.class).newInstance(i));
+    }
+    final MemoryBudget budget = new MemoryBudget(20000, null);
+    final List<Object> list =
+        EnumerableDefaults.join(Linq4j.asEnumerable(outers),
+            Linq4j.asEnumerable(inners),
+            Functions.<Integer>identitySelector(),
+            new Function1<Object, Integer>() {
+              public Integer apply(Object a0) {
+                return Integer.valueOf(a0.toString());
+              }
+            },
+            new Function2<Integer, Object, Object>() {
+              public Object apply(Integer v0, Object v1) {
+                return v1;
+              }
+            }, null, false, false, budget).toList();
+    assertEquals(3000, list.size());
+    for (Object o : list) {
+      assertEquals(rowClass, o.getClass());
+    }
+    assertTrue(budget.getSpillFileCount() > 0);
+    assertEquals(0, budget.getReservedBytes());
+  }
+
+  /** Loads a copy of a class in a new class loader. The copy cannot be found
+   * by name from any other class loader. */
+  private static Class<?> isolatedClass(final Class<?> c)
+      throws ClassNotFoundException {
+    final ClassLoader loader = new ClassLoader(c.getClassLoader()) {
+      @Override protected Class<?> loadClass(String name, boolean resolve)
+          throws ClassNotFoundException {
+        if (!name.equals(c.getName())) {
+          return super.loadClass(name, resolve);
+        }
+        Class<?> loaded = findLoadedClass(name);
+        if (loaded == null) {
+          final String resource = name.replace('.', '/') + ".class";
+          try {
+            final InputStream in = getParent().getResourceAsStream(resource);
+            try {
+              final byte[] bytes = ByteStreams.toByteArray(in);
+              loaded = defineClass(name, bytes, 0, bytes.length);
+            } finally {
+              in.close();
+            }
+          } catch (IOException e) {
+            throw new ClassNotFoundException(name, e);
+          }
+        }
+        return loaded;
+      }
+    };
+    return loader.loadClass(c.getName());
+  }
+
+  private static List<String> spillJoin(List<Integer> outers,
+      List<Integer> inners, boolean nullsOnLeft, boolean nullsOnRight,
+      MemoryBudget budget) {
+    final Function1<Integer, Integer> identity = Functions.identitySelector();
+    final List<String> list =
+        EnumerableDefaults.join(Linq4j.asEnumerable(outers),
+            Linq4j.asEnumerable(inners), identity, identity,
+            new Function2<Integer, Integer, String>() {
+              public String apply(Integer v0, Integer v1) {
+                return v0 + ":" + v1;
+              }
+            }, null, nullsOnLeft, nullsOnRight, budget).toList();
+    Collections.sort(list);
+    return list;
+  }
+
   @Test public void testJoinCartesianProduct() {
     int n =
         Linq4j.asEnumerable(emps)
@@ -1540,6 +2042,28 @@ public String toString() {
     }
   }
 
+  /** Row that can be spilled; see {@link #isolatedClass(Class)}. */
+  public static class SpillRow implements Serializable {
+    public final int i;
+
+    public SpillRow(int i) {
+      this.i = i;
+    }
+
+    public String toString() {
+      return Integer.toString(i);
+    }
+  }
+
+  /** Row that is not serializable, and therefore cannot be spilled. */
+  private static class LocalRow {
+    final int i;
+
+    LocalRow(int i) {
+      this.i = i;
+    }
+  }
+
   /** Department. */
   public static class Department {
     public final String name;
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to you under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.calcite;
+
+import org.apache.calcite.adapter.java.ReflectiveSchema;
+import org.apache.calcite.jdbc.CalciteConnection;
+import org.apache.calcite.schema.SchemaPlus;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.GenerateMicroBenchmark;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Compares the plans that Calcite generates for a GROUP BY query with and
+ * without aggregation into a {@link org.apache.calcite.linq4j.LongGroupTable}.
+ *
+ * <p>Both benchmarks execute
+ *
+ * <blockquote>
+ *   <code>select deptno, count(*), sum(salary) from emps
+ *   group by deptno</code>
+ * </blockquote>
+ *
+ * <p>through a Calcite connection, over tables that contain the same rows.
+ * In the {@code emps} table the columns are {@code int}, hence not nullable,
+ * so the generated code aggregates into a {@code LongGroupTable}. In the
+ * {@code boxedEmps} table the columns are {@link Integer}, hence nullable, so
+ * the generated code uses
+ * {@link org.apache.calcite.linq4j.EnumerableDefaults#groupBy} with boxed keys
+ * and accumulators.
+ *
+ * <p>Statements are prepared once, so the benchmarks measure execution, not
+ * planning or code generation.
+ *
+ * <p>See {@link StatementTest} for how to run.
+ */
+public class AggregateBenchmark {
+  /** Number of rows. */
+  private static final int ROW_COUNT = 1000000;
+
+  /** Number of distinct keys. */
+  private static final int KEY_COUNT = 1000;
+
+  /** Connection, and a statement for each table. */
+  @State(Scope.Thread)
+  @BenchmarkMode(Mode.AverageTime)
+  public static class AggConnection {
+    Connection con;
+    PreparedStatement primitive;
+    PreparedStatement boxed;
+    {
+      try {
+        Class.forName("org.apache.calcite.jdbc.Driver");
+      } catch (ClassNotFoundException e) {
+        throw new IllegalStateException(e);
+      }
+      try {
+        Properties info = new Properties();
+        info.put("lex", "JAVA");
+        info.put("quoting", "DOUBLE_QUOTE");
+        con = DriverManager.getConnection("jdbc:calcite:", info);
+        final CalciteConnection calciteConnection =
+            con.unwrap(CalciteConnection.class);
+        final SchemaPlus rootSchema = calciteConnection.getRootSchema();
+        rootSchema.add("agg", new ReflectiveSchema(new AggSchema()));
+        calciteConnection.setSchema("agg");
+        primitive = con.prepareStatement(
+            "select deptno, count(*), sum(salary) from emps\n"
+            + "group by deptno");
+        boxed = con.prepareStatement(
+            "select deptno, count(*), sum(salary) from boxedEmps\n"
+            + "group by deptno");
+      } catch (SQLException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  /** Executes the query on the table whose columns are not nullable, which
+   * aggregates into a {@code LongGroupTable}. */
+  @GenerateMicroBenchmark
+  public int primitive(AggConnection state) throws SQLException {
+    return execute(state.primitive);
+  }
+
+  /** Executes the query on the table whose columns are nullable, which
+   * aggregates using boxed keys and accumulators. */
+  @GenerateMicroBenchmark
+  public int boxed(AggConnection state) throws SQLException {
+    return execute(state.boxed);
+  }
+
+  /** Executes a statement and returns the sum of its first column. */
+  private static int execute(PreparedStatement ps) throws SQLException {
+    final ResultSet rs = ps.executeQuery();
+    try {
+      int n = 0;
+      while (rs.next()) {
+        n += rs.getInt(1);
+      }
+      return n;
+    } finally {
+      rs.close();
+    }
+  }
+
+  // Disable checkstyle, so it doesn't complain about fields like "boxedEmps".
+  //CHECKSTYLE: OFF
+
+  public static class AggSchema {
+    public final Emp[] emps = new Emp[ROW_COUNT];
+    public final BoxedEmp[] boxedEmps = new BoxedEmp[ROW_COUNT];
+    {
+      final Random random = new Random(0);
+      for (int i = 0; i < ROW_COUNT; i++) {
+        final int deptno = random.nextInt(KEY_COUNT);
+        final int salary = random.nextInt(10000);
+        emps[i] = new Emp(deptno, salary);
+        boxedEmps[i] = new BoxedEmp(deptno, salary);
+      }
+    }
+
+    @Override public String toString() {
+      return "AggSchema";
+    }
+  }
+
+  public static class Emp {
+    public final int deptno;
+    public final int salary;
+
+    public Emp(int deptno, int salary) {
+      this.deptno = deptno;
+      this.salary = salary;
+    }
+  }
+
+  public static class BoxedEmp {
+    public final Integer deptno;
+    public final Integer salary;
+
+    public BoxedEmp(Integer deptno, Integer salary) {
+      this.deptno = deptno;
+      this.salary = salary;
+    }
+  }
+}
+
+// End AggregateBenchmark.java